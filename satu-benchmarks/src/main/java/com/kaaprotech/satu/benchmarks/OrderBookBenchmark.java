@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kaaprotech.satu.benchmarks.model.Order;
+import com.kaaprotech.satu.benchmarks.model.OrderBook;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+
+/**
+ * Measures each step of the model lifecycle on an {@link OrderBook} holding {@code size} entries in every collection
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class OrderBookBenchmark {
+
+    @Param({ "10", "100", "1000", "10000", "100000", "1000000" })
+    private int size;
+
+    private OrderBook book_;
+
+    private OrderBook.Builder initializedBuilder_;
+
+    private OrderBook.Builder updatedBuilder_;
+
+    private OrderBook.Delta updateDelta_;
+
+    private OrderBook.Delta nextUpdateDelta_;
+
+    private Order order_;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        book_ = OrderBookFixtures.book(size);
+
+        updatedBuilder_ = OrderBookFixtures.update(book_, size, 1);
+        updatedBuilder_.init();
+        final OrderBook updatedBook = updatedBuilder_.build();
+        updateDelta_ = updatedBuilder_.reconcile(DeltaType.UPDATE, book_);
+
+        nextUpdateDelta_ = OrderBookFixtures.update(updatedBook, size, 2).reconcile(DeltaType.UPDATE, updatedBook);
+
+        initializedBuilder_ = book_.toBuilder().init();
+
+        order_ = OrderBookFixtures.order(size / 2, 3);
+    }
+
+    /**
+     * Lazy copy, no collection is materialized
+     */
+    @Benchmark
+    public OrderBook.Builder toBuilder() {
+        return book_.toBuilder();
+    }
+
+    /**
+     * Copy of the full object graph into mutable builders
+     */
+    @Benchmark
+    public OrderBook.Builder toBuilderInit() {
+        return book_.toBuilder().init();
+    }
+
+    /**
+     * Setters on a fresh builder, touching one entry in every collection
+     */
+    @Benchmark
+    public OrderBook.Builder setters() {
+        final int key = size / 2;
+        return book_.toBuilder()
+                .setName("renamed")
+                .addOrReplaceOrders(order_)
+                .putPrices(key, 1d)
+                .putInstruments(key, OrderBookFixtures.instrument(key + 1))
+                .addOrderIds(size)
+                .addInstrumentKeys(OrderBookFixtures.instrument(size));
+    }
+
+    /**
+     * Rebuild of an immutable model from a fully materialized builder
+     */
+    @Benchmark
+    public OrderBook build() {
+        return initializedBuilder_.build();
+    }
+
+    /**
+     * Builder diffed against the model it was taken from, {@link OrderBookFixtures#changeCount(int)} entries differ per collection
+     */
+    @Benchmark
+    public OrderBook.Delta reconcile() {
+        return updatedBuilder_.reconcile(DeltaType.UPDATE, book_);
+    }
+
+    /**
+     * Fully materialized builder diffed against its unchanged source, the cost of a no-op reconcile
+     */
+    @Benchmark
+    public OrderBook.Delta reconcileUnchanged() {
+        return initializedBuilder_.reconcile(DeltaType.UPDATE, book_);
+    }
+
+    @Benchmark
+    public OrderBook.Delta toDelta() {
+        return book_.toDelta(DeltaType.ADD);
+    }
+
+    @Benchmark
+    public OrderBook applyDelta() {
+        return book_.toBuilder().applyDelta(updateDelta_).build();
+    }
+
+    @Benchmark
+    public OrderBook.Delta addDelta() {
+        return updateDelta_.toDeltaBuilder().addDelta(nextUpdateDelta_).buildDelta();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.benchmarks;
+
+import com.kaaprotech.satu.benchmarks.model.InstrumentKey;
+import com.kaaprotech.satu.benchmarks.model.Order;
+import com.kaaprotech.satu.benchmarks.model.OrderBook;
+import com.kaaprotech.satu.benchmarks.model.Side;
+
+/**
+ * Builds the deterministic order books used by the benchmarks
+ */
+public final class OrderBookFixtures {
+
+    private static final String[] EXCHANGES = { "XLON", "XNYS", "XPAR", "XTKS" };
+
+    private OrderBookFixtures() {
+    }
+
+    /**
+     * The number of entries touched by each benchmark update, one percent of the book but never less than one
+     */
+    public static int changeCount(final int size) {
+        return Math.max(1, size / 100);
+    }
+
+    public static InstrumentKey instrument(final int id) {
+        return new InstrumentKey(EXCHANGES[id & 3], id);
+    }
+
+    public static Order order(final int orderId, final int version) {
+        return Order.newBuilder(orderId)
+                .setPrice(100d + orderId % 1000 + version * 0.25d)
+                .setQuantity(Long.valueOf(1000L * (1 + orderId % 7) + version))
+                .setSide((orderId & 1) == 0 ? Side.Buy : Side.Sell)
+                .setTrader("trader-" + orderId % 50)
+                .setInstrument(instrument(orderId % 5000))
+                .build();
+    }
+
+    public static OrderBook book(final int size) {
+        final OrderBook.Builder builder = OrderBook.newBuilder(1).setName("book-" + size);
+        for (int i = 0; i < size; i++) {
+            builder.addOrReplaceOrders(order(i, 0));
+            builder.putPrices(i, 100d + i);
+            builder.putInstruments(i, instrument(i));
+            builder.addOrderIds(i);
+            builder.addInstrumentKeys(instrument(i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Applies a typical update to the book: updates, removes and adds {@link #changeCount(int)} entries in each collection
+     */
+    public static OrderBook.Builder update(final OrderBook book, final int size, final int version) {
+        final OrderBook.Builder builder = book.toBuilder();
+        final int changes = changeCount(size);
+        builder.setName("book-" + size + "-" + version);
+        for (int i = 0; i < changes; i++) {
+            final int updated = i * 100 % size;
+            final int removed = (i * 100 + 1) % size;
+            final int added = size + version * changes + i;
+            builder.addOrReplaceOrders(order(updated, version));
+            builder.getOrders().remove(removed);
+            builder.addOrReplaceOrders(order(added, version));
+            builder.putPrices(updated, 200d + version + i);
+            builder.getPrices().remove(removed);
+            builder.putPrices(added, 100d + added);
+            builder.getInstruments().remove(removed);
+            builder.putInstruments(added, instrument(added));
+            builder.getOrderIds().remove(removed);
+            builder.addOrderIds(added);
+            builder.getInstrumentKeys().remove(instrument(removed));
+            builder.addInstrumentKeys(instrument(added));
+        }
+        return builder;
+    }
+}
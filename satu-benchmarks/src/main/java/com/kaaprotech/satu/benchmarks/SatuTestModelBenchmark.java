@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.test.model.SatuTestEnum;
+import com.kaaprotech.satu.test.model.SatuTestKey;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+
+/**
+ * Measures the model lifecycle on {@link SatuTestModel}, the reference model exercising every field kind, with
+ * {@code size} entries in its map of models, map and set of primitives and set of keys
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class SatuTestModelBenchmark {
+
+    @Param({ "10", "100", "1000", "10000", "100000", "1000000" })
+    private int size;
+
+    private SatuTestModel model_;
+
+    private SatuTestModel.Builder initializedBuilder_;
+
+    private SatuTestModel.Builder updatedBuilder_;
+
+    private SatuTestModel.Delta updateDelta_;
+
+    private SatuTestModel.Delta nextUpdateDelta_;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final SatuTestModel.Builder builder = SatuTestModel.newBuilder(0)
+                .setIntField(1)
+                .setDoubleField(2d)
+                .setStringField("string")
+                .setEnumField(SatuTestEnum.FirstEnumMember)
+                .setKeyField(key(0))
+                .setModelField(child(-1, 0));
+        for (int i = 0; i < size; i++) {
+            builder.addOrReplaceMapOfModelsFieldWithSameKeyType(child(i, 0));
+            builder.addSetOfPrimitiveTypes(i);
+            builder.putMapOfPrimitiveTypes(i, i);
+            builder.addSetOfKeysField(key(i));
+        }
+        model_ = builder.build();
+
+        updatedBuilder_ = update(model_, 1);
+        updatedBuilder_.init();
+        final SatuTestModel updatedModel = updatedBuilder_.build();
+        updateDelta_ = updatedBuilder_.reconcile(DeltaType.UPDATE, model_);
+
+        nextUpdateDelta_ = update(updatedModel, 2).reconcile(DeltaType.UPDATE, updatedModel);
+
+        initializedBuilder_ = model_.toBuilder().init();
+    }
+
+    private static SatuTestKey key(final int i) {
+        return new SatuTestKey(i, Long.valueOf(i), Boolean.TRUE, Character.valueOf('k'), Byte.valueOf((byte) i), Float.valueOf(i),
+                null, null, null, null);
+    }
+
+    private static SatuTestModel child(final int intKey, final int version) {
+        return SatuTestModel.newBuilder(intKey)
+                .setIntField(version)
+                .setStringField("child-" + intKey)
+                .setEnumField(SatuTestEnum.SecondEnumMember)
+                .build();
+    }
+
+    private SatuTestModel.Builder update(final SatuTestModel model, final int version) {
+        final SatuTestModel.Builder builder = model.toBuilder().setIntField(version);
+        final int changes = OrderBookFixtures.changeCount(size);
+        for (int i = 0; i < changes; i++) {
+            final int updated = i * 100 % size;
+            final int removed = (i * 100 + 1) % size;
+            final int added = size + version * changes + i;
+            builder.addOrReplaceMapOfModelsFieldWithSameKeyType(child(updated, version));
+            builder.getMapOfModelsFieldWithSameKeyType().remove(removed);
+            builder.addOrReplaceMapOfModelsFieldWithSameKeyType(child(added, version));
+            builder.getSetOfPrimitiveTypes().remove(removed);
+            builder.addSetOfPrimitiveTypes(added);
+            builder.putMapOfPrimitiveTypes(updated, -updated);
+            builder.getMapOfPrimitiveTypes().remove(removed);
+            builder.putMapOfPrimitiveTypes(added, added);
+            builder.getSetOfKeysField().remove(key(removed));
+            builder.addSetOfKeysField(key(added));
+        }
+        return builder;
+    }
+
+    @Benchmark
+    public SatuTestModel.Builder toBuilder() {
+        return model_.toBuilder();
+    }
+
+    @Benchmark
+    public SatuTestModel.Builder toBuilderInit() {
+        return model_.toBuilder().init();
+    }
+
+    @Benchmark
+    public SatuTestModel.Builder setters() {
+        final int key = size / 2;
+        return model_.toBuilder()
+                .setIntField(3)
+                .setDoubleField(4d)
+                .addOrReplaceMapOfModelsFieldWithSameKeyType(child(key, 3))
+                .addSetOfPrimitiveTypes(size)
+                .putMapOfPrimitiveTypes(key, 0)
+                .addSetOfKeysField(key(size));
+    }
+
+    @Benchmark
+    public SatuTestModel build() {
+        return initializedBuilder_.build();
+    }
+
+    @Benchmark
+    public SatuTestModel.Delta reconcile() {
+        return updatedBuilder_.reconcile(DeltaType.UPDATE, model_);
+    }
+
+    @Benchmark
+    public SatuTestModel.Delta reconcileUnchanged() {
+        return initializedBuilder_.reconcile(DeltaType.UPDATE, model_);
+    }
+
+    @Benchmark
+    public SatuTestModel.Delta toDelta() {
+        return model_.toDelta(DeltaType.ADD);
+    }
+
+    @Benchmark
+    public SatuTestModel applyDelta() {
+        return model_.toBuilder().applyDelta(updateDelta_).build();
+    }
+
+    @Benchmark
+    public SatuTestModel.Delta addDelta() {
+        return updateDelta_.toDeltaBuilder().addDelta(nextUpdateDelta_).buildDelta();
+    }
+}
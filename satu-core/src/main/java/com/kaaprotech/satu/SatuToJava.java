@@ -43,7 +43,15 @@ public class SatuToJava {
     }
 
     public void generate(final String modelFile, final String encoding, final boolean jsonCompatible) {
-        final CompilationUnit cu = parser_.parse(modelFile, encoding, jsonCompatible);
+        generate(modelFile, encoding, jsonCompatible, false);
+    }
+
+    public void generate(final String modelFile, final String encoding, final boolean jsonCompatible, final boolean primitiveFields) {
+        generate(modelFile, encoding, jsonCompatible, primitiveFields, false);
+    }
+
+    public void generate(final String modelFile, final String encoding, final boolean jsonCompatible, final boolean primitiveFields, final boolean fingerprints) {
+        final CompilationUnit cu = parser_.parse(modelFile, encoding, jsonCompatible, primitiveFields, fingerprints);
         validator_.validate(cu);
         compiler_.compile(out_, cu);
     }
@@ -62,7 +70,7 @@ public class SatuToJava {
             final SatuToJava modelToJava = new SatuToJava(cmdLineValues.getOutDirectory());
             for (String modelFile : cmdLineValues.getModelFiles()) {
                 System.out.println("Starting Satu Java code generation for model file: " + modelFile);
-                modelToJava.generate(modelFile, null, cmdLineValues.isJsonCompatible());
+                modelToJava.generate(modelFile, null, cmdLineValues.isJsonCompatible(), cmdLineValues.isPrimitiveFields(), cmdLineValues.isFingerprints());
             }
 
             System.out.println("Satu Java code generation complete for " + cmdLineValues.getModelFiles().length + " model files to output directory: " + cmdLineValues.getOutDirectory());
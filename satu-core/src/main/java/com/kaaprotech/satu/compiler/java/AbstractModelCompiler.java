@@ -16,6 +16,11 @@
 
 package com.kaaprotech.satu.compiler.java;
 
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.FP;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.bitmaskAll;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.bitmaskWord;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.bitmaskWords;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.HC;
 import static com.kaaprotech.satu.compiler.java.CompilerUtil.LS;
 import static com.kaaprotech.satu.compiler.java.CompilerUtil.TAB;
 
@@ -87,6 +92,9 @@ public abstract class AbstractModelCompiler {
     }
 
     public final String getMutableColOf(final Field field) {
+        if (field.isUnboxed()) {
+            return "new " + getPrimitiveCollectionImpl(field) + "()";
+        }
         switch (field.getFieldTypeCategory()) {
         case Set:
             return "Sets.mutable.of()";
@@ -108,6 +116,115 @@ public abstract class AbstractModelCompiler {
         }
     }
 
+    /**
+     * Expression copying the immutable collection expression into a new mutable collection
+     */
+    public final String getMutableColCopy(final Field field, final String immutableCol) {
+        if (field.isUnboxed() && field.getFieldTypeCategory() == FieldTypeCategory.Map) {
+            return "new " + getPrimitiveCollectionImpl(field) + "(" + immutableCol + ")";
+        }
+        return immutableCol + getMutableColConv(field);
+    }
+
+    public final String getImmutableColOf(final Field field) {
+        if (field.isUnboxed()) {
+            return getPrimitiveCollectionFactory(field) + ".immutable.of()";
+        }
+        switch (field.getFieldTypeCategory()) {
+        case Set:
+            return "Sets.immutable.of()";
+        case Map:
+            return "Maps.immutable.of()";
+        default:
+            throw new RuntimeException("Unsupported FieldTypeCategory " + field.getFieldTypeCategory());
+        }
+    }
+
+    public final boolean isPrimitiveCollection(final Field field) {
+        return field.isUnboxed() && isCollectionType(field);
+    }
+
+    public final boolean hasPrimitiveCollections() {
+        return dt_.getFields().anySatisfy(new Predicate<Field>() {
+            @Override
+            public boolean accept(final Field field) {
+                return isPrimitiveCollection(field);
+            }
+        });
+    }
+
+    public final void compilePrimitiveCollectionImports() {
+        if (hasPrimitiveCollections()) {
+            out();
+            out("import com.gs.collections.api.block.procedure.primitive.*;");
+            out("import com.gs.collections.api.iterator.*;");
+            out("import com.gs.collections.api.map.primitive.*;");
+            out("import com.gs.collections.api.set.primitive.*;");
+            out("import com.gs.collections.impl.factory.primitive.*;");
+            out("import com.gs.collections.impl.map.mutable.primitive.*;");
+            out("import com.gs.collections.impl.set.mutable.primitive.*;");
+        }
+    }
+
+    /**
+     * The mutable implementation class of a primitive collection e.g. IntHashSet or IntDoubleHashMap
+     */
+    public final String getPrimitiveCollectionImpl(final Field field) {
+        switch (field.getFieldTypeCategory()) {
+        case Set:
+            return CompilerUtil.primitiveTypeName(field.getTypeArgs().get(0)) + "HashSet";
+        case Map:
+            return CompilerUtil.primitiveTypeName(field.getTypeArgs().get(0)) + CompilerUtil.primitiveTypeName(field.getTypeArgs().get(1)) + "HashMap";
+        default:
+            throw new RuntimeException("Unsupported FieldTypeCategory " + field.getFieldTypeCategory());
+        }
+    }
+
+    /**
+     * The factory class of a primitive collection e.g. IntSets or IntDoubleMaps
+     */
+    public final String getPrimitiveCollectionFactory(final Field field) {
+        return CompilerUtil.getPrimitiveCollectionType(field) + "s";
+    }
+
+    /**
+     * The immutable set type holding the removed elements or keys of a primitive collection delta
+     */
+    public final String getPrimitiveKeySetType(final Field field) {
+        return "Immutable" + CompilerUtil.primitiveTypeName(field.getTypeArgs().get(0)) + "Set";
+    }
+
+    public final String getPrimitiveKeyMutableSetType(final Field field) {
+        return "Mutable" + CompilerUtil.primitiveTypeName(field.getTypeArgs().get(0)) + "Set";
+    }
+
+    public final String getPrimitiveKeySetImpl(final Field field) {
+        return CompilerUtil.primitiveTypeName(field.getTypeArgs().get(0)) + "HashSet";
+    }
+
+    public final String getPrimitiveKeySetFactory(final Field field) {
+        return CompilerUtil.primitiveTypeName(field.getTypeArgs().get(0)) + "Sets";
+    }
+
+    /**
+     * The key value procedure of a primitive map e.g. IntDoubleProcedure
+     */
+    public final String getPrimitiveEntryProcedure(final Field field) {
+        return CompilerUtil.primitiveTypeName(field.getTypeArgs().get(0)) + CompilerUtil.primitiveTypeName(field.getTypeArgs().get(1)) + "Procedure";
+    }
+
+    public final String getPrimitiveKeyIterator(final Field field) {
+        return CompilerUtil.primitiveTypeName(field.getTypeArgs().get(0)) + "Iterator";
+    }
+
+    public final String getPrimitiveKeyType(final Field field) {
+        return CompilerUtil.primitiveJavaTypeName(field.getTypeArgs().get(0));
+    }
+
+    public final String getPrimitiveValueType(final Field field) {
+        return CompilerUtil.primitiveJavaTypeName(field.getTypeArgs().get(1));
+    }
+
     public final String getImmutableColType(final Field field) {
         switch (field.getFieldTypeCategory()) {
         case Set:
@@ -118,16 +235,137 @@ public abstract class AbstractModelCompiler {
         }
     }
 
-    public final String getPrimitiveWrapperInitializer(final Field field) {
-        if (field.getInitializer() == null) {
+    public final String getPrimitiveInitializer(final Field field) {
+        final PrimitiveType type = PrimitiveType.valueOf(field.getTypeName());
+        if (field.isUnboxed()) {
+            return getPrimitiveCast(type) + (field.getInitializer() == null ? getPrimitiveDefault(type) : field.getInitializer());
+        }
+        if (field.getInitializer() == null || "null".equals(field.getInitializer())) {
             return "null";
         }
-        final PrimitiveType type = PrimitiveType.valueOf(field.getTypeName());
         switch (type) {
         case String:
             return field.getInitializer();
         default:
-            return "new " + type.getWrapperClass() + "(" + field.getInitializer() + ")";
+            return type.getWrapperClass() + ".valueOf(" + getPrimitiveCast(type) + field.getInitializer() + ")";
+        }
+    }
+
+    /**
+     * The Java default value of an unboxed field, which is what a delta holds for a field it doesn't carry
+     */
+    public final String getUnboxedDefault(final Field field) {
+        final PrimitiveType type = PrimitiveType.valueOf(field.getTypeName());
+        return getPrimitiveCast(type) + getPrimitiveDefault(type);
+    }
+
+    /**
+     * One long member per 64 fields replaces a BitSet, so tracking a field costs neither an allocation nor an
+     * indirection
+     */
+    public final void compileBitmaskMembers(final int tabs, final String bitmask, final int bits) {
+        for (int w = 0; w < bitmaskWords(bits); w++) {
+            out();
+            out(tabs, "private long " + bitmaskWord(bitmask, w) + ";");
+        }
+    }
+
+    /**
+     * Returns whether the bit for the enum parameter named field is set, the word is picked with a switch once there
+     * is more than one
+     */
+    public final void compileBitmaskGet(final int tabs, final String bitmask, final int bits) {
+        final int words = bitmaskWords(bits);
+        if (words == 1) {
+            out(tabs, "return (" + bitmaskWord(bitmask, 0) + " & (1L << field.ordinal())) != 0L;");
+            return;
+        }
+        out(tabs, "final int ordinal = field.ordinal();");
+        out(tabs, "switch (ordinal >>> 6) {");
+        for (int w = 0; w < words; w++) {
+            out(tabs, "case " + w + ":");
+            out(tabs + 1, "return (" + bitmaskWord(bitmask, w) + " & (1L << ordinal)) != 0L;");
+        }
+        out(tabs, "default:");
+        out(tabs + 1, "throw new RuntimeException(\"Unexpected field \" + field);");
+        out(tabs, "}");
+    }
+
+    /**
+     * Sets the bit for the enum parameter named field
+     */
+    public final void compileBitmaskSet(final int tabs, final String bitmask, final int bits) {
+        final int words = bitmaskWords(bits);
+        if (words == 1) {
+            out(tabs, bitmaskWord(bitmask, 0) + " |= 1L << field.ordinal();");
+            return;
+        }
+        out(tabs, "final int ordinal = field.ordinal();");
+        out(tabs, "switch (ordinal >>> 6) {");
+        for (int w = 0; w < words; w++) {
+            out(tabs, "case " + w + ":");
+            out(tabs + 1, bitmaskWord(bitmask, w) + " |= 1L << ordinal;");
+            out(tabs + 1, "break;");
+        }
+        out(tabs, "default:");
+        out(tabs + 1, "throw new RuntimeException(\"Unexpected field \" + field);");
+        out(tabs, "}");
+    }
+
+    /**
+     * Sets every word of the bitmask to value, or to all of its field bits when value is null
+     */
+    public final void compileBitmaskAssign(final int tabs, final String bitmask, final int bits, final String value) {
+        for (int w = 0; w < bitmaskWords(bits); w++) {
+            out(tabs, bitmaskWord(bitmask, w) + " = " + (value == null ? bitmaskAll(bits, w) : value) + ";");
+        }
+    }
+
+    private String getPrimitiveCast(final PrimitiveType type) {
+        switch (type) {
+        case Byte:
+        case Short:
+        case Float:
+            return "(" + type.getString() + ") ";
+        default:
+            return "";
+        }
+    }
+
+    private String getPrimitiveDefault(final PrimitiveType type) {
+        switch (type) {
+        case Boolean:
+            return "false";
+        case Char:
+            return "(char) 0";
+        case Long:
+            return "0L";
+        case Double:
+            return "0d";
+        default:
+            return "0";
+        }
+    }
+
+    /**
+     * Inequality test for two values of the field type, unboxed fields are compared without allocation and
+     * floating point values by their bit patterns to stay consistent with equals
+     */
+    public final String getNotEqualsExpression(final Field field, final String lhs, final String rhs) {
+        if (!field.isUnboxed() || isCollectionType(field)) {
+            return "!ObjectUtils.equals(" + lhs + ", " + rhs + ")";
+        }
+        return getPrimitiveNotEqualsExpression(field.getTypeName(), lhs, rhs);
+    }
+
+    public final String getPrimitiveNotEqualsExpression(final String typeName, final String lhs, final String rhs) {
+        switch (PrimitiveType.valueOf(typeName)) {
+        case Float:
+            return "Float.floatToIntBits(" + lhs + ") != Float.floatToIntBits(" + rhs + ")";
+        case Double:
+            return "Double.doubleToLongBits(" + lhs + ") != Double.doubleToLongBits(" + rhs + ")";
+        default:
+            return lhs + " != " + rhs;
         }
     }
 
@@ -158,6 +396,29 @@ public abstract class AbstractModelCompiler {
         return getKeyField(cu_.getDeclaredTypesMap().get(field.getTypeArgs().get(1))).getTypeName().equals(field.getTypeArgs().get(0));
     }
 
+    /**
+     * Boxed val collections are held by the builder as a copy on write overlay of the ref collection until the whole
+     * collection is requested
+     */
+    public final boolean isOverlaid(final Field field) {
+        if (field.getModifier() != FieldModifier.val || field.isUnboxed()) {
+            return false;
+        }
+        return field.getFieldTypeCategory() == FieldTypeCategory.Set || field.getFieldTypeCategory() == FieldTypeCategory.Map;
+    }
+
+    public final String getOverlayType(final Field field) {
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            return "SetOverlay<" + javaTypeName(field.getTypeArgs().get(0)) + ">";
+        }
+        if (isMapValueTypeMutable(field)) {
+            final DeclaredType dt = cu_.getDeclaredTypesMap().get(field.getTypeArgs().get(1));
+            return "KeyModelBuilderMapOverlay<" + javaTypeName(field.getTypeArgs().get(0)) + ", " + getKeyField(dt).getJavaTypeName() + ", " + dt.getName() + ", " + dt.getName() + ".Builder, "
+                    + dt.getName() + ".Delta, " + dt.getName() + ".Delta.Builder>";
+        }
+        return "MapOverlay<" + javaTypeName(field.getTypeArgs().get(0)) + ", " + javaTypeName(field.getTypeArgs().get(1)) + ">";
+    }
+
     public final void compileHeader() {
         final StringBuilder builder = new StringBuilder();
         builder.append("/*****************************************************************************" + LS);
@@ -281,38 +542,136 @@ public abstract class AbstractModelCompiler {
         out();
         out(1, "@Override");
         out(1, "public boolean equals(final Object obj) {");
-        out(2, "if (obj == null) {");
-        out(3, "return false;");
-        out(2, "}");
         out(2, "if (obj == this) {");
         out(3, "return true;");
         out(2, "}");
-        out(2, "if (obj.getClass() != getClass()) {");
+        out(2, "if (obj == null || obj.getClass() != getClass()) {");
         out(3, "return false;");
         out(2, "}");
         out(2, "final " + dt_.getName() + " rhs = (" + dt_.getName() + ") obj;");
-        out(2, "return new EqualsBuilder()");
-        for (Field field : dt_.getFields()) {
-            out(4, ".append(" + field.getName() + "_, rhs." + field.getName() + "_)");
+        if (cu_.isFingerprints()) {
+            out(2, "if (" + HC + " != 0 && rhs." + HC + " != 0 && " + HC + " != rhs." + HC + ") {");
+            out(3, "return false;");
+            out(2, "}");
+            out(2, "final long fingerprint = " + FP + ";");
+            out(2, "final long rhsFingerprint = rhs." + FP + ";");
+            out(2, "if (fingerprint != 0L && rhsFingerprint != 0L && fingerprint != rhsFingerprint) {");
+            out(3, "return false;");
+            out(2, "}");
+        }
+        for (Field field : getFieldsInEqualsOrder()) {
+            if (isEnum(field)) {
+                out(2, "if (" + field.getName() + "_ != rhs." + field.getName() + "_) {");
+            }
+            else {
+                out(2, "if (" + getNotEqualsExpression(field, field.getName() + "_", "rhs." + field.getName() + "_") + ") {");
+            }
+            out(3, "return false;");
+            out(2, "}");
         }
-        out(4, ".isEquals();");
+        out(2, "return true;");
         out(1, "}");
     }
 
+    /**
+     * The fields ordered cheapest comparison first so equals exits as early as possible, unboxed primitives and
+     * enums are compared before boxed values, then declared types and finally collections
+     */
+    protected final List<Field> getFieldsInEqualsOrder() {
+        return dt_.getFields().toSortedList(new Comparator<Field>() {
+            public int compare(final Field f1, final Field f2) {
+                return getEqualsCost(f1) - getEqualsCost(f2);
+            }
+        });
+    }
+
+    private int getEqualsCost(final Field field) {
+        if (field.isUnboxed() && !isCollectionType(field)) {
+            return 0;
+        }
+        if (isEnum(field)) {
+            return 1;
+        }
+        switch (field.getFieldTypeCategory()) {
+        case Primitive:
+        case ImportedType:
+            return 2;
+        case DeclaredType:
+            return isTypeMutable(field.getTypeName()) ? 4 : 3;
+        default:
+            return 5;
+        }
+    }
+
+    /**
+     * Generates the same hash as HashCodeBuilder would for the fields in declaration order without allocating the builder
+     * or boxing unboxed fields
+     */
     public final void compileHashCode() {
         out();
         out(1, "@Override");
         out(1, "public int hashCode() {");
         int arg1 = getHashCodeBuilderArg(dt_.getName());
         int arg2 = getHashCodeBuilderArg(new StringBuilder(dt_.getName()).reverse().toString());
-        out(2, "return new HashCodeBuilder(" + arg1 + ", " + arg2 + ")");
+        final int tabs;
+        if (cu_.isFingerprints()) {
+            out(2, "int hash = " + HC + ";");
+            out(2, "if (hash == 0) {");
+            out(3, "hash = " + arg1 + ";");
+            tabs = 3;
+        }
+        else {
+            out(2, "int hash = " + arg1 + ";");
+            tabs = 2;
+        }
+        for (Field field : dt_.getFields()) {
+            out(tabs, "hash = hash * " + arg2 + " + SatuUtil.hashCode(" + field.getName() + "_);");
+        }
+        if (cu_.isFingerprints()) {
+            out(3, HC + " = hash;");
+            out(2, "}");
+        }
+        out(2, "return hash;");
+        out(1, "}");
+    }
+
+    /**
+     * Cached hash code and fingerprint, zero means not yet computed. The fingerprint is volatile so the 64-bit write
+     * can't be torn, racing threads at worst compute the same value twice.
+     */
+    public final void compileFingerprintMembers() {
+        if (!cu_.isFingerprints()) {
+            return;
+        }
+        out();
+        out(1, "private transient int " + HC + ";");
+        out();
+        out(1, "private transient volatile long " + FP + ";");
+    }
+
+    public final void compileFingerprint() {
+        if (!cu_.isFingerprints()) {
+            return;
+        }
+        out();
+        out(1, "@Override");
+        out(1, "public long fingerprint() {");
+        out(2, "long fingerprint = " + FP + ";");
+        out(2, "if (fingerprint == 0L) {");
+        out(3, "fingerprint = " + serialVersionUID() + "L;");
         for (Field field : dt_.getFields()) {
-            out(4, ".append(" + field.getName() + "_)");
+            out(3, "fingerprint = SatuUtil.fingerprint(fingerprint, " + field.getName() + "_);");
         }
-        out(4, ".toHashCode();");
+        out(3, FP + " = fingerprint;");
+        out(2, "}");
+        out(2, "return fingerprint;");
         out(1, "}");
     }
 
+    protected final String getFingerprintedInterface() {
+        return cu_.isFingerprints() ? ", Fingerprinted" : "";
+    }
+
     public final String getFieldType(final Field field) {
         return CompilerUtil.getFieldType(field);
     }
@@ -367,6 +726,21 @@ public abstract class AbstractModelCompiler {
         return "put" + capitalize(field.getName());
     }
 
+    public final String methodNameForRemove(Field field) {
+        return "remove" + capitalize(field.getName());
+    }
+
+    /**
+     * Name of the delta member holding the removed elements or keys of a primitive collection field
+     */
+    public final String removedName(Field field) {
+        return field.getName() + "Removed";
+    }
+
+    public final String methodNameForRemovedGetter(Field field) {
+        return "get" + capitalize(removedName(field));
+    }
+
     public final String methodNameForAddOrReplace(Field field) {
         return "addOrReplace" + capitalize(field.getName());
     }
@@ -401,8 +775,17 @@ public abstract class AbstractModelCompiler {
             }
         }
         for (Field field : dt_.getFields()) {
-            if (field.getFieldTypeCategory() == FieldTypeCategory.Map || field.getFieldTypeCategory() == FieldTypeCategory.Set) {
-                String createEmpty = String.format("(Immutable%1$s)%1$ss.immutable.of()", field.getFieldTypeCategory().name());
+            if (field.isPersistent()) {
+                out(2, field.getName() + "_ = PersistentHash" + field.getFieldTypeCategory().name() + ".ofAll(" + field.getName() + ");");
+            }
+            else if (field.getFieldTypeCategory() == FieldTypeCategory.Map || field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+                final String createEmpty;
+                if (field.isUnboxed()) {
+                    createEmpty = getImmutableColOf(field);
+                }
+                else {
+                    createEmpty = String.format("(Immutable%1$s)%1$ss.immutable.of()", field.getFieldTypeCategory().name());
+                }
                 out(2, field.getName() + "_ = " + field.getName() + " != null ? " + field.getName() + " : " + createEmpty + ";");
             }
             else {
@@ -437,6 +820,9 @@ public abstract class AbstractModelCompiler {
             case key:
                 return getFieldType(field);
             case val:
+                if (field.isUnboxed()) {
+                    return "Mutable" + CompilerUtil.getPrimitiveCollectionType(field);
+                }
                 return "MutableSet<" + javaTypeName(field.getTypeArgs().get(0)) + ">";
             default:
                 throw new RuntimeException("Unexpected enum " + field.getModifier());
@@ -446,6 +832,9 @@ public abstract class AbstractModelCompiler {
             case key:
                 return getFieldType(field);
             case val:
+                if (field.isUnboxed()) {
+                    return "Mutable" + CompilerUtil.getPrimitiveCollectionType(field);
+                }
                 final String valueType = isMapValueTypeMutable(field) ? field.getTypeArgs().get(1) + ".Builder" : javaTypeName(field.getTypeArgs().get(1));
                 return "MutableMap<" + javaTypeName(field.getTypeArgs().get(0)) + ", " + valueType + ">";
             default:
@@ -499,6 +888,9 @@ public abstract class AbstractModelCompiler {
             case key:
                 return getFieldType(field);
             case val:
+                if (field.isUnboxed()) {
+                    return getFieldType(field);
+                }
                 return "ImmutableList<KeyDelta<" + javaTypeName(field.getTypeArgs().get(0)) + ">>";
             default:
                 throw new RuntimeException("Unexpected enum " + field.getModifier());
@@ -508,6 +900,9 @@ public abstract class AbstractModelCompiler {
             case key:
                 return getFieldType(field);
             case val:
+                if (field.isUnboxed()) {
+                    return getFieldType(field);
+                }
                 return "ImmutableList<" + getDeltaFieldTypeForMap(field) + ">";
             default:
                 throw new RuntimeException("Unexpected enum " + field.getModifier());
@@ -533,6 +928,9 @@ public abstract class AbstractModelCompiler {
             case key:
                 return getFieldType(field);
             case val:
+                if (field.isUnboxed()) {
+                    return "Mutable" + CompilerUtil.getPrimitiveCollectionType(field);
+                }
                 return "MutableMap<" + javaTypeName(field.getTypeArgs().get(0)) + ", KeyDelta.Builder<" + javaTypeName(field.getTypeArgs().get(0)) + ">>";
             default:
                 throw new RuntimeException("Unexpected enum " + field.getModifier());
@@ -542,6 +940,9 @@ public abstract class AbstractModelCompiler {
             case key:
                 return getFieldType(field);
             case val:
+                if (field.isUnboxed()) {
+                    return "Mutable" + CompilerUtil.getPrimitiveCollectionType(field);
+                }
                 final StringBuilder sb = new StringBuilder();
                 sb.append("MutableMap<");
                 sb.append(javaTypeName(field.getTypeArgs().get(0)));
@@ -605,6 +1006,13 @@ public abstract class AbstractModelCompiler {
         }
     };
 
+    public final Predicate<Field> overlaidFieldPredicate = new Predicate<Field>() {
+        @Override
+        public boolean accept(final Field field) {
+            return isOverlaid(field);
+        }
+    };
+
     public final long serialVersionUID() {
         if (dt_.getDeclaredTypeCategory() == DeclaredTypeCategory.Enum) {
             return 0L;
@@ -36,14 +36,71 @@ public final class CompilerUtil {
 
     public static final String LDT = "lastDeltaType__";
 
-    public static final String MBS = "builderFieldBitSet__";
+    public static final String MBS = "builderFieldBits";
 
-    public static final String DBS = "deltaBuilderFieldBitSet__";
+    public static final String DBS = "deltaBuilderFieldBits";
+
+    public static final String MDS = "builderDirtyBits";
+
+    public static final String BFV = "builderFieldValues__";
+
+    public static final String DIRTY = "dirty__";
+
+    public static final String DL = "dirtyListener__";
+
+    public static final String DLF = "dirtyListenerField__";
+
+    public static final String DLK = "dirtyListenerKey__";
+
+    public static final String DIRTY_KEYS = "DirtyKeys__";
+
+    public static final String OVERLAY = "Overlay__";
+
+    public static final String SORTED = "Sorted__";
+
+    public static final String HC = "hashCode__";
+
+    public static final String FP = "fingerprint__";
+
+    public static final String CFM = "changedFieldsMask__";
+
+    public static final String BP = "builderPool__";
+
+    public static final String DBP = "deltaBuilderPool__";
 
     public static final String LS = System.getProperty("line.separator");
 
     public static final String TAB = "    ";
 
+    /**
+     * The number of long words holding one bit per field, at least one so an empty enum still has a word
+     */
+    public static int bitmaskWords(final int bits) {
+        return Math.max(1, (bits + 63) >>> 6);
+    }
+
+    /**
+     * The name of the member holding bits [word * 64, word * 64 + 64) of a bitmask
+     */
+    public static String bitmaskWord(final String bitmask, final int word) {
+        return bitmask + word + "__";
+    }
+
+    /**
+     * The constant mask of the bit for ordinal within its word
+     */
+    public static String bitmaskMask(final int ordinal) {
+        return "(1L << " + (ordinal & 63) + ")";
+    }
+
+    /**
+     * The constant mask with every bit of the word which belongs to a field set
+     */
+    public static String bitmaskAll(final int bits, final int word) {
+        final int count = Math.min(64, Math.max(0, bits - (word << 6)));
+        return count == 64 ? "-1L" : "0x" + Long.toHexString((1L << count) - 1) + "L";
+    }
+
     public static String getKeyFieldType(final DeclaredType dt) {
         switch (dt.getDeclaredTypeCategory()) {
         case Key:
@@ -76,17 +133,52 @@ public final class CompilerUtil {
     public static String getFieldType(final Field field) {
         switch (field.getFieldTypeCategory()) {
         case Primitive:
+            if (field.isUnboxed()) {
+                return PrimitiveType.valueOf(field.getTypeName()).getString();
+            }
             return PrimitiveType.valueOf(field.getTypeName()).getWrapperClass();
         case ImportedType:
             return ImportedType.valueOf(field.getTypeName()).getWrapperClass();
         case DeclaredType:
             return field.getTypeName();
         case Set:
+            if (field.isUnboxed()) {
+                return "Immutable" + getPrimitiveCollectionType(field);
+            }
             return "ImmutableSet<" + javaTypeName(field.getTypeArgs().get(0)) + ">";
         case Map:
+            if (field.isUnboxed()) {
+                return "Immutable" + getPrimitiveCollectionType(field);
+            }
             return "ImmutableMap<" + javaTypeName(field.getTypeArgs().get(0)) + ", " + javaTypeName(field.getTypeArgs().get(1)) + ">";
         default:
             throw new RuntimeException("Unexpected enum " + field.getFieldTypeCategory());
         }
     }
+
+    /**
+     * The gs-collections primitive type name prefix for a primitive type argument e.g. Int for Int and Char for Char
+     */
+    public static String primitiveTypeName(final String typeName) {
+        final String primitive = PrimitiveType.valueOf(typeName).getString();
+        return primitive.substring(0, 1).toUpperCase() + primitive.substring(1);
+    }
+
+    public static String primitiveJavaTypeName(final String typeName) {
+        return PrimitiveType.valueOf(typeName).getString();
+    }
+
+    /**
+     * The gs-collections primitive collection interface name without its mutability prefix e.g. IntSet or IntDoubleMap
+     */
+    public static String getPrimitiveCollectionType(final Field field) {
+        switch (field.getFieldTypeCategory()) {
+        case Set:
+            return primitiveTypeName(field.getTypeArgs().get(0)) + "Set";
+        case Map:
+            return primitiveTypeName(field.getTypeArgs().get(0)) + primitiveTypeName(field.getTypeArgs().get(1)) + "Map";
+        default:
+            throw new RuntimeException("Unexpected enum " + field.getFieldTypeCategory());
+        }
+    }
 }
@@ -17,8 +17,16 @@
 package com.kaaprotech.satu.compiler.java;
 
 import static com.kaaprotech.satu.compiler.java.CompilerUtil.BF;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.BFV;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.DIRTY;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.DIRTY_KEYS;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.DL;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.DLF;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.DLK;
 import static com.kaaprotech.satu.compiler.java.CompilerUtil.LDT;
 import static com.kaaprotech.satu.compiler.java.CompilerUtil.MBS;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.MDS;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.OVERLAY;
 import static com.kaaprotech.satu.compiler.java.CompilerUtil.REF;
 
 import com.gs.collections.api.block.procedure.Procedure;
@@ -31,21 +39,30 @@ import com.kaaprotech.satu.parser.FieldTypeCategory;
 @SuppressWarnings("serial")
 public final class ModelBuilderCompiler extends AbstractModelCompiler {
 
+    private final ModelJsonCompiler json_;
+
     public ModelBuilderCompiler(final ModelCompiler compiler) {
         super(compiler.cu_, compiler.dt_, compiler.writer_);
+        json_ = new ModelJsonCompiler(compiler);
     }
 
     public void compile() {
         compileBuilderClassStart();
         compileMutableFieldEnum();
-        compileMutableFieldBitSet();
+        compileMutableFieldBitmask();
+        compileDirtyMembers();
         compileRefFieldMember();
         compileLastDeltaTypeFieldMember();
         compileBuilderFieldMembers();
+        compileBuilderOverlayMembers();
         compileBuilderConstructorl();
         compileBuilderConstructor2();
         compileBuilderResetMethod();
+        compileBuilderUnbindMethod();
+        compileBuilderRebindMethods();
         compileBuilderUpdatedMethod();
+        compileBuilderDirtyMethods();
+        compileBuilderOverlayMethods();
         compileBuilderInitForUpdateMethod();
         compileBuilderInitMethod();
         compileBuilderGettersAndSetters();
@@ -54,6 +71,9 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
         compileBuilderBuildMethod();
         compileBuilderBuildEmptyMethod();
         compileBuilderApplyDeltaMethod();
+        if (cu_.isJsonCompatible()) {
+            json_.compileBuilderJson();
+        }
         compileBuilderLastDeltaTypeGetterAndSetter();
         compileBuilderGetRefMethod();
         compileBuilderReconcileMethodNoArgs();
@@ -69,7 +89,9 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
 
     public void compileBuilderClassStart() {
         out();
-        out(1, "public static final class Builder implements ModelBuilder<" + getKeyFieldType() + ", " + dt_.getName() + ", " + dt_.getName() + ".Delta>, Comparable<" + dt_.getName() + ".Builder> {");
+        final String json = cu_.isJsonCompatible() ? ", SparseJsonApplicable<" + dt_.getName() + ".Builder>" : "";
+        out(1, "public static final class Builder implements ModelBuilder<" + getKeyFieldType() + ", " + dt_.getName() + ", " + dt_.getName() + ".Delta>, Comparable<" + dt_.getName() + ".Builder>"
+                + json + " {");
     }
 
     public void compileMutableFieldEnum() {
@@ -89,14 +111,47 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
         out(2, "}");
     }
 
-    public void compileMutableFieldBitSet() {
+    private int getMutableFieldCount() {
+        return dt_.getFields().count(fieldsByModifierPredicate(FieldModifier.val));
+    }
+
+    /**
+     * The fields copied from the ref or reset, the enum values are cached as values() clones its array on every call
+     */
+    public void compileMutableFieldBitmask() {
         out();
-        out(2, "private final BitSet " + MBS + " = new BitSet(" + BF + ".values().length);");
+        out(2, "private static final " + BF + "[] " + BFV + " = " + BF + ".values();");
+        compileBitmaskMembers(2, MBS, getMutableFieldCount());
+    }
+
+    /**
+     * Dirty tracking, a field is dirty once it may differ from the ref, materializing a field from the ref doesn't make
+     * it dirty. Map of model fields also track which entries were modified through their builders.
+     */
+    public void compileDirtyMembers() {
+        compileBitmaskMembers(2, MDS, getMutableFieldCount());
+        out();
+        out(2, "private boolean " + DIRTY + ";");
+        out();
+        out(2, "private DirtyListener " + DL + ";");
+        out();
+        out(2, "private int " + DLF + ";");
+        out();
+        out(2, "private Object " + DLK + ";");
+        dt_.getFields().select(fieldsByModifierPredicate(FieldModifier.val)).forEach(new Procedure<Field>() {
+            @Override
+            public void value(final Field field) {
+                if (isMapValueTypeMutable(field)) {
+                    out();
+                    out(2, "private MutableSet<" + javaTypeName(field.getTypeArgs().get(0)) + "> " + field.getName() + DIRTY_KEYS + ";");
+                }
+            }
+        });
     }
 
     public void compileRefFieldMember() {
         out();
-        out(2, "private final " + dt_.getName() + " " + REF + ";");
+        out(2, "private " + dt_.getName() + " " + REF + ";");
     }
 
     public void compileLastDeltaTypeFieldMember() {
@@ -109,13 +164,8 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
             @Override
             public void value(final Field field) {
                 out();
-                final String modifier;
                 if (field.getModifier() == FieldModifier.key) {
                     out(2, "// Key");
-                    modifier = "private final";
-                }
-                else {
-                    modifier = "private";
                 }
                 for (Annotation annotation : field.getAnnotations()) {
                     if (annotation.getText() == null) {
@@ -125,7 +175,20 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
                         out(2, "@" + annotation.getName() + "(" + annotation.getText() + ")");
                     }
                 }
-                out(2, modifier + " " + getBuilderFieldType(field) + " " + field.getName() + "_;");
+                out(2, "private " + getBuilderFieldType(field) + " " + field.getName() + "_;");
+            }
+        });
+    }
+
+    /**
+     * Edits made to a collection field before it is materialized, the ref collection is left untouched
+     */
+    public void compileBuilderOverlayMembers() {
+        dt_.getFields().select(overlaidFieldPredicate).forEach(new Procedure<Field>() {
+            @Override
+            public void value(final Field field) {
+                out();
+                out(2, "private " + getOverlayType(field) + " " + field.getName() + OVERLAY + ";");
             }
         });
     }
@@ -161,16 +224,17 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
             public void value(final Field field) {
                 switch (field.getFieldTypeCategory()) {
                 case Primitive:
-                    out(3, field.getName() + "_ = " + getPrimitiveWrapperInitializer(field) + ";");
+                    out(3, field.getName() + "_ = " + getPrimitiveInitializer(field) + ";");
                     break;
                 case ImportedType:
                     out(3, field.getName() + "_ = null;");
                     break;
                 case Set:
-                    out(3, field.getName() + "_ = Sets.mutable.of();");
-                    break;
                 case Map:
-                    out(3, field.getName() + "_ = Maps.mutable.of();");
+                    out(3, field.getName() + "_ = " + getMutableColOf(field) + ";");
+                    if (isOverlaid(field)) {
+                        out(3, field.getName() + OVERLAY + " = null;");
+                    }
                     break;
                 default:
                     if (field.getInitializer() != null && isEnum(field)) {
@@ -181,17 +245,166 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
                     }
                     break;
                 }
-                out(3, MBS + ".set(" + BF + "." + field.getName() + ".ordinal());");
             }
         });
+        compileBitmaskAssign(3, MBS, getMutableFieldCount(), null);
+        compileBitmaskAssign(3, MDS, getMutableFieldCount(), null);
+        out(3, "markDirty();");
+        out(2, "}");
+    }
+
+    /**
+     * Returns every member to the state of a newly allocated builder before it's rebound, collection fields are
+     * dropped rather than cleared as the built model may share them
+     */
+    public void compileBuilderUnbindMethod() {
+        out();
+        out(2, "private void unbind() {");
+        compileBitmaskAssign(3, MBS, getMutableFieldCount(), "0L");
+        compileBitmaskAssign(3, MDS, getMutableFieldCount(), "0L");
+        out(3, DIRTY + " = false;");
+        out(3, DL + " = null;");
+        out(3, DLF + " = 0;");
+        out(3, DLK + " = null;");
+        out(3, LDT + " = null;");
+        dt_.getFields().select(fieldsByModifierPredicate(FieldModifier.val)).forEach(new Procedure<Field>() {
+            @Override
+            public void value(final Field field) {
+                if (field.isUnboxed() && !isCollectionType(field)) {
+                    out(3, field.getName() + "_ = " + getUnboxedDefault(field) + ";");
+                }
+                else {
+                    out(3, field.getName() + "_ = null;");
+                }
+                if (isMapValueTypeMutable(field)) {
+                    out(3, field.getName() + DIRTY_KEYS + " = null;");
+                }
+                if (isOverlaid(field)) {
+                    out(3, field.getName() + OVERLAY + " = null;");
+                }
+            }
+        });
+        out(2, "}");
+    }
+
+    /**
+     * Rebinding leaves the builder as the matching constructor would, so pooled builders can be reused in hot loops
+     */
+    public void compileBuilderRebindMethods() {
+        out();
+        out(2, "public " + dt_.getName() + ".Builder rebind(final " + dt_.getName() + " ref) {");
+        out(3, "unbind();");
+        out(3, REF + " = ref;");
+        dt_.getFields().reject(initForUpdateMethodFieldPredicate).forEach(new Procedure<Field>() {
+            @Override
+            public void value(final Field field) {
+                out(3, field.getName() + "_ = ref." + methodNameForGetter(field) + "();");
+            }
+        });
+        out(3, "return this;");
+        out(2, "}");
+
+        final Field field = getKeyField();
+        out();
+        out(2, "public " + dt_.getName() + ".Builder rebind(final " + getFieldType(field) + " " + field.getName() + ") {");
+        out(3, "unbind();");
+        out(3, REF + " = null;");
+        out(3, field.getName() + "_ = " + field.getName() + ";");
+        out(3, "reset();");
+        out(3, "return this;");
         out(2, "}");
     }
 
     public void compileBuilderUpdatedMethod() {
         out();
         out(2, "private boolean updated(final " + BF + " field) {");
-        out(3, "return " + MBS + " == null ? true : " + MBS + ".get(field.ordinal());");
+        compileBitmaskGet(3, MBS, getMutableFieldCount());
+        out(2, "}");
+    }
+
+    public void compileBuilderDirtyMethods() {
+        out();
+        out(2, "private boolean dirty(final " + BF + " field) {");
+        compileBitmaskGet(3, MDS, getMutableFieldCount());
+        out(2, "}");
+
+        out();
+        out(2, "private void markDirty(final " + BF + " field) {");
+        out(3, "if (!dirty(field)) {");
+        compileBitmaskSet(4, MDS, getMutableFieldCount());
+        out(4, "markDirty();");
+        out(3, "}");
+        out(2, "}");
+
+        out();
+        out(2, "private void markDirty() {");
+        out(3, "if (!" + DIRTY + ") {");
+        out(4, DIRTY + " = true;");
+        out(4, "if (" + DL + " != null) {");
+        out(5, DL + ".childDirty(" + DLF + ", " + DLK + ");");
+        out(4, "}");
+        out(3, "}");
+        out(2, "}");
+
+        out();
+        out(2, "@Override");
+        out(2, "public boolean isDirty() {");
+        out(3, "return " + DIRTY + ";");
         out(2, "}");
+
+        out();
+        out(2, "@Override");
+        out(2, "public void setDirtyListener(final DirtyListener listener, final int field, final Object key) {");
+        out(3, DL + " = listener;");
+        out(3, DLF + " = field;");
+        out(3, DLK + " = key;");
+        out(2, "}");
+
+        out();
+        out(2, "@Override");
+        out(2, "public void childDirty(final int field, final Object key) {");
+        for (Field field : dt_.getFields().select(initForUpdateMethodFieldPredicate)) {
+            if (field.getFieldTypeCategory() == FieldTypeCategory.DeclaredType) {
+                out(3, "if (field == " + BF + "." + field.getName() + ".ordinal()) {");
+                out(4, "markDirty(" + BF + "." + field.getName() + ");");
+                out(4, "return;");
+                out(3, "}");
+            }
+            else if (isMapValueTypeMutable(field)) {
+                final String keyType = javaTypeName(field.getTypeArgs().get(0));
+                out(3, "if (field == " + BF + "." + field.getName() + ".ordinal()) {");
+                out(4, "if (" + field.getName() + DIRTY_KEYS + " == null) {");
+                out(5, field.getName() + DIRTY_KEYS + " = Sets.mutable.of();");
+                out(4, "}");
+                out(4, field.getName() + DIRTY_KEYS + ".add((" + keyType + ") key);");
+                out(4, "markDirty();");
+                out(4, "return;");
+                out(3, "}");
+            }
+        }
+        out(3, "throw new RuntimeException(\"Unexpected child field \" + field);");
+        out(2, "}");
+    }
+
+    public void compileBuilderOverlayMethods() {
+        dt_.getFields().select(overlaidFieldPredicate).forEach(new Procedure<Field>() {
+            @Override
+            public void value(final Field field) {
+                final String overlay = field.getName() + OVERLAY;
+                out();
+                out(2, "private " + getOverlayType(field) + " " + overlay + "() {");
+                out(3, "if (" + overlay + " == null) {");
+                if (isMapValueTypeMutable(field)) {
+                    out(4, overlay + " = new " + getOverlayType(field) + "(" + REF + "." + methodNameForGetter(field) + "(), this, " + BF + "." + field.getName() + ".ordinal());");
+                }
+                else {
+                    out(4, overlay + " = new " + getOverlayType(field) + "(" + REF + "." + methodNameForGetter(field) + "());");
+                }
+                out(3, "}");
+                out(3, "return " + overlay + ";");
+                out(2, "}");
+            }
+        });
     }
 
     public void compileBuilderInitMethod() {
@@ -200,8 +413,8 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
         out(2, "* Fully initialize the builder object graph");
         out(2, "*/");
         out(2, "public " + dt_.getName() + ".Builder init() {");
-        out(3, "for (int i = 0; i < " + BF + ".values().length; i++) {");
-        out(4, "initForUpdate(" + BF + ".values()[i]);");
+        out(3, "for (int i = 0; i < " + BFV + ".length; i++) {");
+        out(4, "materialize(" + BFV + "[i]);");
         out(3, "}");
 
         final MutableList<Field> fields = dt_.getFields().select(initForUpdateMethodFieldPredicate);
@@ -242,11 +455,20 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
     public void compileBuilderInitForUpdateMethod() {
         out();
         out(2, "private void initForUpdate(final " + BF + " field) {");
-        out(3, "if (" + MBS + ".get(field.ordinal())) {");
+        out(3, "materialize(field);");
+        out(3, "markDirty(field);");
+        out(2, "}");
+
+        out();
+        out(2, "/**");
+        out(2, "* Copy the field from the ref into the builder without marking it dirty");
+        out(2, "*/");
+        out(2, "private void materialize(final " + BF + " field) {");
+        out(3, "if (updated(field)) {");
         out(4, "return;");
         out(3, "}");
 
-        out(3, MBS + ".set(field.ordinal());");
+        compileBitmaskSet(3, MBS, getMutableFieldCount());
 
         final MutableList<Field> fields = dt_.getFields().select(initForUpdateMethodFieldPredicate);
         if (fields.isEmpty()) {
@@ -269,7 +491,21 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
 
                 case Map:
                 case Set:
-                    out(4, "if (" + REF + " == null || " + REF + "." + methodNameForGetter(field) + "() == null) {");
+                    if (isOverlaid(field)) {
+                        out(4, "if (" + field.getName() + OVERLAY + " != null) {");
+                        if (isMapValueTypeMutable(field)) {
+                            out(5, field.getName() + "_ = " + field.getName() + OVERLAY + ".toBuilderMap();");
+                        }
+                        else {
+                            out(5, field.getName() + "_ = " + field.getName() + OVERLAY + getMutableColConv(field) + ";");
+                        }
+                        out(5, field.getName() + OVERLAY + " = null;");
+                        out(4, "}");
+                        out(4, "else if (" + REF + " == null || " + REF + "." + methodNameForGetter(field) + "() == null) {");
+                    }
+                    else {
+                        out(4, "if (" + REF + " == null || " + REF + "." + methodNameForGetter(field) + "() == null) {");
+                    }
                     out(5, field.getName() + "_ = " + getMutableColOf(field) + ";");
                     break;
                 }
@@ -280,15 +516,16 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
                 switch (field.getFieldTypeCategory()) {
                 case DeclaredType:
                     out(5, field.getName() + "_ = " + REF + "." + methodNameForGetter(field) + "().toBuilder();");
+                    out(5, field.getName() + "_.setDirtyListener(this, " + BF + "." + field.getName() + ".ordinal(), null);");
                     break;
 
                 case Map:
                 case Set:
                     if (isMapValueTypeMutable(field)) {
-                        out(5, field.getName() + "_ = SatuUtil.toKeyModelBuilderMap(" + REF + "." + methodNameForGetter(field) + "());");
+                        out(5, field.getName() + "_ = SatuUtil.toKeyModelBuilderMap(" + REF + "." + methodNameForGetter(field) + "(), this, " + BF + "." + field.getName() + ".ordinal());");
                     }
                     else {
-                        out(5, field.getName() + "_ = " + REF + "." + methodNameForGetter(field) + "()" + getMutableColConv(field) + ";");
+                        out(5, field.getName() + "_ = " + getMutableColCopy(field, REF + "." + methodNameForGetter(field) + "()") + ";");
                     }
                     break;
                 }
@@ -319,7 +556,11 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
             public void value(final Field field) {
                 out();
                 out(2, "public " + getBuilderFieldType(field) + " " + methodNameForGetter(field) + "() {");
-                if (initForUpdateMethodFieldPredicate.accept(field)) {
+                if (field.getFieldTypeCategory() == FieldTypeCategory.DeclaredType && isTypeMutable(field.getTypeName())) {
+                    // Changes made through the returned builder are reported back by its dirty listener
+                    out(3, "materialize(" + BF + "." + field.getName() + ");");
+                }
+                else if (initForUpdateMethodFieldPredicate.accept(field)) {
                     out(3, "initForUpdate(" + BF + "." + field.getName() + ");");
                 }
                 out(3, "return " + field.getName() + "_;");
@@ -341,6 +582,7 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
                         out(2, "public " + dt_.getName() + ".Builder " + methodNameForSetter(field) + "(final " + getFieldType(field) + " " + field.getName() + ") {");
                         out(3, "initForUpdate(" + BF + "." + field.getName() + ");");
                         out(3, field.getName() + "_ = " + field.getName() + ".toBuilder();");
+                        out(3, field.getName() + "_.setDirtyListener(this, " + BF + "." + field.getName() + ".ordinal(), null);");
                         out(3, "return this;");
                         out(2, "}");
                     }
@@ -349,31 +591,64 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
                 }
 
                 if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+                    final String elementType = field.isUnboxed() ? getPrimitiveKeyType(field) : javaTypeName(field.getTypeArgs().get(0));
                     out();
-                    out(2, "public " + dt_.getName() + ".Builder " + methodNameForAdd(field) + "(final " + javaTypeName(field.getTypeArgs().get(0)) + " element) {");
-                    out(3, methodNameForGetter(field) + "().add(element);");
+                    out(2, "public " + dt_.getName() + ".Builder " + methodNameForAdd(field) + "(final " + elementType + " element) {");
+                    compileBuilderCollectionEdit(field, "add(element)", "add(element)");
+                    out(3, "return this;");
+                    out(2, "}");
+
+                    out();
+                    out(2, "public " + dt_.getName() + ".Builder " + methodNameForRemove(field) + "(final " + elementType + " element) {");
+                    compileBuilderCollectionEdit(field, "remove(element)", "remove(element)");
                     out(3, "return this;");
                     out(2, "}");
                 }
 
                 if (field.getFieldTypeCategory() == FieldTypeCategory.Map && !isMapValueTypeMutable(field)) {
+                    final String keyType = field.isUnboxed() ? getPrimitiveKeyType(field) : javaTypeName(field.getTypeArgs().get(0));
+                    final String valueType = field.isUnboxed() ? getPrimitiveValueType(field) : javaTypeName(field.getTypeArgs().get(1));
                     out();
-                    out(2, "public " + dt_.getName() + ".Builder " + methodNameForPut(field) + "(final " + javaTypeName(field.getTypeArgs().get(0)) + " key, final " + javaTypeName(field.getTypeArgs().get(1)) + " value) {");
-                    out(3, methodNameForGetter(field) + "().put(key, value);");
+                    out(2, "public " + dt_.getName() + ".Builder " + methodNameForPut(field) + "(final " + keyType + " key, final " + valueType + " value) {");
+                    compileBuilderCollectionEdit(field, "put(key, value)", "put(key, value)");
+                    out(3, "return this;");
+                    out(2, "}");
+
+                    out();
+                    out(2, "public " + dt_.getName() + ".Builder " + methodNameForRemove(field) + "(final " + keyType + " key) {");
+                    compileBuilderCollectionEdit(field, "removeKey(key)", "remove(key)");
                     out(3, "return this;");
                     out(2, "}");
                 }
 
                 if (isMapValueTypeMutable(field)) {
+                    out();
+                    out(2, "/**");
+                    out(2, "* The builder for key without marking the map as structurally changed, changes made through the returned");
+                    out(2, "* builder are tracked per key so reconcile and build only visit the modified entries. Until the whole map");
+                    out(2, "* is requested only the builders asked for are created");
+                    out(2, "*/");
+                    out(2, "public " + field.getTypeArgs().get(1) + ".Builder " + methodNameForGetter(field) + "(final " + javaTypeName(field.getTypeArgs().get(0)) + " key) {");
+                    out(3, "if (updated(" + BF + "." + field.getName() + ")) {");
+                    out(4, "return " + field.getName() + "_.get(key);");
+                    out(3, "}");
+                    out(3, "return " + field.getName() + OVERLAY + "().get(key);");
+                    out(2, "}");
+
                     out();
                     out(2, "public " + dt_.getName() + ".Builder " + methodNameForPut(field) + "(final " + javaTypeName(field.getTypeArgs().get(0)) + " key, final " + field.getTypeArgs().get(1) + ".Builder builder) {");
-                    out(3, methodNameForGetter(field) + "().put(key, builder);");
+                    compileBuilderCollectionEdit(field, "put(key, builder)", "put(key, builder)");
                     out(3, "return this;");
                     out(2, "}");
 
                     out();
                     out(2, "public " + dt_.getName() + ".Builder " + methodNameForPut(field) + "(final " + javaTypeName(field.getTypeArgs().get(0)) + " key, final " + field.getTypeArgs().get(1) + " model) {");
-                    out(3, methodNameForGetter(field) + "().put(key, model.toBuilder());");
+                    out(3, "return " + methodNameForPut(field) + "(key, model.toBuilder());");
+                    out(2, "}");
+
+                    out();
+                    out(2, "public " + dt_.getName() + ".Builder " + methodNameForRemove(field) + "(final " + javaTypeName(field.getTypeArgs().get(0)) + " key) {");
+                    compileBuilderCollectionEdit(field, "removeKey(key)", "remove(key)");
                     out(3, "return this;");
                     out(2, "}");
                 }
@@ -381,20 +656,35 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
                 if (isMapKeySameAsMutableValueTypeKey(field)) {
                     out();
                     out(2, "public " + dt_.getName() + ".Builder " + methodNameForAddOrReplace(field) + "(final " + field.getTypeArgs().get(1) + ".Builder builder) {");
-                    out(3, methodNameForGetter(field) + "().put(builder.getKey(), builder);");
-                    out(3, "return this;");
+                    out(3, "return " + methodNameForPut(field) + "(builder.getKey(), builder);");
                     out(2, "}");
 
                     out();
                     out(2, "public " + dt_.getName() + ".Builder " + methodNameForAddOrReplace(field) + "(final " + field.getTypeArgs().get(1) + " model) {");
-                    out(3, methodNameForGetter(field) + "().put(model.getKey(), model.toBuilder());");
-                    out(3, "return this;");
+                    out(3, "return " + methodNameForPut(field) + "(model.getKey(), model.toBuilder());");
                     out(2, "}");
                 }
             }
         });
     }
 
+    /**
+     * Edits the materialized collection when there is one, otherwise records the edit in the overlay
+     */
+    private void compileBuilderCollectionEdit(final Field field, final String mutableEdit, final String overlayEdit) {
+        if (!isOverlaid(field)) {
+            out(3, methodNameForGetter(field) + "()." + mutableEdit + ";");
+            return;
+        }
+        out(3, "if (updated(" + BF + "." + field.getName() + ")) {");
+        out(4, field.getName() + "_." + mutableEdit + ";");
+        out(3, "}");
+        out(3, "else {");
+        out(4, field.getName() + OVERLAY + "()." + overlayEdit + ";");
+        out(3, "}");
+        out(3, "markDirty(" + BF + "." + field.getName() + ");");
+    }
+
     public void compileBuilderIdentityMethods() {
         out();
         out(2, "@Override");
@@ -414,7 +704,7 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
     public void compileBuilderBuildMethod() {
         out();
         out(2, "private " + dt_.getName() + " build(final DeltaType lastDeltaType) {");
-        out(3, "if (" + MBS + " != null && " + MBS + ".nextSetBit(0) < 0) {");
+        out(3, "if (!" + DIRTY + ") {");
         out(4, "return " + REF + ";");
         out(3, "}");
 
@@ -431,7 +721,7 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
                 case DeclaredType: {
                     out();
                     out(3, "final " + field.getTypeName() + " " + field.getName() + ";");
-                    out(3, "if (updated(" + BF + "." + field.getName() + ")) {");
+                    out(3, "if (dirty(" + BF + "." + field.getName() + ")) {");
                     out(4, field.getName() + " = " + field.getName() + "_ == null ? null : " + field.getName() + "_.build();");
                     out(3, "}");
                     out(3, "else {");
@@ -442,19 +732,18 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
 
                 case Set:
                 case Map:
+                    if (isOverlaid(field)) {
+                        compileBuilderBuildOverlaidField(field);
+                        break;
+                    }
                     out();
                     out(3, "final " + getImmutableColType(field) + " " + field.getName() + ";");
-                    out(3, "if (updated(" + BF + "." + field.getName() + ")) {");
-                    if (!isMapValueTypeMutable(field)) {
-                        out(4, field.getName() + " = " + field.getName() + "_.toImmutable();");
-                    }
-                    else {
-                        out(4, field.getName() + " = SatuUtil.toKeyModelMap(" + field.getName() + "_);");
-                    }
+                    out(3, "if (dirty(" + BF + "." + field.getName() + ")) {");
+                    out(4, field.getName() + " = " + field.getName() + "_.toImmutable();");
                     out(3, "}");
                     out(3, "else {");
                     out(4, "if (" + REF + " == null) {");
-                    out(5, field.getName() + " = " + (field.getFieldTypeCategory() == FieldTypeCategory.Set ? "Sets.immutable.of()" : "Maps.immutable.of()") + ";");
+                    out(5, field.getName() + " = " + getImmutableColOf(field) + ";");
                     out(4, "}");
                     out(4, "else {");
                     out(5, field.getName() + " = " + REF + "." + methodNameForGetter(field) + "();");
@@ -485,6 +774,33 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
         out(2, "}");
     }
 
+    private void compileBuilderBuildOverlaidField(final Field field) {
+        out();
+        out(3, "final " + getImmutableColType(field) + " " + field.getName() + ";");
+        out(3, "if (updated(" + BF + "." + field.getName() + ")) {");
+        out(4, "if (dirty(" + BF + "." + field.getName() + ")) {");
+        if (isMapValueTypeMutable(field)) {
+            out(5, field.getName() + " = SatuUtil.toKeyModelMap(" + field.getName() + "_);");
+            out(4, "}");
+            out(4, "else if (" + field.getName() + DIRTY_KEYS + " != null) {");
+            out(5, field.getName() + " = SatuUtil.toKeyModelMap(" + REF + "." + methodNameForGetter(field) + "(), " + field.getName() + "_, " + field.getName() + DIRTY_KEYS + ");");
+        }
+        else {
+            out(5, field.getName() + " = " + field.getName() + "_.toImmutable();");
+        }
+        out(4, "}");
+        out(4, "else {");
+        out(5, field.getName() + " = " + REF + "." + methodNameForGetter(field) + "();");
+        out(4, "}");
+        out(3, "}");
+        out(3, "else if (" + field.getName() + OVERLAY + " != null) {");
+        out(4, field.getName() + " = " + field.getName() + OVERLAY + ".toImmutable();");
+        out(3, "}");
+        out(3, "else {");
+        out(4, field.getName() + " = " + REF + "." + methodNameForGetter(field) + "();");
+        out(3, "}");
+    }
+
     public void compileBuilderBuildEmptyMethod() {
         out();
         out(2, "@Override");
@@ -517,6 +833,11 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
             public void value(final Field field) {
                 out();
                 out(3, "if (delta." + methodNameForHas(field) + "()) {");
+                if (isOverlaid(field)) {
+                    compileBuilderApplyDeltaOverlaidField(field);
+                    out(3, "}");
+                    return;
+                }
                 out(4, "initForUpdate(" + BF + "." + field.getName() + ");");
 
                 if (!initForUpdateMethodFieldPredicate.accept(field)) {
@@ -529,11 +850,23 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
                         break;
 
                     case Set:
-                        out(4, "SatuUtil.applyKeyDeltas(delta." + methodNameForGetter(field) + "(), " + field.getName() + "_);");
+                        if (field.isUnboxed()) {
+                            out(4, field.getName() + "_.removeAll(delta." + methodNameForRemovedGetter(field) + "());");
+                            out(4, field.getName() + "_.addAll(delta." + methodNameForGetter(field) + "());");
+                        }
+                        else {
+                            out(4, "SatuUtil.applyKeyDeltas(delta." + methodNameForGetter(field) + "(), " + field.getName() + "_);");
+                        }
                         break;
 
                     case Map:
-                        if (isMapValueTypeMutable(field)) {
+                        if (field.isUnboxed()) {
+                            out(4, "for (final " + getPrimitiveKeyIterator(field) + " it = delta." + methodNameForRemovedGetter(field) + "()." + getPrimitiveKeyType(field) + "Iterator(); it.hasNext();) {");
+                            out(5, field.getName() + "_.removeKey(it.next());");
+                            out(4, "}");
+                            out(4, field.getName() + "_.putAll(delta." + methodNameForGetter(field) + "());");
+                        }
+                        else if (isMapValueTypeMutable(field)) {
                             out(4, "SatuUtil.applyKeyModelPairDeltas(delta." + methodNameForGetter(field) + "(), " + field.getName() + "_);");
                         }
                         else {
@@ -551,6 +884,26 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
         out(2, "}");
     }
 
+    private void compileBuilderApplyDeltaOverlaidField(final Field field) {
+        final String apply;
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            apply = "SatuUtil.applyKeyDeltas";
+        }
+        else if (isMapValueTypeMutable(field)) {
+            apply = "SatuUtil.applyKeyModelPairDeltas";
+        }
+        else {
+            apply = "SatuUtil.applyKeyValuePairDeltas";
+        }
+        out(4, "if (updated(" + BF + "." + field.getName() + ")) {");
+        out(5, apply + "(delta." + methodNameForGetter(field) + "(), " + field.getName() + "_);");
+        out(4, "}");
+        out(4, "else {");
+        out(5, apply + "(delta." + methodNameForGetter(field) + "(), " + field.getName() + OVERLAY + "());");
+        out(4, "}");
+        out(4, "markDirty(" + BF + "." + field.getName() + ");");
+    }
+
     public void compileBuilderLastDeltaTypeGetterAndSetter() {
         out();
         out(2, "@Override");
@@ -605,84 +958,29 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
         out(4, "throw new RuntimeException(\"Reference key doesn't match \" + getKey() + \" \" + ref.getKey());");
         out(3, "}");
 
+        out();
+        out(3, "// Against our own ref only dirty fields can differ");
+        out(3, "final boolean sameRef = ref == " + REF + ";");
+        out(3, "if (sameRef && !" + DIRTY + ") {");
+        out(4, "return deltaBuilder;");
+        out(3, "}");
+
         dt_.getFields().select(fieldsByModifierPredicate(FieldModifier.val)).forEach(new Procedure<Field>() {
-            @SuppressWarnings("incomplete-switch")
             @Override
             public void value(final Field field) {
                 out();
                 if (!initForUpdateMethodFieldPredicate.accept(field)) {
-                    out(3, "if (!ObjectUtils.equals(" + field.getName() + "_, ref." + methodNameForGetter(field) + "())) {");
+                    out(3, "if ((!sameRef || dirty(" + BF + "." + field.getName() + ")) && " + getNotEqualsExpression(field, field.getName() + "_", "ref." + methodNameForGetter(field) + "()") + ") {");
                     out(4, "deltaBuilder." + methodNameForSetter(field) + "(" + field.getName() + "_);");
                     out(3, "}");
                 }
+                else if (isOverlaid(field)) {
+                    compileBuilderReconcileOverlaidField(field);
+                }
                 else {
-                    switch (field.getFieldTypeCategory()) {
-                    case DeclaredType:
-                        out(3, "if (updated(" + BF + "." + field.getName() + "))  {");
-                        out(4, "SatuUtil.reconcileModelBuilderField(ref." + methodNameForGetter(field) + "(), " + field.getName() + "_, deltaBuilder." + methodNameForGetter(field) + "(),");
-                        out(6, "new DeltaBuilderSetter<" + field.getTypeName() + ".Delta.Builder>() {");
-                        out(7, "@Override");
-                        out(7, "public void set(final " + field.getTypeName() + ".Delta.Builder db) {");
-                        out(8, "deltaBuilder." + methodNameForSetter(field) + "(db);");
-                        out(7, "}");
-                        out(4, "});");
-                        out(3, "}");
-                        out(3, "else {");
-                        out(4,
-                                "SatuUtil.reconcileModelField(ref." + methodNameForGetter(field) + "(), " + REF + "." + methodNameForGetter(field) + "(), deltaBuilder." + methodNameForGetter(field) + "(),");
-                        out(6, "new DeltaBuilderSetter<" + field.getTypeName() + ".Delta.Builder>() {");
-                        out(7, "@Override");
-                        out(7, "public void set(final " + field.getTypeName() + ".Delta.Builder db) {");
-                        out(8, "deltaBuilder." + methodNameForSetter(field) + "(db);");
-                        out(7, "}");
-                        out(4, "});");
-                        out(3, "}");
-                        break;
-
-                    case Set:
-                        out(3,
-                                "SatuUtil.reconcileKeys(ref." + methodNameForGetter(field) + "(), updated(" + BF + "." + field.getName() + ") ? " + field.getName() + "_ : " + REF + "." + methodNameForGetter(field) + "(),");
-                        out(5, " new DeltaAppender<KeyDelta<" + javaTypeName(field.getTypeArgs().getFirst()) + ">>() {");
-                        out(6, "@Override");
-                        out(6, "public void append(final " + paramTypeForDeltaBuilderAddMethod(field) + " newDelta) {");
-                        out(7, "deltaBuilder." + methodNameForAdd(field) + "(newDelta);");
-                        out(6, "}");
-                        out(5, "});");
-                        break;
-
-                    case Map:
-                        if (isMapValueTypeMutable(field)) {
-                            out(3, "if (updated(" + BF + "." + field.getName() + ")) {");
-                            out(4, "SatuUtil.reconcileKeyModelBuilderPairs(ref." + methodNameForGetter(field) + "(), " + field.getName() + "_,");
-                            out(6, "new DeltaAppender<" + paramTypeForDeltaBuilderAddMethod(field) + ">() {");
-                            out(7, "@Override");
-                            out(7, "public void append(final " + paramTypeForDeltaBuilderAddMethod(field) + " newDelta) {");
-                            out(8, "deltaBuilder." + methodNameForAdd(field) + "(newDelta);");
-                            out(7, "}");
-                            out(6, "});");
-                            out(3, "}");
-                            out(3, "else {");
-                            out(4, "SatuUtil.reconcileKeyModelPairs(ref." + methodNameForGetter(field) + "(), " + REF + "." + methodNameForGetter(field) + "(),");
-                            out(6, "new DeltaAppender<" + paramTypeForDeltaBuilderAddMethod(field) + ">() {");
-                            out(7, "@Override");
-                            out(7, "public void append(final " + paramTypeForDeltaBuilderAddMethod(field) + " newDelta) {");
-                            out(8, "deltaBuilder." + methodNameForAdd(field) + "(newDelta);");
-                            out(7, "}");
-                            out(6, "});");
-                            out(3, "}");
-                        }
-                        else {
-                            out(3,
-                                    "SatuUtil.reconcileKeyValuePairs(ref." + methodNameForGetter(field) + "(), updated(" + BF + "." + field.getName() + ") ? " + field.getName() + "_ : " + REF + "." + methodNameForGetter(field) + "(),");
-                            out(5, "new DeltaAppender<" + paramTypeForDeltaBuilderAddMethod(field) + ">() {");
-                            out(6, "@Override");
-                            out(6, "public void append(final " + paramTypeForDeltaBuilderAddMethod(field) + " newDelta) {");
-                            out(7, "deltaBuilder." + methodNameForAdd(field) + "(newDelta);");
-                            out(6, "}");
-                            out(5, "});");
-                        }
-                        break;
-                    }
+                    out(3, "if (!sameRef || dirty(" + BF + "." + field.getName() + ")) {");
+                    compileBuilderReconcileField(field, 4);
+                    out(3, "}");
                 }
             }
         });
@@ -692,6 +990,132 @@ public final class ModelBuilderCompiler extends AbstractModelCompiler {
 
     }
 
+    @SuppressWarnings("incomplete-switch")
+    private void compileBuilderReconcileField(final Field field, final int t) {
+        switch (field.getFieldTypeCategory()) {
+        case DeclaredType:
+            out(t, "if (updated(" + BF + "." + field.getName() + "))  {");
+            out(t + 1, "SatuUtil.reconcileModelBuilderField(ref." + methodNameForGetter(field) + "(), " + field.getName() + "_, deltaBuilder." + methodNameForGetter(field) + "(),");
+            compileBuilderReconcileDeltaBuilderSetter(field, t + 3);
+            out(t, "}");
+            out(t, "else {");
+            out(t + 1, "SatuUtil.reconcileModelField(ref." + methodNameForGetter(field) + "(), " + REF + "." + methodNameForGetter(field) + "(), deltaBuilder." + methodNameForGetter(field) + "(),");
+            compileBuilderReconcileDeltaBuilderSetter(field, t + 3);
+            out(t, "}");
+            break;
+
+        case Set:
+            compileBuilderReconcilePrimitiveSet(field, t);
+            break;
+
+        case Map:
+            compileBuilderReconcilePrimitiveMap(field, t);
+            break;
+        }
+    }
+
+    /**
+     * A materialized collection is reconciled in full unless only builders of some entries are dirty, an overlay
+     * produces its deltas from the edits it recorded and an untouched field only differs from a foreign ref
+     */
+    private void compileBuilderReconcileOverlaidField(final Field field) {
+        final String getter = methodNameForGetter(field);
+        final String reconcileBuilders;
+        final String reconcileModels;
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            reconcileBuilders = "SatuUtil.reconcileKeys";
+            reconcileModels = "SatuUtil.reconcileKeys";
+        }
+        else if (isMapValueTypeMutable(field)) {
+            reconcileBuilders = "SatuUtil.reconcileKeyModelBuilderPairs";
+            reconcileModels = "SatuUtil.reconcileKeyModelPairs";
+        }
+        else {
+            reconcileBuilders = "SatuUtil.reconcileKeyValuePairs";
+            reconcileModels = "SatuUtil.reconcileKeyValuePairs";
+        }
+
+        out(3, "if (updated(" + BF + "." + field.getName() + ")) {");
+        out(4, "if (!sameRef || dirty(" + BF + "." + field.getName() + ")) {");
+        out(5, reconcileBuilders + "(ref." + getter + "(), " + field.getName() + "_,");
+        compileBuilderReconcileDeltaAppender(field, 7);
+        out(4, "}");
+        if (isMapValueTypeMutable(field)) {
+            out(4, "else if (" + field.getName() + DIRTY_KEYS + " != null) {");
+            out(5, reconcileBuilders + "(ref." + getter + "(), " + field.getName() + "_, " + field.getName() + DIRTY_KEYS + ",");
+            compileBuilderReconcileDeltaAppender(field, 7);
+            out(4, "}");
+        }
+        out(3, "}");
+        out(3, "else if (" + field.getName() + OVERLAY + " != null) {");
+        out(4, field.getName() + OVERLAY + ".reconcile(ref." + getter + "(),");
+        compileBuilderReconcileDeltaAppender(field, 6);
+        out(3, "}");
+        out(3, "else if (!sameRef) {");
+        out(4, reconcileModels + "(ref." + getter + "(), " + REF + "." + getter + "(),");
+        compileBuilderReconcileDeltaAppender(field, 6);
+        out(3, "}");
+    }
+
+    private void compileBuilderReconcileDeltaBuilderSetter(final Field field, final int t) {
+        out(t, "new DeltaBuilderSetter<" + field.getTypeName() + ".Delta.Builder>() {");
+        out(t + 1, "@Override");
+        out(t + 1, "public void set(final " + field.getTypeName() + ".Delta.Builder db) {");
+        out(t + 2, "deltaBuilder." + methodNameForSetter(field) + "(db);");
+        out(t + 1, "}");
+        out(t - 2, "});");
+    }
+
+    private void compileBuilderReconcileDeltaAppender(final Field field, final int t) {
+        out(t, "new DeltaAppender<" + paramTypeForDeltaBuilderAddMethod(field) + ">() {");
+        out(t + 1, "@Override");
+        out(t + 1, "public void append(final " + paramTypeForDeltaBuilderAddMethod(field) + " newDelta) {");
+        out(t + 2, "deltaBuilder." + methodNameForAdd(field) + "(newDelta);");
+        out(t + 1, "}");
+        out(t, "});");
+    }
+
+    private void compileBuilderReconcilePrimitiveSet(final Field field, final int t) {
+        final String elementType = getPrimitiveKeyType(field);
+        final String iterator = getPrimitiveKeyIterator(field);
+        out(t, "final " + CompilerUtil.getPrimitiveCollectionType(field) + " current = updated(" + BF + "." + field.getName() + ") ? " + field.getName() + "_ : " + REF + "." + methodNameForGetter(field) + "();");
+        out(t, "final " + getFieldType(field) + " previous = ref." + methodNameForGetter(field) + "();");
+        out(t, "for (final " + iterator + " it = current." + elementType + "Iterator(); it.hasNext();) {");
+        out(t + 1, "final " + elementType + " element = it.next();");
+        out(t + 1, "if (!previous.contains(element)) {");
+        out(t + 2, "deltaBuilder." + methodNameForAdd(field) + "(element);");
+        out(t + 1, "}");
+        out(t, "}");
+        out(t, "for (final " + iterator + " it = previous." + elementType + "Iterator(); it.hasNext();) {");
+        out(t + 1, "final " + elementType + " element = it.next();");
+        out(t + 1, "if (!current.contains(element)) {");
+        out(t + 2, "deltaBuilder." + methodNameForRemove(field) + "(element);");
+        out(t + 1, "}");
+        out(t, "}");
+    }
+
+    private void compileBuilderReconcilePrimitiveMap(final Field field, final int t) {
+        final String keyType = getPrimitiveKeyType(field);
+        final String valueType = getPrimitiveValueType(field);
+        out(t, "final " + CompilerUtil.getPrimitiveCollectionType(field) + " current = updated(" + BF + "." + field.getName() + ") ? " + field.getName() + "_ : " + REF + "." + methodNameForGetter(field) + "();");
+        out(t, "final " + getFieldType(field) + " previous = ref." + methodNameForGetter(field) + "();");
+        out(t, "current.forEachKeyValue(new " + getPrimitiveEntryProcedure(field) + "() {");
+        out(t + 1, "private static final long serialVersionUID = 1L;");
+        out(t + 1, "@Override");
+        out(t + 1, "public void value(final " + keyType + " key, final " + valueType + " value) {");
+        out(t + 2, "if (!previous.containsKey(key) || " + getPrimitiveNotEqualsExpression(field.getTypeArgs().get(1), "value", "previous.get(key)") + ") {");
+        out(t + 3, "deltaBuilder." + methodNameForPut(field) + "(key, value);");
+        out(t + 2, "}");
+        out(t + 1, "}");
+        out(t, "});");
+        out(t, "for (final " + getPrimitiveKeyIterator(field) + " it = previous.keysView()." + keyType + "Iterator(); it.hasNext();) {");
+        out(t + 1, "final " + keyType + " key = it.next();");
+        out(t + 1, "if (!current.containsKey(key)) {");
+        out(t + 2, "deltaBuilder." + methodNameForRemove(field) + "(key);");
+        out(t + 1, "}");
+        out(t, "}");
+    }
+
     public void compileBuilderToDeltaMethod() {
         out();
         out(2, "@Override");
@@ -0,0 +1,756 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.compiler.java;
+
+import com.gs.collections.api.block.function.Function;
+import com.gs.collections.api.block.predicate.Predicate;
+import com.gs.collections.api.list.MutableList;
+import com.gs.collections.impl.factory.Lists;
+import com.kaaprotech.satu.parser.DeclaredTypeCategory;
+import com.kaaprotech.satu.parser.Field;
+import com.kaaprotech.satu.parser.FieldModifier;
+import com.kaaprotech.satu.parser.FieldTypeCategory;
+import com.kaaprotech.satu.parser.ImportedType;
+import com.kaaprotech.satu.parser.PrimitiveType;
+
+/**
+ * Compiles the writeTo(ByteBuffer) and readFrom(ByteBuffer) binary codec methods of models, keys, enums and deltas.
+ * <p>
+ * Models and keys write a bit mask of their non null fields followed by the values of those fields. Deltas write
+ * their delta type, key and a bit mask of the fields they carry, derived from the has flags, followed by a bit mask of
+ * the carried fields set to null and the values of the remaining carried fields. Bit masks are written as one varlong
+ * per 64 fields, a field's bit is its index in the declared type.
+ */
+@SuppressWarnings("serial")
+public final class ModelCodecCompiler extends AbstractModelCompiler {
+
+    private static final String MASK = "mask";
+
+    private static final String NULL_MASK = "nullMask";
+
+    public ModelCodecCompiler(final AbstractModelCompiler compiler) {
+        super(compiler.cu_, compiler.dt_, compiler.writer_);
+    }
+
+    private final Predicate<Field> nullableFieldPredicate = new Predicate<Field>() {
+        @Override
+        public boolean accept(final Field field) {
+            return !field.isUnboxed() && !isCollectionType(field);
+        }
+    };
+
+    private final Predicate<Field> nullableDeltaFieldPredicate = new Predicate<Field>() {
+        @Override
+        public boolean accept(final Field field) {
+            return field.getModifier() != FieldModifier.key && nullableFieldPredicate.accept(field);
+        }
+    };
+
+    private final Predicate<Field> deltaFieldPredicate = new Predicate<Field>() {
+        @Override
+        public boolean accept(final Field field) {
+            return field.getModifier() != FieldModifier.key;
+        }
+    };
+
+    private final Function<Field, String> notNullCondition = new Function<Field, String>() {
+        @Override
+        public String valueOf(final Field field) {
+            return field.getName() + "_ != null";
+        }
+    };
+
+    private final Function<Field, String> nullCondition = new Function<Field, String>() {
+        @Override
+        public String valueOf(final Field field) {
+            return field.getName() + "_ == null";
+        }
+    };
+
+    private final Function<Field, String> hasCondition = new Function<Field, String>() {
+        @Override
+        public String valueOf(final Field field) {
+            return methodNameForHas(field) + "_";
+        }
+    };
+
+    public void compileEnumCodec() {
+        out();
+        out(1, "private static final " + dt_.getName() + "[] VALUES__ = values();");
+        out();
+        out(1, "public void writeTo(final ByteBuffer buffer) {");
+        out(2, "SatuCodec.writeUnsignedVarInt(buffer, ordinal());");
+        out(1, "}");
+        out();
+        out(1, "public static " + dt_.getName() + " readFrom(final ByteBuffer buffer) {");
+        out(2, "return VALUES__[SatuCodec.readUnsignedVarInt(buffer)];");
+        out(1, "}");
+        out();
+        out(1, "public static void skip(final ByteBuffer buffer) {");
+        out(2, "SatuCodec.skipVarInt(buffer);");
+        out(1, "}");
+    }
+
+    public void compileCodec() {
+        final MutableList<Field> nullable = dt_.getFields().select(nullableFieldPredicate);
+
+        out();
+        out(1, "public void writeTo(final ByteBuffer buffer) {");
+        if (nullable.notEmpty()) {
+            compileWriteMasks(2, nullable, notNullCondition);
+        }
+        for (Field field : dt_.getFields()) {
+            if (nullable.contains(field)) {
+                out(2, "if (" + notNullCondition.valueOf(field) + ") {");
+                compileWriteField(3, field, false);
+                out(2, "}");
+            }
+            else {
+                compileWriteField(2, field, false);
+            }
+        }
+        out(1, "}");
+
+        out();
+        out(1, "public static " + dt_.getName() + " readFrom(final ByteBuffer buffer) {");
+        if (nullable.notEmpty()) {
+            compileReadMasks(2, MASK);
+        }
+        final MutableList<String> args = Lists.mutable.of();
+        for (Field field : dt_.getFields()) {
+            if (nullable.contains(field)) {
+                out(2, "final " + getFieldType(field) + " " + field.getName() + " = " + maskTest(MASK, field) + " ? " + readValue(field.getTypeName(), false) + " : null;");
+            }
+            else {
+                compileReadField(2, field, false, null);
+            }
+            args.add(readArgument(field));
+        }
+        compileReturnNew(2, dt_.getName(), args);
+        out(1, "}");
+
+        if (dt_.getDeclaredTypeCategory() != DeclaredTypeCategory.Key) {
+            return;
+        }
+        out();
+        out(1, "public static void skip(final ByteBuffer buffer) {");
+        if (nullable.notEmpty()) {
+            compileReadMasks(2, MASK);
+        }
+        for (Field field : dt_.getFields()) {
+            if (nullable.contains(field)) {
+                out(2, "if (" + maskTest(MASK, field) + ") {");
+                compileSkipField(3, field, false);
+                out(2, "}");
+            }
+            else {
+                compileSkipField(2, field, false);
+            }
+        }
+        out(1, "}");
+    }
+
+    public void compileDeltaCodec() {
+        final Field key = getKeyField();
+        final MutableList<Field> fields = dt_.getFields().select(deltaFieldPredicate);
+        final MutableList<Field> nullable = dt_.getFields().select(nullableDeltaFieldPredicate);
+
+        out();
+        out(2, "public void writeTo(final ByteBuffer buffer) {");
+        out(3, "SatuCodec.writeDeltaType(buffer, deltaType_);");
+        if (fields.notEmpty()) {
+            compileWriteMasks(3, fields, hasCondition);
+        }
+        if (nullable.notEmpty()) {
+            compileWriteMasks(3, nullable, nullCondition);
+        }
+        compileWriteValue(3, key.getTypeName(), key.getName() + "_", false);
+        for (Field field : fields) {
+            if (nullableDeltaFieldPredicate.accept(field)) {
+                out(3, "if (" + methodNameForHas(field) + "_ && " + field.getName() + "_ != null) {");
+            }
+            else {
+                out(3, "if (" + methodNameForHas(field) + "_) {");
+            }
+            compileWriteField(4, field, true);
+            out(3, "}");
+        }
+        out(2, "}");
+
+        out();
+        out(2, "public static void skip(final ByteBuffer buffer) {");
+        out(3, "SatuCodec.skipByte(buffer);");
+        if (fields.notEmpty()) {
+            compileReadMasks(3, MASK);
+        }
+        if (nullable.notEmpty()) {
+            compileReadMasks(3, NULL_MASK);
+        }
+        compileSkipValue(3, key.getTypeName(), false);
+        for (Field field : fields) {
+            out(3, "if (" + presentTest(field) + ") {");
+            compileSkipField(4, field, true);
+            out(3, "}");
+        }
+        out(2, "}");
+
+        out();
+        out(2, "public static " + dt_.getName() + ".Delta readFrom(final ByteBuffer buffer) {");
+        out(3, "final DeltaType deltaType = SatuCodec.readDeltaType(buffer);");
+        if (fields.notEmpty()) {
+            compileReadMasks(3, MASK);
+        }
+        if (nullable.notEmpty()) {
+            compileReadMasks(3, NULL_MASK);
+        }
+        out(3, "final " + getDeltaFieldType(key) + " " + key.getName() + " = " + readValue(key.getTypeName(), false) + ";");
+        final MutableList<String> args = Lists.mutable.of("deltaType");
+        for (Field field : dt_.getFields()) {
+            if (field == key) {
+                args.add(key.getName());
+                continue;
+            }
+            if (!isCollectionType(field)) {
+                out(3, "final " + getDeltaFieldType(field) + " " + field.getName() + " = " + presentTest(field) + " ? " + readValue(field.getTypeName(), true) + " : "
+                        + absentValue(field) + ";");
+            }
+            else {
+                compileReadField(3, field, true, maskTest(MASK, field));
+            }
+            args.add(readArgument(field));
+            if (isPrimitiveCollection(field)) {
+                args.add(removedName(field) + ".toImmutable()");
+            }
+            args.add(maskTest(MASK, field));
+        }
+        compileReturnNew(3, dt_.getName() + ".Delta", args);
+        out(2, "}");
+    }
+
+    /**
+     * Compiles the writeReplace method substituting an Externalizable proxy which serializes the type through its
+     * binary codec
+     */
+    public void compileExternalForm(final int tabs, final String type) {
+        out();
+        out(tabs, "private Object writeReplace() {");
+        out(tabs + 1, "return new ExternalForm__(this);");
+        out(tabs, "}");
+        out();
+        out(tabs, "private static final class ExternalForm__ extends ExternalForm<" + type + "> {");
+        out();
+        out(tabs + 1, "private static final long serialVersionUID = 1L;");
+        out();
+        out(tabs + 1, "public ExternalForm__() {");
+        out(tabs + 1, "}");
+        out();
+        out(tabs + 1, "ExternalForm__(final " + type + " value) {");
+        out(tabs + 2, "super(value);");
+        out(tabs + 1, "}");
+        out();
+        out(tabs + 1, "@Override");
+        out(tabs + 1, "protected void write(final " + type + " value, final ByteBuffer buffer) {");
+        out(tabs + 2, "value.writeTo(buffer);");
+        out(tabs + 1, "}");
+        out();
+        out(tabs + 1, "@Override");
+        out(tabs + 1, "protected " + type + " read(final ByteBuffer buffer) {");
+        out(tabs + 2, "return " + type + ".readFrom(buffer);");
+        out(tabs + 1, "}");
+        out(tabs, "}");
+    }
+
+    /**
+     * Compiles Delta.Flyweight which reads a delta in the layout written by Delta.writeTo without materializing it.
+     * Wrapping only decodes the delta type and the field masks, the key and field values are decoded when their
+     * getters are called. The offsets of the values skipped to reach a field are remembered until the next wrap.
+     */
+    public void compileDeltaFlyweight() {
+        final Field key = getKeyField();
+        final MutableList<Field> fields = dt_.getFields().select(deltaFieldPredicate);
+        final MutableList<Field> nullable = dt_.getFields().select(nullableDeltaFieldPredicate);
+        final int words = (dt_.getFields().size() + 63) / 64;
+
+        out();
+        out(2, "public static final class Flyweight {");
+        out();
+        out(3, "private final int[] positions__ = new int[" + (dt_.getFields().size() + 1) + "];");
+        out();
+        out(3, "private ByteBuffer source__;");
+        out();
+        out(3, "private ByteBuffer buffer__;");
+        out();
+        out(3, "private int offset__;");
+        out();
+        out(3, "private int keyOffset__;");
+        out();
+        out(3, "private int scanned__;");
+        out();
+        out(3, "private DeltaType deltaType__;");
+        for (int word = 0; word < words; word++) {
+            if (fields.notEmpty()) {
+                out();
+                out(3, "private long " + MASK + word + "__;");
+            }
+            if (nullable.notEmpty()) {
+                out();
+                out(3, "private long " + NULL_MASK + word + "__;");
+            }
+        }
+
+        out();
+        out(3, "/**");
+        out(3, " * Points the flyweight at the delta starting at offset, the buffer's position and limit are left unchanged");
+        out(3, " */");
+        out(3, "public Flyweight wrap(final ByteBuffer buffer, final int offset) {");
+        out(4, "if (buffer != source__) {");
+        out(5, "source__ = buffer;");
+        out(5, "buffer__ = buffer.duplicate();");
+        out(4, "}");
+        out(4, "buffer__.limit(buffer.limit());");
+        out(4, "buffer__.position(offset);");
+        out(4, "offset__ = offset;");
+        out(4, "deltaType__ = SatuCodec.readDeltaType(buffer__);");
+        for (int word = 0; word < words; word++) {
+            if (fields.notEmpty()) {
+                out(4, MASK + word + "__ = SatuCodec.readUnsignedVarLong(buffer__);");
+            }
+        }
+        for (int word = 0; word < words; word++) {
+            if (nullable.notEmpty()) {
+                out(4, NULL_MASK + word + "__ = SatuCodec.readUnsignedVarLong(buffer__);");
+            }
+        }
+        out(4, "keyOffset__ = buffer__.position();");
+        out(4, "scanned__ = -1;");
+        out(4, "return this;");
+        out(3, "}");
+
+        out();
+        out(3, "public DeltaType getDeltaType() {");
+        out(4, "return deltaType__;");
+        out(3, "}");
+
+        out();
+        out(3, "public " + getDeltaFieldType(key) + " getKey() {");
+        out(4, "final ByteBuffer buffer = buffer__;");
+        out(4, "buffer.position(keyOffset__);");
+        out(4, "return " + readValue(key.getTypeName(), false) + ";");
+        out(3, "}");
+
+        out();
+        out(3, "public " + getDeltaFieldType(key) + " " + methodNameForGetter(key) + "() {");
+        out(4, "return getKey();");
+        out(3, "}");
+
+        for (Field field : fields) {
+            out();
+            out(3, "public boolean " + methodNameForHas(field) + "() {");
+            out(4, "return " + maskTest(MASK, field) + ";");
+            out(3, "}");
+
+            final int index = dt_.getFields().indexOf(field);
+            out();
+            out(3, "public " + getDeltaFieldType(field) + " " + methodNameForGetter(field) + "() {");
+            if (!isCollectionType(field)) {
+                out(4, "if (" + presentTest(field) + ") {");
+                out(5, "final ByteBuffer buffer = at(" + index + ");");
+                out(5, "return " + readValue(field.getTypeName(), true) + ";");
+                out(4, "}");
+                out(4, "return " + absentValue(field) + ";");
+            }
+            else {
+                out(4, "final ByteBuffer buffer = at(" + index + ");");
+                compileReadField(4, field, true, maskTest(MASK, field));
+                out(4, "return " + field.getName() + ".toImmutable();");
+            }
+            out(3, "}");
+
+            if (isPrimitiveCollection(field)) {
+                out();
+                out(3, "public " + getPrimitiveKeySetType(field) + " " + methodNameForRemovedGetter(field) + "() {");
+                out(4, "final ByteBuffer buffer = at(" + index + ");");
+                compileReadField(4, field, true, maskTest(MASK, field));
+                out(4, "return " + removedName(field) + ".toImmutable();");
+                out(3, "}");
+            }
+        }
+
+        out();
+        out(3, "/**");
+        out(3, " * The number of bytes the delta occupies, the next delta in a stream starts at offset plus the encoded length");
+        out(3, " */");
+        out(3, "public int getEncodedLength() {");
+        out(4, "return at(" + dt_.getFields().size() + ").position() - offset__;");
+        out(3, "}");
+
+        out();
+        out(3, "public " + dt_.getName() + ".Delta toDelta() {");
+        out(4, "buffer__.position(offset__);");
+        out(4, "return " + dt_.getName() + ".Delta.readFrom(buffer__);");
+        out(3, "}");
+
+        out();
+        out(3, "private ByteBuffer at(final int field) {");
+        out(4, "final ByteBuffer buffer = buffer__;");
+        out(4, "if (scanned__ < 0) {");
+        out(5, "buffer.position(keyOffset__);");
+        compileSkipValue(5, key.getTypeName(), false);
+        out(5, "positions__[0] = buffer.position();");
+        out(5, "scanned__ = 0;");
+        out(4, "}");
+        out(4, "while (scanned__ < field) {");
+        out(5, "buffer.position(positions__[scanned__]);");
+        out(5, "skip(scanned__);");
+        out(5, "positions__[++scanned__] = buffer.position();");
+        out(4, "}");
+        out(4, "buffer.position(positions__[field]);");
+        out(4, "return buffer;");
+        out(3, "}");
+
+        out();
+        out(3, "private void skip(final int field) {");
+        out(4, "final ByteBuffer buffer = buffer__;");
+        out(4, "switch (field) {");
+        for (Field field : fields) {
+            out(4, "case " + dt_.getFields().indexOf(field) + ":");
+            out(5, "if (" + presentTest(field) + ") {");
+            compileSkipField(6, field, true);
+            out(5, "}");
+            out(5, "break;");
+        }
+        out(4, "}");
+        out(3, "}");
+        out(2, "}");
+    }
+
+    /**
+     * True if the delta field's value follows in the buffer, carried fields set to null have no value
+     */
+    private String presentTest(final Field field) {
+        if (nullableDeltaFieldPredicate.accept(field)) {
+            return maskTest(MASK, field) + " && " + maskClear(NULL_MASK, field);
+        }
+        return maskTest(MASK, field);
+    }
+
+    private String absentValue(final Field field) {
+        return field.isUnboxed() ? getUnboxedDefault(field) : "null";
+    }
+
+    private void compileSkipField(final int tabs, final Field field, final boolean delta) {
+        if (!isCollectionType(field)) {
+            compileSkipValue(tabs, field.getTypeName(), delta);
+            return;
+        }
+        final String keyType = field.getTypeArgs().get(0);
+        final boolean map = field.getFieldTypeCategory() == FieldTypeCategory.Map;
+        out(tabs, "for (int i__ = SatuCodec.readUnsignedVarInt(buffer); i__ > 0; i__--) {");
+        if (delta && !isPrimitiveCollection(field) && field.getModifier() != FieldModifier.key) {
+            out(tabs + 1, "SatuCodec.skipByte(buffer);");
+            compileSkipValue(tabs + 1, keyType, false);
+            if (map) {
+                out(tabs + 1, "if (SatuCodec.readBoolean(buffer)) {");
+                compileSkipValue(tabs + 2, field.getTypeArgs().get(1), true);
+                out(tabs + 1, "}");
+            }
+        }
+        else {
+            compileSkipValue(tabs + 1, keyType, false);
+            if (map) {
+                compileSkipValue(tabs + 1, field.getTypeArgs().get(1), false);
+            }
+        }
+        out(tabs, "}");
+        if (delta && isPrimitiveCollection(field)) {
+            out(tabs, "for (int i__ = SatuCodec.readUnsignedVarInt(buffer); i__ > 0; i__--) {");
+            compileSkipValue(tabs + 1, keyType, false);
+            out(tabs, "}");
+        }
+    }
+
+    private void compileSkipValue(final int tabs, final String typeName, final boolean delta) {
+        if (isPrimitive(typeName)) {
+            out(tabs, "SatuCodec.skip" + typeName + "(buffer);");
+        }
+        else if (isImported(typeName)) {
+            out(tabs, "SatuCodec.skipDateTime(buffer);");
+        }
+        else if (delta && isTypeMutable(typeName)) {
+            out(tabs, typeName + ".Delta.skip(buffer);");
+        }
+        else {
+            out(tabs, typeName + ".skip(buffer);");
+        }
+    }
+
+    private void compileReturnNew(final int tabs, final String type, final MutableList<String> args) {
+        out(tabs, "return new " + type + "(");
+        for (int i = 0; i < args.size(); i++) {
+            out(tabs + 2, args.get(i) + (i + 1 == args.size() ? ");" : ","));
+        }
+    }
+
+    private void compileWriteMasks(final int tabs, final MutableList<Field> fields, final Function<Field, String> condition) {
+        final int words = (dt_.getFields().size() + 63) / 64;
+        for (int word = 0; word < words; word++) {
+            final MutableList<String> terms = Lists.mutable.of();
+            for (Field field : fields) {
+                final int index = dt_.getFields().indexOf(field);
+                if (index / 64 == word) {
+                    terms.add("(" + condition.valueOf(field) + " ? " + bit(index) + " : 0L)");
+                }
+            }
+            if (terms.isEmpty()) {
+                out(tabs, "SatuCodec.writeUnsignedVarLong(buffer, 0L);");
+                continue;
+            }
+            for (int i = 0; i < terms.size(); i++) {
+                final String prefix = i == 0 ? "SatuCodec.writeUnsignedVarLong(buffer, " : "| ";
+                final String suffix = i + 1 == terms.size() ? ");" : "";
+                out(i == 0 ? tabs : tabs + 2, prefix + terms.get(i) + suffix);
+            }
+        }
+    }
+
+    private void compileReadMasks(final int tabs, final String name) {
+        final int words = (dt_.getFields().size() + 63) / 64;
+        for (int word = 0; word < words; word++) {
+            out(tabs, "final long " + name + word + "__ = SatuCodec.readUnsignedVarLong(buffer);");
+        }
+    }
+
+    private String maskTest(final String name, final Field field) {
+        final int index = dt_.getFields().indexOf(field);
+        return "(" + name + (index / 64) + "__ & " + bit(index) + ") != 0L";
+    }
+
+    private String maskClear(final String name, final Field field) {
+        final int index = dt_.getFields().indexOf(field);
+        return "(" + name + (index / 64) + "__ & " + bit(index) + ") == 0L";
+    }
+
+    private String bit(final int index) {
+        return index % 64 == 0 ? "1L" : "(1L << " + (index % 64) + ")";
+    }
+
+    private String readArgument(final Field field) {
+        return isCollectionType(field) ? field.getName() + ".toImmutable()" : field.getName();
+    }
+
+    private void compileWriteField(final int tabs, final Field field, final boolean delta) {
+        final String value = field.getName() + "_";
+        if (isPrimitiveCollection(field)) {
+            compileWritePrimitiveCollection(tabs, field, value);
+            if (delta) {
+                compileWritePrimitiveSet(tabs, field.getTypeArgs().get(0), removedName(field) + "_");
+            }
+            return;
+        }
+        if (!isCollectionType(field) || field.getModifier() == FieldModifier.key) {
+            compileWriteCollectionOrValue(tabs, field, value, delta);
+            return;
+        }
+        if (!delta) {
+            compileWriteCollectionOrValue(tabs, field, value, false);
+            return;
+        }
+        out(tabs, "SatuCodec.writeUnsignedVarInt(buffer, " + value + ".size());");
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            out(tabs, "for (final KeyDelta<" + javaTypeName(field.getTypeArgs().get(0)) + "> e__ : " + value + ") {");
+            out(tabs + 1, "SatuCodec.writeDeltaType(buffer, e__.getDeltaType());");
+            compileWriteValue(tabs + 1, field.getTypeArgs().get(0), "e__.getKey()", false);
+            out(tabs, "}");
+            return;
+        }
+        out(tabs, "for (final " + getDeltaFieldTypeForMap(field) + " e__ : " + value + ") {");
+        out(tabs + 1, "SatuCodec.writeDeltaType(buffer, e__.getDeltaType());");
+        compileWriteValue(tabs + 1, field.getTypeArgs().get(0), "e__.getKey()", false);
+        out(tabs + 1, "SatuCodec.writeBoolean(buffer, e__.getValue() != null);");
+        out(tabs + 1, "if (e__.getValue() != null) {");
+        compileWriteValue(tabs + 2, field.getTypeArgs().get(1), "e__.getValue()", true);
+        out(tabs + 1, "}");
+        out(tabs, "}");
+    }
+
+    private void compileWriteCollectionOrValue(final int tabs, final Field field, final String value, final boolean delta) {
+        switch (field.getFieldTypeCategory()) {
+        case Set:
+            out(tabs, "SatuCodec.writeUnsignedVarInt(buffer, " + value + ".size());");
+            out(tabs, "for (final " + javaTypeName(field.getTypeArgs().get(0)) + " e__ : " + value + ") {");
+            compileWriteValue(tabs + 1, field.getTypeArgs().get(0), "e__", false);
+            out(tabs, "}");
+            break;
+        case Map:
+            out(tabs, "SatuCodec.writeUnsignedVarInt(buffer, " + value + ".size());");
+            out(tabs, "for (final Pair<" + javaTypeName(field.getTypeArgs().get(0)) + ", " + javaTypeName(field.getTypeArgs().get(1)) + "> e__ : " + value + ".keyValuesView()) {");
+            compileWriteValue(tabs + 1, field.getTypeArgs().get(0), "e__.getOne()", false);
+            compileWriteValue(tabs + 1, field.getTypeArgs().get(1), "e__.getTwo()", false);
+            out(tabs, "}");
+            break;
+        default:
+            compileWriteValue(tabs, field.getTypeName(), value, delta);
+        }
+    }
+
+    private void compileWritePrimitiveCollection(final int tabs, final Field field, final String value) {
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            compileWritePrimitiveSet(tabs, field.getTypeArgs().get(0), value);
+            return;
+        }
+        final String keyType = field.getTypeArgs().get(0);
+        out(tabs, "SatuCodec.writeUnsignedVarInt(buffer, " + value + ".size());");
+        out(tabs, "for (final " + CompilerUtil.primitiveTypeName(keyType) + "Iterator it__ = " + value + ".keysView()." + CompilerUtil.primitiveJavaTypeName(keyType) + "Iterator(); it__.hasNext();) {");
+        out(tabs + 1, "final " + CompilerUtil.primitiveJavaTypeName(keyType) + " key__ = it__.next();");
+        compileWriteValue(tabs + 1, keyType, "key__", false);
+        compileWriteValue(tabs + 1, field.getTypeArgs().get(1), value + ".get(key__)", false);
+        out(tabs, "}");
+    }
+
+    private void compileWritePrimitiveSet(final int tabs, final String typeName, final String value) {
+        out(tabs, "SatuCodec.writeUnsignedVarInt(buffer, " + value + ".size());");
+        out(tabs, "for (final " + CompilerUtil.primitiveTypeName(typeName) + "Iterator it__ = " + value + "." + CompilerUtil.primitiveJavaTypeName(typeName) + "Iterator(); it__.hasNext();) {");
+        compileWriteValue(tabs + 1, typeName, "it__.next()", false);
+        out(tabs, "}");
+    }
+
+    private void compileWriteValue(final int tabs, final String typeName, final String value, final boolean delta) {
+        if (isPrimitive(typeName)) {
+            out(tabs, "SatuCodec.write" + typeName + "(buffer, " + value + ");");
+        }
+        else if (isImported(typeName)) {
+            out(tabs, "SatuCodec.writeLong(buffer, " + value + ".getMillis());");
+            out(tabs, "SatuCodec.writeString(buffer, " + value + ".getZone().getID());");
+        }
+        else {
+            out(tabs, value + ".writeTo(buffer);");
+        }
+    }
+
+    /**
+     * Declares a local holding the mutable collection or value read for the field, collections are read only when
+     * the optional condition holds
+     */
+    private void compileReadField(final int tabs, final Field field, final boolean delta, final String condition) {
+        final String name = field.getName();
+        final int loop = condition == null ? tabs : tabs + 1;
+        if (isPrimitiveCollection(field)) {
+            out(tabs, "final Mutable" + CompilerUtil.getPrimitiveCollectionType(field) + " " + name + " = new " + getPrimitiveCollectionImpl(field) + "();");
+            if (delta) {
+                out(tabs, "final " + getPrimitiveKeyMutableSetType(field) + " " + removedName(field) + " = new " + getPrimitiveKeySetImpl(field) + "();");
+            }
+            openCondition(tabs, condition);
+            out(loop, "for (int i__ = SatuCodec.readUnsignedVarInt(buffer); i__ > 0; i__--) {");
+            if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+                out(loop + 1, name + ".add(" + readValue(field.getTypeArgs().get(0), false) + ");");
+            }
+            else {
+                out(loop + 1, name + ".put(" + readValue(field.getTypeArgs().get(0), false) + ", " + readValue(field.getTypeArgs().get(1), false) + ");");
+            }
+            out(loop, "}");
+            if (delta) {
+                out(loop, "for (int i__ = SatuCodec.readUnsignedVarInt(buffer); i__ > 0; i__--) {");
+                out(loop + 1, removedName(field) + ".add(" + readValue(field.getTypeArgs().get(0), false) + ");");
+                out(loop, "}");
+            }
+            closeCondition(tabs, condition);
+            return;
+        }
+
+        if (!isCollectionType(field)) {
+            out(tabs, "final " + getFieldType(field) + " " + name + " = " + readValue(field.getTypeName(), delta) + ";");
+            return;
+        }
+
+        final String keyType = javaTypeName(field.getTypeArgs().get(0));
+        if (!delta || field.getModifier() == FieldModifier.key) {
+            if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+                out(tabs, "final MutableSet<" + keyType + "> " + name + " = Sets.mutable.of();");
+            }
+            else {
+                out(tabs, "final MutableMap<" + keyType + ", " + javaTypeName(field.getTypeArgs().get(1)) + "> " + name + " = Maps.mutable.of();");
+            }
+            openCondition(tabs, condition);
+            out(loop, "for (int i__ = SatuCodec.readUnsignedVarInt(buffer); i__ > 0; i__--) {");
+            if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+                out(loop + 1, name + ".add(" + readValue(field.getTypeArgs().get(0), false) + ");");
+            }
+            else {
+                out(loop + 1, name + ".put(" + readValue(field.getTypeArgs().get(0), false) + ", " + readValue(field.getTypeArgs().get(1), false) + ");");
+            }
+            out(loop, "}");
+            closeCondition(tabs, condition);
+            return;
+        }
+
+        final String elementType = field.getFieldTypeCategory() == FieldTypeCategory.Set ? "KeyDelta<" + keyType + ">" : getDeltaFieldTypeForMap(field);
+        out(tabs, "final MutableList<" + elementType + "> " + name + " = Lists.mutable.of();");
+        openCondition(tabs, condition);
+        out(loop, "for (int i__ = SatuCodec.readUnsignedVarInt(buffer); i__ > 0; i__--) {");
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            out(loop + 1, name + ".add(new " + elementType + "(SatuCodec.readDeltaType(buffer), " + readValue(field.getTypeArgs().get(0), false) + "));");
+        }
+        else {
+            out(loop + 1, name + ".add(new " + elementType + "(SatuCodec.readDeltaType(buffer), " + readValue(field.getTypeArgs().get(0), false) + ", SatuCodec.readBoolean(buffer) ? "
+                    + readValue(field.getTypeArgs().get(1), true) + " : null));");
+        }
+        out(loop, "}");
+        closeCondition(tabs, condition);
+    }
+
+    private void openCondition(final int tabs, final String condition) {
+        if (condition != null) {
+            out(tabs, "if (" + condition + ") {");
+        }
+    }
+
+    private void closeCondition(final int tabs, final String condition) {
+        if (condition != null) {
+            out(tabs, "}");
+        }
+    }
+
+    private String readValue(final String typeName, final boolean delta) {
+        if (isPrimitive(typeName)) {
+            return "SatuCodec.read" + typeName + "(buffer)";
+        }
+        if (isImported(typeName)) {
+            return "new DateTime(SatuCodec.readLong(buffer), org.joda.time.DateTimeZone.forID(SatuCodec.readString(buffer)))";
+        }
+        if (delta && isTypeMutable(typeName)) {
+            return typeName + ".Delta.readFrom(buffer)";
+        }
+        return typeName + ".readFrom(buffer)";
+    }
+
+    private boolean isPrimitive(final String typeName) {
+        for (PrimitiveType type : PrimitiveType.values()) {
+            if (type.name().equals(typeName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isImported(final String typeName) {
+        for (ImportedType type : ImportedType.values()) {
+            if (type.name().equals(typeName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -16,6 +16,9 @@
 
 package com.kaaprotech.satu.compiler.java;
 
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.BP;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.DBP;
+
 import java.io.PrintWriter;
 
 import com.kaaprotech.satu.parser.CompilationUnit;
@@ -30,11 +33,17 @@ public final class ModelCompiler extends AbstractModelCompiler {
 
     private final ModelDeltaBuilderCompiler deltaBuilder_;
 
+    private final ModelCodecCompiler codec_;
+
+    private final ModelJsonCompiler json_;
+
     public ModelCompiler(final CompilationUnit cu, final DeclaredType dt, final PrintWriter writer) {
         super(cu, dt, writer);
         builder_ = new ModelBuilderCompiler(this);
         delta_ = new ModelDeltaCompiler(this);
         deltaBuilder_ = new ModelDeltaBuilderCompiler(this);
+        codec_ = new ModelCodecCompiler(this);
+        json_ = new ModelJsonCompiler(this);
     }
 
     public void compile() {
@@ -44,18 +53,27 @@ public final class ModelCompiler extends AbstractModelCompiler {
         compileClassJavaDoc();
         compileClassStart();
         compileFieldMembers();
+        compileFingerprintMembers();
+        compileBuilderPoolMembers();
         compilePrivateConstructor();
         compileGetters();
         compileIdentityMethods();
         compileToString();
         compileEquals();
         compileHashCode();
+        compileFingerprint();
         compileCompareTo();
         compileToBuilderMethod();
         compileToBuilderEmptyMethod();
         compileNewBuilderMethod();
         compileToDeltaMethod();
         compileNewDeltaBuilderMethod();
+        compilePooledBuilderMethods();
+        codec_.compileCodec();
+        codec_.compileExternalForm(1, dt_.getName());
+        if (cu_.isJsonCompatible()) {
+            json_.compileJson();
+        }
 
         builder_.compile();
 
@@ -70,8 +88,11 @@ public final class ModelCompiler extends AbstractModelCompiler {
 
     public void compileImports() {
         out();
+        if (cu_.isJsonCompatible()) {
+            out("import java.io.IOException;");
+        }
         out("import java.io.Serializable;");
-        out("import java.util.BitSet;");
+        out("import java.nio.ByteBuffer;");
         out();
 
         out("import org.apache.commons.lang.ObjectUtils;");
@@ -84,18 +105,30 @@ public final class ModelCompiler extends AbstractModelCompiler {
         out("import com.gs.collections.api.block.function.Function;");
         out("import com.gs.collections.api.block.procedure.Procedure;");
         out("import com.gs.collections.api.list.ImmutableList;");
+        out("import com.gs.collections.api.list.MutableList;");
         out("import com.gs.collections.api.map.ImmutableMap;");
         out("import com.gs.collections.api.map.MutableMap;");
         out("import com.gs.collections.api.set.ImmutableSet;");
         out("import com.gs.collections.api.set.MutableSet;");
+        out("import com.gs.collections.api.tuple.Pair;");
         out("import com.gs.collections.impl.factory.Lists;");
         out("import com.gs.collections.impl.factory.Maps;");
         out("import com.gs.collections.impl.factory.Sets;");
 
+        compilePrimitiveCollectionImports();
+
         if (cu_.isJsonCompatible()) {
             out();
             out("import com.fasterxml.jackson.annotation.JsonIgnore;");
             out("import com.fasterxml.jackson.annotation.JsonProperty;");
+            out("import com.fasterxml.jackson.core.JsonGenerator;");
+            out("import com.fasterxml.jackson.core.JsonParseException;");
+            out("import com.fasterxml.jackson.core.JsonParser;");
+            out("import com.fasterxml.jackson.core.JsonToken;");
+            out("import com.fasterxml.jackson.databind.DeserializationContext;");
+            out("import com.fasterxml.jackson.databind.JsonDeserializer;");
+            out("import com.fasterxml.jackson.databind.JsonSerializer;");
+            out("import com.fasterxml.jackson.databind.SerializerProvider;");
         }
 
         out();
@@ -115,7 +148,7 @@ public final class ModelCompiler extends AbstractModelCompiler {
     }
 
     public void compileClassStart() {
-        out("public final class " + dt_.getName() + " implements Model<" + getKeyFieldType() + ", " + dt_.getName() + ".Builder>, Comparable<" + dt_.getName() + ">, Serializable {");
+        out("public final class " + dt_.getName() + " implements Model<" + getKeyFieldType() + ", " + dt_.getName() + ".Builder>, Comparable<" + dt_.getName() + ">, Serializable" + getFingerprintedInterface() + " {");
         out();
         final long serialVersionUID = serialVersionUID();
         out(1, "private static final long serialVersionUID = " + serialVersionUID + "L;");
@@ -166,4 +199,46 @@ public final class ModelCompiler extends AbstractModelCompiler {
         out(2, "return new " + dt_.getName() + ".Delta.Builder(deltaType, " + field.getName() + ");");
         out(1, "}");
     }
+
+    public void compileBuilderPoolMembers() {
+        out();
+        out(1, "private static final ThreadLocalPool<" + dt_.getName() + ".Builder> " + BP + " = new ThreadLocalPool<" + dt_.getName() + ".Builder>();");
+        out();
+        out(1, "private static final ThreadLocalPool<" + dt_.getName() + ".Delta.Builder> " + DBP + " = new ThreadLocalPool<" + dt_.getName() + ".Delta.Builder>();");
+    }
+
+    /**
+     * Pooled counterparts of toBuilder, newBuilder and newDeltaBuilder which rebind a builder released on the calling
+     * thread and only allocate when its pool is empty
+     */
+    public void compilePooledBuilderMethods() {
+        final Field field = getKeyField();
+        out();
+        out(1, "public " + dt_.getName() + ".Builder toPooledBuilder() {");
+        out(2, "final " + dt_.getName() + ".Builder builder = " + BP + ".acquire();");
+        out(2, "return builder == null ? new " + dt_.getName() + ".Builder(this) : builder.rebind(this);");
+        out(1, "}");
+
+        out();
+        out(1, "public static " + dt_.getName() + ".Builder newPooledBuilder(final " + getFieldType(field) + " " + field.getName() + ") {");
+        out(2, "final " + dt_.getName() + ".Builder builder = " + BP + ".acquire();");
+        out(2, "return builder == null ? new " + dt_.getName() + ".Builder(" + field.getName() + ") : builder.rebind(" + field.getName() + ");");
+        out(1, "}");
+
+        out();
+        out(1, "public static " + dt_.getName() + ".Delta.Builder newPooledDeltaBuilder(final DeltaType deltaType, final " + getFieldType(field) + " " + field.getName() + ") {");
+        out(2, "final " + dt_.getName() + ".Delta.Builder builder = " + DBP + ".acquire();");
+        out(2, "return builder == null ? new " + dt_.getName() + ".Delta.Builder(deltaType, " + field.getName() + ") : builder.clear(deltaType, " + field.getName() + ");");
+        out(1, "}");
+
+        out();
+        out(1, "public static void releaseBuilder(final " + dt_.getName() + ".Builder builder) {");
+        out(2, BP + ".release(builder);");
+        out(1, "}");
+
+        out();
+        out(1, "public static void releaseDeltaBuilder(final " + dt_.getName() + ".Delta.Builder builder) {");
+        out(2, DBP + ".release(builder);");
+        out(1, "}");
+    }
 }
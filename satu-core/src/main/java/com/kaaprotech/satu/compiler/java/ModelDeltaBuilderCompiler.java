@@ -21,6 +21,9 @@ import static com.kaaprotech.satu.compiler.java.CompilerUtil.DBS;
 import static com.kaaprotech.satu.compiler.java.CompilerUtil.DT;
 import static com.kaaprotech.satu.compiler.java.CompilerUtil.LS;
 import static com.kaaprotech.satu.compiler.java.CompilerUtil.REF;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.bitmaskMask;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.bitmaskWord;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.bitmaskWords;
 
 import com.gs.collections.api.block.procedure.Procedure;
 import com.gs.collections.api.list.MutableList;
@@ -38,11 +41,13 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
     public void compile() {
         compileDeltaBuilderClassStart();
         compileFieldEnum();
-        compileFieldBitSet();
+        compileFieldBitmask();
         compileRefFieldMember();
         compileDeltaBuilderFieldMembers();
         compileDeltaBuilderConstructorl();
         compileDeltaBuilderConstructor2();
+        compileDeltaBuilderUnbindMethod();
+        compileDeltaBuilderRebindMethods();
         compileDeltaBuilderUpdatedMethod();
         compileDeltaBuilderInitForUpdateMethod();
         compileDeltaBuilderIdentityMethods();
@@ -81,14 +86,27 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
         out(3, "}");
     }
 
-    public void compileFieldBitSet() {
-        out();
-        out(3, "private final BitSet " + DBS + " = new BitSet(" + DBF + ".values().length);");
+    /**
+     * The delta type bit followed by a bit per val field
+     */
+    private int getFieldBitCount() {
+        return dt_.getFields().count(fieldsByModifierPredicate(FieldModifier.val)) + 1;
+    }
+
+    /**
+     * The bit of the field within its word of the bitmask, the delta type takes ordinal zero
+     */
+    private int getFieldOrdinal(final Field field) {
+        return dt_.getFields().select(fieldsByModifierPredicate(FieldModifier.val)).indexOf(field) + 1;
+    }
+
+    public void compileFieldBitmask() {
+        compileBitmaskMembers(3, DBS, getFieldBitCount());
     }
 
     public void compileRefFieldMember() {
         out();
-        out(3, "private final " + dt_.getName() + ".Delta " + REF + ";");
+        out(3, "private " + dt_.getName() + ".Delta " + REF + ";");
     }
 
     public void compileDeltaBuilderFieldMembers() {
@@ -96,18 +114,14 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
             @Override
             public void value(final Field field) {
                 out();
-                final String modifier;
-                switch (field.getModifier()) {
-                case key:
+                if (field.getModifier() == FieldModifier.key) {
                     out(3, "// Key");
-                    modifier = "private final";
-                    break;
-
-                default:
-                    modifier = "private";
-                    break;
                 }
-                out(3, modifier + " " + getDeltaBuilderFieldType(field) + " " + field.getName() + "_;");
+                out(3, "private " + getDeltaBuilderFieldType(field) + " " + field.getName() + "_;");
+                if (isPrimitiveCollection(field)) {
+                    out();
+                    out(3, "private " + getPrimitiveKeyMutableSetType(field) + " " + removedName(field) + "_;");
+                }
             }
         });
     }
@@ -120,7 +134,7 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
         out(4, REF + " = null;");
         out(4, kField.getName() + "_ = " + kField.getName() + ";");
         out(4, "if (deltaType == DeltaType.DELETE) {");
-        out(5, DBS + ".set(" + DBF + "." + DT + ".ordinal());");
+        out(5, bitmaskWord(DBS, 0) + " |= " + bitmaskMask(0) + ";");
         out(4, "}");
         out(3, "}");
     }
@@ -139,21 +153,74 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
         out(3, "}");
     }
 
+    public void compileDeltaBuilderUnbindMethod() {
+        out();
+        out(3, "private void unbind() {");
+        compileBitmaskAssign(4, DBS, getFieldBitCount(), "0L");
+        dt_.getFields().select(fieldsByModifierPredicate(FieldModifier.val)).forEach(new Procedure<Field>() {
+            @Override
+            public void value(final Field field) {
+                if (field.isUnboxed() && !isCollectionType(field)) {
+                    out(4, field.getName() + "_ = " + getUnboxedDefault(field) + ";");
+                }
+                else {
+                    out(4, field.getName() + "_ = null;");
+                }
+                if (isPrimitiveCollection(field)) {
+                    out(4, removedName(field) + "_ = null;");
+                }
+            }
+        });
+        out(3, "}");
+    }
+
+    /**
+     * Clearing and rebinding leave the builder as the matching constructor would, so pooled builders can be reused
+     */
+    public void compileDeltaBuilderRebindMethods() {
+        final Field kField = getKeyField();
+        out();
+        out(3, "public " + dt_.getName() + ".Delta.Builder clear(final DeltaType deltaType, final " + getFieldType(kField) + " " + kField.getName() + ") {");
+        out(4, "unbind();");
+        out(4, "rebindDeltaType(deltaType);");
+        out(4, REF + " = null;");
+        out(4, kField.getName() + "_ = " + kField.getName() + ";");
+        out(4, "if (deltaType == DeltaType.DELETE) {");
+        out(5, bitmaskWord(DBS, 0) + " |= " + bitmaskMask(0) + ";");
+        out(4, "}");
+        out(4, "return this;");
+        out(3, "}");
+
+        out();
+        out(3, "public " + dt_.getName() + ".Delta.Builder rebind(final " + dt_.getName() + ".Delta ref) {");
+        out(4, "unbind();");
+        out(4, "rebindDeltaType(ref.getDeltaType());");
+        out(4, REF + " = ref;");
+        dt_.getFields().reject(initForUpdateMethodFieldPredicate).forEach(new Procedure<Field>() {
+            @Override
+            public void value(final Field field) {
+                out(4, field.getName() + "_ = ref." + methodNameForGetter(field) + "();");
+            }
+        });
+        out(4, "return this;");
+        out(3, "}");
+    }
+
     public void compileDeltaBuilderUpdatedMethod() {
         out();
         out(3, "private boolean updated(final " + DBF + "  field) {");
-        out(4, "return " + DBS + " == null ? true : " + DBS + ".get(field.ordinal());");
+        compileBitmaskGet(4, DBS, getFieldBitCount());
         out(3, "}");
     }
 
     public void compileDeltaBuilderInitForUpdateMethod() {
         out();
         out(3, "private void initForUpdate(final " + DBF + " field) {");
-        out(4, "if (" + DBS + ".get(field.ordinal())) {");
+        out(4, "if (updated(field)) {");
         out(5, "return;");
         out(4, "}");
 
-        out(4, DBS + ".set(field.ordinal());");
+        compileBitmaskSet(4, DBS, getFieldBitCount());
 
         final MutableList<Field> fields = dt_.getFields().select(initForUpdateMethodFieldPredicate);
         if (fields.isEmpty()) {
@@ -172,6 +239,10 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
                 if (field.getFieldTypeCategory() == FieldTypeCategory.DeclaredType) {
                     out(6, field.getName() + "_ = null;");
                 }
+                else if (field.isUnboxed()) {
+                    out(6, field.getName() + "_ = " + getMutableColOf(field) + ";");
+                    out(6, removedName(field) + "_ = new " + getPrimitiveKeySetImpl(field) + "();");
+                }
                 else {
                     out(6, field.getName() + "_ = Maps.mutable.of();");
                 }
@@ -183,11 +254,21 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
                     break;
 
                 case Set:
-                    out(6, field.getName() + "_ = SatuUtil.toKeyDeltaBuilderMap(" + REF + "." + methodNameForGetter(field) + "());");
+                    if (field.isUnboxed()) {
+                        out(6, field.getName() + "_ = " + REF + "." + methodNameForGetter(field) + "().toSet();");
+                        out(6, removedName(field) + "_ = " + REF + "." + methodNameForRemovedGetter(field) + "().toSet();");
+                    }
+                    else {
+                        out(6, field.getName() + "_ = SatuUtil.toKeyDeltaBuilderMap(" + REF + "." + methodNameForGetter(field) + "());");
+                    }
                     break;
 
                 case Map:
-                    if (isMapValueTypeMutable(field)) {
+                    if (field.isUnboxed()) {
+                        out(6, field.getName() + "_ = " + getMutableColCopy(field, REF + "." + methodNameForGetter(field) + "()") + ";");
+                        out(6, removedName(field) + "_ = " + REF + "." + methodNameForRemovedGetter(field) + "().toSet();");
+                    }
+                    else if (isMapValueTypeMutable(field)) {
                         out(6, field.getName() + "_ = SatuUtil.toKeyModelDeltaBuilderMap(" + REF + "." + methodNameForGetter(field) + "());");
                     }
                     else {
@@ -248,6 +329,10 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
                     break;
 
                 case Set:
+                    if (field.isUnboxed()) {
+                        compileDeltaBuilderPrimitiveCollectionMethods(field);
+                        break;
+                    }
                     out();
                     out(3, "public Delta.Builder " + methodNameForAdd(field) + "(final " + paramTypeForDeltaBuilderAddMethod(field) + " newDelta) {");
                     out(4, "initForUpdate(" + DBF + "." + field.getName() + ");");
@@ -257,7 +342,10 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
                     break;
 
                 case Map:
-                    if (isMapValueTypeMutable(field)) {
+                    if (field.isUnboxed()) {
+                        compileDeltaBuilderPrimitiveCollectionMethods(field);
+                    }
+                    else if (isMapValueTypeMutable(field)) {
                         out();
                         out(3, "public Delta.Builder " + methodNameForAdd(field) + "(final " + paramTypeForDeltaBuilderAddMethod(field) + " newDelta) {");
                         out(4, "initForUpdate(" + DBF + "." + field.getName() + ");");
@@ -283,6 +371,48 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
         });
     }
 
+    /**
+     * Primitive collection deltas hold the added elements or put entries plus the removed elements or keys, each
+     * change cancels any earlier opposite change for the same element or key
+     */
+    private void compileDeltaBuilderPrimitiveCollectionMethods(final Field field) {
+        final String keyType = getPrimitiveKeyType(field);
+        out();
+        out(3, "public " + getPrimitiveKeyMutableSetType(field) + " " + methodNameForRemovedGetter(field) + "() {");
+        out(4, "initForUpdate(" + DBF + "." + field.getName() + ");");
+        out(4, "return " + removedName(field) + "_;");
+        out(3, "}");
+
+        out();
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            out(3, "public Delta.Builder " + methodNameForAdd(field) + "(final " + keyType + " element) {");
+            out(4, "initForUpdate(" + DBF + "." + field.getName() + ");");
+            out(4, removedName(field) + "_.remove(element);");
+            out(4, field.getName() + "_.add(element);");
+        }
+        else {
+            out(3, "public Delta.Builder " + methodNameForPut(field) + "(final " + keyType + " key, final " + getPrimitiveValueType(field) + " value) {");
+            out(4, "initForUpdate(" + DBF + "." + field.getName() + ");");
+            out(4, removedName(field) + "_.remove(key);");
+            out(4, field.getName() + "_.put(key, value);");
+        }
+        out(4, "return this;");
+        out(3, "}");
+
+        out();
+        out(3, "public Delta.Builder " + methodNameForRemove(field) + "(final " + keyType + " key) {");
+        out(4, "initForUpdate(" + DBF + "." + field.getName() + ");");
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            out(4, field.getName() + "_.remove(key);");
+        }
+        else {
+            out(4, field.getName() + "_.removeKey(key);");
+        }
+        out(4, removedName(field) + "_.add(key);");
+        out(4, "return this;");
+        out(3, "}");
+    }
+
     public void compileDeltaBuilderAddDeltaMethod() {
         out();
         out(3, "@Override");
@@ -311,6 +441,10 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
 
                 case Set:
                 case Map:
+                    if (field.isUnboxed()) {
+                        compileDeltaBuilderAddPrimitiveCollectionDelta(field);
+                        break;
+                    }
                     out();
                     out(4, "if (delta." + methodNameForHas(field) + "()) {");
                     out(5, "delta." + methodNameForGetter(field) + "().forEach(new Procedure<" + paramTypeForDeltaBuilderAddMethod(field) + ">() {");
@@ -331,12 +465,36 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
         out(3, "}");
     }
 
+    private void compileDeltaBuilderAddPrimitiveCollectionDelta(final Field field) {
+        final String keyType = getPrimitiveKeyType(field);
+        out();
+        out(4, "if (delta." + methodNameForHas(field) + "()) {");
+        out(5, "for (final " + getPrimitiveKeyIterator(field) + " it = delta." + methodNameForRemovedGetter(field) + "()." + keyType + "Iterator(); it.hasNext();) {");
+        out(6, methodNameForRemove(field) + "(it.next());");
+        out(5, "}");
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            out(5, "for (final " + getPrimitiveKeyIterator(field) + " it = delta." + methodNameForGetter(field) + "()." + keyType + "Iterator(); it.hasNext();) {");
+            out(6, methodNameForAdd(field) + "(it.next());");
+            out(5, "}");
+        }
+        else {
+            out(5, "delta." + methodNameForGetter(field) + "().forEachKeyValue(new " + getPrimitiveEntryProcedure(field) + "() {");
+            out(6, "private static final long serialVersionUID = 1L;");
+            out(6, "@Override");
+            out(6, "public void value(final " + keyType + " key, final " + getPrimitiveValueType(field) + " value) {");
+            out(7, methodNameForPut(field) + "(key, value);");
+            out(6, "}");
+            out(5, "});");
+        }
+        out(4, "}");
+    }
+
     public void compileDeltaBuilderSetDeltaTypeMethod() {
         out();
         out(3, "@Override");
         out(3, "public " + dt_.getName() + ".Delta.Builder setDeltaType(final DeltaType deltaType) {");
         out(4, "if (deltaType != getInitialDeltaType()) {");
-        out(5, DBS + ".set(" + DBF + "." + DT + ".ordinal());");
+        out(5, bitmaskWord(DBS, 0) + " |= " + bitmaskMask(0) + ";");
         out(4, "}");
         out(4, "super.setDeltaType(deltaType);");
         out(4, "return this;");
@@ -357,10 +515,12 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
         out();
         out(3, "@Override");
         out(3, "public " + dt_.getName() + ".Delta buildDelta() {");
-        out(4, "final BitSet flags = (BitSet) " + DBS + ".clone();");
+        for (int w = 0; w < bitmaskWords(getFieldBitCount()); w++) {
+            out(4, "long flags" + w + " = " + bitmaskWord(DBS, w) + ";");
+        }
         out();
 
-        out(4, "if (getDeltaType() == DeltaType.UPDATE && flags.nextSetBit(0) < 0) {");
+        out(4, "if (getDeltaType() == DeltaType.UPDATE && " + getFlagsEmpty() + ") {");
         out(5, "return " + REF + ";");
         out(4, "}");
 
@@ -377,11 +537,15 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
                     out(4, "else {");
                     out(5, field.getName() + " = " + REF + " != null ? " + REF + "." + methodNameForGetter(field) + "() : null;");
                     out(4, "}");
-                    out(4, "flags.set(" + DBF + "." + field.getName() + ".ordinal(), " + field.getName() + " != null);");
+                    compileFlag(field, field.getName() + " != null");
                     break;
 
                 case Set:
                 case Map:
+                    if (field.isUnboxed()) {
+                        compileDeltaBuilderBuildPrimitiveCollectionDelta(field);
+                        break;
+                    }
                     out();
                     out(4, "final " + getDeltaFieldType(field) + " " + field.getName() + ";");
                     out(4, "if (updated(" + DBF + "." + field.getName() + ")) {");
@@ -405,14 +569,14 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
 
                     out(4, "}");
 
-                    out(4, "flags.set(" + DBF + "." + field.getName() + ".ordinal(), " + field.getName() + ".notEmpty());");
+                    compileFlag(field, field.getName() + ".notEmpty()");
                     break;
                 }
             }
         });
 
         out();
-        out(4, "if (getDeltaType() == DeltaType.UPDATE && flags.nextSetBit(0) < 0) {");
+        out(4, "if (getDeltaType() == DeltaType.UPDATE && " + getFlagsEmpty() + ") {");
         out(5, "return " + REF + ";");
         out(4, "}");
 
@@ -438,7 +602,13 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
                 case Set:
                 case Map:
                     sb.append(tab(6) + field.getName() + "," + LS);
-                    sb.append(tab(6) + field.getName() + ".notEmpty()");
+                    if (field.isUnboxed()) {
+                        sb.append(tab(6) + removedName(field) + "," + LS);
+                        sb.append(tab(6) + field.getName() + ".notEmpty() || " + removedName(field) + ".notEmpty()");
+                    }
+                    else {
+                        sb.append(tab(6) + field.getName() + ".notEmpty()");
+                    }
                     break;
                 }
             }
@@ -453,6 +623,48 @@ public final class ModelDeltaBuilderCompiler extends AbstractModelCompiler {
         out(3, "}");
     }
 
+    /**
+     * The field's flag is set when the built field carries a change and cleared when it doesn't
+     */
+    private void compileFlag(final Field field, final String changed) {
+        final int ordinal = getFieldOrdinal(field);
+        final String flags = "flags" + (ordinal >>> 6);
+        out(4, flags + " = " + changed + " ? " + flags + " | " + bitmaskMask(ordinal) + " : " + flags + " & ~" + bitmaskMask(ordinal) + ";");
+    }
+
+    private String getFlagsEmpty() {
+        final int words = bitmaskWords(getFieldBitCount());
+        if (words == 1) {
+            return "flags0 == 0L";
+        }
+        final StringBuilder sb = new StringBuilder("(flags0");
+        for (int w = 1; w < words; w++) {
+            sb.append(" | flags" + w);
+        }
+        return sb.append(") == 0L").toString();
+    }
+
+    private void compileDeltaBuilderBuildPrimitiveCollectionDelta(final Field field) {
+        out();
+        out(4, "final " + getDeltaFieldType(field) + " " + field.getName() + ";");
+        out(4, "final " + getPrimitiveKeySetType(field) + " " + removedName(field) + ";");
+        out(4, "if (updated(" + DBF + "." + field.getName() + ")) {");
+        out(5, field.getName() + " = " + field.getName() + "_.toImmutable();");
+        out(5, removedName(field) + " = " + removedName(field) + "_.toImmutable();");
+        out(4, "}");
+        out(4, "else {");
+        out(5, "if (" + REF + " == null) {");
+        out(6, field.getName() + " = " + getImmutableColOf(field) + ";");
+        out(6, removedName(field) + " = " + getPrimitiveKeySetFactory(field) + ".immutable.of();");
+        out(5, "}");
+        out(5, "else {");
+        out(6, field.getName() + " = " + REF + "." + methodNameForGetter(field) + "();");
+        out(6, removedName(field) + " = " + REF + "." + methodNameForRemovedGetter(field) + "();");
+        out(5, "}");
+        out(4, "}");
+        compileFlag(field, field.getName() + ".notEmpty() || " + removedName(field) + ".notEmpty()");
+    }
+
     public void compileDeltaBuilderToStringMethod() {
         out();
         out(3, "@Override");
@@ -16,42 +16,114 @@
 
 package com.kaaprotech.satu.compiler.java;
 
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.CFM;
 import static com.kaaprotech.satu.compiler.java.CompilerUtil.LS;
 
 import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.list.MutableList;
 import com.kaaprotech.satu.parser.Field;
 import com.kaaprotech.satu.parser.FieldModifier;
 
 @SuppressWarnings("serial")
 public final class ModelDeltaCompiler extends AbstractModelCompiler {
 
+    private final ModelCodecCompiler codec_;
+
+    private final ModelJsonCompiler json_;
+
     public ModelDeltaCompiler(final ModelCompiler compiler) {
         super(compiler.cu_, compiler.dt_, compiler.writer_);
+        codec_ = new ModelCodecCompiler(compiler);
+        json_ = new ModelJsonCompiler(compiler);
     }
 
     public void compile() {
         compileDeltaClassStart();
+        compileDeltaFieldIndex();
         compileDeltaFieldMembers();
         compileDeltaConstructor();
         compileDeltaIdentityMethods();
         compileDeltaGetters();
+        compileDeltaFieldMaskMethods();
         compileDeltaToString();
         compileDeltaEquals();
         compileDeltaHashCode();
         compileDeltaCompareTo();
         compileDeltaToDeltaBuilder();
         compileDeltaToBuilder();
+        codec_.compileDeltaCodec();
+        codec_.compileExternalForm(2, dt_.getName() + ".Delta");
+        codec_.compileDeltaFlyweight();
+        if (cu_.isJsonCompatible()) {
+            json_.compileDeltaJson();
+            json_.compileSparseDeltaJson();
+        }
     }
 
     public void compileDeltaClassStart() {
         out();
         out(1, "public static final class Delta extends AbstractDelta implements ModelDelta<" + getKeyFieldType() + ", " + dt_.getName() + ".Builder, " +
-                dt_.getName() + ".Delta.Builder>, Comparable<" + dt_.getName() + ".Delta>, Serializable {");
+                dt_.getName() + ".Delta.Builder>, Comparable<" + dt_.getName() + ".Delta>, Serializable" + getFieldMaskedInterface() + " {");
         out();
         final long serialVersionUID = serialVersionUID();
         out(2, "private static final long serialVersionUID = " + serialVersionUID + "L;");
     }
 
+    /**
+     * Models with at most 64 val fields get a field index enum and mask constants, bit i is val field i in declaration
+     * order
+     */
+    private boolean isFieldMasked() {
+        return getValFields().size() <= 64;
+    }
+
+    private MutableList<Field> getValFields() {
+        return dt_.getFields().select(fieldsByModifierPredicate(FieldModifier.val));
+    }
+
+    private String getFieldMaskedInterface() {
+        return isFieldMasked() ? ", FieldMaskedDelta<" + dt_.getName() + ".Delta>" : "";
+    }
+
+    /**
+     * e.g. dataTimeField becomes DATA_TIME_FIELD_MASK
+     */
+    private String maskName(final Field field) {
+        final StringBuilder sb = new StringBuilder();
+        for (final char c : field.getName().toCharArray()) {
+            if (Character.isUpperCase(c) && sb.length() > 0) {
+                sb.append('_');
+            }
+            sb.append(Character.toUpperCase(c));
+        }
+        return sb.append("_MASK").toString();
+    }
+
+    public void compileDeltaFieldIndex() {
+        if (!isFieldMasked()) {
+            return;
+        }
+        final MutableList<Field> fields = getValFields();
+        out();
+        out(2, "public static enum FieldIndex {");
+        for (int i = 0; i < fields.size(); i++) {
+            out(3, fields.get(i).getName() + (i + 1 < fields.size() ? "," : ";"));
+        }
+        if (fields.isEmpty()) {
+            out(3, ";");
+        }
+        out();
+        out(3, "public long mask() {");
+        out(4, "return 1L << ordinal();");
+        out(3, "}");
+        out(2, "}");
+        out();
+        for (int i = 0; i < fields.size(); i++) {
+            out(2, "public static final long " + maskName(fields.get(i)) + " = 1L << " + i + ";");
+        }
+        out(2, "public static final long ALL_FIELDS_MASK = " + (fields.size() == 64 ? "-1L" : "(1L << " + fields.size() + ") - 1L") + ";");
+    }
+
     public void compileDeltaFieldMembers() {
         dt_.getFields().forEach(new Procedure<Field>() {
             @Override
@@ -63,9 +135,16 @@ public final class ModelDeltaCompiler extends AbstractModelCompiler {
                     return;
                 }
                 out(2, "private final " + getDeltaFieldType(field) + " " + field.getName() + "_;");
+                if (isPrimitiveCollection(field)) {
+                    out(2, "private final " + getPrimitiveKeySetType(field) + " " + removedName(field) + "_;");
+                }
                 out(2, "private final boolean " + methodNameForHas(field) + "_;");
             }
         });
+        if (isFieldMasked()) {
+            out();
+            out(2, "private final long " + CFM + ";");
+        }
     }
 
     public void compileDeltaConstructor() {
@@ -80,6 +159,9 @@ public final class ModelDeltaCompiler extends AbstractModelCompiler {
             }
             else {
                 sb.append(tab(4) + getDeltaFieldType(field) + " " + field.getName() + "," + LS);
+                if (isPrimitiveCollection(field)) {
+                    sb.append(tab(4) + getPrimitiveKeySetType(field) + " " + removedName(field) + "," + LS);
+                }
                 sb.append(tab(4) + "boolean  " + methodNameForHas(field));
             }
             if (i + 1 < dt_.getFields().size()) {
@@ -99,9 +181,23 @@ public final class ModelDeltaCompiler extends AbstractModelCompiler {
             }
             else {
                 out(3, field.getName() + "_ = " + field.getName() + ";");
+                if (isPrimitiveCollection(field)) {
+                    out(3, removedName(field) + "_ = " + removedName(field) + ";");
+                }
                 out(3, methodNameForHas(field) + "_ = " + methodNameForHas(field) + ";");
             }
         }
+        if (isFieldMasked()) {
+            final MutableList<Field> fields = getValFields();
+            if (fields.isEmpty()) {
+                out(3, CFM + " = 0L;");
+            }
+            for (int i = 0; i < fields.size(); i++) {
+                final Field field = fields.get(i);
+                final String term = "(" + methodNameForHas(field) + " ? " + maskName(field) + " : 0L)" + (i + 1 < fields.size() ? "" : ";");
+                out(i == 0 ? 3 : 5, (i == 0 ? CFM + " = " : "| ") + term);
+            }
+        }
         out(2, "}");
     }
 
@@ -120,6 +216,13 @@ public final class ModelDeltaCompiler extends AbstractModelCompiler {
             out(3, "return " + field.getName() + "_;");
             out(2, "}");
 
+            if (isPrimitiveCollection(field)) {
+                out();
+                out(2, "public " + getPrimitiveKeySetType(field) + " " + methodNameForRemovedGetter(field) + "() {");
+                out(3, "return " + removedName(field) + "_;");
+                out(2, "}");
+            }
+
             if (isMapValueTypeMutable(field)) {
                 out();
                 out(2, "public ImmutableList<" + field.getTypeArgs().get(1) + ".Delta>" + " " + methodNameForGetter(field) + "Flatten() {");
@@ -142,6 +245,55 @@ public final class ModelDeltaCompiler extends AbstractModelCompiler {
         }
     }
 
+    public void compileDeltaFieldMaskMethods() {
+        if (!isFieldMasked()) {
+            return;
+        }
+        out();
+        out(2, "@Override");
+        out(2, "public long changedFieldsMask() {");
+        out(3, "return " + CFM + ";");
+        out(2, "}");
+
+        out();
+        out(2, "@Override");
+        out(2, "public " + dt_.getName() + ".Delta project(final long fieldsMask) {");
+        out(3, "if ((" + CFM + " & ~fieldsMask) == 0L) {");
+        out(4, "return this;");
+        out(3, "}");
+        out(3, "return new " + dt_.getName() + ".Delta(");
+        out(5, "deltaType_,");
+        for (int i = 0; i < dt_.getFields().size(); i++) {
+            final Field field = dt_.getFields().get(i);
+            final String end = i + 1 < dt_.getFields().size() ? "," : ");";
+            if (field.getModifier() == FieldModifier.key) {
+                out(5, field.getName() + "_" + end);
+                continue;
+            }
+            final String kept = "(fieldsMask & " + maskName(field) + ") != 0L";
+            out(5, kept + " ? " + field.getName() + "_ : " + absentValue(field) + ",");
+            if (isPrimitiveCollection(field)) {
+                out(5, kept + " ? " + removedName(field) + "_ : new " + getPrimitiveKeySetImpl(field) + "().toImmutable(),");
+            }
+            out(5, methodNameForHas(field) + "_ && " + kept + end);
+        }
+        out(2, "}");
+    }
+
+    /**
+     * The value a delta holds for a field it doesn't have
+     */
+    private String absentValue(final Field field) {
+        if (isPrimitiveCollection(field)) {
+            return "new " + getPrimitiveCollectionImpl(field) + "().toImmutable()";
+        }
+        if (isCollectionType(field)) {
+            final String type = getDeltaFieldType(field);
+            return "Lists.immutable.<" + type.substring(type.indexOf('<') + 1, type.length() - 1) + "> of()";
+        }
+        return field.isUnboxed() ? getUnboxedDefault(field) : "null";
+    }
+
     public void compileDeltaToString() {
         out();
         out(2, "@Override");
@@ -152,6 +304,9 @@ public final class ModelDeltaCompiler extends AbstractModelCompiler {
             @Override
             public void value(final Field field) {
                 out(5, ".append(\"" + field.getName() + "\", " + field.getName() + "_)");
+                if (isPrimitiveCollection(field)) {
+                    out(5, ".append(\"" + removedName(field) + "\", " + removedName(field) + "_)");
+                }
                 if (field.getModifier() != FieldModifier.key) {
                     out(5, ".append(\"" + methodNameForHas(field) + "\", " + methodNameForHas(field) + "_)");
                 }
@@ -186,6 +341,9 @@ public final class ModelDeltaCompiler extends AbstractModelCompiler {
             @Override
             public void value(final Field field) {
                 out(5, ".append(" + field.getName() + "_, rhs." + field.getName() + "_)");
+                if (isPrimitiveCollection(field)) {
+                    out(5, ".append(" + removedName(field) + "_, rhs." + removedName(field) + "_)");
+                }
                 if (field.getModifier() != FieldModifier.key) {
                     out(5, ".append(" + methodNameForHas(field) + "_, rhs." + methodNameForHas(field) + "_)");
                 }
@@ -209,6 +367,9 @@ public final class ModelDeltaCompiler extends AbstractModelCompiler {
             @Override
             public void value(final Field field) {
                 out(5, ".append(" + field.getName() + "_)");
+                if (isPrimitiveCollection(field)) {
+                    out(5, ".append(" + removedName(field) + "_)");
+                }
                 if (field.getModifier() != FieldModifier.key) {
                     out(5, ".append(" + methodNameForHas(field) + "_)");
                 }
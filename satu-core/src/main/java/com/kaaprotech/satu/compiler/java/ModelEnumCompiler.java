@@ -24,13 +24,20 @@ import com.kaaprotech.satu.parser.Field;
 
 public final class ModelEnumCompiler extends AbstractModelCompiler {
 
+    private final ModelCodecCompiler codec_;
+
     public ModelEnumCompiler(final CompilationUnit cu, final DeclaredType dt, final PrintWriter writer) {
         super(cu, dt, writer);
+        codec_ = new ModelCodecCompiler(this);
     }
 
     public void compile() {
         compileHeader();
         compilePackage();
+        out();
+        out("import java.nio.ByteBuffer;");
+        out();
+        out("import com.kaaprotech.satu.runtime.java.SatuCodec;");
         compileClassJavaDoc();
         out("public enum " + dt_.getName() + " {");
         for (int i = 0; i < dt_.getFields().size(); i++) {
@@ -42,6 +49,7 @@ public final class ModelEnumCompiler extends AbstractModelCompiler {
                 out(1, field.getName() + ";");
             }
         }
+        codec_.compileEnumCodec();
         compileClassEnd();
     }
 }
@@ -0,0 +1,1056 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.compiler.java;
+
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.BF;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.LDT;
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.OVERLAY;
+
+import com.gs.collections.api.list.MutableList;
+import com.gs.collections.impl.factory.Lists;
+import com.kaaprotech.satu.parser.DeclaredTypeCategory;
+import com.kaaprotech.satu.parser.Field;
+import com.kaaprotech.satu.parser.FieldModifier;
+import com.kaaprotech.satu.parser.FieldTypeCategory;
+import com.kaaprotech.satu.parser.ImportedType;
+import com.kaaprotech.satu.parser.PrimitiveType;
+
+/**
+ * Compiles the writeJson(JsonGenerator) and readJson(JsonParser) methods of JSON compatible models, keys and deltas
+ * along with the JsonSerializer__ and JsonDeserializer__ classes SatuModule registers for them.
+ * <p>
+ * Models and keys are written as an object of their fields. Deltas are written as an object of their delta type, key,
+ * fields and has flags, collection fields carry an array of objects holding the deltaType, key and value of each pair
+ * delta. Maps keyed by a primitive or enum type are written as objects, other maps as an array of [key, value] arrays.
+ * Imported types are left to the ObjectMapper's codec.
+ */
+public final class ModelJsonCompiler extends AbstractModelCompiler {
+
+    private static final String WRITE = "writeJson";
+
+    private static final String READ = "readJson";
+
+    private static final String SPARSE_WRITE = "writeSparseJson";
+
+    private static final String SPARSE_READ = "readSparseJson";
+
+    public ModelJsonCompiler(final AbstractModelCompiler compiler) {
+        super(compiler.cu_, compiler.dt_, compiler.writer_);
+    }
+
+    public void compileJson() {
+        out();
+        out(1, "public void writeJson(final JsonGenerator generator) throws IOException {");
+        out(2, "generator.writeStartObject();");
+        for (Field field : dt_.getFields()) {
+            out(2, "generator.writeFieldName(\"" + field.getName() + "\");");
+            compileWriteField(2, field, field.getName() + "_", null);
+        }
+        out(2, "generator.writeEndObject();");
+        out(1, "}");
+
+        out();
+        out(1, "public static " + dt_.getName() + " readJson(final JsonParser parser) throws IOException {");
+        for (Field field : dt_.getFields()) {
+            compileReadFieldLocal(2, field, false);
+        }
+        compileObjectStart(2);
+        boolean first = true;
+        for (Field field : dt_.getFields()) {
+            compileFieldNameTest(3, field.getName(), first);
+            compileReadField(4, field, null);
+            first = false;
+        }
+        compileObjectEnd(2, dt_.getName(), first);
+        final MutableList<String> args = Lists.mutable.of();
+        for (Field field : dt_.getFields()) {
+            args.add(isCollectionType(field) ? field.getName() + ".toImmutable()" : field.getName());
+        }
+        compileReturnNew(2, dt_.getName(), args);
+        out(1, "}");
+
+        compileJsonSerializers(1, dt_.getName(), "Json", WRITE, READ);
+    }
+
+    public void compileDeltaJson() {
+        final Field key = getKeyField();
+
+        out();
+        out(2, "public void writeJson(final JsonGenerator generator) throws IOException {");
+        out(3, "generator.writeStartObject();");
+        out(3, "generator.writeStringField(\"deltaType\", deltaType_.name());");
+        for (Field field : dt_.getFields()) {
+            out(3, "generator.writeFieldName(\"" + field.getName() + "\");");
+            compileWriteField(3, field, field.getName() + "_", WRITE);
+            if (field == key) {
+                continue;
+            }
+            if (isPrimitiveCollection(field)) {
+                out(3, "generator.writeFieldName(\"" + removedName(field) + "\");");
+                compileWritePrimitiveSet(3, field.getTypeArgs().get(0), removedName(field) + "_");
+            }
+            out(3, "generator.writeBooleanField(\"" + methodNameForHas(field) + "\", " + methodNameForHas(field) + "_);");
+        }
+        out(3, "generator.writeEndObject();");
+        out(2, "}");
+
+        out();
+        out(2, "public static " + dt_.getName() + ".Delta readJson(final JsonParser parser) throws IOException {");
+        out(3, "DeltaType deltaType = null;");
+        for (Field field : dt_.getFields()) {
+            compileReadFieldLocal(3, field, true);
+            if (field != key) {
+                out(3, "boolean " + methodNameForHas(field) + " = false;");
+            }
+        }
+        compileObjectStart(3);
+        compileFieldNameTest(4, "deltaType", true);
+        out(5, "deltaType = DeltaType.valueOf(parser.getText());");
+        for (Field field : dt_.getFields()) {
+            compileFieldNameTest(4, field.getName(), false);
+            compileReadField(5, field, READ);
+            if (field == key) {
+                continue;
+            }
+            if (isPrimitiveCollection(field)) {
+                compileFieldNameTest(4, removedName(field), false);
+                compileReadPrimitiveSet(5, field.getTypeArgs().get(0), removedName(field));
+            }
+            compileFieldNameTest(4, methodNameForHas(field), false);
+            out(5, methodNameForHas(field) + " = parser.getBooleanValue();");
+        }
+        compileObjectEnd(3, dt_.getName() + ".Delta", false);
+        out(3, "if (deltaType == null) {");
+        out(4, "throw new JsonParseException(\"Missing deltaType of " + dt_.getName() + ".Delta\", parser.getCurrentLocation());");
+        out(3, "}");
+        compileReturnNew(3, dt_.getName() + ".Delta", deltaArguments());
+        out(2, "}");
+
+        for (Field field : dt_.getFields()) {
+            if (isPairDeltaList(field)) {
+                compileReadPairDelta(field);
+            }
+        }
+
+        compileJsonSerializers(2, dt_.getName() + ".Delta", "Json", WRITE, READ);
+    }
+
+    /**
+     * Compiles writeSparseJson and readSparseJson, which carry only the fields the delta has. A collection field is an
+     * object of up to three groups, "+" for added, "~" for updated and "-" for deleted entries. Set groups are arrays
+     * of keys, map groups are keyed like the map and a model map's entries hold the nested sparse delta. Primitive
+     * collections carry their values in "+" and their removed keys in "-".
+     */
+    public void compileSparseDeltaJson() {
+        final Field key = getKeyField();
+
+        out();
+        out(2, "public void " + SPARSE_WRITE + "(final JsonGenerator generator) throws IOException {");
+        out(3, "generator.writeStartObject();");
+        out(3, "generator.writeStringField(\"deltaType\", deltaType_.name());");
+        out(3, "generator.writeFieldName(\"" + key.getName() + "\");");
+        compileWriteField(3, key, key.getName() + "_", SPARSE_WRITE);
+        for (Field field : dt_.getFields()) {
+            if (field == key) {
+                continue;
+            }
+            final String value = field.getName() + "_";
+            out(3, "if (" + methodNameForHas(field) + "_) {");
+            out(4, "generator.writeFieldName(\"" + field.getName() + "\");");
+            if (isPairDeltaList(field)) {
+                out(4, sparseMethod("write", field) + "(generator, " + value + ");");
+            }
+            else if (isPrimitiveCollection(field)) {
+                out(4, "generator.writeStartObject();");
+                out(4, "generator.writeFieldName(\"+\");");
+                compileWriteCollection(4, field, value);
+                out(4, "generator.writeFieldName(\"-\");");
+                compileWritePrimitiveSet(4, field.getTypeArgs().get(0), removedName(field) + "_");
+                out(4, "generator.writeEndObject();");
+            }
+            else {
+                compileWriteField(4, field, value, SPARSE_WRITE);
+            }
+            out(3, "}");
+        }
+        out(3, "generator.writeEndObject();");
+        out(2, "}");
+
+        out();
+        out(2, "public static " + dt_.getName() + ".Delta " + SPARSE_READ + "(final JsonParser parser) throws IOException {");
+        out(3, "DeltaType deltaType = null;");
+        for (Field field : dt_.getFields()) {
+            compileReadFieldLocal(3, field, true);
+            if (field != key) {
+                out(3, "boolean " + methodNameForHas(field) + " = false;");
+            }
+        }
+        compileObjectStart(3);
+        compileFieldNameTest(4, "deltaType", true);
+        out(5, "deltaType = DeltaType.valueOf(parser.getText());");
+        for (Field field : dt_.getFields()) {
+            compileFieldNameTest(4, field.getName(), false);
+            if (field == key) {
+                compileReadField(5, field, SPARSE_READ);
+                continue;
+            }
+            if (isPairDeltaList(field)) {
+                out(5, sparseMethod("read", field) + "(parser, " + field.getName() + ");");
+            }
+            else if (isPrimitiveCollection(field)) {
+                out(5, "while (parser.nextToken() == JsonToken.FIELD_NAME) {");
+                out(6, "final String group__ = parser.getCurrentName();");
+                out(6, "parser.nextToken();");
+                out(6, "if (\"+\".equals(group__)) {");
+                compileReadField(7, field, null);
+                out(6, "}");
+                out(6, "else if (\"-\".equals(group__)) {");
+                compileReadPrimitiveSet(7, field.getTypeArgs().get(0), removedName(field));
+                out(6, "}");
+                out(6, "else {");
+                out(7, "parser.skipChildren();");
+                out(6, "}");
+                out(5, "}");
+            }
+            else {
+                compileReadField(5, field, SPARSE_READ);
+            }
+            out(5, methodNameForHas(field) + " = true;");
+        }
+        compileObjectEnd(3, dt_.getName() + ".Delta", false);
+        out(3, "if (deltaType == null) {");
+        out(4, "throw new JsonParseException(\"Missing deltaType of " + dt_.getName() + ".Delta\", parser.getCurrentLocation());");
+        out(3, "}");
+        compileReturnNew(3, dt_.getName() + ".Delta", deltaArguments());
+        out(2, "}");
+
+        for (Field field : dt_.getFields()) {
+            if (isPairDeltaList(field)) {
+                compileWriteSparsePairDeltas(field);
+                compileReadSparsePairDeltas(field);
+            }
+        }
+
+        compileJsonSerializers(2, dt_.getName() + ".Delta", "SparseJson", SPARSE_WRITE, SPARSE_READ);
+    }
+
+    /**
+     * Compiles the builder's applySparseJson methods, which stream a sparse JSON delta into the builder with the
+     * semantics of applyDelta without creating the delta. The deltaType and key must lead the object, as
+     * writeSparseJson writes them, so the key can be checked and nested builders chosen before their fields are read.
+     */
+    public void compileBuilderJson() {
+        final String builder = dt_.getName() + ".Builder";
+
+        out();
+        out(2, "@Override");
+        out(2, "public " + builder + " applySparseJson(final JsonParser parser) throws IOException {");
+        out(3, "if (parser.getCurrentToken() != JsonToken.START_OBJECT && parser.nextToken() != JsonToken.START_OBJECT) {");
+        out(4, "throw new JsonParseException(\"Expected " + dt_.getName() + ".Delta object\", parser.getCurrentLocation());");
+        out(3, "}");
+        compileReadSparseHeader(3, dt_.getName(), "deltaType__", "key__");
+        out(3, "if (!getKey().equals(key__)) {");
+        out(4, "throw new RuntimeException(\"Keys don't match \" + getKey() + \" \" + key__);");
+        out(3, "}");
+        out(3, "return applySparseJson(deltaType__, parser);");
+        out(2, "}");
+
+        out();
+        out(2, "/**");
+        out(2, " * Applies the fields following the deltaType and key of a sparse JSON delta");
+        out(2, " */");
+        out(2, "public " + builder + " applySparseJson(final DeltaType deltaType, final JsonParser parser) throws IOException {");
+        out(3, LDT + " = deltaType;");
+        out(3, "JsonToken token__ = parser.nextToken();");
+        out(3, "if (deltaType == DeltaType.DELETE) {");
+        out(4, "reset();");
+        out(4, "for (; token__ == JsonToken.FIELD_NAME; token__ = parser.nextToken()) {");
+        out(5, "parser.nextToken();");
+        out(5, "parser.skipChildren();");
+        out(4, "}");
+        out(3, "}");
+        out(3, "for (; token__ == JsonToken.FIELD_NAME; token__ = parser.nextToken()) {");
+        out(4, "final String name__ = parser.getCurrentName();");
+        out(4, "parser.nextToken();");
+        boolean first = true;
+        for (Field field : dt_.getFields()) {
+            if (field.getModifier() != FieldModifier.val) {
+                continue;
+            }
+            compileFieldNameTest(4, field.getName(), first);
+            first = false;
+            if (isOverlaid(field)) {
+                out(5, sparseMethod("apply", field) + "(parser);");
+                continue;
+            }
+            out(5, "initForUpdate(" + BF + "." + field.getName() + ");");
+            if (isPrimitiveCollection(field)) {
+                compileApplySparsePrimitiveCollection(5, field);
+            }
+            else if (isTypeMutable(field.getTypeName())) {
+                out(5, "if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {");
+                out(6, field.getName() + "_ = null;");
+                out(5, "}");
+                out(5, "else {");
+                compileReadSparseHeader(6, field.getTypeName(), "deltaType__", "key__");
+                out(6, "if (" + field.getName() + "_ == null || !" + field.getName() + "_.getKey().equals(key__)) {");
+                out(7, field.getName() + "_ = " + field.getTypeName() + ".newBuilder(key__);");
+                out(6, "}");
+                out(6, field.getName() + "_.applySparseJson(deltaType__, parser);");
+                out(5, "}");
+            }
+            else if (field.isUnboxed()) {
+                out(5, field.getName() + "_ = " + readValue(field.getTypeName(), null) + ";");
+            }
+            else {
+                out(5, field.getName() + "_ = " + readNullableValue(field.getTypeName(), null) + ";");
+            }
+        }
+        compileObjectEnd(3, dt_.getName() + ".Delta", first);
+        out(3, "return this;");
+        out(2, "}");
+
+        for (Field field : dt_.getFields()) {
+            if (isOverlaid(field)) {
+                compileApplySparsePairDeltas(field);
+            }
+        }
+    }
+
+    /**
+     * Reads the leading deltaType and key of the sparse delta object at the parser into the named locals
+     */
+    private void compileReadSparseHeader(final int tabs, final String typeName, final String deltaType, final String keyName) {
+        final Field key = getKeyField(cu_.getDeclaredTypesMap().get(typeName));
+        out(tabs, "if (parser.nextToken() != JsonToken.FIELD_NAME || !\"deltaType\".equals(parser.getCurrentName())) {");
+        out(tabs + 1, "throw new JsonParseException(\"Expected deltaType first in " + typeName + ".Delta\", parser.getCurrentLocation());");
+        out(tabs, "}");
+        out(tabs, "parser.nextToken();");
+        out(tabs, "final DeltaType " + deltaType + " = DeltaType.valueOf(parser.getText());");
+        out(tabs, "if (parser.nextToken() != JsonToken.FIELD_NAME || !\"" + key.getName() + "\".equals(parser.getCurrentName())) {");
+        out(tabs + 1, "throw new JsonParseException(\"Expected " + key.getName() + " after deltaType in " + typeName + ".Delta\", parser.getCurrentLocation());");
+        out(tabs, "}");
+        out(tabs, "parser.nextToken();");
+        out(tabs, "final " + key.getJavaTypeName() + " " + keyName + " = " + readValue(key.getTypeName(), null) + ";");
+    }
+
+    /**
+     * Primitive collections hold disjoint added values and removed keys, so the groups apply in the order read
+     */
+    private void compileApplySparsePrimitiveCollection(final int tabs, final Field field) {
+        final String name = field.getName();
+        final String remove = field.getFieldTypeCategory() == FieldTypeCategory.Set ? "remove" : "removeKey";
+        out(tabs, "final Mutable" + CompilerUtil.getPrimitiveCollectionType(field) + " " + name + " = " + name + "_;");
+        out(tabs, "while (parser.nextToken() == JsonToken.FIELD_NAME) {");
+        out(tabs + 1, "final String group__ = parser.getCurrentName();");
+        out(tabs + 1, "parser.nextToken();");
+        out(tabs + 1, "if (\"+\".equals(group__)) {");
+        compileReadField(tabs + 2, field, null);
+        out(tabs + 1, "}");
+        out(tabs + 1, "else if (\"-\".equals(group__)) {");
+        compileArrayStart(tabs + 2, name);
+        out(tabs + 4, name + "." + remove + "(" + readValue(field.getTypeArgs().get(0), null) + ");");
+        compileArrayEnd(tabs + 2, name);
+        out(tabs + 1, "}");
+        out(tabs + 1, "else {");
+        out(tabs + 2, "parser.skipChildren();");
+        out(tabs + 1, "}");
+        out(tabs, "}");
+    }
+
+    /**
+     * Compiles the builder method applying the sparse groups of an overlaid collection field entry by entry, to the
+     * materialized collection once the field has been updated and to the overlay before
+     */
+    private void compileApplySparsePairDeltas(final Field field) {
+        final String name = field.getName();
+        final String keyType = field.getTypeArgs().get(0);
+        out();
+        out(2, "private void " + sparseMethod("apply", field) + "(final JsonParser parser) throws IOException {");
+        out(3, "final boolean updated__ = updated(" + BF + "." + name + ");");
+        compileObjectStart(3);
+        out(4, "final DeltaType deltaType__ = \"+\".equals(name__) ? DeltaType.ADD : \"~\".equals(name__) ? DeltaType.UPDATE : \"-\".equals(name__) ? DeltaType.DELETE : null;");
+        out(4, "if (deltaType__ == null) {");
+        out(5, "parser.skipChildren();");
+        out(4, "}");
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            out(4, "else {");
+            compileArrayStart(5, name);
+            out(7, "final " + javaTypeName(keyType) + " key__ = " + readValue(keyType, null) + ";");
+            out(7, "if (deltaType__ == DeltaType.DELETE) {");
+            compileApplySparseEdit(8, field, "remove", null);
+            out(7, "}");
+            out(7, "else {");
+            compileApplySparseEdit(8, field, "add", null);
+            out(7, "}");
+            compileArrayEnd(5, name);
+            out(4, "}");
+        }
+        else {
+            final boolean model = isMapValueTypeMutable(field);
+            if (!model) {
+                out(4, "else if (deltaType__ == DeltaType.DELETE) {");
+                compileArrayStart(5, name);
+                out(7, "final " + javaTypeName(keyType) + " key__ = " + readValue(keyType, null) + ";");
+                compileApplySparseEdit(7, field, "remove", null);
+                compileArrayEnd(5, name);
+                out(4, "}");
+            }
+            out(4, "else if (parser.getCurrentToken() == JsonToken.START_" + (isFieldNameKey(keyType) ? "OBJECT" : "ARRAY") + ") {");
+            if (isFieldNameKey(keyType)) {
+                out(5, "while (parser.nextToken() == JsonToken.FIELD_NAME) {");
+                out(6, "final " + javaTypeName(keyType) + " key__ = " + parseFieldName(keyType) + ";");
+                out(6, "parser.nextToken();");
+            }
+            else {
+                out(5, "while (parser.nextToken() == JsonToken.START_ARRAY) {");
+                out(6, "parser.nextToken();");
+                out(6, "final " + javaTypeName(keyType) + " key__ = " + readValue(keyType, null) + ";");
+                out(6, "parser.nextToken();");
+            }
+            if (model) {
+                compileApplySparseModelEntry(6, field);
+            }
+            else {
+                compileApplySparseEdit(6, field, "put", readNullableValue(field.getTypeArgs().get(1), null));
+            }
+            if (!isFieldNameKey(keyType)) {
+                out(6, "parser.nextToken();");
+            }
+            out(5, "}");
+            out(4, "}");
+            out(4, "else if (parser.getCurrentToken() != JsonToken.VALUE_NULL) {");
+            out(5, "throw new JsonParseException(\"Unexpected \" + parser.getCurrentToken() + \" in " + name + "\", parser.getCurrentLocation());");
+            out(4, "}");
+        }
+        compileObjectLoopEnd(3, name);
+        out(3, "markDirty(" + BF + "." + name + ");");
+        out(2, "}");
+    }
+
+    /**
+     * A model map entry is removed by the deleted group, otherwise its nested sparse delta is applied to the entry's
+     * builder when it has the delta's key, or to a new builder replacing it
+     */
+    private void compileApplySparseModelEntry(final int tabs, final Field field) {
+        final String name = field.getName();
+        final String valueType = field.getTypeArgs().get(1);
+        out(tabs, "if (deltaType__ == DeltaType.DELETE) {");
+        compileApplySparseEdit(tabs + 1, field, "remove", null);
+        out(tabs + 1, "parser.skipChildren();");
+        out(tabs, "}");
+        out(tabs, "else if (parser.getCurrentToken() != JsonToken.VALUE_NULL) {");
+        out(tabs + 1, "final " + valueType + ".Builder builder__ = updated__ ? " + name + "_.get(key__) : " + name + OVERLAY + "().get(key__);");
+        compileReadSparseHeader(tabs + 1, valueType, "valueDeltaType__", "valueKey__");
+        out(tabs + 1, "if (builder__ == null || !builder__.getKey().equals(valueKey__)) {");
+        out(tabs + 2, "final " + valueType + ".Builder newBuilder__ = " + valueType + ".newBuilder(valueKey__);");
+        compileApplySparseEdit(tabs + 2, field, "put", "newBuilder__");
+        out(tabs + 2, "newBuilder__.applySparseJson(valueDeltaType__, parser);");
+        out(tabs + 1, "}");
+        out(tabs + 1, "else {");
+        out(tabs + 2, "builder__.applySparseJson(valueDeltaType__, parser);");
+        out(tabs + 1, "}");
+        out(tabs, "}");
+    }
+
+    /**
+     * Edits the key__ entry of the materialized collection once the field has been updated, otherwise of the overlay
+     */
+    private void compileApplySparseEdit(final int tabs, final Field field, final String edit, final String value) {
+        final String name = field.getName();
+        final String args = value == null ? "key__" : "key__, " + value;
+        final String mutableEdit = "remove".equals(edit) && field.getFieldTypeCategory() == FieldTypeCategory.Map ? "removeKey" : edit;
+        out(tabs, "if (updated__) {");
+        out(tabs + 1, name + "_." + mutableEdit + "(" + args + ");");
+        out(tabs, "}");
+        out(tabs, "else {");
+        out(tabs + 1, name + OVERLAY + "()." + edit + "(" + args + ");");
+        out(tabs, "}");
+    }
+
+    private void compileWriteSparsePairDeltas(final Field field) {
+        out();
+        out(2, "private static void " + sparseMethod("write", field) + "(final JsonGenerator generator, final " + getDeltaFieldType(field) + " deltas) throws IOException {");
+        out(3, "generator.writeStartObject();");
+        compileWriteSparseGroup(3, field, "ADD", "+");
+        compileWriteSparseGroup(3, field, "UPDATE", "~");
+        compileWriteSparseGroup(3, field, "DELETE", "-");
+        out(3, "generator.writeEndObject();");
+        out(2, "}");
+    }
+
+    private void compileWriteSparseGroup(final int tabs, final Field field, final String deltaType, final String group) {
+        final String keyType = field.getTypeArgs().get(0);
+        final boolean keysOnly = isSparseKeysOnly(field, deltaType);
+        final boolean object = !keysOnly && isFieldNameKey(keyType);
+        final String open = deltaType.toLowerCase() + "__";
+        out(tabs, "boolean " + open + " = false;");
+        out(tabs, "for (final " + pairDeltaType(field) + " e__ : deltas) {");
+        out(tabs + 1, "if (e__.getDeltaType() != DeltaType." + deltaType + ") {");
+        out(tabs + 2, "continue;");
+        out(tabs + 1, "}");
+        out(tabs + 1, "if (!" + open + ") {");
+        out(tabs + 2, "generator.writeFieldName(\"" + group + "\");");
+        out(tabs + 2, "generator.writeStart" + (object ? "Object" : "Array") + "();");
+        out(tabs + 2, open + " = true;");
+        out(tabs + 1, "}");
+        if (keysOnly) {
+            compileWriteValue(tabs + 1, keyType, "e__.getKey()", null);
+        }
+        else if (object) {
+            out(tabs + 1, "generator.writeFieldName(" + fieldNameOf(keyType, "e__.getKey()") + ");");
+            compileWriteSparseValue(tabs + 1, field);
+        }
+        else {
+            out(tabs + 1, "generator.writeStartArray();");
+            compileWriteValue(tabs + 1, keyType, "e__.getKey()", null);
+            compileWriteSparseValue(tabs + 1, field);
+            out(tabs + 1, "generator.writeEndArray();");
+        }
+        out(tabs, "}");
+        out(tabs, "if (" + open + ") {");
+        out(tabs + 1, "generator.writeEnd" + (object ? "Object" : "Array") + "();");
+        out(tabs, "}");
+    }
+
+    private void compileWriteSparseValue(final int tabs, final Field field) {
+        if (!isMapValueTypeMutable(field)) {
+            compileWriteValue(tabs, field.getTypeArgs().get(1), "e__.getValue()", null);
+            return;
+        }
+        out(tabs, "if (e__.getValue() != null) {");
+        compileWriteValue(tabs + 1, field.getTypeArgs().get(1), "e__.getValue()", SPARSE_WRITE);
+        out(tabs, "}");
+        out(tabs, "else {");
+        out(tabs + 1, "generator.writeNull();");
+        out(tabs, "}");
+    }
+
+    private void compileReadSparsePairDeltas(final Field field) {
+        final String keyType = field.getTypeArgs().get(0);
+        final String elementType = pairDeltaType(field);
+        out();
+        out(2, "private static void " + sparseMethod("read", field) + "(final JsonParser parser, final MutableList<" + elementType + "> deltas) throws IOException {");
+        compileObjectStart(3);
+        out(4, "final DeltaType deltaType = \"+\".equals(name__) ? DeltaType.ADD : \"~\".equals(name__) ? DeltaType.UPDATE : \"-\".equals(name__) ? DeltaType.DELETE : null;");
+        out(4, "if (deltaType == null) {");
+        out(5, "parser.skipChildren();");
+        out(4, "}");
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            out(4, "else {");
+            compileArrayStart(5, field.getName());
+            out(7, "deltas.add(new " + elementType + "(deltaType, " + readValue(keyType, null) + "));");
+            compileArrayEnd(5, field.getName());
+            out(4, "}");
+            compileObjectLoopEnd(3, field.getName());
+            out(2, "}");
+            return;
+        }
+        if (!isMapValueTypeMutable(field)) {
+            out(4, "else if (deltaType == DeltaType.DELETE) {");
+            compileArrayStart(5, field.getName());
+            out(7, "deltas.add(new " + elementType + "(deltaType, " + readValue(keyType, null) + ", null));");
+            compileArrayEnd(5, field.getName());
+            out(4, "}");
+        }
+        final String value = readNullableValue(field.getTypeArgs().get(1), SPARSE_READ);
+        out(4, "else if (parser.getCurrentToken() == JsonToken.START_" + (isFieldNameKey(keyType) ? "OBJECT" : "ARRAY") + ") {");
+        if (isFieldNameKey(keyType)) {
+            out(5, "while (parser.nextToken() == JsonToken.FIELD_NAME) {");
+            out(6, "final " + javaTypeName(keyType) + " key__ = " + parseFieldName(keyType) + ";");
+            out(6, "parser.nextToken();");
+            out(6, "deltas.add(new " + elementType + "(deltaType, key__, " + value + "));");
+            out(5, "}");
+        }
+        else {
+            out(5, "while (parser.nextToken() == JsonToken.START_ARRAY) {");
+            out(6, "parser.nextToken();");
+            out(6, "final " + javaTypeName(keyType) + " key__ = " + readValue(keyType, null) + ";");
+            out(6, "parser.nextToken();");
+            out(6, "deltas.add(new " + elementType + "(deltaType, key__, " + value + "));");
+            out(6, "parser.nextToken();");
+            out(5, "}");
+        }
+        out(4, "}");
+        out(4, "else if (parser.getCurrentToken() != JsonToken.VALUE_NULL) {");
+        out(5, "throw new JsonParseException(\"Unexpected \" + parser.getCurrentToken() + \" in " + field.getName() + "\", parser.getCurrentLocation());");
+        out(4, "}");
+        compileObjectLoopEnd(3, field.getName());
+        out(2, "}");
+    }
+
+    /**
+     * Set groups and the deleted group of a value map hold only the keys
+     */
+    private boolean isSparseKeysOnly(final Field field, final String deltaType) {
+        return field.getFieldTypeCategory() == FieldTypeCategory.Set || (!isMapValueTypeMutable(field) && "DELETE".equals(deltaType));
+    }
+
+    private String pairDeltaType(final Field field) {
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            return "KeyDelta<" + javaTypeName(field.getTypeArgs().get(0)) + ">";
+        }
+        return getDeltaFieldTypeForMap(field);
+    }
+
+    private String sparseMethod(final String prefix, final Field field) {
+        return prefix + field.getName().substring(0, 1).toUpperCase() + field.getName().substring(1) + "SparseJson__";
+    }
+
+    /**
+     * The arguments of the delta constructor in terms of the locals declared by compileReadFieldLocal
+     */
+    private MutableList<String> deltaArguments() {
+        final Field key = getKeyField();
+        final MutableList<String> args = Lists.mutable.of("deltaType");
+        for (Field field : dt_.getFields()) {
+            args.add(isCollectionType(field) ? field.getName() + ".toImmutable()" : field.getName());
+            if (field == key) {
+                continue;
+            }
+            if (isPrimitiveCollection(field)) {
+                args.add(removedName(field) + ".toImmutable()");
+            }
+            args.add(methodNameForHas(field));
+        }
+        return args;
+    }
+
+    private void compileJsonSerializers(final int tabs, final String type, final String prefix, final String writer, final String reader) {
+        out();
+        out(tabs, "public static final class " + prefix + "Serializer__ extends JsonSerializer<" + type + "> {");
+        out();
+        out(tabs + 1, "@Override");
+        out(tabs + 1, "public void serialize(final " + type + " value, final JsonGenerator generator, final SerializerProvider provider) throws IOException {");
+        out(tabs + 2, "value." + writer + "(generator);");
+        out(tabs + 1, "}");
+        out(tabs, "}");
+        out();
+        out(tabs, "public static final class " + prefix + "Deserializer__ extends JsonDeserializer<" + type + "> {");
+        out();
+        out(tabs + 1, "@Override");
+        out(tabs + 1, "public " + type + " deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {");
+        out(tabs + 2, "return " + type + "." + reader + "(parser);");
+        out(tabs + 1, "}");
+        out(tabs, "}");
+    }
+
+    /**
+     * Compiles the method reading one pair delta object of a delta's collection field
+     */
+    private void compileReadPairDelta(final Field field) {
+        final boolean map = field.getFieldTypeCategory() == FieldTypeCategory.Map;
+        final String keyType = field.getTypeArgs().get(0);
+        final String elementType = pairDeltaType(field);
+
+        out();
+        out(2, "private static " + elementType + " " + pairDeltaReader(field) + "(final JsonParser parser) throws IOException {");
+        out(3, "DeltaType deltaType = null;");
+        out(3, javaTypeName(keyType) + " key = null;");
+        if (map) {
+            out(3, valueType(field.getTypeArgs().get(1), true) + " value = null;");
+        }
+        compileObjectStart(3);
+        compileFieldNameTest(4, "deltaType", true);
+        out(5, "deltaType = DeltaType.valueOf(parser.getText());");
+        compileFieldNameTest(4, "key", false);
+        out(5, "key = " + readValue(keyType, null) + ";");
+        if (map) {
+            compileFieldNameTest(4, "value", false);
+            out(5, "value = " + readNullableValue(field.getTypeArgs().get(1), READ) + ";");
+        }
+        compileObjectEnd(3, elementType, false);
+        out(3, "return new " + elementType + "(deltaType, key" + (map ? ", value" : "") + ");");
+        out(2, "}");
+    }
+
+    private String pairDeltaReader(final Field field) {
+        return "read" + field.getName().substring(0, 1).toUpperCase() + field.getName().substring(1) + "Json__";
+    }
+
+    private boolean isPairDeltaList(final Field field) {
+        return isCollectionType(field) && !field.isUnboxed() && field.getModifier() != FieldModifier.key;
+    }
+
+    private void compileObjectStart(final int tabs) {
+        out(tabs, "JsonToken token__ = parser.getCurrentToken();");
+        out(tabs, "if (token__ == JsonToken.START_OBJECT) {");
+        out(tabs + 1, "token__ = parser.nextToken();");
+        out(tabs, "}");
+        out(tabs, "for (; token__ == JsonToken.FIELD_NAME; token__ = parser.nextToken()) {");
+        out(tabs + 1, "final String name__ = parser.getCurrentName();");
+        out(tabs + 1, "parser.nextToken();");
+    }
+
+    private void compileFieldNameTest(final int tabs, final String name, final boolean first) {
+        if (!first) {
+            out(tabs, "}");
+        }
+        out(tabs, (first ? "if" : "else if") + " (\"" + name + "\".equals(name__)) {");
+    }
+
+    /**
+     * Closes the field loop opened by compileObjectStart, unknown fields are skipped
+     */
+    private void compileObjectEnd(final int tabs, final String type, final boolean noFields) {
+        if (noFields) {
+            out(tabs + 1, "parser.skipChildren();");
+        }
+        else {
+            out(tabs + 1, "}");
+            out(tabs + 1, "else {");
+            out(tabs + 2, "parser.skipChildren();");
+            out(tabs + 1, "}");
+        }
+        compileObjectLoopEnd(tabs, type);
+    }
+
+    private void compileObjectLoopEnd(final int tabs, final String type) {
+        out(tabs, "}");
+        out(tabs, "if (token__ != JsonToken.END_OBJECT) {");
+        out(tabs + 1, "throw new JsonParseException(\"Expected " + type + " object\", parser.getCurrentLocation());");
+        out(tabs, "}");
+    }
+
+    private void compileReturnNew(final int tabs, final String type, final MutableList<String> args) {
+        out(tabs, "return new " + type + "(");
+        for (int i = 0; i < args.size(); i++) {
+            out(tabs + 2, args.get(i) + (i + 1 == args.size() ? ");" : ","));
+        }
+    }
+
+    private void compileWriteField(final int tabs, final Field field, final String value, final String deltaWriter) {
+        final boolean delta = deltaWriter != null;
+        if (isCollectionType(field)) {
+            if (delta && isPairDeltaList(field)) {
+                compileWritePairDeltas(tabs, field, value);
+            }
+            else {
+                compileWriteCollection(tabs, field, value);
+            }
+            return;
+        }
+        if (field.isUnboxed() || (!delta && field.getModifier() == FieldModifier.key)) {
+            compileWriteValue(tabs, field.getTypeName(), value, deltaWriter);
+            return;
+        }
+        out(tabs, "if (" + value + " != null) {");
+        compileWriteValue(tabs + 1, field.getTypeName(), value, deltaWriter);
+        out(tabs, "}");
+        out(tabs, "else {");
+        out(tabs + 1, "generator.writeNull();");
+        out(tabs, "}");
+    }
+
+    private void compileWritePairDeltas(final int tabs, final Field field, final String value) {
+        final String keyType = field.getTypeArgs().get(0);
+        final boolean map = field.getFieldTypeCategory() == FieldTypeCategory.Map;
+        final String elementType = pairDeltaType(field);
+        out(tabs, "generator.writeStartArray();");
+        out(tabs, "for (final " + elementType + " e__ : " + value + ") {");
+        out(tabs + 1, "generator.writeStartObject();");
+        out(tabs + 1, "generator.writeStringField(\"deltaType\", e__.getDeltaType().name());");
+        out(tabs + 1, "generator.writeFieldName(\"key\");");
+        compileWriteValue(tabs + 1, keyType, "e__.getKey()", null);
+        if (map) {
+            out(tabs + 1, "if (e__.getValue() != null) {");
+            out(tabs + 2, "generator.writeFieldName(\"value\");");
+            compileWriteValue(tabs + 2, field.getTypeArgs().get(1), "e__.getValue()", WRITE);
+            out(tabs + 1, "}");
+        }
+        out(tabs + 1, "generator.writeEndObject();");
+        out(tabs, "}");
+        out(tabs, "generator.writeEndArray();");
+    }
+
+    private void compileWriteCollection(final int tabs, final Field field, final String value) {
+        final String keyType = field.getTypeArgs().get(0);
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            if (field.isUnboxed()) {
+                compileWritePrimitiveSet(tabs, keyType, value);
+                return;
+            }
+            out(tabs, "generator.writeStartArray();");
+            out(tabs, "for (final " + javaTypeName(keyType) + " e__ : " + value + ") {");
+            compileWriteValue(tabs + 1, keyType, "e__", null);
+            out(tabs, "}");
+            out(tabs, "generator.writeEndArray();");
+            return;
+        }
+        final String valueType = field.getTypeArgs().get(1);
+        if (field.isUnboxed()) {
+            out(tabs, "generator.writeStartObject();");
+            out(tabs, "for (final " + CompilerUtil.primitiveTypeName(keyType) + "Iterator it__ = " + value + ".keysView()." + CompilerUtil.primitiveJavaTypeName(keyType) + "Iterator(); it__.hasNext();) {");
+            out(tabs + 1, "final " + CompilerUtil.primitiveJavaTypeName(keyType) + " key__ = it__.next();");
+            out(tabs + 1, "generator.writeFieldName(" + fieldNameOf(keyType, "key__") + ");");
+            compileWriteValue(tabs + 1, valueType, value + ".get(key__)", null);
+            out(tabs, "}");
+            out(tabs, "generator.writeEndObject();");
+            return;
+        }
+        out(tabs, "generator.writeStart" + (isFieldNameKey(keyType) ? "Object" : "Array") + "();");
+        out(tabs, "for (final Pair<" + javaTypeName(keyType) + ", " + javaTypeName(valueType) + "> e__ : " + value + ".keyValuesView()) {");
+        if (isFieldNameKey(keyType)) {
+            out(tabs + 1, "generator.writeFieldName(" + fieldNameOf(keyType, "e__.getOne()") + ");");
+            compileWriteValue(tabs + 1, valueType, "e__.getTwo()", null);
+        }
+        else {
+            out(tabs + 1, "generator.writeStartArray();");
+            compileWriteValue(tabs + 1, keyType, "e__.getOne()", null);
+            compileWriteValue(tabs + 1, valueType, "e__.getTwo()", null);
+            out(tabs + 1, "generator.writeEndArray();");
+        }
+        out(tabs, "}");
+        out(tabs, "generator.writeEnd" + (isFieldNameKey(keyType) ? "Object" : "Array") + "();");
+    }
+
+    private void compileWritePrimitiveSet(final int tabs, final String typeName, final String value) {
+        out(tabs, "generator.writeStartArray();");
+        out(tabs, "for (final " + CompilerUtil.primitiveTypeName(typeName) + "Iterator it__ = " + value + "." + CompilerUtil.primitiveJavaTypeName(typeName) + "Iterator(); it__.hasNext();) {");
+        compileWriteValue(tabs + 1, typeName, "it__.next()", null);
+        out(tabs, "}");
+        out(tabs, "generator.writeEndArray();");
+    }
+
+    /**
+     * Writes the value, deltas of model types are written by the deltaWriter method
+     */
+    private void compileWriteValue(final int tabs, final String typeName, final String value, final String deltaWriter) {
+        if (isImported(typeName)) {
+            out(tabs, "generator.writeObject(" + value + ");");
+            return;
+        }
+        if (isEnumType(typeName)) {
+            out(tabs, "generator.writeString(" + value + ".name());");
+            return;
+        }
+        if (!isPrimitive(typeName)) {
+            out(tabs, value + "." + (deltaWriter != null && isTypeMutable(typeName) ? deltaWriter : WRITE) + "(generator);");
+            return;
+        }
+        switch (PrimitiveType.valueOf(typeName)) {
+        case String:
+            out(tabs, "generator.writeString(" + value + ");");
+            break;
+        case Boolean:
+            out(tabs, "generator.writeBoolean(" + value + ");");
+            break;
+        case Char:
+            out(tabs, "generator.writeString(String.valueOf(" + value + "));");
+            break;
+        case Byte:
+            out(tabs, "generator.writeNumber((int) " + value + ");");
+            break;
+        default:
+            out(tabs, "generator.writeNumber(" + value + ");");
+        }
+    }
+
+    /**
+     * Declares the local the field's value is read into, collections are read into a mutable collection
+     */
+    private void compileReadFieldLocal(final int tabs, final Field field, final boolean delta) {
+        final String name = field.getName();
+        if (isPrimitiveCollection(field)) {
+            out(tabs, "final Mutable" + CompilerUtil.getPrimitiveCollectionType(field) + " " + name + " = new " + getPrimitiveCollectionImpl(field) + "();");
+            if (delta) {
+                out(tabs, "final " + getPrimitiveKeyMutableSetType(field) + " " + removedName(field) + " = new " + getPrimitiveKeySetImpl(field) + "();");
+            }
+            return;
+        }
+        if (!isCollectionType(field)) {
+            final String type = delta ? getDeltaFieldType(field) : getFieldType(field);
+            out(tabs, type + " " + name + " = " + (field.isUnboxed() ? getUnboxedDefault(field) : "null") + ";");
+            return;
+        }
+        final String keyType = javaTypeName(field.getTypeArgs().get(0));
+        if (delta && isPairDeltaList(field)) {
+            out(tabs, "final MutableList<" + pairDeltaType(field) + "> " + name + " = Lists.mutable.of();");
+        }
+        else if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            out(tabs, "final MutableSet<" + keyType + "> " + name + " = Sets.mutable.of();");
+        }
+        else {
+            out(tabs, "final MutableMap<" + keyType + ", " + javaTypeName(field.getTypeArgs().get(1)) + "> " + name + " = Maps.mutable.of();");
+        }
+    }
+
+    private void compileReadField(final int tabs, final Field field, final String deltaReader) {
+        final boolean delta = deltaReader != null;
+        final String name = field.getName();
+        if (!isCollectionType(field)) {
+            if (field.isUnboxed()) {
+                out(tabs, name + " = " + readValue(field.getTypeName(), deltaReader) + ";");
+            }
+            else {
+                out(tabs, name + " = " + readNullableValue(field.getTypeName(), field.getModifier() != FieldModifier.key ? deltaReader : null) + ";");
+            }
+            return;
+        }
+        final String keyType = field.getTypeArgs().get(0);
+        if (delta && isPairDeltaList(field)) {
+            compileArrayStart(tabs, name);
+            out(tabs + 2, name + ".add(" + pairDeltaReader(field) + "(parser));");
+            compileArrayEnd(tabs, name);
+            return;
+        }
+        if (field.getFieldTypeCategory() == FieldTypeCategory.Set) {
+            if (field.isUnboxed()) {
+                compileReadPrimitiveSet(tabs, keyType, name);
+                return;
+            }
+            compileArrayStart(tabs, name);
+            out(tabs + 2, name + ".add(" + readValue(keyType, null) + ");");
+            compileArrayEnd(tabs, name);
+            return;
+        }
+        final String valueType = field.getTypeArgs().get(1);
+        if (field.isUnboxed() || isFieldNameKey(keyType)) {
+            out(tabs, "if (parser.getCurrentToken() == JsonToken.START_OBJECT) {");
+            out(tabs + 1, "while (parser.nextToken() == JsonToken.FIELD_NAME) {");
+            out(tabs + 2, "final " + (field.isUnboxed() ? CompilerUtil.primitiveJavaTypeName(keyType) : javaTypeName(keyType)) + " key__ = " + parseFieldName(keyType) + ";");
+            out(tabs + 2, "parser.nextToken();");
+            out(tabs + 2, name + ".put(key__, " + readValue(valueType, null) + ");");
+            out(tabs + 1, "}");
+            compileCollectionEnd(tabs, name, "object");
+            return;
+        }
+        out(tabs, "if (parser.getCurrentToken() == JsonToken.START_ARRAY) {");
+        out(tabs + 1, "while (parser.nextToken() == JsonToken.START_ARRAY) {");
+        out(tabs + 2, "parser.nextToken();");
+        out(tabs + 2, "final " + javaTypeName(keyType) + " key__ = " + readValue(keyType, null) + ";");
+        out(tabs + 2, "parser.nextToken();");
+        out(tabs + 2, name + ".put(key__, " + readValue(valueType, null) + ");");
+        out(tabs + 2, "parser.nextToken();");
+        out(tabs + 1, "}");
+        compileCollectionEnd(tabs, name, "array");
+    }
+
+    private void compileReadPrimitiveSet(final int tabs, final String typeName, final String name) {
+        compileArrayStart(tabs, name);
+        out(tabs + 2, name + ".add(" + readValue(typeName, null) + ");");
+        compileArrayEnd(tabs, name);
+    }
+
+    private void compileArrayStart(final int tabs, final String name) {
+        out(tabs, "if (parser.getCurrentToken() == JsonToken.START_ARRAY) {");
+        out(tabs + 1, "while (parser.nextToken() != JsonToken.END_ARRAY) {");
+    }
+
+    private void compileArrayEnd(final int tabs, final String name) {
+        out(tabs + 1, "}");
+        compileCollectionEnd(tabs, name, "array");
+    }
+
+    /**
+     * Closes the collection read, a null collection is read as empty
+     */
+    private void compileCollectionEnd(final int tabs, final String name, final String expected) {
+        out(tabs, "}");
+        out(tabs, "else if (parser.getCurrentToken() != JsonToken.VALUE_NULL) {");
+        out(tabs + 1, "throw new JsonParseException(\"Expected " + expected + " for " + name + "\", parser.getCurrentLocation());");
+        out(tabs, "}");
+    }
+
+    private String readNullableValue(final String typeName, final String deltaReader) {
+        return "parser.getCurrentToken() == JsonToken.VALUE_NULL ? null : " + readValue(typeName, deltaReader);
+    }
+
+    /**
+     * Reads the value, deltas of model types are read by the deltaReader method
+     */
+    private String readValue(final String typeName, final String deltaReader) {
+        if (isImported(typeName)) {
+            return "parser.readValueAs(" + typeName + ".class)";
+        }
+        if (isEnumType(typeName)) {
+            return typeName + ".valueOf(parser.getText())";
+        }
+        if (!isPrimitive(typeName)) {
+            if (deltaReader != null && isTypeMutable(typeName)) {
+                return typeName + ".Delta." + deltaReader + "(parser)";
+            }
+            return typeName + "." + READ + "(parser)";
+        }
+        switch (PrimitiveType.valueOf(typeName)) {
+        case String:
+            return "parser.getText()";
+        case Char:
+            return "parser.getText().charAt(0)";
+        default:
+            return "parser.get" + typeName + "Value()";
+        }
+    }
+
+    private String valueType(final String typeName, final boolean delta) {
+        return javaTypeName(typeName) + (delta && isTypeMutable(typeName) ? ".Delta" : "");
+    }
+
+    /**
+     * Map keys of primitive and enum types are written as JSON field names
+     */
+    private boolean isFieldNameKey(final String typeName) {
+        return isPrimitive(typeName) || isEnumType(typeName);
+    }
+
+    private String fieldNameOf(final String typeName, final String value) {
+        if (isEnumType(typeName)) {
+            return value + ".name()";
+        }
+        if (PrimitiveType.String.name().equals(typeName)) {
+            return value;
+        }
+        return "String.valueOf(" + value + ")";
+    }
+
+    private String parseFieldName(final String typeName) {
+        if (isEnumType(typeName)) {
+            return typeName + ".valueOf(parser.getCurrentName())";
+        }
+        switch (PrimitiveType.valueOf(typeName)) {
+        case String:
+            return "parser.getCurrentName()";
+        case Char:
+            return "parser.getCurrentName().charAt(0)";
+        case Int:
+            return "Integer.parseInt(parser.getCurrentName())";
+        default:
+            return typeName + ".parse" + typeName + "(parser.getCurrentName())";
+        }
+    }
+
+    private boolean isEnumType(final String typeName) {
+        return cu_.getDeclaredTypesMap().containsKey(typeName) && cu_.getDeclaredTypesMap().get(typeName).getDeclaredTypeCategory() == DeclaredTypeCategory.Enum;
+    }
+
+    private boolean isPrimitive(final String typeName) {
+        for (PrimitiveType type : PrimitiveType.values()) {
+            if (type.name().equals(typeName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isImported(final String typeName) {
+        for (ImportedType type : ImportedType.values()) {
+            if (type.name().equals(typeName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
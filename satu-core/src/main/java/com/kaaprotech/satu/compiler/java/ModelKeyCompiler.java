@@ -16,16 +16,25 @@
 
 package com.kaaprotech.satu.compiler.java;
 
+import static com.kaaprotech.satu.compiler.java.CompilerUtil.SORTED;
+
 import java.io.PrintWriter;
 
 import com.kaaprotech.satu.parser.CompilationUnit;
 import com.kaaprotech.satu.parser.DeclaredType;
 import com.kaaprotech.satu.parser.Field;
+import com.kaaprotech.satu.parser.FieldTypeCategory;
 
 public final class ModelKeyCompiler extends AbstractModelCompiler {
 
+    private final ModelCodecCompiler codec_;
+
+    private final ModelJsonCompiler json_;
+
     public ModelKeyCompiler(final CompilationUnit cu, final DeclaredType dt, final PrintWriter writer) {
         super(cu, dt, writer);
+        codec_ = new ModelCodecCompiler(this);
+        json_ = new ModelJsonCompiler(this);
     }
 
     public void compile() {
@@ -35,37 +44,61 @@ public final class ModelKeyCompiler extends AbstractModelCompiler {
         compileClassJavaDoc();
         compileClassStart();
         compileFieldMembers();
+        compileSortedViewMembers();
+        compileFingerprintMembers();
         compilePublicConstructor();
         compileGetters();
         compileIdentityMethods();
         compileToString();
         compileEquals();
         compileHashCode();
+        compileFingerprint();
         compileCompareTo();
+        compileSortedViewGetters();
+        codec_.compileCodec();
+        codec_.compileExternalForm(1, dt_.getName());
+        if (cu_.isJsonCompatible()) {
+            json_.compileJson();
+        }
         compileClassEnd();
     }
 
     public void compileImports() {
         out();
+        if (cu_.isJsonCompatible()) {
+            out("import java.io.IOException;");
+        }
         out("import java.io.Serializable;");
+        out("import java.nio.ByteBuffer;");
         out();
 
-        out("import org.apache.commons.lang.builder.CompareToBuilder; ");
-        out("import org.apache.commons.lang.builder.HashCodeBuilder;");
+        out("import org.apache.commons.lang.ObjectUtils;");
         out("import org.apache.commons.lang.builder.ToStringBuilder;");
         out("import org.apache.commons.lang.builder.ToStringStyle;");
-        out("import org.apache.commons.lang.builder.EqualsBuilder;");
 
         out();
         out("import com.gs.collections.api.map.ImmutableMap;");
+        out("import com.gs.collections.api.map.MutableMap;");
         out("import com.gs.collections.api.set.ImmutableSet;");
+        out("import com.gs.collections.api.set.MutableSet;");
+        out("import com.gs.collections.api.tuple.Pair;");
         out("import com.gs.collections.impl.factory.Maps;");
         out("import com.gs.collections.impl.factory.Sets;");
 
+        compilePrimitiveCollectionImports();
+
         if (cu_.isJsonCompatible()) {
             out();
             out("import com.fasterxml.jackson.annotation.JsonIgnore;");
             out("import com.fasterxml.jackson.annotation.JsonProperty;");
+            out("import com.fasterxml.jackson.core.JsonGenerator;");
+            out("import com.fasterxml.jackson.core.JsonParseException;");
+            out("import com.fasterxml.jackson.core.JsonParser;");
+            out("import com.fasterxml.jackson.core.JsonToken;");
+            out("import com.fasterxml.jackson.databind.DeserializationContext;");
+            out("import com.fasterxml.jackson.databind.JsonDeserializer;");
+            out("import com.fasterxml.jackson.databind.JsonSerializer;");
+            out("import com.fasterxml.jackson.databind.SerializerProvider;");
         }
 
         out();
@@ -77,7 +110,7 @@ public final class ModelKeyCompiler extends AbstractModelCompiler {
     }
 
     public void compileClassStart() {
-        out("public final class " + dt_.getName() + " implements Identity<" + getKeyFieldType() + ">, Comparable<" + dt_.getName() + ">, Serializable {");
+        out("public final class " + dt_.getName() + " implements Identity<" + getKeyFieldType() + ">, Comparable<" + dt_.getName() + ">, Serializable" + getFingerprintedInterface() + " {");
         out();
         final long serialVersionUID = serialVersionUID();
         out(1, "private static final long serialVersionUID = " + serialVersionUID + "L;");
@@ -87,16 +120,74 @@ public final class ModelKeyCompiler extends AbstractModelCompiler {
         out();
         out(1, "@Override");
         out(1, "public int compareTo(final " + dt_.getName() + " rhs) {");
-        out(2, "return new CompareToBuilder()");
+        out(2, "if (rhs == this) {");
+        out(3, "return 0;");
+        out(2, "}");
+        if (dt_.getFields().isEmpty()) {
+            out(2, "return 0;");
+            out(1, "}");
+            return;
+        }
+        final Field last = dt_.getFields().getLast();
+        boolean declared = false;
         for (Field field : dt_.getFields()) {
+            final String comparison;
             if (isCollectionType(field)) {
-                out(4, ".append(" + field.getName() + "_.toSortedList().toArray(), rhs." + field.getName() + "_.toSortedList().toArray())");
+                comparison = "SatuUtil.compare(" + field.getName() + SORTED + "(), rhs." + field.getName() + SORTED + "())";
+            }
+            else {
+                comparison = "SatuUtil.compare(" + field.getName() + "_, rhs." + field.getName() + "_)";
+            }
+            if (field == last) {
+                out(2, "return " + comparison + ";");
             }
             else {
-                out(4, ".append(" + field.getName() + "_, rhs." + field.getName() + "_)");
+                out(2, (declared ? "" : "int ") + "cmp = " + comparison + ";");
+                out(2, "if (cmp != 0) {");
+                out(3, "return cmp;");
+                out(2, "}");
+                declared = true;
             }
         }
-        out(4, ".toComparison();");
         out(1, "}");
     }
+
+    /**
+     * Collection fields are compared by their sorted elements, the sorted view is computed on first use and cached as
+     * the key is immutable
+     */
+    private void compileSortedViewMembers() {
+        for (Field field : dt_.getFields().select(selectFieldsByFieldTypeCategory(FieldTypeCategory.Set, FieldTypeCategory.Map))) {
+            out();
+            out(1, "private transient volatile " + getSortedViewType(field) + " " + field.getName() + SORTED + ";");
+        }
+    }
+
+    private void compileSortedViewGetters() {
+        for (Field field : dt_.getFields().select(selectFieldsByFieldTypeCategory(FieldTypeCategory.Set, FieldTypeCategory.Map))) {
+            final String type = getSortedViewType(field);
+            out();
+            out(1, "private " + type + " " + field.getName() + SORTED + "() {");
+            out(2, type + " sorted = " + field.getName() + SORTED + ";");
+            out(2, "if (sorted == null) {");
+            if (isPrimitiveCollection(field)) {
+                out(3, "sorted = " + field.getName() + "_.toSortedArray();");
+            }
+            else {
+                out(3, "sorted = " + field.getName() + "_.toSortedList().toArray();");
+            }
+            out(3, field.getName() + SORTED + " = sorted;");
+            out(2, "}");
+            out(2, "return sorted;");
+            out(1, "}");
+        }
+    }
+
+    private String getSortedViewType(final Field field) {
+        if (!isPrimitiveCollection(field)) {
+            return "Object[]";
+        }
+        final String elementType = field.getFieldTypeCategory() == FieldTypeCategory.Map ? field.getTypeArgs().get(1) : field.getTypeArgs().get(0);
+        return CompilerUtil.primitiveJavaTypeName(elementType) + "[]";
+    }
 }
@@ -18,6 +18,11 @@ package com.kaaprotech.satu.parser;
 
 public class Annotation {
 
+    /**
+     * Set and Map fields annotated @Persistent are backed by persistent hash trie collections
+     */
+    public static final String PERSISTENT = "Persistent";
+
     private String name_;
 
     private String text_;
@@ -33,8 +33,22 @@ public final class CompilationUnit {
 
     private final boolean jsonCompatible_;
 
+    private final boolean primitiveFields_;
+
+    private final boolean fingerprints_;
+
     public CompilationUnit(boolean jsonCompatible) {
+        this(jsonCompatible, false);
+    }
+
+    public CompilationUnit(boolean jsonCompatible, boolean primitiveFields) {
+        this(jsonCompatible, primitiveFields, false);
+    }
+
+    public CompilationUnit(boolean jsonCompatible, boolean primitiveFields, boolean fingerprints) {
         jsonCompatible_ = jsonCompatible;
+        primitiveFields_ = primitiveFields;
+        fingerprints_ = fingerprints;
     }
 
     public void setPackageDeclaration(String packageDeclaration) {
@@ -69,4 +83,12 @@ public final class CompilationUnit {
     public boolean isJsonCompatible() {
         return jsonCompatible_;
     }
+
+    public boolean isPrimitiveFields() {
+        return primitiveFields_;
+    }
+
+    public boolean isFingerprints() {
+        return fingerprints_;
+    }
 }
@@ -31,6 +31,8 @@ public final class Field {
 
     private String initializer_;
 
+    private boolean unboxed_;
+
     private final MutableList<String> typeArguments_ = Lists.mutable.of();
 
     private final MutableList<Annotation> annotations_ = Lists.mutable.of();
@@ -86,6 +88,17 @@ public final class Field {
         initializer_ = Initializer;
     }
 
+    /**
+     * True if the field is stored as a Java primitive rather than its wrapper class
+     */
+    public boolean isUnboxed() {
+        return unboxed_;
+    }
+
+    public void setUnboxed(final boolean unboxed) {
+        unboxed_ = unboxed;
+    }
+
     public MutableList<String> getTypeArgs() {
         return typeArguments_;
     }
@@ -101,4 +114,16 @@ public final class Field {
     public void addAnnotation(final Annotation annotation) {
         annotations_.add(annotation);
     }
+
+    public boolean isPersistent() {
+        if (fieldTypeCategory_ != FieldTypeCategory.Set && fieldTypeCategory_ != FieldTypeCategory.Map) {
+            return false;
+        }
+        for (Annotation annotation : annotations_) {
+            if (Annotation.PERSISTENT.equals(annotation.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
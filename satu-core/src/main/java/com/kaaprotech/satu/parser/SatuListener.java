@@ -48,7 +48,15 @@ public class SatuListener extends SatuBaseListener {
     private final MutableStack<Field> fieldStack_ = Stacks.mutable.of();
 
     public SatuListener(final boolean jsonCompatible) {
-        compilationUnit_ = new CompilationUnit(jsonCompatible);
+        this(jsonCompatible, false);
+    }
+
+    public SatuListener(final boolean jsonCompatible, final boolean primitiveFields) {
+        this(jsonCompatible, primitiveFields, false);
+    }
+
+    public SatuListener(final boolean jsonCompatible, final boolean primitiveFields, final boolean fingerprints) {
+        compilationUnit_ = new CompilationUnit(jsonCompatible, primitiveFields, fingerprints);
     }
 
     public CompilationUnit getCompilationUnit() {
@@ -125,7 +133,48 @@ public class SatuListener extends SatuBaseListener {
     @SuppressWarnings("unused")
     @Override
     public void exitFieldDeclaration(final FieldDeclarationContext ctx) {
-        typeStack_.peek().addField(fieldStack_.pop());
+        final Field field = fieldStack_.pop();
+        if (compilationUnit_.isPrimitiveFields()) {
+            field.setUnboxed(isUnboxable(field));
+        }
+        typeStack_.peek().addField(field);
+    }
+
+    /**
+     * Primitive val fields are unboxed unless they are strings or explicitly initialised to null, sets and maps
+     * are unboxed into primitive collections when all their type arguments are numeric or char primitives
+     */
+    private boolean isUnboxable(final Field field) {
+        if (field.getModifier() != FieldModifier.val) {
+            return false;
+        }
+        switch (field.getFieldTypeCategory()) {
+        case Primitive:
+            return PrimitiveType.valueOf(field.getTypeName()) != PrimitiveType.String && !"null".equals(field.getInitializer());
+        case Set:
+        case Map:
+            // Persistent collections are tries of boxed entries
+            if (field.isPersistent()) {
+                return false;
+            }
+            for (String typeArg : field.getTypeArgs()) {
+                if (!isUnboxableTypeArgument(typeArg)) {
+                    return false;
+                }
+            }
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private boolean isUnboxableTypeArgument(final String typeArg) {
+        for (PrimitiveType pt : PrimitiveType.values()) {
+            if (pt.name().equals(typeArg)) {
+                return pt != PrimitiveType.String && pt != PrimitiveType.Boolean;
+            }
+        }
+        return false;
     }
 
     @Override
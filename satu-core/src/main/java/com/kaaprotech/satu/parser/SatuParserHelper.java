@@ -29,6 +29,14 @@ import com.kaaprotech.satu.antlr4.SatuParser;
 public final class SatuParserHelper {
 
     public CompilationUnit parse(final String modelFile, final String encoding, final boolean jsonCompatible) {
+        return parse(modelFile, encoding, jsonCompatible, false);
+    }
+
+    public CompilationUnit parse(final String modelFile, final String encoding, final boolean jsonCompatible, final boolean primitiveFields) {
+        return parse(modelFile, encoding, jsonCompatible, primitiveFields, false);
+    }
+
+    public CompilationUnit parse(final String modelFile, final String encoding, final boolean jsonCompatible, final boolean primitiveFields, final boolean fingerprints) {
         final ANTLRFileStream charStream;
         try {
             charStream = new ANTLRFileStream(modelFile, encoding);
@@ -41,7 +49,7 @@ public final class SatuParserHelper {
         final SatuParser parser = new SatuParser(tokenStream);
         final ParserRuleContext tree = parser.compilationUnit();
         final ParseTreeWalker walker = new ParseTreeWalker();
-        final SatuListener listener = new SatuListener(jsonCompatible);
+        final SatuListener listener = new SatuListener(jsonCompatible, primitiveFields, fingerprints);
         walker.walk(listener, tree);
         return listener.getCompilationUnit();
     }
@@ -36,6 +36,10 @@ public final class CmdLineUtil {
 
     public static final String JSON = "json";
 
+    public static final String PRIMITIVE = "primitive";
+
+    public static final String FINGERPRINT = "fingerprint";
+
     public static String getCommandLineUsageMessage() {
         final HelpFormatter formatter = new HelpFormatter();
         final StringWriter sw = new StringWriter();
@@ -59,7 +63,9 @@ public final class CmdLineUtil {
         final String[] in = commandLine.getOptionValues(IN);
         final String out = commandLine.getOptionValue(OUT);
         final boolean json = commandLine.hasOption(JSON);
-        return new CommanndLineValuesImpl(in, out, json);
+        final boolean primitive = commandLine.hasOption(PRIMITIVE);
+        final boolean fingerprint = commandLine.hasOption(FINGERPRINT);
+        return new CommanndLineValuesImpl(in, out, json, primitive, fingerprint);
     }
 
     @SuppressWarnings("static-access")
@@ -72,6 +78,10 @@ public final class CmdLineUtil {
         options.addOption(out);
         final Option json = OptionBuilder.withArgName(JSON).hasArg(false).withDescription("Add json support to generated code").isRequired(false).create(JSON);
         options.addOption(json);
+        final Option primitive = OptionBuilder.withArgName(PRIMITIVE).hasArg(false).withDescription("Store primitive fields unboxed in generated code").isRequired(false).create(PRIMITIVE);
+        options.addOption(primitive);
+        final Option fingerprint = OptionBuilder.withArgName(FINGERPRINT).hasArg(false).withDescription("Cache hash codes and content fingerprints in generated code").isRequired(false).create(FINGERPRINT);
+        options.addOption(fingerprint);
         return options;
     }
 
@@ -83,10 +93,16 @@ public final class CmdLineUtil {
 
         private final boolean jsonCompatible_;
 
-        public CommanndLineValuesImpl(String[] modelFiles, String outDirectory, boolean jsonCompatible) {
+        private final boolean primitiveFields_;
+
+        private final boolean fingerprints_;
+
+        public CommanndLineValuesImpl(String[] modelFiles, String outDirectory, boolean jsonCompatible, boolean primitiveFields, boolean fingerprints) {
             modelFiles_ = modelFiles;
             outDirectory_ = outDirectory;
             jsonCompatible_ = jsonCompatible;
+            primitiveFields_ = primitiveFields;
+            fingerprints_ = fingerprints;
         }
 
         public String[] getModelFiles() {
@@ -100,6 +116,14 @@ public final class CmdLineUtil {
         public boolean isJsonCompatible() {
             return jsonCompatible_;
         }
+
+        public boolean isPrimitiveFields() {
+            return primitiveFields_;
+        }
+
+        public boolean isFingerprints() {
+            return fingerprints_;
+        }
     }
 
     public interface CommanndLineValues {
@@ -109,5 +133,9 @@ public final class CmdLineUtil {
         String getOutDirectory();
 
         boolean isJsonCompatible();
+
+        boolean isPrimitiveFields();
+
+        boolean isFingerprints();
     }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.jackson;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+import com.fasterxml.jackson.databind.type.MapType;
+import com.gs.collections.api.map.ImmutableMap;
+import com.gs.collections.impl.map.immutable.ImmutableUnifiedMap;
+import com.gs.collections.impl.map.mutable.UnifiedMap;
+
+/**
+ * Deserializes an ImmutableMap from a JSON object with the key and content deserializers resolved once for the
+ * property. Entries are buffered in an array until the object ends, when the map is hashed once at its final size
+ * rather than grown and then copied by toImmutable.
+ */
+class ImmutableMapDeserializer extends StdDeserializer<ImmutableMap<Object, Object>> implements ContextualDeserializer {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Up to this many entries gs-collections holds the map in fields rather than a hash table
+     */
+    private static final int SMALL_MAP_SIZE = 4;
+
+    private final MapType type_;
+
+    private final KeyDeserializer keyDeserializer_;
+
+    private final JsonDeserializer<Object> contentDeserializer_;
+
+    private final TypeDeserializer contentTypeDeserializer_;
+
+    ImmutableMapDeserializer(final MapType type, final KeyDeserializer keyDeserializer, final JsonDeserializer<Object> contentDeserializer,
+            final TypeDeserializer contentTypeDeserializer) {
+        super(type);
+        type_ = type;
+        keyDeserializer_ = keyDeserializer;
+        contentDeserializer_ = contentDeserializer;
+        contentTypeDeserializer_ = contentTypeDeserializer;
+    }
+
+    @Override
+    public JsonDeserializer<?> createContextual(final DeserializationContext context, final BeanProperty property) throws JsonMappingException {
+        KeyDeserializer keyDeserializer = keyDeserializer_;
+        if (keyDeserializer == null && !isStringKey(type_.getKeyType())) {
+            keyDeserializer = context.findKeyDeserializer(type_.getKeyType(), property);
+        }
+        JsonDeserializer<Object> contentDeserializer = contentDeserializer_;
+        if (contentDeserializer == null) {
+            contentDeserializer = context.findContextualValueDeserializer(type_.getContentType(), property);
+        }
+        else if (contentDeserializer instanceof ContextualDeserializer) {
+            contentDeserializer = SatuDeserializers.contextual(context, contentDeserializer, property);
+        }
+        final TypeDeserializer contentTypeDeserializer = contentTypeDeserializer_ == null ? null : contentTypeDeserializer_.forProperty(property);
+        if (keyDeserializer == keyDeserializer_ && contentDeserializer == contentDeserializer_ && contentTypeDeserializer == contentTypeDeserializer_) {
+            return this;
+        }
+        return new ImmutableMapDeserializer(type_, keyDeserializer, contentDeserializer, contentTypeDeserializer);
+    }
+
+    @Override
+    public ImmutableMap<Object, Object> deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
+        }
+        if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+            throw context.mappingException(type_.getRawClass());
+        }
+
+        Object[] entries = new Object[2 * SMALL_MAP_SIZE];
+        int size = 0;
+        for (; parser.getCurrentToken() == JsonToken.FIELD_NAME; parser.nextToken()) {
+            final String name = parser.getCurrentName();
+            final Object key = keyDeserializer_ == null ? name : keyDeserializer_.deserializeKey(name, context);
+            parser.nextToken();
+            if (2 * size == entries.length) {
+                entries = Arrays.copyOf(entries, 2 * entries.length);
+            }
+            entries[2 * size] = key;
+            entries[2 * size + 1] = SatuDeserializers.readContent(parser, context, contentDeserializer_, contentTypeDeserializer_);
+            size++;
+        }
+
+        final EntryArrayMap map = new EntryArrayMap(entries, size);
+        if (size > SMALL_MAP_SIZE) {
+            return new ImmutableUnifiedMap<Object, Object>(map);
+        }
+        // Repeated keys are only merged by a hash map, the small immutable maps assume distinct keys
+        return UnifiedMap.newMap(map).toImmutable();
+    }
+
+    private static boolean isStringKey(final JavaType keyType) {
+        return keyType.getRawClass() == String.class || keyType.getRawClass() == Object.class;
+    }
+
+    /**
+     * Read only view of the buffered entries, sized so the map built from it never rehashes
+     */
+    private static final class EntryArrayMap extends AbstractMap<Object, Object> {
+
+        private final Object[] entries_;
+
+        private final int size_;
+
+        EntryArrayMap(final Object[] entries, final int size) {
+            entries_ = entries;
+            size_ = size;
+        }
+
+        @Override
+        public int size() {
+            return size_;
+        }
+
+        @Override
+        public Set<Map.Entry<Object, Object>> entrySet() {
+            return new AbstractSet<Map.Entry<Object, Object>>() {
+                @Override
+                public int size() {
+                    return size_;
+                }
+
+                @Override
+                public Iterator<Map.Entry<Object, Object>> iterator() {
+                    return new Iterator<Map.Entry<Object, Object>>() {
+                        private int next_;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next_ < size_;
+                        }
+
+                        @Override
+                        public Map.Entry<Object, Object> next() {
+                            if (next_ == size_) {
+                                throw new NoSuchElementException();
+                            }
+                            final Map.Entry<Object, Object> entry = new AbstractMap.SimpleImmutableEntry<Object, Object>(entries_[2 * next_], entries_[2 * next_ + 1]);
+                            next_++;
+                            return entry;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
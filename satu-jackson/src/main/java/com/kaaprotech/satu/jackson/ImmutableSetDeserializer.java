@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.jackson;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+import com.fasterxml.jackson.databind.type.CollectionType;
+import com.gs.collections.api.set.ImmutableSet;
+import com.gs.collections.impl.factory.Sets;
+
+/**
+ * Deserializes an ImmutableSet from a JSON array with the content deserializer resolved once for the property. The
+ * elements are buffered until the array ends and the set is then created at its final size, without the mutable set
+ * toImmutable would copy.
+ */
+class ImmutableSetDeserializer extends StdDeserializer<ImmutableSet<Object>> implements ContextualDeserializer {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final CollectionType type_;
+
+    private final JsonDeserializer<Object> contentDeserializer_;
+
+    private final TypeDeserializer contentTypeDeserializer_;
+
+    ImmutableSetDeserializer(final CollectionType type, final JsonDeserializer<Object> contentDeserializer, final TypeDeserializer contentTypeDeserializer) {
+        super(type);
+        type_ = type;
+        contentDeserializer_ = contentDeserializer;
+        contentTypeDeserializer_ = contentTypeDeserializer;
+    }
+
+    @Override
+    public JsonDeserializer<?> createContextual(final DeserializationContext context, final BeanProperty property) throws JsonMappingException {
+        JsonDeserializer<Object> contentDeserializer = contentDeserializer_;
+        if (contentDeserializer == null) {
+            contentDeserializer = context.findContextualValueDeserializer(type_.getContentType(), property);
+        }
+        else if (contentDeserializer instanceof ContextualDeserializer) {
+            contentDeserializer = SatuDeserializers.contextual(context, contentDeserializer, property);
+        }
+        final TypeDeserializer contentTypeDeserializer = contentTypeDeserializer_ == null ? null : contentTypeDeserializer_.forProperty(property);
+        if (contentDeserializer == contentDeserializer_ && contentTypeDeserializer == contentTypeDeserializer_) {
+            return this;
+        }
+        return new ImmutableSetDeserializer(type_, contentDeserializer, contentTypeDeserializer);
+    }
+
+    @Override
+    public ImmutableSet<Object> deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+        if (!parser.isExpectedStartArrayToken()) {
+            throw context.mappingException(type_.getRawClass());
+        }
+        Object[] elements = new Object[INITIAL_CAPACITY];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, 2 * elements.length);
+            }
+            elements[size++] = SatuDeserializers.readContent(parser, context, contentDeserializer_, contentTypeDeserializer_);
+        }
+        return Sets.immutable.with(size == elements.length ? elements : Arrays.copyOf(elements, size));
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.jackson;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+/**
+ * Deserializes the gs-collections primitive sets and maps, e.g. ImmutableIntSet or MutableLongDoubleMap, from the
+ * arrays and objects the generated writeJson writes for them. Values are read without boxing into a primitive array
+ * until the collection ends, sets are then created from the array in one call and maps are created at their final
+ * size.
+ */
+class PrimitiveCollectionDeserializer extends StdDeserializer<Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Pattern NAME = Pattern.compile("(Mutable|Immutable)?(Boolean|Byte|Char|Short|Int|Long|Float|Double)(Boolean|Byte|Char|Short|Int|Long|Float|Double)?(Set|Map)");
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final PrimitiveKind keyKind_;
+
+    private final PrimitiveKind valueKind_;
+
+    private final Method newSet_;
+
+    private final Constructor<?> newMap_;
+
+    private final Method put_;
+
+    private final Method toImmutable_;
+
+    private PrimitiveCollectionDeserializer(final Class<?> type, final PrimitiveKind keyKind, final PrimitiveKind valueKind, final Method newSet, final Constructor<?> newMap,
+            final Method put, final Method toImmutable) {
+        super(type);
+        keyKind_ = keyKind;
+        valueKind_ = valueKind;
+        newSet_ = newSet;
+        newMap_ = newMap;
+        put_ = put;
+        toImmutable_ = toImmutable;
+    }
+
+    /**
+     * The deserializer for the primitive set or map interface, or null if the type is not one of them
+     */
+    static PrimitiveCollectionDeserializer forType(final Class<?> type) {
+        if (!type.isInterface() || !type.getName().startsWith("com.gs.collections.api.")) {
+            return null;
+        }
+        final Matcher matcher = NAME.matcher(type.getSimpleName());
+        if (!matcher.matches() || ("Set".equals(matcher.group(4)) == (matcher.group(3) != null))) {
+            return null;
+        }
+        final PrimitiveKind keyKind = PrimitiveKind.valueOf(matcher.group(2));
+        try {
+            if (matcher.group(3) == null) {
+                final Class<?> impl = Class.forName("com.gs.collections.impl.set.mutable.primitive." + keyKind.name() + "HashSet");
+                final Method toImmutable = "Immutable".equals(matcher.group(1)) ? impl.getMethod("toImmutable") : null;
+                return new PrimitiveCollectionDeserializer(type, keyKind, null, impl.getMethod("newSetWith", keyKind.arrayType()), null, null, toImmutable);
+            }
+            final PrimitiveKind valueKind = PrimitiveKind.valueOf(matcher.group(3));
+            final Class<?> impl = Class.forName("com.gs.collections.impl.map.mutable.primitive." + keyKind.name() + valueKind.name() + "HashMap");
+            final Method toImmutable = "Immutable".equals(matcher.group(1)) ? impl.getMethod("toImmutable") : null;
+            return new PrimitiveCollectionDeserializer(type, keyKind, valueKind, null, impl.getConstructor(int.class), impl.getMethod("put", keyKind.type(), valueKind.type()),
+                    toImmutable);
+        }
+        catch (final ClassNotFoundException e) {
+            return null;
+        }
+        catch (final NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Object deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+        try {
+            final Object collection = valueKind_ == null ? readSet(parser, context) : readMap(parser, context);
+            return toImmutable_ == null ? collection : toImmutable_.invoke(collection);
+        }
+        catch (final IllegalAccessException e) {
+            throw new RuntimeException("Failed to create " + _valueClass.getName(), e);
+        }
+        catch (final InstantiationException e) {
+            throw new RuntimeException("Failed to create " + _valueClass.getName(), e);
+        }
+        catch (final InvocationTargetException e) {
+            throw new RuntimeException("Failed to create " + _valueClass.getName(), e.getCause());
+        }
+    }
+
+    private Object readSet(final JsonParser parser, final DeserializationContext context) throws IOException, IllegalAccessException, InvocationTargetException {
+        if (!parser.isExpectedStartArrayToken()) {
+            throw context.mappingException(_valueClass);
+        }
+        Object elements = keyKind_.newArray(INITIAL_CAPACITY);
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            elements = ensureCapacity(keyKind_, elements, size);
+            keyKind_.read(parser, elements, size++);
+        }
+        return newSet_.invoke(null, trim(keyKind_, elements, size));
+    }
+
+    private Object readMap(final JsonParser parser, final DeserializationContext context) throws IOException, IllegalAccessException, InvocationTargetException,
+            InstantiationException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
+        }
+        if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+            throw context.mappingException(_valueClass);
+        }
+        Object keys = keyKind_.newArray(INITIAL_CAPACITY);
+        Object values = valueKind_.newArray(INITIAL_CAPACITY);
+        int size = 0;
+        for (; parser.getCurrentToken() == JsonToken.FIELD_NAME; parser.nextToken()) {
+            keys = ensureCapacity(keyKind_, keys, size);
+            values = ensureCapacity(valueKind_, values, size);
+            keyKind_.parse(parser.getCurrentName(), keys, size);
+            parser.nextToken();
+            valueKind_.read(parser, values, size++);
+        }
+        final Object map = newMap_.newInstance(Integer.valueOf(size));
+        for (int i = 0; i < size; i++) {
+            put_.invoke(map, Array.get(keys, i), Array.get(values, i));
+        }
+        return map;
+    }
+
+    private static Object ensureCapacity(final PrimitiveKind kind, final Object array, final int size) {
+        if (size < Array.getLength(array)) {
+            return array;
+        }
+        final Object grown = kind.newArray(2 * size);
+        System.arraycopy(array, 0, grown, 0, size);
+        return grown;
+    }
+
+    private static Object trim(final PrimitiveKind kind, final Object array, final int size) {
+        if (size == Array.getLength(array)) {
+            return array;
+        }
+        final Object trimmed = kind.newArray(size);
+        System.arraycopy(array, 0, trimmed, 0, size);
+        return trimmed;
+    }
+
+    /**
+     * The primitive element types, named as in the gs-collections class names
+     */
+    private static enum PrimitiveKind {
+        Boolean(boolean.class) {
+            @Override
+            void read(final JsonParser parser, final Object array, final int index) throws IOException {
+                Array.setBoolean(array, index, parser.getBooleanValue());
+            }
+
+            @Override
+            void parse(final String text, final Object array, final int index) {
+                Array.setBoolean(array, index, java.lang.Boolean.parseBoolean(text));
+            }
+        },
+        Byte(byte.class) {
+            @Override
+            void read(final JsonParser parser, final Object array, final int index) throws IOException {
+                Array.setByte(array, index, parser.getByteValue());
+            }
+
+            @Override
+            void parse(final String text, final Object array, final int index) {
+                Array.setByte(array, index, java.lang.Byte.parseByte(text));
+            }
+        },
+        Char(char.class) {
+            @Override
+            void read(final JsonParser parser, final Object array, final int index) throws IOException {
+                Array.setChar(array, index, parser.getText().charAt(0));
+            }
+
+            @Override
+            void parse(final String text, final Object array, final int index) {
+                Array.setChar(array, index, text.charAt(0));
+            }
+        },
+        Short(short.class) {
+            @Override
+            void read(final JsonParser parser, final Object array, final int index) throws IOException {
+                Array.setShort(array, index, parser.getShortValue());
+            }
+
+            @Override
+            void parse(final String text, final Object array, final int index) {
+                Array.setShort(array, index, java.lang.Short.parseShort(text));
+            }
+        },
+        Int(int.class) {
+            @Override
+            void read(final JsonParser parser, final Object array, final int index) throws IOException {
+                Array.setInt(array, index, parser.getIntValue());
+            }
+
+            @Override
+            void parse(final String text, final Object array, final int index) {
+                Array.setInt(array, index, Integer.parseInt(text));
+            }
+        },
+        Long(long.class) {
+            @Override
+            void read(final JsonParser parser, final Object array, final int index) throws IOException {
+                Array.setLong(array, index, parser.getLongValue());
+            }
+
+            @Override
+            void parse(final String text, final Object array, final int index) {
+                Array.setLong(array, index, java.lang.Long.parseLong(text));
+            }
+        },
+        Float(float.class) {
+            @Override
+            void read(final JsonParser parser, final Object array, final int index) throws IOException {
+                Array.setFloat(array, index, parser.getFloatValue());
+            }
+
+            @Override
+            void parse(final String text, final Object array, final int index) {
+                Array.setFloat(array, index, java.lang.Float.parseFloat(text));
+            }
+        },
+        Double(double.class) {
+            @Override
+            void read(final JsonParser parser, final Object array, final int index) throws IOException {
+                Array.setDouble(array, index, parser.getDoubleValue());
+            }
+
+            @Override
+            void parse(final String text, final Object array, final int index) {
+                Array.setDouble(array, index, java.lang.Double.parseDouble(text));
+            }
+        };
+
+        private final Class<?> type_;
+
+        private PrimitiveKind(final Class<?> type) {
+            type_ = type;
+        }
+
+        Class<?> type() {
+            return type_;
+        }
+
+        Class<?> arrayType() {
+            return newArray(0).getClass();
+        }
+
+        Object newArray(final int length) {
+            return Array.newInstance(type_, length);
+        }
+
+        /**
+         * Reads the value at the parser into the array
+         */
+        abstract void read(JsonParser parser, Object array, int index) throws IOException;
+
+        /**
+         * Parses a map key from its field name into the array
+         */
+        abstract void parse(String text, Object array, int index);
+    }
+}
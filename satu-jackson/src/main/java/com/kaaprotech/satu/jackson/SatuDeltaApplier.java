@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.jackson;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kaaprotech.satu.runtime.java.SparseJsonApplicable;
+
+/**
+ * Applies sparse JSON deltas, as written by a SatuModule with sparse deltas, straight to a builder through the
+ * SparseJsonApplicable interface the builders of JSON compatible models implement. The delta is streamed from the
+ * parser with the semantics of applyDelta, the delta and its pair deltas are never created.
+ * <p>
+ * The deltaType and key must lead each delta object, as the generated writer writes them.
+ */
+public class SatuDeltaApplier {
+
+    private final JsonFactory factory_;
+
+    /**
+     * @param mapper supplies the parsers, and the codec for imported types such as DateTime
+     */
+    public SatuDeltaApplier(final ObjectMapper mapper) {
+        factory_ = mapper.getFactory();
+    }
+
+    public <B extends SparseJsonApplicable<B>> B apply(final String json, final B builder) throws IOException {
+        final JsonParser parser = factory_.createParser(json);
+        try {
+            return apply(parser, builder);
+        }
+        finally {
+            parser.close();
+        }
+    }
+
+    public <B extends SparseJsonApplicable<B>> B apply(final InputStream in, final B builder) throws IOException {
+        final JsonParser parser = factory_.createParser(in);
+        try {
+            return apply(parser, builder);
+        }
+        finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Applies the delta object at, or following, the parser's current token, leaving the parser on its END_OBJECT
+     */
+    public <B extends SparseJsonApplicable<B>> B apply(final JsonParser parser, final B builder) throws IOException {
+        return builder.applySparseJson(parser);
+    }
+}
@@ -24,6 +24,20 @@ import com.fasterxml.jackson.databind.Module;
  * Created by jwhiting on 13/03/2015.
  */
 public class SatuModule extends Module {
+
+    private final boolean sparseDeltas_;
+
+    public SatuModule() {
+        this(false);
+    }
+
+    /**
+     * @param sparseDeltas write and read deltas in the sparse form, which carries only the fields a delta has
+     */
+    public SatuModule(final boolean sparseDeltas) {
+        sparseDeltas_ = sparseDeltas;
+    }
+
     @Override
     public String getModuleName() {
         return "SatuModule";
@@ -36,7 +50,8 @@ public class SatuModule extends Module {
 
     @Override
     public void setupModule(final SetupContext setupContext) {
-        setupContext.addDeserializers(new SatuDeserializers());
+        setupContext.addSerializers(new SatuSerializers(sparseDeltas_));
+        setupContext.addDeserializers(new SatuDeserializers(sparseDeltas_));
         setupContext.addTypeModifier(new SatuTypeModifier());
     }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.jackson;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.ser.Serializers;
+
+/**
+ * Finds the JsonSerializer__ classes generated inside JSON compatible models, keys and deltas, which write the fields
+ * directly rather than through bean introspection. With sparse deltas the SparseJsonSerializer__ of a delta is used in
+ * preference, writing only the fields the delta has.
+ */
+public class SatuSerializers extends Serializers.Base {
+
+    static final String GENERATED_SERIALIZER = "JsonSerializer__";
+
+    static final String GENERATED_DESERIALIZER = "JsonDeserializer__";
+
+    static final String SPARSE_PREFIX = "Sparse";
+
+    private final boolean sparseDeltas_;
+
+    public SatuSerializers() {
+        this(false);
+    }
+
+    public SatuSerializers(final boolean sparseDeltas) {
+        sparseDeltas_ = sparseDeltas;
+    }
+
+    @Override
+    public JsonSerializer<?> findSerializer(final SerializationConfig config, final JavaType type, final BeanDescription beanDesc) {
+        final JsonSerializer<?> serializer = newGenerated(type.getRawClass(), GENERATED_SERIALIZER, sparseDeltas_, JsonSerializer.class);
+        if (serializer != null) {
+            return serializer;
+        }
+        return super.findSerializer(config, type, beanDesc);
+    }
+
+    /**
+     * Instantiates the named public nested class of the generated type, or returns null if there is none. When sparse
+     * the class prefixed Sparse is preferred, which only deltas have.
+     */
+    static <T> T newGenerated(final Class<?> raw, final String name, final boolean sparse, final Class<T> type) {
+        if (sparse) {
+            final T generated = newGenerated(raw, SPARSE_PREFIX + name, false, type);
+            if (generated != null) {
+                return generated;
+            }
+        }
+        for (Class<?> nested : raw.getClasses()) {
+            if (name.equals(nested.getSimpleName()) && type.isAssignableFrom(nested)) {
+                try {
+                    return type.cast(nested.newInstance());
+                }
+                catch (final Exception e) {
+                    throw new RuntimeException("Failed to create " + nested.getName(), e);
+                }
+            }
+        }
+        return null;
+    }
+}
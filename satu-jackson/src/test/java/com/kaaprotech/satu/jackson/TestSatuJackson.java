@@ -18,13 +18,33 @@ package com.kaaprotech.satu.jackson;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gs.collections.api.map.ImmutableMap;
+import com.gs.collections.api.map.MutableMap;
+import com.gs.collections.api.map.primitive.ImmutableIntIntMap;
+import com.gs.collections.api.map.primitive.MutableLongDoubleMap;
+import com.gs.collections.api.set.ImmutableSet;
+import com.gs.collections.api.set.MutableSet;
+import com.gs.collections.api.set.primitive.ImmutableIntSet;
+import com.gs.collections.api.set.primitive.MutableCharSet;
+import com.gs.collections.impl.factory.Maps;
+import com.gs.collections.impl.factory.Sets;
+import com.gs.collections.impl.map.mutable.UnifiedMap;
+import com.gs.collections.impl.map.mutable.primitive.IntIntHashMap;
+import com.gs.collections.impl.map.mutable.primitive.LongDoubleHashMap;
+import com.gs.collections.impl.set.mutable.UnifiedSet;
+import com.gs.collections.impl.set.mutable.primitive.CharHashSet;
+import com.gs.collections.impl.set.mutable.primitive.IntHashSet;
+import com.kaaprotech.satu.runtime.java.DeltaType;
 import com.kaaprotech.satu.runtime.java.Model;
 
 public class TestSatuJackson {
@@ -98,6 +118,184 @@ public class TestSatuJackson {
         assertEquals(modelSetSatu_, roundtrip(modelSetSatu_));
     }
 
+    @SuppressWarnings("boxing")
+    @Test
+    public void testGeneratedCodecs() throws IOException {
+        final SatuTestKey key = new SatuTestKey(
+                1,
+                -2L,
+                true,
+                'c',
+                (byte) 3,
+                4.5f,
+                Sets.immutable.of(SatuTestEnum.FirstEnumMember),
+                Maps.immutable.of("Key1", 1.1d),
+                Sets.immutable.of(1, 2),
+                Maps.immutable.of(1, -1));
+        final SatuTestModel.Builder builder = SatuTestModel.newBuilder(1)
+                .setIntField(null)
+                .setStringField("string \"quoted\"")
+                .setEnumField(SatuTestEnum.SecondEnumMember)
+                .setModelField(SatuTestModel.newBuilder(2).build())
+                .setKeyField(key);
+        builder.getSetOfKeysField().add(key);
+        builder.getMapOfKeysField().put(SatuTestEnum.ThirdEnumMember, key);
+        builder.getMapOfModelsField().put(SatuTestEnum.FirstEnumMember, SatuTestModel.newBuilder(3).setIntField(3));
+        builder.addOrReplaceMapOfModelsFieldWithSameKeyType(SatuTestModel.newBuilder(4).setIntField(4).build());
+        builder.getSetOfPrimitiveTypes().add(-7);
+        builder.getMapOfPrimitiveTypes().put(7, 49);
+        final SatuTestModel model = builder.build();
+
+        assertEquals(model, roundtrip(model));
+        assertEquals(key, objectMapper_.readValue(objectMapper_.writeValueAsString(key), SatuTestKey.class));
+        assertEquals(model, objectMapper_.readValue("{\"unknown\":{\"a\":[1]}," + objectMapper_.writeValueAsString(model).substring(1), SatuTestModel.class));
+    }
+
+    @Test
+    public void testDeltaRoundtrip() throws IOException {
+        final NestedMapSatu.Builder builder = nestedMapSatu_.toBuilder().setPrice(null);
+        builder.getTestStringMap().put("key2", "value2");
+        builder.getTestMap().remove("simpleKey1");
+        builder.getTestMap().get("simpleKey2").setDescription("updated");
+        final NestedMapSatu.Delta delta = builder.reconcile(DeltaType.UPDATE, nestedMapSatu_);
+
+        final NestedMapSatu.Delta read = objectMapper_.readValue(objectMapper_.writeValueAsString(delta), NestedMapSatu.Delta.class);
+        assertEquals(delta, read);
+        assertEquals(builder.build(), nestedMapSatu_.toBuilder().applyDelta(read).build());
+
+        final ModelSetSatu.Builder setBuilder = modelSetSatu_.toBuilder();
+        setBuilder.getTestModelSet().remove(simpleKey1_);
+        final ModelSetSatu.Delta setDelta = setBuilder.reconcile(DeltaType.UPDATE, modelSetSatu_);
+        assertEquals(setDelta, objectMapper_.readValue(objectMapper_.writeValueAsString(setDelta), ModelSetSatu.Delta.class));
+
+        final NestedMapSatu.Delta added = nestedMapSatu_.toDelta(DeltaType.ADD);
+        assertEquals(added, objectMapper_.readValue(objectMapper_.writeValueAsString(added), NestedMapSatu.Delta.class));
+    }
+
+    @SuppressWarnings("boxing")
+    @Test
+    public void testSparseDeltaRoundtrip() throws IOException {
+        final ObjectMapper sparseMapper = new ObjectMapper().registerModule(new SatuModule(true));
+
+        final NestedMapSatu.Builder builder = nestedMapSatu_.toBuilder().setPrice(null);
+        builder.getTestStringMap().put("key2", "value2");
+        builder.getTestStringMap().remove("key1");
+        builder.getTestMap().remove("simpleKey1");
+        builder.getTestMap().get("simpleKey2").setDescription("updated");
+        builder.getNestedMap().put("modelKey2", ModelMapSatu.newBuilder("modelMap2").setPrice(5));
+        final NestedMapSatu.Delta delta = builder.reconcile(DeltaType.UPDATE, nestedMapSatu_);
+
+        final String sparse = sparseMapper.writeValueAsString(delta);
+        final NestedMapSatu.Delta read = sparseMapper.readValue(sparse, NestedMapSatu.Delta.class);
+        assertEquals(delta.getTestStringMap().toSet(), read.getTestStringMap().toSet());
+        assertEquals(delta.getTestMap().toSet(), read.getTestMap().toSet());
+        assertEquals(delta.getNestedMap().toSet(), read.getNestedMap().toSet());
+        assertTrue(read.hasPrice());
+        assertEquals(builder.build(), nestedMapSatu_.toBuilder().applyDelta(read).build());
+        assertTrue(sparse.length() < objectMapper_.writeValueAsString(delta).length());
+
+        final NestedMapSatu.Delta priceOnly = nestedMapSatu_.toBuilder().setPrice(5).reconcile(DeltaType.UPDATE, nestedMapSatu_);
+        assertEquals("{\"deltaType\":\"UPDATE\",\"name\":\"nestedMap\",\"price\":5}", sparseMapper.writeValueAsString(priceOnly));
+
+        final ModelSetSatu.Builder setBuilder = modelSetSatu_.toBuilder();
+        setBuilder.getTestModelSet().remove(simpleKey1_);
+        setBuilder.getTestModelSet().add(new SimpleSatuKey("name3", "name33"));
+        final ModelSetSatu.Delta setDelta = setBuilder.reconcile(DeltaType.UPDATE, modelSetSatu_);
+        final String sparseSet = sparseMapper.writeValueAsString(setDelta);
+        assertTrue(sparseSet.contains("\"testModelSet\":{\"+\":[{\"name\":\"name3\",\"name2\":\"name33\"}],\"-\":[{\"name\":\"name1\""));
+        // Entries are grouped by delta type so only their order within a group is kept
+        final ModelSetSatu.Delta readSet = sparseMapper.readValue(sparseSet, ModelSetSatu.Delta.class);
+        assertEquals(setDelta.getTestModelSet().toSet(), readSet.getTestModelSet().toSet());
+        assertEquals(setBuilder.build(), modelSetSatu_.toBuilder().applyDelta(readSet).build());
+
+        final NestedMapSatu.Delta deleted = nestedMapSatu_.toDelta(DeltaType.DELETE);
+        assertEquals(deleted, sparseMapper.readValue(sparseMapper.writeValueAsString(deleted), NestedMapSatu.Delta.class));
+        assertEquals(nestedMapSatu_, sparseMapper.readValue(sparseMapper.writeValueAsString(nestedMapSatu_), NestedMapSatu.class));
+    }
+
+    @SuppressWarnings("boxing")
+    @Test
+    public void testSparseDeltaApply() throws IOException {
+        final ObjectMapper sparseMapper = new ObjectMapper().registerModule(new SatuModule(true));
+        final SatuDeltaApplier applier = new SatuDeltaApplier(sparseMapper);
+
+        final NestedMapSatu.Builder builder = nestedMapSatu_.toBuilder().setPrice(null);
+        builder.getTestStringMap().put("key2", "value2");
+        builder.getTestStringMap().remove("key1");
+        builder.getTestMap().remove("simpleKey1");
+        builder.getTestMap().get("simpleKey2").setDescription("updated");
+        builder.getNestedMap().get("modelKey1").getTestMap().get("modelKey2").setPrice(12);
+        builder.getNestedMap().put("modelKey2", ModelMapSatu.newBuilder("modelMap2").setPrice(5));
+        final NestedMapSatu.Delta delta = builder.reconcile(DeltaType.UPDATE, nestedMapSatu_);
+        final String sparse = sparseMapper.writeValueAsString(delta);
+
+        final NestedMapSatu.Builder applied = applier.apply(sparse, nestedMapSatu_.toBuilder());
+        assertEquals(nestedMapSatu_.toBuilder().applyDelta(delta).build(), applied.build());
+        assertEquals(builder.build(), applied.build());
+        assertEquals(DeltaType.UPDATE, applied.getLastDeltaType());
+
+        // Applied to the materialized collections once they have been handed out
+        final NestedMapSatu.Builder materialized = nestedMapSatu_.toBuilder();
+        materialized.getTestStringMap();
+        materialized.getTestMap();
+        materialized.getNestedMap();
+        assertEquals(builder.build(), applier.apply(sparse, materialized).build());
+
+        final ModelSetSatu.Builder setBuilder = modelSetSatu_.toBuilder();
+        setBuilder.getTestModelSet().remove(simpleKey1_);
+        setBuilder.getTestModelSet().add(new SimpleSatuKey("name3", "name33"));
+        final String sparseSet = sparseMapper.writeValueAsString(setBuilder.reconcile(DeltaType.UPDATE, modelSetSatu_));
+        assertEquals(setBuilder.build(), applier.apply(sparseSet, modelSetSatu_.toBuilder()).build());
+
+        final String added = sparseMapper.writeValueAsString(nestedMapSatu_.toDelta(DeltaType.ADD));
+        assertEquals(nestedMapSatu_, applier.apply(added, NestedMapSatu.newBuilder("nestedMap")).build());
+
+        final String deleted = sparseMapper.writeValueAsString(nestedMapSatu_.toDelta(DeltaType.DELETE));
+        final NestedMapSatu.Builder reset = applier.apply(deleted, nestedMapSatu_.toBuilder());
+        assertEquals(DeltaType.DELETE, reset.getLastDeltaType());
+        assertEquals(nestedMapSatu_.toBuilder().applyDelta(nestedMapSatu_.toDelta(DeltaType.DELETE)).build(), reset.build());
+
+        try {
+            applier.apply(sparse, NestedMapSatu.newBuilder("other"));
+            fail("Expected the keys not to match");
+        }
+        catch (final RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("Keys don't match"));
+        }
+    }
+
+    @SuppressWarnings("boxing")
+    @Test
+    public void testCollectionDeserializers() throws IOException {
+        final MutableMap<Integer, SimpleSatu> models = UnifiedMap.newMap();
+        final MutableSet<SimpleSatuKey> keys = UnifiedSet.newSet();
+        for (int i = 0; i < 6; i++) {
+            models.put(i, SimpleSatu.newBuilder("simple" + i).setPrice(i).build());
+            keys.add(new SimpleSatuKey("name" + i, "name" + i + i));
+        }
+        final ImmutableMap<Integer, SimpleSatu> readModels = objectMapper_.readValue(objectMapper_.writeValueAsString(models),
+                new TypeReference<ImmutableMap<Integer, SimpleSatu>>() {});
+        assertEquals(models, readModels);
+        final ImmutableSet<SimpleSatuKey> readKeys = objectMapper_.readValue(objectMapper_.writeValueAsString(keys), new TypeReference<ImmutableSet<SimpleSatuKey>>() {});
+        assertEquals(keys, readKeys);
+
+        // The last of repeated keys wins and repeated elements are merged
+        assertEquals(Maps.immutable.of("a", 2), objectMapper_.readValue("{\"a\":1,\"a\":2}", new TypeReference<ImmutableMap<String, Integer>>() {}));
+        assertEquals(Sets.immutable.of("a", "b"), objectMapper_.readValue("[\"a\",\"b\",\"a\"]", new TypeReference<ImmutableSet<String>>() {}));
+        assertEquals(Maps.immutable.of(), objectMapper_.readValue("{}", new TypeReference<ImmutableMap<String, Integer>>() {}));
+
+        assertEquals(IntHashSet.newSetWith(1, 2, 3), objectMapper_.readValue("[1,2,3,2]", ImmutableIntSet.class));
+        assertEquals(CharHashSet.newSetWith('a', 'b'), objectMapper_.readValue("[\"a\",\"b\"]", MutableCharSet.class));
+        final LongDoubleHashMap longDoubles = LongDoubleHashMap.newWithKeysValues(1L, 1.5, 2L, 2.5);
+        final MutableLongDoubleMap readLongDoubles = objectMapper_.readValue("{\"1\":1.5,\"2\":2.5}", MutableLongDoubleMap.class);
+        assertEquals(longDoubles, readLongDoubles);
+        final IntIntHashMap ints = new IntIntHashMap();
+        for (int i = 0; i < 20; i++) {
+            ints.put(i, i * i);
+        }
+        assertEquals(ints, objectMapper_.readValue(ints.toString().replace('=', ':').replaceAll("(\\d+):", "\"$1\":"), ImmutableIntIntMap.class));
+    }
+
     private <T extends Model<?, ?>> Model<?, ?> roundtrip(T myObject) throws IOException {
         String s = objectMapper_.writeValueAsString(myObject);
         return objectMapper_.readValue(s, myObject.getClass());
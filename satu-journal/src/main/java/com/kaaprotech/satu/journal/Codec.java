@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.journal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes and reads the journaled models and deltas, usually by delegating to the generated writeTo and readFrom
+ * <pre>
+ * new Codec&lt;Book.Delta&gt;() {
+ *     public void write(final ByteBuffer buffer, final Book.Delta delta) {
+ *         delta.writeTo(buffer);
+ *     }
+ *
+ *     public Book.Delta read(final ByteBuffer buffer) {
+ *         return Book.Delta.readFrom(buffer);
+ *     }
+ * }
+ * </pre>
+ */
+public interface Codec<T> {
+
+    /**
+     * Writes the value at the buffer's position, throwing a BufferOverflowException if it does not fit
+     */
+    void write(ByteBuffer buffer, T value);
+
+    /**
+     * Reads a value written by write, the buffer's limit is the end of the value
+     */
+    T read(ByteBuffer buffer);
+}
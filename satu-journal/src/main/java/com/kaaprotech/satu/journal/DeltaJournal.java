@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.list.MutableList;
+import com.gs.collections.impl.factory.Lists;
+
+/**
+ * Append only journal of deltas in a directory of fixed size memory mapped segments. Every appended delta is given
+ * the next sequence number, starting from 1, and a new segment is started whenever the current one is full.
+ * <p>
+ * Appends are written straight into the mapped segment, they survive the process once append returns and the machine
+ * once sync returns. Segments wholly covered by a snapshot are removed with truncate.
+ */
+public final class DeltaJournal<D> {
+
+    private final File directory_;
+
+    private final Codec<D> codec_;
+
+    private final int segmentSize_;
+
+    private final MutableList<JournalSegment> segments_ = Lists.mutable.of();
+
+    /**
+     * Opens the journal in the directory, creating the directory if needed, and continues after its last delta
+     *
+     * @param segmentSize the size in bytes of each segment file, which bounds the size of a single encoded delta
+     */
+    public DeltaJournal(final File directory, final Codec<D> codec, final int segmentSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create journal directory " + directory);
+        }
+        directory_ = directory;
+        codec_ = codec;
+        segmentSize_ = segmentSize;
+
+        final File[] files = directory.listFiles();
+        Arrays.sort(files);
+        for (File file : files) {
+            if (JournalSegment.isSegment(file)) {
+                segments_.add(JournalSegment.open(file));
+            }
+        }
+        if (segments_.isEmpty()) {
+            segments_.add(JournalSegment.create(directory_, 1L, segmentSize_));
+        }
+    }
+
+    /**
+     * Appends the delta and returns its sequence number
+     */
+    public synchronized long append(final D delta) throws IOException {
+        JournalSegment segment = segments_.getLast();
+        if (!segment.append(codec_, delta)) {
+            segment.force();
+            segment = JournalSegment.create(directory_, segment.getNextSequence(), segmentSize_);
+            segments_.add(segment);
+            if (!segment.append(codec_, delta)) {
+                throw new RuntimeException("Delta does not fit in a journal segment of " + segmentSize_ + " bytes");
+            }
+        }
+        return segment.getNextSequence() - 1L;
+    }
+
+    /**
+     * The sequence number of the last appended delta, 0 when the journal is empty
+     */
+    public synchronized long lastSequence() {
+        return segments_.getLast().getNextSequence() - 1L;
+    }
+
+    /**
+     * Passes the deltas after the given sequence number to the procedure in the order they were appended
+     */
+    public synchronized void replay(final long afterSequence, final Procedure<? super D> procedure) {
+        for (int i = 0; i < segments_.size(); i++) {
+            final JournalSegment segment = segments_.get(i);
+            if (segment.getNextSequence() > afterSequence + 1L) {
+                segment.forEach(codec_, afterSequence + 1L, procedure);
+            }
+        }
+    }
+
+    /**
+     * Forces the deltas appended to the current segment to the storage device, earlier segments were forced as they
+     * filled
+     */
+    public synchronized void sync() {
+        segments_.getLast().force();
+    }
+
+    /**
+     * Deletes the segments holding only deltas up to and including the sequence number, the current segment is kept
+     */
+    public synchronized void truncate(final long sequence) throws IOException {
+        while (segments_.size() > 1 && segments_.get(1).getFirstSequence() <= sequence + 1L) {
+            final JournalSegment segment = segments_.remove(0);
+            if (!segment.delete()) {
+                throw new IOException("Failed to delete journal segment " + segment.getFile());
+            }
+        }
+    }
+
+    public synchronized void close() {
+        sync();
+        segments_.clear();
+    }
+}
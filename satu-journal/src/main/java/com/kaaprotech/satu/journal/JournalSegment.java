@@ -0,0 +1,214 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import com.gs.collections.api.block.procedure.Procedure;
+
+/**
+ * One memory mapped file of the journal, named after the sequence of its first record. Each record is the int length
+ * of the encoded value, the int CRC32 of the length and value, then the value. Within the process the length is written
+ * last so a record only becomes visible once it is complete and the zero filled remainder of the file reads as its end.
+ * Page writeback after a machine crash is unordered though, so a length can reach the disk ahead of its value, and
+ * opening a segment ends it at the first record which is short or fails its checksum.
+ */
+final class JournalSegment {
+
+    static final String SUFFIX = ".journal";
+
+    private static final int LENGTH_SIZE = 4;
+
+    private static final int HEADER_SIZE = LENGTH_SIZE + 4;
+
+    private final File file_;
+
+    private final long firstSequence_;
+
+    private final MappedByteBuffer buffer_;
+
+    private int position_;
+
+    private int count_;
+
+    private final CRC32 crc_ = new CRC32();
+
+    // CRC32 only reads arrays before Java 8, the value is copied here to checksum it
+    private byte[] scratch_ = new byte[256];
+
+    private JournalSegment(final File file, final long firstSequence, final MappedByteBuffer buffer) {
+        file_ = file;
+        firstSequence_ = firstSequence;
+        buffer_ = buffer;
+    }
+
+    static JournalSegment create(final File directory, final long firstSequence, final int size) throws IOException {
+        final File file = new File(directory, fileName(firstSequence));
+        if (file.exists()) {
+            throw new RuntimeException("Journal segment already exists " + file);
+        }
+        return new JournalSegment(file, firstSequence, map(file, size));
+    }
+
+    /**
+     * Maps an existing segment, finding its end by scanning the records. Anything after the first torn record is
+     * zeroed so records appended from there on can't run into its remains.
+     */
+    static JournalSegment open(final File file) throws IOException {
+        final String name = file.getName();
+        final JournalSegment segment = new JournalSegment(file, Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), map(file, (int) file.length()));
+        final MappedByteBuffer buffer = segment.buffer_;
+        int position = 0;
+        int count = 0;
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            final int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || length > buffer.capacity() - position - HEADER_SIZE
+                    || buffer.getInt(position + LENGTH_SIZE) != segment.checksum(position + HEADER_SIZE, length)) {
+                segment.zeroFrom(position);
+                break;
+            }
+            position += HEADER_SIZE + length;
+            count++;
+        }
+        segment.position_ = position;
+        segment.count_ = count;
+        return segment;
+    }
+
+    static boolean isSegment(final File file) {
+        return file.getName().endsWith(SUFFIX);
+    }
+
+    private static String fileName(final long firstSequence) {
+        return String.format("%020d", Long.valueOf(firstSequence)) + SUFFIX;
+    }
+
+    private static MappedByteBuffer map(final File file, final int size) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            // The mapping stays valid once the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    File getFile() {
+        return file_;
+    }
+
+    long getFirstSequence() {
+        return firstSequence_;
+    }
+
+    /**
+     * The sequence the next record appended to this segment would have
+     */
+    long getNextSequence() {
+        return firstSequence_ + count_;
+    }
+
+    /**
+     * Appends the value, returning false without writing anything visible if the segment has no room for it
+     */
+    <T> boolean append(final Codec<T> codec, final T value) {
+        final int start = position_ + HEADER_SIZE;
+        if (start > buffer_.capacity()) {
+            return false;
+        }
+        buffer_.limit(buffer_.capacity());
+        buffer_.position(start);
+        try {
+            codec.write(buffer_, value);
+        }
+        catch (final BufferOverflowException e) {
+            return false;
+        }
+        final int length = buffer_.position() - start;
+        if (length == 0) {
+            throw new RuntimeException("Journaled values must not be empty");
+        }
+        buffer_.putInt(position_ + LENGTH_SIZE, checksum(start, length));
+        buffer_.putInt(position_, length);
+        position_ = start + length;
+        count_++;
+        return true;
+    }
+
+    /**
+     * Reads the records from fromSequence onwards
+     */
+    <T> void forEach(final Codec<T> codec, final long fromSequence, final Procedure<? super T> procedure) {
+        final ByteBuffer buffer = buffer_.duplicate();
+        int position = 0;
+        for (long sequence = firstSequence_; sequence < getNextSequence(); sequence++) {
+            final int length = buffer.getInt(position);
+            position += HEADER_SIZE;
+            if (sequence >= fromSequence) {
+                buffer.limit(position + length);
+                buffer.position(position);
+                procedure.value(codec.read(buffer));
+                buffer.limit(buffer.capacity());
+            }
+            position += length;
+        }
+    }
+
+    /**
+     * The CRC32 of a record's length followed by its value
+     */
+    private int checksum(final int position, final int length) {
+        if (scratch_.length < length) {
+            scratch_ = new byte[Math.max(length, 2 * scratch_.length)];
+        }
+        buffer_.limit(buffer_.capacity());
+        buffer_.position(position);
+        buffer_.get(scratch_, 0, length);
+        crc_.reset();
+        crc_.update(length >>> 24);
+        crc_.update(length >>> 16);
+        crc_.update(length >>> 8);
+        crc_.update(length);
+        crc_.update(scratch_, 0, length);
+        return (int) crc_.getValue();
+    }
+
+    private void zeroFrom(final int position) {
+        for (int i = position; i < buffer_.capacity(); i++) {
+            buffer_.put(i, (byte) 0);
+        }
+    }
+
+    void force() {
+        buffer_.force();
+    }
+
+    boolean delete() {
+        return file_.delete();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.map.MapIterable;
+import com.gs.collections.api.map.MutableMap;
+import com.gs.collections.impl.map.mutable.UnifiedMap;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.runtime.java.Model;
+import com.kaaprotech.satu.runtime.java.ModelBuilder;
+import com.kaaprotech.satu.runtime.java.ModelDelta;
+import com.kaaprotech.satu.runtime.java.ModelDeltaBuilder;
+
+/**
+ * Persists a keyed collection of models as periodic snapshots plus a journal of the deltas since. Recovery loads the
+ * latest snapshot into builders and applies the journal's later deltas to them with applyDelta.
+ * <p>
+ * Models are immutable so a snapshot needs no lock, the writer hands over the current models with the sequence of the
+ * last delta they include and carries on appending while the snapshot is written on another thread. Once it is
+ * complete the journal segments and snapshots it supersedes are deleted.
+ */
+public final class ModelJournal<K, M extends Model<K, B>, B extends ModelBuilder<K, M, D>, D extends ModelDelta<K, B, DB>, DB extends ModelDeltaBuilder<K, D>> {
+
+    private final File directory_;
+
+    private final Codec<M> modelCodec_;
+
+    private final DeltaJournal<D> journal_;
+
+    private final Object snapshotLock_ = new Object();
+
+    public ModelJournal(final File directory, final Codec<M> modelCodec, final Codec<D> deltaCodec, final int segmentSize) throws IOException {
+        directory_ = directory;
+        modelCodec_ = modelCodec;
+        journal_ = new DeltaJournal<D>(directory, deltaCodec, segmentSize);
+    }
+
+    /**
+     * Appends the delta to the journal and returns its sequence number
+     */
+    public long append(final D delta) throws IOException {
+        return journal_.append(delta);
+    }
+
+    public long lastSequence() {
+        return journal_.lastSequence();
+    }
+
+    public void sync() {
+        journal_.sync();
+    }
+
+    /**
+     * Writes a snapshot of the models, which must include every delta up to and including the sequence number and none
+     * after it, then deletes the journal segments and older snapshots it supersedes. Safe to call while deltas are
+     * being appended.
+     */
+    public void snapshot(final MapIterable<K, M> models, final long sequence) throws IOException {
+        synchronized (snapshotLock_) {
+            final File snapshot = SnapshotFile.write(directory_, sequence, models.valuesView(), modelCodec_);
+            for (File file : directory_.listFiles()) {
+                if (SnapshotFile.isSnapshot(file) && !file.equals(snapshot) && SnapshotFile.sequenceOf(file) < sequence && !file.delete()) {
+                    throw new IOException("Failed to delete snapshot " + file);
+                }
+            }
+            journal_.truncate(sequence);
+        }
+    }
+
+    /**
+     * Builders for the models as of the last appended delta, from the latest snapshot and the deltas after it
+     */
+    public MutableMap<K, B> recover() throws IOException {
+        synchronized (snapshotLock_) {
+            final File snapshot = latestSnapshot();
+            final MutableMap<K, B> builders;
+            final long sequence;
+            if (snapshot == null) {
+                builders = UnifiedMap.newMap();
+                sequence = 0L;
+            }
+            else {
+                builders = UnifiedMap.newMap(SnapshotFile.count(snapshot));
+                sequence = SnapshotFile.sequenceOf(snapshot);
+                SnapshotFile.read(snapshot, modelCodec_, new Procedure<M>() {
+                    @Override
+                    public void value(final M model) {
+                        builders.put(model.getKey(), model.toBuilder());
+                    }
+                });
+            }
+            journal_.replay(sequence, new Procedure<D>() {
+                @Override
+                public void value(final D delta) {
+                    final B builder = builders.get(delta.getKey());
+                    if (delta.getDeltaType() == DeltaType.DELETE) {
+                        builders.removeKey(delta.getKey());
+                    }
+                    else if (builder == null) {
+                        builders.put(delta.getKey(), delta.toBuilder());
+                    }
+                    else {
+                        builder.applyDelta(delta);
+                    }
+                }
+            });
+            return builders;
+        }
+    }
+
+    private File latestSnapshot() {
+        final File[] files = directory_.listFiles();
+        Arrays.sort(files);
+        File latest = null;
+        for (File file : files) {
+            if (SnapshotFile.isSnapshot(file)) {
+                latest = file;
+            }
+        }
+        return latest;
+    }
+
+    public void close() {
+        journal_.close();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.journal;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.gs.collections.api.RichIterable;
+import com.gs.collections.api.block.procedure.Procedure;
+
+/**
+ * A snapshot of models in a file named after the sequence of the last delta it includes. The file holds the sequence
+ * and model count followed by each model as its int length and encoding. It is written to a temporary file that is
+ * renamed once complete, so a snapshot file is never seen partly written.
+ */
+final class SnapshotFile {
+
+    static final String SUFFIX = ".snapshot";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int HEADER_SIZE = 12;
+
+    private static final int LENGTH_SIZE = 4;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private SnapshotFile() {
+    }
+
+    static boolean isSnapshot(final File file) {
+        return file.getName().endsWith(SUFFIX);
+    }
+
+    static long sequenceOf(final File file) {
+        final String name = file.getName();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    static <M> File write(final File directory, final long sequence, final RichIterable<M> models, final Codec<M> codec) throws IOException {
+        final String name = String.format("%020d", Long.valueOf(sequence)) + SUFFIX;
+        final File temp = new File(directory, name + TEMP_SUFFIX);
+        final FileOutputStream out = new FileOutputStream(temp);
+        try {
+            final FileChannel channel = out.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putLong(sequence);
+            buffer.putInt(models.size());
+            for (M model : models) {
+                while (true) {
+                    final int start = buffer.position();
+                    try {
+                        buffer.position(start + LENGTH_SIZE);
+                        codec.write(buffer, model);
+                        buffer.putInt(start, buffer.position() - start - LENGTH_SIZE);
+                        break;
+                    }
+                    catch (final BufferOverflowException e) {
+                        buffer.position(start);
+                    }
+                    catch (final IllegalArgumentException e) {
+                        // Thrown when the length itself does not fit
+                        buffer.position(start);
+                    }
+                    if (start == 0) {
+                        buffer = ByteBuffer.allocateDirect(2 * buffer.capacity());
+                    }
+                    else {
+                        flush(channel, buffer);
+                    }
+                }
+            }
+            flush(channel, buffer);
+            channel.force(true);
+        }
+        finally {
+            out.close();
+        }
+        final File file = new File(directory, name);
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to rename snapshot " + temp + " to " + file);
+        }
+        return file;
+    }
+
+    private static void flush(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Passes each model of the snapshot to the procedure, returning the number of models read
+     */
+    static <M> int read(final File file, final Codec<M> codec, final Procedure<? super M> procedure) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.flip();
+            buffer = fill(channel, buffer, HEADER_SIZE);
+            buffer.getLong();
+            final int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                buffer = fill(channel, buffer, LENGTH_SIZE);
+                final int length = buffer.getInt();
+                buffer = fill(channel, buffer, length);
+                final int limit = buffer.limit();
+                buffer.limit(buffer.position() + length);
+                procedure.value(codec.read(buffer));
+                buffer.limit(limit);
+            }
+            return count;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The model count of the snapshot, read from its header
+     */
+    static int count(final File file) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final ByteBuffer buffer = fill(in.getChannel(), (ByteBuffer) ByteBuffer.allocate(HEADER_SIZE).flip(), HEADER_SIZE);
+            buffer.getLong();
+            return buffer.getInt();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads from the channel until the buffer has the required bytes remaining, growing it if they would not fit
+     */
+    private static ByteBuffer fill(final FileChannel channel, final ByteBuffer buffer, final int required) throws IOException {
+        if (buffer.remaining() >= required) {
+            return buffer;
+        }
+        ByteBuffer filled = buffer;
+        if (required > buffer.capacity()) {
+            filled = ByteBuffer.allocateDirect(Integer.highestOneBit(required) << 1);
+            filled.put(buffer);
+        }
+        else {
+            filled.compact();
+        }
+        while (filled.position() < required) {
+            if (channel.read(filled) < 0) {
+                throw new EOFException("Truncated snapshot");
+            }
+        }
+        filled.flip();
+        return filled;
+    }
+}
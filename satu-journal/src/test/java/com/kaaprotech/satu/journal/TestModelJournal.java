@@ -0,0 +1,295 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gs.collections.api.block.function.Function2;
+import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.list.MutableList;
+import com.gs.collections.api.map.MutableMap;
+import com.gs.collections.impl.factory.Lists;
+import com.gs.collections.impl.map.mutable.UnifiedMap;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+
+public class TestModelJournal {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private static final Codec<Account> MODEL_CODEC = new Codec<Account>() {
+        @Override
+        public void write(final ByteBuffer buffer, final Account model) {
+            model.writeTo(buffer);
+        }
+
+        @Override
+        public Account read(final ByteBuffer buffer) {
+            return Account.readFrom(buffer);
+        }
+    };
+
+    private static final Codec<Account.Delta> DELTA_CODEC = new Codec<Account.Delta>() {
+        @Override
+        public void write(final ByteBuffer buffer, final Account.Delta delta) {
+            delta.writeTo(buffer);
+        }
+
+        @Override
+        public Account.Delta read(final ByteBuffer buffer) {
+            return Account.Delta.readFrom(buffer);
+        }
+    };
+
+    private File directory_;
+
+    private MutableMap<Integer, Account> models_;
+
+    @Before
+    public void setup() throws IOException {
+        directory_ = File.createTempFile("satu-journal", "");
+        assertTrue(directory_.delete());
+        models_ = UnifiedMap.newMap();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory_.listFiles()) {
+            file.delete();
+        }
+        directory_.delete();
+    }
+
+    @Test
+    public void testRecoverFromJournal() throws IOException {
+        final ModelJournal<Integer, Account, Account.Builder, Account.Delta, Account.Delta.Builder> journal = newJournal();
+        assertEquals(0L, journal.lastSequence());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i + 1L, journal.append(update(i % 50, i)));
+        }
+        journal.append(delete(7));
+        assertTrue(segmentCount() > 1);
+        journal.close();
+
+        final ModelJournal<Integer, Account, Account.Builder, Account.Delta, Account.Delta.Builder> reopened = newJournal();
+        assertEquals(501L, reopened.lastSequence());
+        assertEquals(models_, build(reopened.recover()));
+        assertEquals(502L, reopened.append(update(7, 1000)));
+        assertEquals(models_, build(reopened.recover()));
+        reopened.close();
+    }
+
+    @Test
+    public void testRecoverFromSnapshotAndTail() throws IOException {
+        final ModelJournal<Integer, Account, Account.Builder, Account.Delta, Account.Delta.Builder> journal = newJournal();
+        for (int i = 0; i < 400; i++) {
+            journal.append(update(i % 40, i));
+        }
+        final int segments = segmentCount();
+        journal.snapshot(models_.toImmutable(), journal.lastSequence());
+        assertTrue(segmentCount() < segments);
+
+        for (int i = 400; i < 450; i++) {
+            journal.append(update(i % 60, i));
+        }
+        journal.append(delete(3));
+        journal.close();
+
+        final ModelJournal<Integer, Account, Account.Builder, Account.Delta, Account.Delta.Builder> reopened = newJournal();
+        assertEquals(models_, build(reopened.recover()));
+
+        reopened.snapshot(models_.toImmutable(), reopened.lastSequence());
+        assertEquals(1, directory_.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return SnapshotFile.isSnapshot(file);
+            }
+        }).length);
+        assertEquals(models_, build(reopened.recover()));
+        reopened.close();
+    }
+
+    @SuppressWarnings("boxing")
+    @Test
+    public void testReplayAfterSequence() throws IOException {
+        final DeltaJournal<Account.Delta> journal = new DeltaJournal<Account.Delta>(directory_, DELTA_CODEC, SEGMENT_SIZE);
+        for (int i = 0; i < 300; i++) {
+            journal.append(update(i, i));
+        }
+        final MutableList<Integer> keys = Lists.mutable.of();
+        journal.replay(250L, new Procedure<Account.Delta>() {
+            @Override
+            public void value(final Account.Delta delta) {
+                keys.add(delta.getKey());
+            }
+        });
+        assertEquals(Lists.mutable.of(250, 251, 252), keys.subList(0, 3));
+        assertEquals(50, keys.size());
+        journal.close();
+    }
+
+    @SuppressWarnings("boxing")
+    @Test
+    public void testTornTailIsTruncated() throws IOException {
+        DeltaJournal<Account.Delta> journal = new DeltaJournal<Account.Delta>(directory_, DELTA_CODEC, SEGMENT_SIZE);
+        for (int i = 0; i < 300; i++) {
+            journal.append(update(i, i));
+        }
+        journal.close();
+
+        // A value which didn't reach the disk although its length did
+        final File segment = lastSegment();
+        final long last = lastRecordOffset(segment);
+        final RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        try {
+            raf.seek(last + 9);
+            final int b = raf.read();
+            raf.seek(last + 9);
+            raf.write(b ^ 0xff);
+        }
+        finally {
+            raf.close();
+        }
+
+        journal = new DeltaJournal<Account.Delta>(directory_, DELTA_CODEC, SEGMENT_SIZE);
+        assertEquals(299L, journal.lastSequence());
+        assertEquals(299, replayKeys(journal).size());
+        assertEquals(300L, journal.append(update(1000, 1000)));
+        journal.close();
+
+        // A length which runs past the end of the segment
+        final File tail = lastSegment();
+        final long end = lastRecordOffset(tail) + 8 + recordLength(tail, lastRecordOffset(tail));
+        final RandomAccessFile torn = new RandomAccessFile(tail, "rw");
+        try {
+            torn.seek(end);
+            torn.writeInt(SEGMENT_SIZE);
+        }
+        finally {
+            torn.close();
+        }
+
+        journal = new DeltaJournal<Account.Delta>(directory_, DELTA_CODEC, SEGMENT_SIZE);
+        assertEquals(300L, journal.lastSequence());
+        final MutableList<Integer> keys = replayKeys(journal);
+        assertEquals(300, keys.size());
+        assertEquals(Integer.valueOf(298), keys.get(298));
+        assertEquals(Integer.valueOf(1000), keys.getLast());
+        journal.close();
+    }
+
+    private static MutableList<Integer> replayKeys(final DeltaJournal<Account.Delta> journal) {
+        final MutableList<Integer> keys = Lists.mutable.of();
+        journal.replay(0L, new Procedure<Account.Delta>() {
+            @Override
+            public void value(final Account.Delta delta) {
+                keys.add(delta.getKey());
+            }
+        });
+        return keys;
+    }
+
+    private File lastSegment() {
+        final File[] segments = directory_.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return JournalSegment.isSegment(file);
+            }
+        });
+        Arrays.sort(segments);
+        return segments[segments.length - 1];
+    }
+
+    private static int recordLength(final File segment, final long offset) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(segment, "r");
+        try {
+            raf.seek(offset);
+            return raf.readInt();
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Walks the record headers, each an int length and an int checksum ahead of the value
+     */
+    private static long lastRecordOffset(final File segment) throws IOException {
+        long offset = 0L;
+        long last = -1L;
+        while (offset + 8 <= segment.length()) {
+            final int length = recordLength(segment, offset);
+            if (length <= 0) {
+                break;
+            }
+            last = offset;
+            offset += 8 + length;
+        }
+        return last;
+    }
+
+    private ModelJournal<Integer, Account, Account.Builder, Account.Delta, Account.Delta.Builder> newJournal() throws IOException {
+        return new ModelJournal<Integer, Account, Account.Builder, Account.Delta, Account.Delta.Builder>(directory_, MODEL_CODEC, DELTA_CODEC, SEGMENT_SIZE);
+    }
+
+    /**
+     * Changes the account, recording the expected model, and returns the delta
+     */
+    @SuppressWarnings("boxing")
+    private Account.Delta update(final int id, final long balance) {
+        final Account ref = models_.get(id);
+        final Account.Builder builder = ref == null ? Account.newBuilder(id).setOwner("owner" + id) : ref.toBuilder();
+        builder.setBalance(balance);
+        builder.getTags().add("tag" + balance % 7);
+        final Account.Delta delta = ref == null ? builder.toDelta(DeltaType.ADD) : builder.reconcile(DeltaType.UPDATE, ref);
+        models_.put(id, builder.build());
+        return delta;
+    }
+
+    @SuppressWarnings("boxing")
+    private Account.Delta delete(final int id) {
+        return models_.remove(id).toDelta(DeltaType.DELETE);
+    }
+
+    private static MutableMap<Integer, Account> build(final MutableMap<Integer, Account.Builder> builders) {
+        return builders.collectValues(new Function2<Integer, Account.Builder, Account>() {
+            @Override
+            public Account value(final Integer key, final Account.Builder builder) {
+                return builder.build();
+            }
+        });
+    }
+
+    private int segmentCount() {
+        return directory_.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return JournalSegment.isSegment(file);
+            }
+        }).length;
+    }
+}
@@ -58,6 +58,20 @@ public class SatuMojo extends AbstractMojo {
     @Parameter
     protected boolean jsonCompatible = false;
 
+    /**
+     * Store primitive val fields as Java primitives rather than wrapper classes.
+     * Fields explicitly initialised to {@code null} keep the wrapper class.
+     */
+    @Parameter
+    protected boolean primitiveFields = false;
+
+    /**
+     * Cache hash codes and a 64-bit content fingerprint on generated models and key classes.
+     * Fingerprints let equals and reconcile skip unchanged models without a deep comparison.
+     */
+    @Parameter
+    protected boolean fingerprints = false;
+
     /**
      * Root directory where the Satu model definition files ({@code *.satu}) are located.
      */
@@ -117,7 +131,7 @@ public class SatuMojo extends AbstractMojo {
         Exception exception = null;
         for (File file : satuModelFiles) {
             try {
-                generator.generate(file.getPath(), encoding, jsonCompatible);
+                generator.generate(file.getPath(), encoding, jsonCompatible, primitiveFields, fingerprints);
             }
             catch (Exception e) {
                 if (exception == null) {
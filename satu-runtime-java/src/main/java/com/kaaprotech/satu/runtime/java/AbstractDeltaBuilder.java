@@ -21,7 +21,7 @@ package com.kaaprotech.satu.runtime.java;
  */
 public abstract class AbstractDeltaBuilder<D extends Delta> implements DeltaBuilder<D> {
 
-    private final DeltaType initialDeltaType_;
+    private DeltaType initialDeltaType_;
 
     protected DeltaType deltaType_;
 
@@ -52,6 +52,14 @@ public abstract class AbstractDeltaBuilder<D extends Delta> implements DeltaBuil
         return this;
     }
 
+    /**
+     * Rebinds this builder to a new initial delta type, used when a builder is reused rather than reallocated
+     */
+    protected void rebindDeltaType(final DeltaType deltaType) {
+        initialDeltaType_ = deltaType;
+        deltaType_ = deltaType;
+    }
+
     @Override
     public abstract AbstractDeltaBuilder<D> addDelta(D delta);
 }
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.gs.collections.api.list.ImmutableList;
+import com.gs.collections.api.list.MutableList;
+import com.gs.collections.impl.factory.Lists;
+
+/**
+ * Conflates a stream of model deltas per model key so a consumer only sees the net change since the last flush.
+ * Deltas may be added from any number of threads, pending deltas are flushed to the sink on demand, once the number
+ * of pending keys reaches maxPendingKeys and, when a flush interval is given, periodically.
+ * <p>
+ * Delta types merge as follows, a pending DELETE followed by an ADD is flushed as both deltas since the ADD alone
+ * would leave the consumer with stale field values:
+ * <pre>
+ * pending      ADD          UPDATE       DELETE
+ * none         ADD          UPDATE       DELETE
+ * ADD          invalid      ADD          none
+ * UPDATE       invalid      UPDATE       DELETE
+ * DELETE       DELETE, ADD  invalid      invalid
+ * DELETE, ADD  invalid      DELETE, ADD  DELETE
+ * </pre>
+ * Invalid transitions throw a RuntimeException.
+ */
+public final class DeltaCoalescer<K, B extends ModelBuilder<K, ?, D>, D extends AbstractDelta & ModelDelta<K, B, DB>, DB extends ModelDeltaBuilder<K, D>> {
+
+    private final ConcurrentMap<K, Pending> pending_ = new ConcurrentHashMap<K, Pending>();
+
+    private final AtomicInteger pendingKeys_ = new AtomicInteger();
+
+    // Serializes flushes so the deltas of a key reach the sink in order
+    private final ReentrantLock flushLock_ = new ReentrantLock();
+
+    private final DeltaAppender<D> sink_;
+
+    private final int maxPendingKeys_;
+
+    private final ScheduledExecutorService scheduler_;
+
+    public DeltaCoalescer(final DeltaAppender<D> sink, final int maxPendingKeys) {
+        sink_ = sink;
+        maxPendingKeys_ = maxPendingKeys;
+        scheduler_ = null;
+    }
+
+    public DeltaCoalescer(final DeltaAppender<D> sink, final int maxPendingKeys, final long flushInterval, final TimeUnit unit) {
+        sink_ = sink;
+        maxPendingKeys_ = maxPendingKeys;
+        scheduler_ = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "satu-delta-coalescer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler_.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, flushInterval, flushInterval, unit);
+    }
+
+    public void add(final D delta) {
+        final K key = delta.getKey();
+        while (true) {
+            Pending pending = pending_.get(key);
+            if (pending == null) {
+                final Pending created = new Pending();
+                pending = pending_.putIfAbsent(key, created);
+                if (pending == null) {
+                    pending = created;
+                    pendingKeys_.incrementAndGet();
+                }
+            }
+            synchronized (pending) {
+                // Lost a race with a flush, start a new entry
+                if (pending.flushed_) {
+                    continue;
+                }
+                pending.add(delta);
+            }
+            break;
+        }
+
+        if (pendingKeys_.get() >= maxPendingKeys_ && flushLock_.tryLock()) {
+            try {
+                flushTo(sink_);
+            }
+            finally {
+                flushLock_.unlock();
+            }
+        }
+    }
+
+    public int getPendingKeys() {
+        return pendingKeys_.get();
+    }
+
+    /**
+     * Flushes the pending deltas to the sink
+     */
+    public void flush() {
+        flushLock_.lock();
+        try {
+            flushTo(sink_);
+        }
+        finally {
+            flushLock_.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the pending deltas instead of passing them to the sink
+     */
+    public ImmutableList<D> drain() {
+        final MutableList<D> deltas = Lists.mutable.of();
+        flushLock_.lock();
+        try {
+            flushTo(new DeltaAppender<D>() {
+                @Override
+                public void append(final D delta) {
+                    deltas.add(delta);
+                }
+            });
+        }
+        finally {
+            flushLock_.unlock();
+        }
+        return deltas.toImmutable();
+    }
+
+    /**
+     * Stops the periodic flush, if any, and flushes what is pending
+     */
+    public void close() {
+        if (scheduler_ != null) {
+            scheduler_.shutdown();
+        }
+        flush();
+    }
+
+    private void flushTo(final DeltaAppender<D> appender) {
+        for (Map.Entry<K, Pending> entry : pending_.entrySet()) {
+            final Pending pending = entry.getValue();
+            final D deleted;
+            final D delta;
+            synchronized (pending) {
+                pending.flushed_ = true;
+                deleted = pending.deleted_;
+                delta = pending.builder_ == null ? null : pending.builder_.buildDelta();
+            }
+            if (pending_.remove(entry.getKey(), pending)) {
+                pendingKeys_.decrementAndGet();
+            }
+            if (deleted != null) {
+                appender.append(deleted);
+            }
+            if (delta != null) {
+                appender.append(delta);
+            }
+        }
+    }
+
+    /**
+     * Net change of one key since the last flush, deleted_ holds a DELETE that has to reach the consumer before the
+     * ADD accumulating in builder_
+     */
+    private final class Pending {
+
+        private D deleted_;
+
+        private DB builder_;
+
+        private boolean flushed_;
+
+        void add(final D delta) {
+            final DeltaType pendingType = builder_ == null ? null : builder_.getDeltaType();
+            switch (delta.getDeltaType()) {
+            case ADD:
+                if (builder_ != null && pendingType != DeltaType.DELETE) {
+                    throw invalid(pendingType, delta);
+                }
+                if (pendingType == DeltaType.DELETE) {
+                    deleted_ = builder_.buildDelta();
+                }
+                builder_ = delta.toDeltaBuilder();
+                break;
+
+            case UPDATE:
+                if (pendingType == DeltaType.DELETE) {
+                    throw invalid(pendingType, delta);
+                }
+                if (builder_ == null) {
+                    builder_ = delta.toDeltaBuilder();
+                }
+                else {
+                    builder_.addDelta(delta);
+                }
+                break;
+
+            case DELETE:
+                if (pendingType == DeltaType.DELETE) {
+                    throw invalid(pendingType, delta);
+                }
+                if (pendingType == DeltaType.ADD && deleted_ == null) {
+                    // The consumer never saw the ADD
+                    builder_ = null;
+                }
+                else {
+                    deleted_ = null;
+                    builder_ = delta.toDeltaBuilder();
+                }
+                break;
+            }
+        }
+
+        private RuntimeException invalid(final DeltaType pendingType, final D delta) {
+            return new RuntimeException("Invalid delta transition " + pendingType + " to " + delta.getDeltaType() + " for key " + delta.getKey());
+        }
+    }
+}
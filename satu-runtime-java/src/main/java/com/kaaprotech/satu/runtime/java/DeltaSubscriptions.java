@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Dispatches deltas to consumers registered with a field mask. ADD and DELETE reach every consumer so each sees the
+ * whole lifecycle of every key, an UPDATE reaches a consumer only when its changed fields intersect the consumer's
+ * mask. Projecting consumers receive each ADD and UPDATE cut down to the fields in their mask.
+ * <p>
+ * Subscribing and cancelling may happen concurrently with dispatch, consumers are called on the appending thread.
+ */
+public final class DeltaSubscriptions<D extends AbstractDelta & FieldMaskedDelta<D>> implements DeltaAppender<D> {
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions_ = new CopyOnWriteArrayList<Subscription>();
+
+    public Subscription subscribe(final long fieldsMask, final DeltaAppender<D> consumer) {
+        return add(new Subscription(fieldsMask, consumer, false));
+    }
+
+    public Subscription subscribeProjected(final long fieldsMask, final DeltaAppender<D> consumer) {
+        return add(new Subscription(fieldsMask, consumer, true));
+    }
+
+    private Subscription add(final Subscription subscription) {
+        subscriptions_.add(subscription);
+        return subscription;
+    }
+
+    public int size() {
+        return subscriptions_.size();
+    }
+
+    @Override
+    public void append(final D delta) {
+        final DeltaType deltaType = delta.getDeltaType();
+        final long changed = delta.changedFieldsMask();
+        for (final Subscription subscription : subscriptions_) {
+            if (deltaType == DeltaType.DELETE) {
+                subscription.consumer_.append(delta);
+            }
+            else if (deltaType == DeltaType.ADD || (changed & subscription.fieldsMask_) != 0L) {
+                subscription.consumer_.append(subscription.project_ ? delta.project(subscription.fieldsMask_) : delta);
+            }
+        }
+    }
+
+    public final class Subscription {
+
+        private final long fieldsMask_;
+
+        private final DeltaAppender<D> consumer_;
+
+        private final boolean project_;
+
+        private Subscription(final long fieldsMask, final DeltaAppender<D> consumer, final boolean project) {
+            fieldsMask_ = fieldsMask;
+            consumer_ = consumer;
+            project_ = project;
+        }
+
+        public long getFieldsMask() {
+            return fieldsMask_;
+        }
+
+        public void cancel() {
+            subscriptions_.remove(this);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serialization proxy of a generated type, substituted through writeReplace so Java serialization writes the compact
+ * binary encoding of writeTo instead of reflecting over the fields and their collections
+ */
+public abstract class ExternalForm<T> implements Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private static final ThreadLocal<ByteBuffer> SCRATCH = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(INITIAL_CAPACITY);
+        }
+    };
+
+    private transient T value_;
+
+    protected ExternalForm() {
+    }
+
+    protected ExternalForm(final T value) {
+        value_ = value;
+    }
+
+    protected abstract void write(T value, ByteBuffer buffer);
+
+    protected abstract T read(ByteBuffer buffer);
+
+    @Override
+    public final void writeExternal(final ObjectOutput out) throws IOException {
+        ByteBuffer buffer = SCRATCH.get();
+        while (true) {
+            buffer.clear();
+            try {
+                write(value_, buffer);
+                break;
+            }
+            catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                SCRATCH.set(buffer);
+            }
+        }
+        out.writeInt(buffer.position());
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    @Override
+    public final void readExternal(final ObjectInput in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        value_ = read(ByteBuffer.wrap(bytes));
+    }
+
+    protected final Object readResolve() {
+        return value_;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+/**
+ * Delta of a model with at most 64 val fields, field i of the model is bit i of a field mask. The generated
+ * Delta.FieldIndex enum and Delta.*_MASK constants give the bits by name.
+ */
+public interface FieldMaskedDelta<D extends FieldMaskedDelta<D>> extends Delta {
+
+    /**
+     * The bits of the fields this delta has, zero for a DELETE
+     */
+    long changedFieldsMask();
+
+    /**
+     * This delta without the fields outside the mask, or this delta if it has none of them
+     */
+    D project(long fieldsMask);
+}
@@ -74,6 +74,10 @@ public final class KeyDelta<K> extends AbstractDelta implements Comparable<KeyDe
                 .toString();
     }
 
+    private Object writeReplace() {
+        return new PairDeltaForm(this);
+    }
+
     @Override
     public int compareTo(final KeyDelta<K> rhs) {
         return new CompareToBuilder()
@@ -87,7 +91,7 @@ public final class KeyDelta<K> extends AbstractDelta implements Comparable<KeyDe
 
     public static final class Builder<K> extends AbstractDeltaBuilder<KeyDelta<K>> implements Comparable<Builder<K>> {
 
-        private final K key_;
+        private K key_;
 
         public Builder(final DeltaType deltaType, final K key) {
             super(deltaType);
@@ -99,6 +103,22 @@ public final class KeyDelta<K> extends AbstractDelta implements Comparable<KeyDe
             key_ = delta.getKey();
         }
 
+        /**
+         * Resets this builder to the state of a newly constructed builder for the given delta type and key
+         */
+        public Builder<K> clear(final DeltaType deltaType, final K key) {
+            rebindDeltaType(deltaType);
+            key_ = key;
+            return this;
+        }
+
+        /**
+         * Resets this builder to the state of a builder newly created from the given delta
+         */
+        public Builder<K> rebind(final KeyDelta<K> delta) {
+            return clear(delta.getDeltaType(), delta.getKey());
+        }
+
         @Override
         public Builder<K> addDelta(final KeyDelta<K> delta) {
             if (!getKey().equals(delta.getKey())) {
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.block.procedure.Procedure2;
+import com.gs.collections.api.map.ImmutableMap;
+import com.gs.collections.api.map.MutableMap;
+import com.gs.collections.api.set.MutableSet;
+import com.gs.collections.impl.factory.Maps;
+import com.gs.collections.impl.factory.Sets;
+
+/**
+ * Copy on write overlay of an immutable map of models used by the generated builders, a builder is only created for
+ * an entry when it is requested or put, every other entry stays shared with the base map
+ */
+@SuppressWarnings("serial")
+public final class KeyModelBuilderMapOverlay<K, K2, M extends Model<K2, B>, B extends ModelBuilder<K2, M, D>, D extends ModelDelta<K2, B, DB>, DB extends ModelDeltaBuilder<K2, D>> {
+
+    private final ImmutableMap<K, M> base_;
+
+    private final DirtyListener listener_;
+
+    private final int field_;
+
+    private final MutableMap<K, B> builders_ = Maps.mutable.of();
+
+    private final MutableSet<K> removes_ = Sets.mutable.of();
+
+    public KeyModelBuilderMapOverlay(final ImmutableMap<K, M> base, final DirtyListener listener, final int field) {
+        base_ = base;
+        listener_ = listener;
+        field_ = field;
+    }
+
+    public ImmutableMap<K, M> getBase() {
+        return base_;
+    }
+
+    /**
+     * The builder for key, created from the base model on first access and reporting to the listener when it becomes
+     * dirty
+     */
+    public B get(final K key) {
+        B builder = builders_.get(key);
+        if (builder != null || removes_.contains(key)) {
+            return builder;
+        }
+        final M model = base_.get(key);
+        if (model == null) {
+            return null;
+        }
+        builder = model.toBuilder();
+        builder.setDirtyListener(listener_, field_, key);
+        builders_.put(key, builder);
+        return builder;
+    }
+
+    public boolean containsKey(final K key) {
+        return builders_.containsKey(key) || (!removes_.contains(key) && base_.containsKey(key));
+    }
+
+    public void put(final K key, final B builder) {
+        builders_.put(key, builder);
+        removes_.remove(key);
+    }
+
+    public void remove(final K key) {
+        builders_.removeKey(key);
+        if (base_.containsKey(key)) {
+            removes_.add(key);
+        }
+    }
+
+    /**
+     * Builders for every entry, used when the whole map is handed out for direct modification
+     */
+    public MutableMap<K, B> toBuilderMap() {
+        final MutableMap<K, B> builders = Maps.mutable.of();
+        base_.forEachKeyValue(new Procedure2<K, M>() {
+            @Override
+            public void value(final K key, final M model) {
+                if (!removes_.contains(key) && !builders_.containsKey(key)) {
+                    final B builder = model.toBuilder();
+                    builder.setDirtyListener(listener_, field_, key);
+                    builders.put(key, builder);
+                }
+            }
+        });
+        builders.putAll(builders_);
+        return builders;
+    }
+
+    /**
+     * Rebuilds the removed entries and those whose builders may differ from the base, the rest are shared with the
+     * base map
+     */
+    @SuppressWarnings("unchecked")
+    public ImmutableMap<K, M> toImmutable() {
+        final MutableMap<K, M> changed = Maps.mutable.of();
+        builders_.forEachKeyValue(new Procedure2<K, B>() {
+            @Override
+            public void value(final K key, final B builder) {
+                if (builder.getRef() != base_.get(key) || builder.isDirty()) {
+                    changed.put(key, builder.build());
+                }
+            }
+        });
+
+        if (changed.isEmpty() && removes_.isEmpty()) {
+            return base_;
+        }
+
+        if (base_ instanceof PersistentHashMap) {
+            return ((PersistentHashMap<K, M>) base_).newWithoutAllKeys(removes_).newWithAllKeyValues(changed.keyValuesView());
+        }
+
+        final MutableMap<K, M> models = base_.toMap();
+        removes_.forEach(new Procedure<K>() {
+            @Override
+            public void value(final K key) {
+                models.removeKey(key);
+            }
+        });
+        models.putAll(changed);
+        return models.toImmutable();
+    }
+
+    /**
+     * Against the base map only the removed keys and the requested builders are visited, any other ref is reconciled
+     * in full
+     */
+    public void reconcile(final ImmutableMap<K, M> ref, final DeltaAppender<KeyModelDeltaPairDelta<K, K2, D, DB>> appender) {
+        if (ref != base_) {
+            SatuUtil.reconcileKeyModelBuilderPairs(ref, toBuilderMap(), appender);
+            return;
+        }
+        SatuUtil.reconcileKeyModelBuilderEdits(base_, builders_, removes_, appender);
+    }
+}
@@ -88,6 +88,10 @@ public final class KeyModelDeltaPairDelta<K, K2, D extends ModelDelta<K2, ? exte
                 .toHashCode();
     }
 
+    private Object writeReplace() {
+        return new PairDeltaForm(this);
+    }
+
     @Override
     public int compareTo(final KeyModelDeltaPairDelta<K, K2, D, DB> rhs) {
         return new CompareToBuilder()
@@ -102,7 +106,7 @@ public final class KeyModelDeltaPairDelta<K, K2, D extends ModelDelta<K2, ? exte
     public static final class Builder<K, K2, D extends ModelDelta<K2, ? extends ModelBuilder<K2, ?, D>, DB>, DB extends ModelDeltaBuilder<K2, D>> extends
             AbstractDeltaBuilder<KeyModelDeltaPairDelta<K, K2, D, DB>> implements Comparable<Builder<K, K2, D, DB>> {
 
-        private final K key_;
+        private K key_;
 
         private DB value_;
 
@@ -112,6 +116,16 @@ public final class KeyModelDeltaPairDelta<K, K2, D extends ModelDelta<K2, ? exte
             value_ = delta.getValue().toDeltaBuilder();
         }
 
+        /**
+         * Resets this builder to the state of a builder newly created from the given delta
+         */
+        public Builder<K, K2, D, DB> rebind(final KeyModelDeltaPairDelta<K, K2, D, DB> delta) {
+            rebindDeltaType(delta.getDeltaType());
+            key_ = delta.getKey();
+            value_ = delta.getValue().toDeltaBuilder();
+            return this;
+        }
+
         @Override
         public Builder<K, K2, D, DB> addDelta(final KeyModelDeltaPairDelta<K, K2, D, DB> delta) {
             if (!getKey().equals(delta.getKey())) {
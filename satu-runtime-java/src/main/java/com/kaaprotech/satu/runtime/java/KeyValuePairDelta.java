@@ -83,6 +83,10 @@ public final class KeyValuePairDelta<K, V> extends AbstractDelta implements Comp
                 .toHashCode();
     }
 
+    private Object writeReplace() {
+        return new PairDeltaForm(this);
+    }
+
     @Override
     public int compareTo(final KeyValuePairDelta<K, V> rhs) {
         return new CompareToBuilder().append(getKey(), rhs.getKey()).toComparison();
@@ -94,7 +98,7 @@ public final class KeyValuePairDelta<K, V> extends AbstractDelta implements Comp
 
     public static final class Builder<K, V> extends AbstractDeltaBuilder<KeyValuePairDelta<K, V>> implements Comparable<Builder<K, V>> {
 
-        private final K key_;
+        private K key_;
 
         private V value_;
 
@@ -109,6 +113,25 @@ public final class KeyValuePairDelta<K, V> extends AbstractDelta implements Comp
             value_ = delta.getValue();
         }
 
+        /**
+         * Resets this builder to the state of a newly constructed builder for the given delta type and key
+         */
+        public Builder<K, V> clear(final DeltaType deltaType, final K key) {
+            rebindDeltaType(deltaType);
+            key_ = key;
+            value_ = null;
+            return this;
+        }
+
+        /**
+         * Resets this builder to the state of a builder newly created from the given delta
+         */
+        public Builder<K, V> rebind(final KeyValuePairDelta<K, V> delta) {
+            clear(delta.getDeltaType(), delta.getKey());
+            value_ = delta.getValue();
+            return this;
+        }
+
         @Override
         public Builder<K, V> addDelta(final KeyValuePairDelta<K, V> delta) {
             if (!getKey().equals(delta.getKey())) {
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import org.apache.commons.lang.ObjectUtils;
+
+import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.block.procedure.Procedure2;
+import com.gs.collections.api.map.ImmutableMap;
+import com.gs.collections.api.map.MutableMap;
+import com.gs.collections.api.set.MutableSet;
+import com.gs.collections.impl.factory.Maps;
+import com.gs.collections.impl.factory.Sets;
+
+/**
+ * Copy on write overlay of an immutable map used by the generated builders, records puts and removes over the base
+ * map so updating a few entries doesn't copy the whole map and the edits double as the log reconcile works from
+ */
+@SuppressWarnings("serial")
+public final class MapOverlay<K, V> {
+
+    private final ImmutableMap<K, V> base_;
+
+    private final MutableMap<K, V> puts_ = Maps.mutable.of();
+
+    private final MutableSet<K> removes_ = Sets.mutable.of();
+
+    public MapOverlay(final ImmutableMap<K, V> base) {
+        base_ = base;
+    }
+
+    public ImmutableMap<K, V> getBase() {
+        return base_;
+    }
+
+    public V get(final K key) {
+        final V value = puts_.get(key);
+        if (value != null || puts_.containsKey(key)) {
+            return value;
+        }
+        return removes_.contains(key) ? null : base_.get(key);
+    }
+
+    public boolean containsKey(final K key) {
+        return puts_.containsKey(key) || (!removes_.contains(key) && base_.containsKey(key));
+    }
+
+    public void put(final K key, final V value) {
+        puts_.put(key, value);
+        removes_.remove(key);
+    }
+
+    public void remove(final K key) {
+        puts_.removeKey(key);
+        if (base_.containsKey(key)) {
+            removes_.add(key);
+        }
+    }
+
+    public boolean isEdited() {
+        return puts_.notEmpty() || removes_.notEmpty();
+    }
+
+    public MutableMap<K, V> toMap() {
+        final MutableMap<K, V> map = base_.toMap();
+        removes_.forEach(new Procedure<K>() {
+            @Override
+            public void value(final K key) {
+                map.removeKey(key);
+            }
+        });
+        map.putAll(puts_);
+        return map;
+    }
+
+    /**
+     * A persistent base map is updated in place of a copy so the result shares structure with the base
+     */
+    @SuppressWarnings("unchecked")
+    public ImmutableMap<K, V> toImmutable() {
+        if (!isEdited()) {
+            return base_;
+        }
+        if (base_ instanceof PersistentHashMap) {
+            return ((PersistentHashMap<K, V>) base_).newWithoutAllKeys(removes_).newWithAllKeyValues(puts_.keyValuesView());
+        }
+        return toMap().toImmutable();
+    }
+
+    /**
+     * Against the base map the deltas come straight from the edits, any other ref is reconciled in full
+     */
+    public void reconcile(final ImmutableMap<K, V> ref, final DeltaAppender<KeyValuePairDelta<K, V>> appender) {
+        if (ref != base_) {
+            SatuUtil.reconcileKeyValuePairs(ref, toImmutable(), appender);
+            return;
+        }
+
+        removes_.forEach(new Procedure<K>() {
+            @Override
+            public void value(final K key) {
+                appender.append(new KeyValuePairDelta<K, V>(DeltaType.DELETE, key, null));
+            }
+        });
+
+        puts_.forEachKeyValue(new Procedure2<K, V>() {
+            @Override
+            public void value(final K key, final V value) {
+                if (!base_.containsKey(key)) {
+                    appender.append(new KeyValuePairDelta<K, V>(DeltaType.ADD, key, value));
+                }
+                else if (!ObjectUtils.equals(base_.get(key), value)) {
+                    appender.append(new KeyValuePairDelta<K, V>(DeltaType.UPDATE, key, value));
+                }
+            }
+        });
+    }
+}
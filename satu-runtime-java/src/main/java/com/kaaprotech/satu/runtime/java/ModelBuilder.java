@@ -16,7 +16,7 @@
 
 package com.kaaprotech.satu.runtime.java;
 
-public interface ModelBuilder<K, M extends Model<K, ? extends ModelBuilder<K, M, D>>, D extends ModelDelta<K, ? extends ModelBuilder<K, ?, D>, ? extends ModelDeltaBuilder<K, D>>> extends Identity<K> {
+public interface ModelBuilder<K, M extends Model<K, ? extends ModelBuilder<K, M, D>>, D extends ModelDelta<K, ? extends ModelBuilder<K, ?, D>, ? extends ModelDeltaBuilder<K, D>>> extends Identity<K>, DirtyListener {
 
     @Override
     K getKey();
@@ -38,4 +38,11 @@ public interface ModelBuilder<K, M extends Model<K, ? extends ModelBuilder<K, M,
     DeltaType getLastDeltaType();
 
     ModelBuilder<K, M, D> setLastDeltaType(DeltaType lastDeltaType);
+
+    /**
+     * True once the builder or any builder below it has been modified relative to its ref
+     */
+    boolean isDirty();
+
+    void setDirtyListener(DirtyListener listener, int field, Object key);
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.gs.collections.api.block.function.Function;
+import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.map.ImmutableMap;
+import com.gs.collections.impl.map.mutable.UnifiedMap;
+
+/**
+ * Concurrent store of immutable models by key. Readers never lock, they see the latest committed model of a key.
+ * Writers lock one of a fixed number of stripes chosen by the key, so writers of different keys rarely contend and
+ * writes to a key are applied one at a time in the order their stripe is acquired.
+ * <p>
+ * Each committed write produces its delta through reconcile, which is returned and passed to the optional appender
+ * while the stripe is still held, so the appender sees the deltas of a key in commit order. A write that changes
+ * nothing, leaving a model equal to the committed one, commits nothing and returns null.
+ * <p>
+ * Update procedures run under the stripe lock, they must not write to the store themselves.
+ */
+public final class ModelStore<K, M extends Model<K, B>, B extends ModelBuilder<K, M, D>, D extends AbstractDelta & ModelDelta<K, B, DB>, DB extends ModelDeltaBuilder<K, D>> {
+
+    private final ConcurrentMap<K, M> models_;
+
+    private final Object[] stripes_;
+
+    private final Function<? super K, ? extends B> newBuilder_;
+
+    private final DeltaAppender<D> appender_;
+
+    /**
+     * @param newBuilder creates the builder of a key with no model, e.g. calling the model's static newBuilder
+     */
+    public ModelStore(final Function<? super K, ? extends B> newBuilder) {
+        this(newBuilder, null, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param appender receives each committed delta, may be null
+     * @param stripes the number of writer locks, rounded up to a power of two
+     */
+    public ModelStore(final Function<? super K, ? extends B> newBuilder, final DeltaAppender<D> appender, final int stripes) {
+        newBuilder_ = newBuilder;
+        appender_ = appender;
+        stripes_ = new Object[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1];
+        for (int i = 0; i < stripes_.length; i++) {
+            stripes_[i] = new Object();
+        }
+        models_ = new ConcurrentHashMap<K, M>(16, 0.75f, stripes_.length);
+    }
+
+    public M get(final K key) {
+        return models_.get(key);
+    }
+
+    public boolean containsKey(final K key) {
+        return models_.containsKey(key);
+    }
+
+    public int size() {
+        return models_.size();
+    }
+
+    /**
+     * The committed models, each key's model is consistent but writes to other keys made during the copy may or may
+     * not be seen
+     */
+    public ImmutableMap<K, M> toImmutable() {
+        return UnifiedMap.newMap(models_).toImmutable();
+    }
+
+    /**
+     * Applies the update to a builder of the key's model, or of a new model when there is none, and commits the result
+     */
+    public D update(final K key, final Procedure<? super B> update) {
+        synchronized (stripe(key)) {
+            final M ref = models_.get(key);
+            final B builder = ref == null ? newBuilder_.valueOf(key) : ref.toBuilder();
+            update.value(builder);
+            return commit(key, ref, builder);
+        }
+    }
+
+    /**
+     * Applies the delta to the key's model and commits the result, returning the delta of what actually changed
+     */
+    public D apply(final D delta) {
+        final K key = delta.getKey();
+        synchronized (stripe(key)) {
+            final M ref = models_.get(key);
+            if (delta.getDeltaType() == DeltaType.DELETE) {
+                return ref == null ? null : remove(key, ref);
+            }
+            final B builder = ref == null ? newBuilder_.valueOf(key) : ref.toBuilder();
+            builder.applyDelta(delta);
+            return commit(key, ref, builder);
+        }
+    }
+
+    /**
+     * Removes the key's model, returning its DELETE delta or null if there was none
+     */
+    public D remove(final K key) {
+        synchronized (stripe(key)) {
+            final M ref = models_.get(key);
+            return ref == null ? null : remove(key, ref);
+        }
+    }
+
+    private D remove(final K key, final M ref) {
+        models_.remove(key);
+        return committed(ref.toBuilderEmpty().reconcile(DeltaType.DELETE, ref));
+    }
+
+    private D commit(final K key, final M ref, final B builder) {
+        if (!builder.isDirty()) {
+            return null;
+        }
+        // Setters mark a field dirty even when they set its current value
+        final M model = builder.build();
+        if (model.equals(ref)) {
+            return null;
+        }
+        final D delta = builder.reconcile();
+        models_.put(key, model);
+        return committed(delta);
+    }
+
+    private D committed(final D delta) {
+        if (appender_ != null) {
+            appender_.append(delta);
+        }
+        return delta;
+    }
+
+    private Object stripe(final K key) {
+        final int hash = key.hashCode();
+        return stripes_[(hash ^ (hash >>> 16)) & (stripes_.length - 1)];
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Serialization proxy shared by KeyDelta, KeyValuePairDelta and KeyModelDeltaPairDelta, the delta type is written as
+ * a single byte and the value only when present
+ */
+final class PairDeltaForm implements Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final byte KEY = 0;
+
+    private static final byte KEY_VALUE_PAIR = 1;
+
+    private static final byte KEY_MODEL_DELTA_PAIR = 2;
+
+    private static final DeltaType[] DELTA_TYPES = DeltaType.values();
+
+    private byte kind_;
+
+    private DeltaType deltaType_;
+
+    private Object key_;
+
+    private Object value_;
+
+    public PairDeltaForm() {
+    }
+
+    PairDeltaForm(final KeyDelta<?> delta) {
+        this(KEY, delta.getDeltaType(), delta.getKey(), null);
+    }
+
+    PairDeltaForm(final KeyValuePairDelta<?, ?> delta) {
+        this(KEY_VALUE_PAIR, delta.getDeltaType(), delta.getKey(), delta.getValue());
+    }
+
+    PairDeltaForm(final KeyModelDeltaPairDelta<?, ?, ?, ?> delta) {
+        this(KEY_MODEL_DELTA_PAIR, delta.getDeltaType(), delta.getKey(), delta.getValue());
+    }
+
+    private PairDeltaForm(final byte kind, final DeltaType deltaType, final Object key, final Object value) {
+        kind_ = kind;
+        deltaType_ = deltaType;
+        key_ = key;
+        value_ = value;
+    }
+
+    @Override
+    public void writeExternal(final ObjectOutput out) throws IOException {
+        out.writeByte(kind_ << 4 | deltaType_.ordinal() << 1 | (value_ != null ? 1 : 0));
+        out.writeObject(key_);
+        if (value_ != null) {
+            out.writeObject(value_);
+        }
+    }
+
+    @Override
+    public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+        final int header = in.readUnsignedByte();
+        kind_ = (byte) (header >> 4);
+        deltaType_ = DELTA_TYPES[(header >> 1) & 0x7];
+        key_ = in.readObject();
+        value_ = (header & 1) != 0 ? in.readObject() : null;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private Object readResolve() {
+        switch (kind_) {
+        case KEY:
+            return new KeyDelta(deltaType_, key_);
+        case KEY_VALUE_PAIR:
+            return new KeyValuePairDelta(deltaType_, key_, value_);
+        case KEY_MODEL_DELTA_PAIR:
+            return new KeyModelDeltaPairDelta(deltaType_, key_, (ModelDelta) value_);
+        default:
+            throw new RuntimeException("Unexpected kind " + kind_);
+        }
+    }
+}
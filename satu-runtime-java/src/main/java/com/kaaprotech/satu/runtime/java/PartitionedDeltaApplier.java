@@ -0,0 +1,323 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.gs.collections.api.block.procedure.Procedure2;
+import com.gs.collections.api.list.MutableList;
+import com.gs.collections.api.map.ImmutableMap;
+import com.gs.collections.api.map.MutableMap;
+import com.gs.collections.api.set.MutableSet;
+import com.gs.collections.impl.list.mutable.FastList;
+import com.gs.collections.impl.map.mutable.UnifiedMap;
+import com.gs.collections.impl.set.mutable.UnifiedSet;
+
+/**
+ * Applies deltas to builders on a fixed number of single writer worker threads. Deltas are sharded by key hash, each
+ * worker owns the builders of its keys, so deltas of a key are applied in the order they were submitted and builders
+ * are never shared between threads. Deltas are applied as SatuUtil.applyKeyModelPairDeltas applies them.
+ * <p>
+ * snapshot() is a barrier, each worker builds its models once it has applied every delta submitted before the call.
+ * A failure on a worker is sticky, it's rethrown by every later barrier and by close. The builder of the key whose
+ * delta failed may be half applied, so it's dropped and any later deltas of that key are rejected.
+ */
+public final class PartitionedDeltaApplier<K, K2, M extends Model<K2, B>, B extends ModelBuilder<K2, M, D>, D extends ModelDelta<K2, B, DB>, DB extends ModelDeltaBuilder<K2, D>> {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 1 << 16;
+
+    private final MutableList<Partition> partitions_;
+
+    private final AtomicReference<Throwable> failure_ = new AtomicReference<Throwable>();
+
+    public PartitionedDeltaApplier(final int partitions) {
+        this(partitions, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param queueCapacity the tasks each worker may have queued before submitters block
+     */
+    public PartitionedDeltaApplier(final int partitions, final int queueCapacity) {
+        if (partitions < 1) {
+            throw new RuntimeException("Partitions must be positive " + partitions);
+        }
+        partitions_ = FastList.newList(partitions);
+        for (int i = 0; i < partitions; i++) {
+            final Partition partition = new Partition(i, queueCapacity);
+            partitions_.add(partition);
+            partition.thread_.start();
+        }
+    }
+
+    public void apply(final KeyModelDeltaPairDelta<K, K2, D, DB> delta) {
+        partition(delta.getKey()).submit(delta);
+    }
+
+    /**
+     * Applies a root delta, key is the delta's key when models are keyed by their own key
+     */
+    public void apply(final K key, final D delta) {
+        partition(key).submit(new KeyModelDeltaPairDelta<K, K2, D, DB>(delta.getDeltaType(), key, delta));
+    }
+
+    /**
+     * Submits the deltas with one task per worker rather than one per delta
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void applyAll(final Iterable<KeyModelDeltaPairDelta<K, K2, D, DB>> deltas) {
+        final MutableList<KeyModelDeltaPairDelta<K, K2, D, DB>>[] batches = new MutableList[partitions_.size()];
+        for (final KeyModelDeltaPairDelta<K, K2, D, DB> delta : deltas) {
+            final int index = index(delta.getKey());
+            if (batches[index] == null) {
+                batches[index] = FastList.newList();
+            }
+            batches[index].add(delta);
+        }
+        for (int i = 0; i < batches.length; i++) {
+            if (batches[i] != null) {
+                partitions_.get(i).submit(batches[i]);
+            }
+        }
+    }
+
+    /**
+     * Waits for every delta submitted before the call to be applied and builds the models
+     */
+    public ImmutableMap<K, M> snapshot() {
+        final MutableMap<K, M> models = UnifiedMap.newMap();
+        barrier(new Procedure2<K, M>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void value(final K key, final M model) {
+                synchronized (models) {
+                    models.put(key, model);
+                }
+            }
+        });
+        return models.toImmutable();
+    }
+
+    /**
+     * Waits for every delta submitted before the call to be applied
+     */
+    public void flush() {
+        barrier(null);
+    }
+
+    /**
+     * Applies the deltas already submitted then stops the workers
+     */
+    public void close() {
+        for (final Partition partition : partitions_) {
+            partition.submit(Stop.INSTANCE);
+        }
+        for (final Partition partition : partitions_) {
+            try {
+                partition.thread_.join();
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted closing applier", e);
+            }
+        }
+        rethrowFailure();
+    }
+
+    private void barrier(final Procedure2<K, M> collector) {
+        final Barrier barrier = new Barrier(partitions_.size(), collector);
+        for (final Partition partition : partitions_) {
+            partition.submit(barrier);
+        }
+        try {
+            barrier.done_.await();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for barrier", e);
+        }
+        rethrowFailure();
+    }
+
+    private void rethrowFailure() {
+        final Throwable t = failure_.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t != null) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private int index(final K key) {
+        final int hash = key.hashCode();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % partitions_.size();
+    }
+
+    private Partition partition(final K key) {
+        return partitions_.get(index(key));
+    }
+
+    private static enum Stop {
+        INSTANCE
+    }
+
+    private final class Barrier {
+
+        private final CountDownLatch done_;
+
+        private final Procedure2<K, M> collector_;
+
+        Barrier(final int partitions, final Procedure2<K, M> collector) {
+            done_ = new CountDownLatch(partitions);
+            collector_ = collector;
+        }
+    }
+
+    private final class Partition implements Runnable {
+
+        private final BlockingQueue<Object> queue_;
+
+        private final Thread thread_;
+
+        private final MutableMap<K, B> builders_ = UnifiedMap.newMap();
+
+        // Keys whose builder was dropped after a delta failed on it
+        private final MutableSet<K> poisoned_ = UnifiedSet.newSet();
+
+        Partition(final int index, final int queueCapacity) {
+            queue_ = new LinkedBlockingQueue<Object>(queueCapacity);
+            thread_ = new Thread(this, "satu-delta-applier-" + index);
+            thread_.setDaemon(true);
+        }
+
+        void submit(final Object task) {
+            try {
+                queue_.put(task);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted submitting to applier", e);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            while (true) {
+                final Object task;
+                try {
+                    task = queue_.take();
+                }
+                catch (final InterruptedException e) {
+                    return;
+                }
+                if (task == Stop.INSTANCE) {
+                    return;
+                }
+                try {
+                    if (task instanceof KeyModelDeltaPairDelta) {
+                        applyOrPoison((KeyModelDeltaPairDelta<K, K2, D, DB>) task);
+                    }
+                    else if (task instanceof MutableList) {
+                        for (final KeyModelDeltaPairDelta<K, K2, D, DB> delta : (MutableList<KeyModelDeltaPairDelta<K, K2, D, DB>>) task) {
+                            applyOrPoison(delta);
+                        }
+                    }
+                    else {
+                        final Barrier barrier = (Barrier) task;
+                        try {
+                            if (barrier.collector_ != null) {
+                                snapshot(barrier.collector_);
+                            }
+                        }
+                        finally {
+                            barrier.done_.countDown();
+                        }
+                    }
+                }
+                catch (final Throwable t) {
+                    failure_.compareAndSet(null, t);
+                }
+            }
+        }
+
+        /**
+         * Builds every model and rebases the dirty builders on their new models, so the next snapshot only rebuilds the
+         * models changed in between
+         */
+        private void snapshot(final Procedure2<K, M> collector) {
+            final MutableList<K> keys = FastList.newList();
+            final MutableList<M> models = FastList.newList();
+            builders_.forEachKeyValue(new Procedure2<K, B>() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public void value(final K key, final B builder) {
+                    final M model = builder.build();
+                    collector.value(key, model);
+                    if (builder.isDirty()) {
+                        keys.add(key);
+                        models.add(model);
+                    }
+                }
+            });
+            for (int i = 0; i < keys.size(); i++) {
+                builders_.put(keys.get(i), models.get(i).toBuilder());
+            }
+        }
+
+        private void applyOrPoison(final KeyModelDeltaPairDelta<K, K2, D, DB> delta) {
+            final K key = delta.getKey();
+            if (poisoned_.contains(key)) {
+                return;
+            }
+            try {
+                apply(delta);
+            }
+            catch (final Throwable t) {
+                builders_.removeKey(key);
+                poisoned_.add(key);
+                failure_.compareAndSet(null, t);
+            }
+        }
+
+        private void apply(final KeyModelDeltaPairDelta<K, K2, D, DB> delta) {
+            final B builder = builders_.get(delta.getKey());
+            switch (delta.getDeltaType()) {
+            case ADD:
+            case UPDATE:
+                if (builder == null || !builder.getKey().equals(delta.getValue().getKey())) {
+                    builders_.put(delta.getKey(), delta.getValue().toBuilder());
+                }
+                else {
+                    builder.applyDelta(delta.getValue());
+                }
+                break;
+
+            case DELETE:
+                builders_.removeKey(delta.getKey());
+                break;
+            }
+        }
+    }
+}
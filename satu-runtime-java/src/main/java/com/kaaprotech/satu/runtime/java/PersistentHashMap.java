@@ -0,0 +1,351 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.ObjectUtils;
+
+import com.gs.collections.api.RichIterable;
+import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.block.procedure.Procedure2;
+import com.gs.collections.api.block.procedure.primitive.ObjectIntProcedure;
+import com.gs.collections.api.map.ImmutableMap;
+import com.gs.collections.api.map.MapIterable;
+import com.gs.collections.api.tuple.Pair;
+import com.gs.collections.impl.lazy.LazyIterableAdapter;
+import com.gs.collections.impl.map.immutable.AbstractImmutableMap;
+import com.gs.collections.impl.tuple.Tuples;
+import com.kaaprotech.satu.runtime.java.PersistentHashTrie.Change;
+import com.kaaprotech.satu.runtime.java.PersistentHashTrie.Node;
+import com.kaaprotech.satu.runtime.java.PersistentHashTrie.TrieIterator;
+
+/**
+ * Immutable map backed by a hash array mapped trie, newWithKeyValue and newWithoutKey are O(log n) and share every
+ * untouched node with the original map so successive versions of a model can be kept cheaply
+ */
+@SuppressWarnings({ "serial", "unchecked" })
+public final class PersistentHashMap<K, V> extends AbstractImmutableMap<K, V> implements Serializable {
+
+    private static final PersistentHashMap<Object, Object> EMPTY = new PersistentHashMap<Object, Object>(PersistentHashTrie.EMPTY, 0);
+
+    private final Node root_;
+
+    private final int size_;
+
+    private PersistentHashMap(final Node root, final int size) {
+        root_ = root;
+        size_ = size;
+    }
+
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * The map itself when it is already persistent, otherwise a persistent copy, null is treated as empty
+     */
+    public static <K, V> PersistentHashMap<K, V> ofAll(final MapIterable<K, V> map) {
+        if (map instanceof PersistentHashMap) {
+            return (PersistentHashMap<K, V>) map;
+        }
+        if (map == null || map.isEmpty()) {
+            return empty();
+        }
+        final Change change = new Change();
+        final Node[] root = { PersistentHashTrie.EMPTY };
+        final int[] size = { 0 };
+        map.forEachKeyValue(new Procedure2<K, V>() {
+            @Override
+            public void value(final K key, final V value) {
+                change.added = false;
+                root[0] = root[0].put(key, value, PersistentHashTrie.hash(key), 0, change);
+                if (change.added) {
+                    size[0]++;
+                }
+            }
+        });
+        return new PersistentHashMap<K, V>(root[0], size[0]);
+    }
+
+    @Override
+    public PersistentHashMap<K, V> newWithKeyValue(final K key, final V value) {
+        final Change change = new Change();
+        final Node root = root_.put(key, value, PersistentHashTrie.hash(key), 0, change);
+        if (root == root_) {
+            return this;
+        }
+        return new PersistentHashMap<K, V>(root, change.added ? size_ + 1 : size_);
+    }
+
+    @Override
+    public PersistentHashMap<K, V> newWithAllKeyValues(final Iterable<? extends Pair<? extends K, ? extends V>> keyValues) {
+        PersistentHashMap<K, V> map = this;
+        for (Pair<? extends K, ? extends V> pair : keyValues) {
+            map = map.newWithKeyValue(pair.getOne(), pair.getTwo());
+        }
+        return map;
+    }
+
+    @Override
+    public PersistentHashMap<K, V> newWithAllKeyValueArguments(final Pair<? extends K, ? extends V>... keyValuePairs) {
+        PersistentHashMap<K, V> map = this;
+        for (Pair<? extends K, ? extends V> pair : keyValuePairs) {
+            map = map.newWithKeyValue(pair.getOne(), pair.getTwo());
+        }
+        return map;
+    }
+
+    @Override
+    public PersistentHashMap<K, V> newWithoutKey(final K key) {
+        final Change change = new Change();
+        final Node root = root_.remove(key, PersistentHashTrie.hash(key), 0, change);
+        if (!change.removed) {
+            return this;
+        }
+        return size_ == 1 ? PersistentHashMap.<K, V> empty() : new PersistentHashMap<K, V>(root, size_ - 1);
+    }
+
+    @Override
+    public PersistentHashMap<K, V> newWithoutAllKeys(final Iterable<? extends K> keys) {
+        PersistentHashMap<K, V> map = this;
+        for (K key : keys) {
+            map = map.newWithoutKey(key);
+        }
+        return map;
+    }
+
+    @Override
+    public int size() {
+        return size_;
+    }
+
+    @Override
+    public V get(final Object key) {
+        final Object value = root_.get(key, PersistentHashTrie.hash(key), 0);
+        return value == PersistentHashTrie.NOT_FOUND ? null : (V) value;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return root_.get(key, PersistentHashTrie.hash(key), 0) != PersistentHashTrie.NOT_FOUND;
+    }
+
+    @Override
+    public boolean containsValue(final Object value) {
+        for (Iterator<V> it = valueIterator(); it.hasNext();) {
+            if (ObjectUtils.equals(value, it.next())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachKeyValue(final Procedure2<? super K, ? super V> procedure) {
+        root_.forEach((Procedure2<Object, Object>) procedure);
+    }
+
+    @Override
+    public void forEachKey(final Procedure<? super K> procedure) {
+        root_.forEach(new Procedure2<Object, Object>() {
+            @Override
+            public void value(final Object key, final Object value) {
+                procedure.value((K) key);
+            }
+        });
+    }
+
+    @Override
+    public void forEachValue(final Procedure<? super V> procedure) {
+        root_.forEach(new Procedure2<Object, Object>() {
+            @Override
+            public void value(final Object key, final Object value) {
+                procedure.value((V) value);
+            }
+        });
+    }
+
+    @Override
+    public void forEachWithIndex(final ObjectIntProcedure<? super V> objectIntProcedure) {
+        int index = 0;
+        for (Iterator<V> it = valueIterator(); it.hasNext();) {
+            objectIntProcedure.value(it.next(), index++);
+        }
+    }
+
+    @Override
+    public <P> void forEachWith(final Procedure2<? super V, ? super P> procedure, final P parameter) {
+        for (Iterator<V> it = valueIterator(); it.hasNext();) {
+            procedure.value(it.next(), parameter);
+        }
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return valueIterator();
+    }
+
+    private Iterator<K> keyIterator() {
+        return new TrieIterator<K>(root_) {
+            @Override
+            K value(final Object key, final Object value) {
+                return (K) key;
+            }
+        };
+    }
+
+    private Iterator<V> valueIterator() {
+        return new TrieIterator<V>(root_) {
+            @Override
+            V value(final Object key, final Object value) {
+                return (V) value;
+            }
+        };
+    }
+
+    private Iterator<Pair<K, V>> pairIterator() {
+        return new TrieIterator<Pair<K, V>>(root_) {
+            @Override
+            Pair<K, V> value(final Object key, final Object value) {
+                return Tuples.pair((K) key, (V) value);
+            }
+        };
+    }
+
+    @Override
+    public RichIterable<K> keysView() {
+        return new LazyIterableAdapter<K>(new Iterable<K>() {
+            @Override
+            public Iterator<K> iterator() {
+                return keyIterator();
+            }
+        });
+    }
+
+    @Override
+    public RichIterable<V> valuesView() {
+        return new LazyIterableAdapter<V>(new Iterable<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return valueIterator();
+            }
+        });
+    }
+
+    @Override
+    public RichIterable<Pair<K, V>> keyValuesView() {
+        return new LazyIterableAdapter<Pair<K, V>>(new Iterable<Pair<K, V>>() {
+            @Override
+            public Iterator<Pair<K, V>> iterator() {
+                return pairIterator();
+            }
+        });
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return new AbstractSet<K>() {
+            @Override
+            public Iterator<K> iterator() {
+                return keyIterator();
+            }
+
+            @Override
+            public int size() {
+                return size_;
+            }
+
+            @Override
+            public boolean contains(final Object key) {
+                return containsKey(key);
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return valueIterator();
+            }
+
+            @Override
+            public int size() {
+                return size_;
+            }
+        };
+    }
+
+    @Override
+    public ImmutableMap<K, V> toImmutable() {
+        return this;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof Map)) {
+            return false;
+        }
+        final Map<?, ?> rhs = (Map<?, ?>) obj;
+        if (rhs.size() != size_) {
+            return false;
+        }
+        for (Iterator<Pair<K, V>> it = pairIterator(); it.hasNext();) {
+            final Pair<K, V> pair = it.next();
+            final Object value = rhs.get(pair.getOne());
+            if (!ObjectUtils.equals(pair.getTwo(), value) || (value == null && !rhs.containsKey(pair.getOne()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        final int[] hash = { 0 };
+        root_.forEach(new Procedure2<Object, Object>() {
+            @Override
+            public void value(final Object key, final Object value) {
+                hash[0] += ObjectUtils.hashCode(key) ^ ObjectUtils.hashCode(value);
+            }
+        });
+        return hash[0];
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("{");
+        for (Iterator<Pair<K, V>> it = pairIterator(); it.hasNext();) {
+            final Pair<K, V> pair = it.next();
+            sb.append(pair.getOne()).append('=').append(pair.getTwo());
+            if (it.hasNext()) {
+                sb.append(", ");
+            }
+        }
+        return sb.append('}').toString();
+    }
+}
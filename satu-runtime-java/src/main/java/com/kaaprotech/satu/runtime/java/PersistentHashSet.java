@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Set;
+
+import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.block.procedure.Procedure2;
+import com.gs.collections.api.set.ImmutableSet;
+import com.gs.collections.api.set.SetIterable;
+import com.gs.collections.impl.set.immutable.AbstractImmutableSet;
+import com.kaaprotech.satu.runtime.java.PersistentHashTrie.Change;
+import com.kaaprotech.satu.runtime.java.PersistentHashTrie.Node;
+import com.kaaprotech.satu.runtime.java.PersistentHashTrie.TrieIterator;
+
+/**
+ * Immutable set backed by a hash array mapped trie, newWith and newWithout are O(log n) and share every untouched node
+ * with the original set
+ */
+@SuppressWarnings({ "serial", "unchecked" })
+public final class PersistentHashSet<E> extends AbstractImmutableSet<E> implements Serializable {
+
+    private static final PersistentHashSet<Object> EMPTY = new PersistentHashSet<Object>(PersistentHashTrie.EMPTY, 0);
+
+    private final Node root_;
+
+    private final int size_;
+
+    private PersistentHashSet(final Node root, final int size) {
+        root_ = root;
+        size_ = size;
+    }
+
+    public static <E> PersistentHashSet<E> empty() {
+        return (PersistentHashSet<E>) EMPTY;
+    }
+
+    /**
+     * The set itself when it is already persistent, otherwise a persistent copy, null is treated as empty
+     */
+    public static <E> PersistentHashSet<E> ofAll(final SetIterable<E> set) {
+        if (set instanceof PersistentHashSet) {
+            return (PersistentHashSet<E>) set;
+        }
+        if (set == null || set.isEmpty()) {
+            return empty();
+        }
+        final Change change = new Change();
+        final Node[] root = { PersistentHashTrie.EMPTY };
+        final int[] size = { 0 };
+        set.forEach(new Procedure<E>() {
+            @Override
+            public void value(final E element) {
+                change.added = false;
+                root[0] = root[0].put(element, element, PersistentHashTrie.hash(element), 0, change);
+                if (change.added) {
+                    size[0]++;
+                }
+            }
+        });
+        return new PersistentHashSet<E>(root[0], size[0]);
+    }
+
+    @Override
+    public PersistentHashSet<E> newWith(final E element) {
+        final Change change = new Change();
+        final Node root = root_.put(element, element, PersistentHashTrie.hash(element), 0, change);
+        return change.added ? new PersistentHashSet<E>(root, size_ + 1) : this;
+    }
+
+    @Override
+    public PersistentHashSet<E> newWithout(final E element) {
+        final Change change = new Change();
+        final Node root = root_.remove(element, PersistentHashTrie.hash(element), 0, change);
+        if (!change.removed) {
+            return this;
+        }
+        return size_ == 1 ? PersistentHashSet.<E> empty() : new PersistentHashSet<E>(root, size_ - 1);
+    }
+
+    @Override
+    public PersistentHashSet<E> newWithAll(final Iterable<? extends E> elements) {
+        PersistentHashSet<E> set = this;
+        for (E element : elements) {
+            set = set.newWith(element);
+        }
+        return set;
+    }
+
+    @Override
+    public PersistentHashSet<E> newWithoutAll(final Iterable<? extends E> elements) {
+        PersistentHashSet<E> set = this;
+        for (E element : elements) {
+            set = set.newWithout(element);
+        }
+        return set;
+    }
+
+    @Override
+    public int size() {
+        return size_;
+    }
+
+    @Override
+    public boolean contains(final Object element) {
+        return root_.get(element, PersistentHashTrie.hash(element), 0) != PersistentHashTrie.NOT_FOUND;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new TrieIterator<E>(root_) {
+            @Override
+            E value(final Object key, final Object value) {
+                return (E) key;
+            }
+        };
+    }
+
+    @Override
+    public void forEach(final Procedure<? super E> procedure) {
+        root_.forEach(new Procedure2<Object, Object>() {
+            @Override
+            public void value(final Object key, final Object value) {
+                procedure.value((E) key);
+            }
+        });
+    }
+
+    @Override
+    public E getFirst() {
+        return isEmpty() ? null : iterator().next();
+    }
+
+    @Override
+    public E getLast() {
+        E last = null;
+        for (Iterator<E> it = iterator(); it.hasNext();) {
+            last = it.next();
+        }
+        return last;
+    }
+
+    @Override
+    public ImmutableSet<E> toImmutable() {
+        return this;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof Set)) {
+            return false;
+        }
+        final Set<?> rhs = (Set<?>) obj;
+        if (rhs.size() != size_) {
+            return false;
+        }
+        for (Iterator<E> it = iterator(); it.hasNext();) {
+            if (!rhs.contains(it.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (Iterator<E> it = iterator(); it.hasNext();) {
+            final E element = it.next();
+            hash += element == null ? 0 : element.hashCode();
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.lang.ObjectUtils;
+
+import com.gs.collections.api.block.procedure.Procedure2;
+
+/**
+ * Hash array mapped trie backing the persistent collections, nodes are never modified once published so an update
+ * copies only the nodes on the path to the changed entry. Each node keeps its entries and sub nodes in separate
+ * bitmap indexed arrays and a node left holding a single entry after a removal is inlined into its parent, keeping
+ * the trie canonical
+ */
+final class PersistentHashTrie {
+
+    static final Object NOT_FOUND = new Object();
+
+    static final Node EMPTY = new BitmapNode(0, 0, new Object[0], new Node[0]);
+
+    private static final int BITS = 5;
+
+    private static final int MASK = (1 << BITS) - 1;
+
+    // Bitmap levels needed to consume a 32 bit hash plus a collision level
+    private static final int MAX_DEPTH = 8;
+
+    private PersistentHashTrie() {
+    }
+
+    static int hash(final Object key) {
+        final int h = key == null ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Records how an update changed the trie so the owning collection can maintain its size
+     */
+    static final class Change {
+
+        boolean added;
+
+        boolean removed;
+    }
+
+    abstract static class Node implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        abstract Object get(Object key, int hash, int shift);
+
+        abstract Node put(Object key, Object value, int hash, int shift, Change change);
+
+        abstract Node remove(Object key, int hash, int shift, Change change);
+
+        abstract int dataArity();
+
+        abstract int nodeArity();
+
+        abstract Object keyAt(int index);
+
+        abstract Object valueAt(int index);
+
+        abstract Node nodeAt(int index);
+
+        final boolean isSingleEntry() {
+            return dataArity() == 1 && nodeArity() == 0;
+        }
+
+        final void forEach(final Procedure2<Object, Object> procedure) {
+            for (int i = 0; i < dataArity(); i++) {
+                procedure.value(keyAt(i), valueAt(i));
+            }
+            for (int i = 0; i < nodeArity(); i++) {
+                nodeAt(i).forEach(procedure);
+            }
+        }
+    }
+
+    static final class BitmapNode extends Node {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int dataMap_;
+
+        private final int nodeMap_;
+
+        // Keys and values interleaved in fragment order
+        private final Object[] data_;
+
+        private final Node[] nodes_;
+
+        BitmapNode(final int dataMap, final int nodeMap, final Object[] data, final Node[] nodes) {
+            dataMap_ = dataMap;
+            nodeMap_ = nodeMap;
+            data_ = data;
+            nodes_ = nodes;
+        }
+
+        private static int index(final int bitmap, final int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object get(final Object key, final int hash, final int shift) {
+            final int bit = 1 << ((hash >>> shift) & MASK);
+            if ((dataMap_ & bit) != 0) {
+                final int index = index(dataMap_, bit);
+                return ObjectUtils.equals(key, data_[2 * index]) ? data_[2 * index + 1] : NOT_FOUND;
+            }
+            if ((nodeMap_ & bit) != 0) {
+                return nodes_[index(nodeMap_, bit)].get(key, hash, shift + BITS);
+            }
+            return NOT_FOUND;
+        }
+
+        @Override
+        Node put(final Object key, final Object value, final int hash, final int shift, final Change change) {
+            final int bit = 1 << ((hash >>> shift) & MASK);
+
+            if ((dataMap_ & bit) != 0) {
+                final int index = index(dataMap_, bit);
+                final Object currentKey = data_[2 * index];
+                final Object currentValue = data_[2 * index + 1];
+                if (ObjectUtils.equals(key, currentKey)) {
+                    if (currentValue == value) {
+                        return this;
+                    }
+                    final Object[] data = data_.clone();
+                    data[2 * index + 1] = value;
+                    return new BitmapNode(dataMap_, nodeMap_, data, nodes_);
+                }
+
+                // Both entries share this fragment so push them down a level
+                change.added = true;
+                final Node node = merge(currentKey, currentValue, hash(currentKey), key, value, hash, shift + BITS);
+                final Object[] data = new Object[data_.length - 2];
+                System.arraycopy(data_, 0, data, 0, 2 * index);
+                System.arraycopy(data_, 2 * index + 2, data, 2 * index, data_.length - 2 * index - 2);
+                final int nodeIndex = index(nodeMap_, bit);
+                final Node[] nodes = new Node[nodes_.length + 1];
+                System.arraycopy(nodes_, 0, nodes, 0, nodeIndex);
+                nodes[nodeIndex] = node;
+                System.arraycopy(nodes_, nodeIndex, nodes, nodeIndex + 1, nodes_.length - nodeIndex);
+                return new BitmapNode(dataMap_ ^ bit, nodeMap_ | bit, data, nodes);
+            }
+
+            if ((nodeMap_ & bit) != 0) {
+                final int index = index(nodeMap_, bit);
+                final Node node = nodes_[index].put(key, value, hash, shift + BITS, change);
+                if (node == nodes_[index]) {
+                    return this;
+                }
+                final Node[] nodes = nodes_.clone();
+                nodes[index] = node;
+                return new BitmapNode(dataMap_, nodeMap_, data_, nodes);
+            }
+
+            change.added = true;
+            final int index = index(dataMap_, bit);
+            final Object[] data = new Object[data_.length + 2];
+            System.arraycopy(data_, 0, data, 0, 2 * index);
+            data[2 * index] = key;
+            data[2 * index + 1] = value;
+            System.arraycopy(data_, 2 * index, data, 2 * index + 2, data_.length - 2 * index);
+            return new BitmapNode(dataMap_ | bit, nodeMap_, data, nodes_);
+        }
+
+        @Override
+        Node remove(final Object key, final int hash, final int shift, final Change change) {
+            final int bit = 1 << ((hash >>> shift) & MASK);
+
+            if ((dataMap_ & bit) != 0) {
+                final int index = index(dataMap_, bit);
+                if (!ObjectUtils.equals(key, data_[2 * index])) {
+                    return this;
+                }
+                change.removed = true;
+                final Object[] data = new Object[data_.length - 2];
+                System.arraycopy(data_, 0, data, 0, 2 * index);
+                System.arraycopy(data_, 2 * index + 2, data, 2 * index, data_.length - 2 * index - 2);
+                return new BitmapNode(dataMap_ ^ bit, nodeMap_, data, nodes_);
+            }
+
+            if ((nodeMap_ & bit) != 0) {
+                final int index = index(nodeMap_, bit);
+                final Node node = nodes_[index].remove(key, hash, shift + BITS, change);
+                if (node == nodes_[index]) {
+                    return this;
+                }
+
+                if (!node.isSingleEntry()) {
+                    final Node[] nodes = nodes_.clone();
+                    nodes[index] = node;
+                    return new BitmapNode(dataMap_, nodeMap_, data_, nodes);
+                }
+
+                // Inline the remaining entry of the sub node
+                final Node[] nodes = new Node[nodes_.length - 1];
+                System.arraycopy(nodes_, 0, nodes, 0, index);
+                System.arraycopy(nodes_, index + 1, nodes, index, nodes_.length - index - 1);
+                final int dataIndex = index(dataMap_, bit);
+                final Object[] data = new Object[data_.length + 2];
+                System.arraycopy(data_, 0, data, 0, 2 * dataIndex);
+                data[2 * dataIndex] = node.keyAt(0);
+                data[2 * dataIndex + 1] = node.valueAt(0);
+                System.arraycopy(data_, 2 * dataIndex, data, 2 * dataIndex + 2, data_.length - 2 * dataIndex);
+                return new BitmapNode(dataMap_ | bit, nodeMap_ ^ bit, data, nodes);
+            }
+
+            return this;
+        }
+
+        @Override
+        int dataArity() {
+            return data_.length >> 1;
+        }
+
+        @Override
+        int nodeArity() {
+            return nodes_.length;
+        }
+
+        @Override
+        Object keyAt(final int index) {
+            return data_[2 * index];
+        }
+
+        @Override
+        Object valueAt(final int index) {
+            return data_[2 * index + 1];
+        }
+
+        @Override
+        Node nodeAt(final int index) {
+            return nodes_[index];
+        }
+    }
+
+    /**
+     * Entries whose keys have identical hashes
+     */
+    static final class CollisionNode extends Node {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int hash_;
+
+        private final Object[] data_;
+
+        CollisionNode(final int hash, final Object[] data) {
+            hash_ = hash;
+            data_ = data;
+        }
+
+        private int indexOf(final Object key) {
+            for (int i = 0; i < data_.length; i += 2) {
+                if (ObjectUtils.equals(key, data_[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object get(final Object key, final int hash, final int shift) {
+            final int index = hash == hash_ ? indexOf(key) : -1;
+            return index < 0 ? NOT_FOUND : data_[index + 1];
+        }
+
+        @Override
+        Node put(final Object key, final Object value, final int hash, final int shift, final Change change) {
+            if (hash != hash_) {
+                change.added = true;
+                return branch(this, key, value, hash, shift);
+            }
+            final int index = indexOf(key);
+            if (index >= 0) {
+                if (data_[index + 1] == value) {
+                    return this;
+                }
+                final Object[] data = data_.clone();
+                data[index + 1] = value;
+                return new CollisionNode(hash_, data);
+            }
+            change.added = true;
+            final Object[] data = new Object[data_.length + 2];
+            System.arraycopy(data_, 0, data, 0, data_.length);
+            data[data_.length] = key;
+            data[data_.length + 1] = value;
+            return new CollisionNode(hash_, data);
+        }
+
+        @Override
+        Node remove(final Object key, final int hash, final int shift, final Change change) {
+            final int index = hash == hash_ ? indexOf(key) : -1;
+            if (index < 0) {
+                return this;
+            }
+            change.removed = true;
+            final Object[] data = new Object[data_.length - 2];
+            System.arraycopy(data_, 0, data, 0, index);
+            System.arraycopy(data_, index + 2, data, index, data_.length - index - 2);
+            return new CollisionNode(hash_, data);
+        }
+
+        @Override
+        int dataArity() {
+            return data_.length >> 1;
+        }
+
+        @Override
+        int nodeArity() {
+            return 0;
+        }
+
+        @Override
+        Object keyAt(final int index) {
+            return data_[2 * index];
+        }
+
+        @Override
+        Object valueAt(final int index) {
+            return data_[2 * index + 1];
+        }
+
+        @Override
+        Node nodeAt(final int index) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    private static Node merge(final Object key1, final Object value1, final int hash1, final Object key2, final Object value2, final int hash2, final int shift) {
+        if (hash1 == hash2) {
+            return new CollisionNode(hash1, new Object[] { key1, value1, key2, value2 });
+        }
+        final int fragment1 = (hash1 >>> shift) & MASK;
+        final int fragment2 = (hash2 >>> shift) & MASK;
+        if (fragment1 == fragment2) {
+            return new BitmapNode(0, 1 << fragment1, new Object[0], new Node[] { merge(key1, value1, hash1, key2, value2, hash2, shift + BITS) });
+        }
+        final Object[] data = fragment1 < fragment2 ? new Object[] { key1, value1, key2, value2 } : new Object[] { key2, value2, key1, value1 };
+        return new BitmapNode((1 << fragment1) | (1 << fragment2), 0, data, new Node[0]);
+    }
+
+    /**
+     * Splits a collision node from a key whose hash shares its fragments down to shift but differs in full, the two
+     * must sit on separate branches or lookups which compare the full hash would never reach the key
+     */
+    private static Node branch(final CollisionNode node, final Object key, final Object value, final int hash, final int shift) {
+        final int fragment1 = (node.hash_ >>> shift) & MASK;
+        final int fragment2 = (hash >>> shift) & MASK;
+        if (fragment1 == fragment2) {
+            return new BitmapNode(0, 1 << fragment1, new Object[0], new Node[] { branch(node, key, value, hash, shift + BITS) });
+        }
+        return new BitmapNode(1 << fragment2, 1 << fragment1, new Object[] { key, value }, new Node[] { node });
+    }
+
+    /**
+     * Depth first walk over the entries of a trie, subclasses choose what each entry yields
+     */
+    abstract static class TrieIterator<T> implements Iterator<T> {
+
+        private final Node[] nodes_ = new Node[MAX_DEPTH];
+
+        private final int[] dataIndexes_ = new int[MAX_DEPTH];
+
+        private final int[] nodeIndexes_ = new int[MAX_DEPTH];
+
+        private int depth_;
+
+        TrieIterator(final Node root) {
+            nodes_[0] = root;
+        }
+
+        abstract T value(Object key, Object value);
+
+        private boolean advance() {
+            while (depth_ >= 0) {
+                final Node node = nodes_[depth_];
+                if (dataIndexes_[depth_] < node.dataArity()) {
+                    return true;
+                }
+                if (nodeIndexes_[depth_] < node.nodeArity()) {
+                    final Node child = node.nodeAt(nodeIndexes_[depth_]++);
+                    depth_++;
+                    nodes_[depth_] = child;
+                    dataIndexes_[depth_] = 0;
+                    nodeIndexes_[depth_] = 0;
+                }
+                else {
+                    nodes_[depth_] = null;
+                    depth_--;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return advance();
+        }
+
+        @Override
+        public T next() {
+            if (!advance()) {
+                throw new NoSuchElementException();
+            }
+            final Node node = nodes_[depth_];
+            final int index = dataIndexes_[depth_]++;
+            return value(node.keyAt(index), node.valueAt(index));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove from a persistent collection");
+        }
+    }
+}
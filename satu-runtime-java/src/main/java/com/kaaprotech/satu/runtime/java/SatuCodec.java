@@ -0,0 +1,233 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Primitive encoders used by the generated writeTo and readFrom methods. Integral values are written as varints,
+ * signed ones zig-zag encoded first so small negative values stay short, floating point values are written in full.
+ * <p>
+ * The caller is responsible for sizing the buffer, writing past its limit throws a BufferOverflowException.
+ */
+public final class SatuCodec {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final DeltaType[] DELTA_TYPES = DeltaType.values();
+
+    private SatuCodec() {
+    }
+
+    public static void writeUnsignedVarInt(final ByteBuffer buffer, final int value) {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            buffer.put((byte) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        buffer.put((byte) remaining);
+    }
+
+    public static int readUnsignedVarInt(final ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new RuntimeException("Malformed varint");
+    }
+
+    public static void writeUnsignedVarLong(final ByteBuffer buffer, final long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0L) {
+            buffer.put((byte) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        buffer.put((byte) remaining);
+    }
+
+    public static long readUnsignedVarLong(final ByteBuffer buffer) {
+        long value = 0L;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new RuntimeException("Malformed varlong");
+    }
+
+    public static void writeBoolean(final ByteBuffer buffer, final boolean value) {
+        buffer.put(value ? (byte) 1 : (byte) 0);
+    }
+
+    public static boolean readBoolean(final ByteBuffer buffer) {
+        return buffer.get() != 0;
+    }
+
+    public static void writeChar(final ByteBuffer buffer, final char value) {
+        writeUnsignedVarInt(buffer, value);
+    }
+
+    public static char readChar(final ByteBuffer buffer) {
+        return (char) readUnsignedVarInt(buffer);
+    }
+
+    public static void writeByte(final ByteBuffer buffer, final byte value) {
+        buffer.put(value);
+    }
+
+    public static byte readByte(final ByteBuffer buffer) {
+        return buffer.get();
+    }
+
+    public static void writeShort(final ByteBuffer buffer, final short value) {
+        writeInt(buffer, value);
+    }
+
+    public static short readShort(final ByteBuffer buffer) {
+        return (short) readInt(buffer);
+    }
+
+    public static void writeInt(final ByteBuffer buffer, final int value) {
+        writeUnsignedVarInt(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    public static int readInt(final ByteBuffer buffer) {
+        final int value = readUnsignedVarInt(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static void writeLong(final ByteBuffer buffer, final long value) {
+        writeUnsignedVarLong(buffer, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readLong(final ByteBuffer buffer) {
+        final long value = readUnsignedVarLong(buffer);
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    public static void writeFloat(final ByteBuffer buffer, final float value) {
+        buffer.putFloat(value);
+    }
+
+    public static float readFloat(final ByteBuffer buffer) {
+        return buffer.getFloat();
+    }
+
+    public static void writeDouble(final ByteBuffer buffer, final double value) {
+        buffer.putDouble(value);
+    }
+
+    public static double readDouble(final ByteBuffer buffer) {
+        return buffer.getDouble();
+    }
+
+    /**
+     * Writes the UTF-8 byte length followed by the bytes, ASCII strings are copied without an intermediate array
+     */
+    public static void writeString(final ByteBuffer buffer, final String value) {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) >= 0x80) {
+                final byte[] bytes = value.getBytes(UTF8);
+                writeUnsignedVarInt(buffer, bytes.length);
+                buffer.put(bytes);
+                return;
+            }
+        }
+        writeUnsignedVarInt(buffer, length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    public static String readString(final ByteBuffer buffer) {
+        final int length = readUnsignedVarInt(buffer);
+        if (buffer.hasArray()) {
+            final int offset = buffer.arrayOffset() + buffer.position();
+            buffer.position(buffer.position() + length);
+            return new String(buffer.array(), offset, length, UTF8);
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    public static void writeDeltaType(final ByteBuffer buffer, final DeltaType deltaType) {
+        buffer.put((byte) deltaType.ordinal());
+    }
+
+    public static DeltaType readDeltaType(final ByteBuffer buffer) {
+        return DELTA_TYPES[buffer.get()];
+    }
+
+    public static void skipVarInt(final ByteBuffer buffer) {
+        while (buffer.get() < 0) {
+            // Continuation bit set
+        }
+    }
+
+    public static void skipBoolean(final ByteBuffer buffer) {
+        buffer.position(buffer.position() + 1);
+    }
+
+    public static void skipChar(final ByteBuffer buffer) {
+        skipVarInt(buffer);
+    }
+
+    public static void skipByte(final ByteBuffer buffer) {
+        buffer.position(buffer.position() + 1);
+    }
+
+    public static void skipShort(final ByteBuffer buffer) {
+        skipVarInt(buffer);
+    }
+
+    public static void skipInt(final ByteBuffer buffer) {
+        skipVarInt(buffer);
+    }
+
+    public static void skipLong(final ByteBuffer buffer) {
+        skipVarInt(buffer);
+    }
+
+    public static void skipFloat(final ByteBuffer buffer) {
+        buffer.position(buffer.position() + 4);
+    }
+
+    public static void skipDouble(final ByteBuffer buffer) {
+        buffer.position(buffer.position() + 8);
+    }
+
+    public static void skipString(final ByteBuffer buffer) {
+        final int length = readUnsignedVarInt(buffer);
+        buffer.position(buffer.position() + length);
+    }
+
+    /**
+     * Skips a DateTime written as its millis followed by its zone id
+     */
+    public static void skipDateTime(final ByteBuffer buffer) {
+        skipLong(buffer);
+        skipString(buffer);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.gs.collections.api.block.procedure.primitive.IntProcedure;
+
+/**
+ * Runs the per entry build and reconcile work of large map of model fields across threads. Maps with at least
+ * threshold entries are split into batches, the calling thread and the executor's threads claim batches until none
+ * are left, so a batch is only ever waited on while a thread is running it and nested parallel work can't deadlock
+ * the executor.
+ * <p>
+ * The executor defaults to a daemon pool with a thread per processor, a caller supplied executor may be set instead.
+ */
+public final class SatuParallel {
+
+    public static final int DEFAULT_THRESHOLD = 8192;
+
+    private static final int BATCH_SIZE = 1024;
+
+    private static volatile Executor executor_;
+
+    private static volatile int threshold_ = DEFAULT_THRESHOLD;
+
+    private SatuParallel() {
+    }
+
+    /**
+     * @param executor the executor to run batches on, null for the default pool
+     */
+    public static void setExecutor(final Executor executor) {
+        executor_ = executor;
+    }
+
+    /**
+     * @param threshold the smallest map size worked on in parallel, Integer.MAX_VALUE to always work sequentially
+     */
+    public static void setThreshold(final int threshold) {
+        threshold_ = threshold;
+    }
+
+    public static int getThreshold() {
+        return threshold_;
+    }
+
+    static boolean isParallel(final int size) {
+        return size >= threshold_;
+    }
+
+    /**
+     * Calls the procedure with each index in [0, size), in parallel when size reaches the threshold. Exceptions are
+     * rethrown on the calling thread once every claimed batch has finished.
+     */
+    static void forEachIndex(final int size, final IntProcedure procedure) {
+        final int batches = (size + BATCH_SIZE - 1) / BATCH_SIZE;
+        if (!isParallel(size) || batches < 2) {
+            for (int i = 0; i < size; i++) {
+                procedure.value(i);
+            }
+            return;
+        }
+
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(batches);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                for (int batch = next.getAndIncrement(); batch < batches; batch = next.getAndIncrement()) {
+                    try {
+                        final int end = Math.min(size, (batch + 1) * BATCH_SIZE);
+                        for (int i = batch * BATCH_SIZE; i < end; i++) {
+                            procedure.value(i);
+                        }
+                    }
+                    catch (final Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+
+        final Executor executor = executor_ != null ? executor_ : DefaultPool.EXECUTOR;
+        final int helpers = Math.min(batches, Runtime.getRuntime().availableProcessors()) - 1;
+        for (int i = 0; i < helpers; i++) {
+            executor.execute(worker);
+        }
+        worker.run();
+
+        try {
+            done.await();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for parallel batches", e);
+        }
+
+        final Throwable t = failure.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t != null) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private static final class DefaultPool {
+
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            private final AtomicInteger count_ = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "satu-parallel-" + count_.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -22,7 +22,10 @@ import com.gs.collections.api.RichIterable;
 import com.gs.collections.api.block.function.Function;
 import com.gs.collections.api.block.function.Function2;
 import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.block.procedure.Procedure2;
+import com.gs.collections.api.block.procedure.primitive.IntProcedure;
 import com.gs.collections.api.list.ImmutableList;
+import com.gs.collections.api.list.MutableList;
 import com.gs.collections.api.map.ImmutableMap;
 import com.gs.collections.api.map.MapIterable;
 import com.gs.collections.api.map.MutableMap;
@@ -30,6 +33,8 @@ import com.gs.collections.api.set.MutableSet;
 import com.gs.collections.api.set.SetIterable;
 import com.gs.collections.api.tuple.Pair;
 import com.gs.collections.impl.block.factory.Predicates;
+import com.gs.collections.impl.list.mutable.FastList;
+import com.gs.collections.impl.map.mutable.UnifiedMap;
 import com.gs.collections.impl.tuple.Tuples;
 
 /**
@@ -38,7 +43,21 @@ import com.gs.collections.impl.tuple.Tuples;
 @SuppressWarnings("serial")
 public final class SatuUtil {
 
+    private static final long FINGERPRINT_SEED = 0xcbf29ce484222325L;
+
+    private static final long FINGERPRINT_PRIME = 0x100000001b3L;
+
+    private static final int UNORDERED = 2;
+
     public static <K, M extends Model<?, B>, B extends ModelBuilder<?, M, ?>> MutableMap<K, B> toKeyModelBuilderMap(final ImmutableMap<K, M> models) {
+        if (SatuParallel.isParallel(models.size())) {
+            return collectValuesInParallel(models, new Function<M, B>() {
+                @Override
+                public B valueOf(final M model) {
+                    return model.toBuilder();
+                }
+            });
+        }
         return models.collect(new Function2<K, M, Pair<K, B>>() {
             @Override
             public Pair<K, B> value(final K key, final M mode2) {
@@ -47,7 +66,30 @@ public final class SatuUtil {
         }).toMap();
     }
 
+    /**
+     * As toKeyModelBuilderMap with each builder reporting to listener when it becomes dirty
+     */
+    public static <K, M extends Model<?, B>, B extends ModelBuilder<?, M, ?>> MutableMap<K, B> toKeyModelBuilderMap(final ImmutableMap<K, M> models, final DirtyListener listener,
+            final int field) {
+        final MutableMap<K, B> builders = toKeyModelBuilderMap(models);
+        builders.forEachKeyValue(new Procedure2<K, B>() {
+            @Override
+            public void value(final K key, final B builder) {
+                builder.setDirtyListener(listener, field, key);
+            }
+        });
+        return builders;
+    }
+
     public static <K, M extends Model<?, B>, B extends ModelBuilder<?, M, ?>> ImmutableMap<K, M> toKeyModelMap(final MutableMap<K, B> builders) {
+        if (SatuParallel.isParallel(builders.size())) {
+            return collectValuesInParallel(builders, new Function<B, M>() {
+                @Override
+                public M valueOf(final B builder) {
+                    return builder.build();
+                }
+            }).toImmutable();
+        }
         return builders.collect(new Function2<K, B, Pair<K, M>>() {
             @Override
             public Pair<K, M> value(final K key, final B bui2der) {
@@ -56,6 +98,105 @@ public final class SatuUtil {
         }).toImmutable();
     }
 
+    /**
+     * Rebuilds only the entries of refModels whose builders are dirty, the remaining entries are shared with refModels
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, M extends Model<?, B>, B extends ModelBuilder<?, M, ?>> ImmutableMap<K, M> toKeyModelMap(final ImmutableMap<K, M> refModels, final MutableMap<K, B> builders,
+            final SetIterable<K> dirtyKeys) {
+        if (SatuParallel.isParallel(dirtyKeys.size())) {
+            return toKeyModelMapInParallel(refModels, builders, dirtyKeys);
+        }
+        if (refModels instanceof PersistentHashMap) {
+            PersistentHashMap<K, M> models = (PersistentHashMap<K, M>) refModels;
+            for (K key : dirtyKeys) {
+                final B builder = builders.get(key);
+                if (builder != null) {
+                    models = models.newWithKeyValue(key, builder.build());
+                }
+            }
+            return models;
+        }
+
+        final MutableMap<K, M> models = refModels.toMap();
+        dirtyKeys.forEach(new Procedure<K>() {
+            @Override
+            public void value(final K key) {
+                final B builder = builders.get(key);
+                if (builder != null) {
+                    models.put(key, builder.build());
+                }
+            }
+        });
+        return models.toImmutable();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, M extends Model<?, B>, B extends ModelBuilder<?, M, ?>> ImmutableMap<K, M> toKeyModelMapInParallel(final ImmutableMap<K, M> refModels,
+            final MutableMap<K, B> builders, final SetIterable<K> dirtyKeys) {
+        final Object[] keys = dirtyKeys.toArray();
+        final boolean[] dirty = new boolean[keys.length];
+        final Object[] models = new Object[keys.length];
+        SatuParallel.forEachIndex(keys.length, new IntProcedure() {
+            @Override
+            public void value(final int i) {
+                final B builder = builders.get(keys[i]);
+                if (builder != null) {
+                    dirty[i] = true;
+                    models[i] = builder.build();
+                }
+            }
+        });
+
+        if (refModels instanceof PersistentHashMap) {
+            PersistentHashMap<K, M> result = (PersistentHashMap<K, M>) refModels;
+            for (int i = 0; i < keys.length; i++) {
+                if (dirty[i]) {
+                    result = result.newWithKeyValue((K) keys[i], (M) models[i]);
+                }
+            }
+            return result;
+        }
+
+        final MutableMap<K, M> result = refModels.toMap();
+        for (int i = 0; i < keys.length; i++) {
+            if (dirty[i]) {
+                result.put((K) keys[i], (M) models[i]);
+            }
+        }
+        return result.toImmutable();
+    }
+
+    /**
+     * Applies the function to every value of the map in parallel, the result has the map's keys
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V, R> MutableMap<K, R> collectValuesInParallel(final MapIterable<K, V> map, final Function<? super V, ? extends R> function) {
+        final int size = map.size();
+        final Object[] keys = new Object[size];
+        final Object[] values = new Object[size];
+        map.forEachKeyValue(new Procedure2<K, V>() {
+            private int index_;
+
+            @Override
+            public void value(final K key, final V value) {
+                keys[index_] = key;
+                values[index_++] = value;
+            }
+        });
+        SatuParallel.forEachIndex(size, new IntProcedure() {
+            @Override
+            public void value(final int i) {
+                values[i] = function.valueOf((V) values[i]);
+            }
+        });
+        final MutableMap<K, R> result = UnifiedMap.newMap(size);
+        for (int i = 0; i < size; i++) {
+            result.put((K) keys[i], (R) values[i]);
+        }
+        return result;
+    }
+
     public static <K, V> MutableMap<K, KeyValuePairDelta.Builder<K, V>> toKeyValuePairDeltaBuilderMap(final ImmutableList<KeyValuePairDelta<K, V>> kvPairs) {
         return kvPairs.toMap(new Function<KeyValuePairDelta<K, V>, K>() {
             @Override
@@ -170,27 +311,32 @@ public final class SatuUtil {
         });
     }
 
+    /**
+     * Single pass hash join of two maps, each map is walked once and no intermediate key sets are created
+     */
     public static <K, V1, V2> void reconcileMap(final MapIterable<K, V1> ref, final MapIterable<K, V2> other, final ReconcileMapNofity<K, V2> notify, final ReconcileMapEquals<V1, V2> equals) {
-        ref.keysView().reject(Predicates.in(other.keysView())).forEach(new Procedure<K>() {
-            @Override
-            public void value(final K key) {
-                notify.delete(key);
-            }
-        });
+        if (ref == (Object) other) {
+            return;
+        }
 
-        other.keysView().reject(Predicates.in(ref.keysView())).forEach(new Procedure<K>() {
+        ref.forEachKeyValue(new Procedure2<K, V1>() {
             @Override
-            public void value(final K key) {
-                notify.add(key, other.get(key));
+            public void value(final K key, final V1 refValue) {
+                final V2 otherValue = other.get(key);
+                if (otherValue == null && !other.containsKey(key)) {
+                    notify.delete(key);
+                }
+                else if (!equals.equals(refValue, otherValue)) {
+                    notify.update(key, otherValue);
+                }
             }
         });
 
-        ref.keysView().select(Predicates.in(other.keysView())).forEach(new Procedure<K>() {
+        other.forEachKeyValue(new Procedure2<K, V2>() {
             @Override
-            public void value(final K key) {
-                V2 otherValue = other.get(key);
-                if (!equals.equals(ref.get(key), otherValue)) {
-                    notify.update(key, otherValue);
+            public void value(final K key, final V2 otherValue) {
+                if (!ref.containsKey(key)) {
+                    notify.add(key, otherValue);
                 }
             }
         });
@@ -266,33 +412,136 @@ public final class SatuUtil {
         });
     }
 
+    public static <K, V> void applyKeyValuePairDeltas(final RichIterable<KeyValuePairDelta<K, V>> deltas, final MapOverlay<K, V> pairs) {
+        deltas.forEach(new Procedure<KeyValuePairDelta<K, V>>() {
+            @Override
+            public void value(final KeyValuePairDelta<K, V> delta) {
+                switch (delta.getDeltaType()) {
+                case ADD:
+                case UPDATE:
+                    if (!ObjectUtils.equals(pairs.get(delta.getKey()), delta.getValue()) || !pairs.containsKey(delta.getKey())) {
+                        pairs.put(delta.getKey(), delta.getValue());
+                    }
+                    break;
+
+                case DELETE:
+                    pairs.remove(delta.getKey());
+                    break;
+                }
+            }
+        });
+    }
+
+    public static <K> void applyKeyDeltas(final RichIterable<KeyDelta<K>> deltas, final SetOverlay<K> entries) {
+        deltas.forEach(new Procedure<KeyDelta<K>>() {
+            @Override
+            public void value(final KeyDelta<K> delta) {
+                switch (delta.getDeltaType()) {
+                case ADD:
+                case UPDATE:
+                    entries.add(delta.getKey());
+                    break;
+
+                case DELETE:
+                    entries.remove(delta.getKey());
+                    break;
+                }
+            }
+        });
+    }
+
+    public static <K, K2, M extends Model<K2, B>, B extends ModelBuilder<K2, M, D>, D extends ModelDelta<K2, B, DB>, DB extends ModelDeltaBuilder<K2, D>> void applyKeyModelPairDeltas(
+            final RichIterable<KeyModelDeltaPairDelta<K, K2, D, DB>> deltas, final KeyModelBuilderMapOverlay<K, K2, M, B, D, DB> builders) {
+        deltas.forEach(new Procedure<KeyModelDeltaPairDelta<K, K2, D, DB>>() {
+            @Override
+            public void value(final KeyModelDeltaPairDelta<K, K2, D, DB> delta) {
+                switch (delta.getDeltaType()) {
+                case ADD:
+                case UPDATE:
+                    final B builder = builders.get(delta.getKey());
+                    if (builder == null || !builder.getKey().equals(delta.getValue().getKey())) {
+                        builders.put(delta.getKey(), delta.getValue().toBuilder());
+                    }
+                    else {
+                        builder.applyDelta(delta.getValue());
+                    }
+                    break;
+
+                case DELETE:
+                    builders.remove(delta.getKey());
+                    break;
+                }
+            }
+        });
+    }
+
     public static <E> void reconcileSet(final SetIterable<E> ref, final SetIterable<E> other, final ReconcileSetNotify<E> notify) {
         reconcileSet(ref, other, false, notify);
     }
 
+    /**
+     * Single pass reconcile of two sets, each set is walked once and no difference or intersection sets are created
+     */
     public static <E> void reconcileSet(final SetIterable<E> ref, final SetIterable<E> other, final boolean skipIntersect, final ReconcileSetNotify<E> notify) {
-        ref.difference(other).forEach(new Procedure<E>() {
+        if (ref == other) {
+            if (!skipIntersect) {
+                ref.forEach(new Procedure<E>() {
+                    @Override
+                    public void value(final E element) {
+                        notify.intersect(element);
+                    }
+                });
+            }
+            return;
+        }
+
+        ref.forEach(new Procedure<E>() {
             @Override
             public void value(final E element) {
-                notify.delete(element);
+                if (!other.contains(element)) {
+                    notify.delete(element);
+                }
+                else if (!skipIntersect) {
+                    notify.intersect(element);
+                }
             }
         });
 
-        other.difference(ref).forEach(new Procedure<E>() {
+        other.forEach(new Procedure<E>() {
             @Override
             public void value(final E element) {
-                notify.add(element);
+                if (!ref.contains(element)) {
+                    notify.add(element);
+                }
             }
         });
+    }
 
-        if (!skipIntersect) {
-            ref.intersect(other).forEach(new Procedure<E>() {
-                @Override
-                public void value(final E element) {
-                    notify.intersect(element);
+    /**
+     * Reconciles the key sets of two maps without copying them, keys only in ref are deleted, keys only in other are
+     * added and keys in both intersect
+     */
+    public static <K> void reconcileMapKeys(final MapIterable<K, ?> ref, final MapIterable<K, ?> other, final ReconcileSetNotify<K> notify) {
+        ref.forEachKey(new Procedure<K>() {
+            @Override
+            public void value(final K key) {
+                if (other.containsKey(key)) {
+                    notify.intersect(key);
                 }
-            });
-        }
+                else {
+                    notify.delete(key);
+                }
+            }
+        });
+
+        other.forEachKey(new Procedure<K>() {
+            @Override
+            public void value(final K key) {
+                if (!ref.containsKey(key)) {
+                    notify.add(key);
+                }
+            }
+        });
     }
 
     public static <K> void reconcileKeys(final SetIterable<K> refValues, final SetIterable<K> modValues, final DeltaAppender<KeyDelta<K>> appender) {
@@ -345,96 +594,278 @@ public final class SatuUtil {
 
     public static <K, K2, M extends Model<K2, B>, B extends ModelBuilder<K2, M, D>, D extends ModelDelta<K2, B, DB>, DB extends ModelDeltaBuilder<K2, D>> void reconcileKeyModelBuilderPairs(
             final MapIterable<K, M> refModels, final MapIterable<K, B> builders, final DeltaAppender<KeyModelDeltaPairDelta<K, K2, D, DB>> deltaAppender) {
-        reconcileSet(refModels.keysView().toSet(), builders.keysView().toSet(), new ReconcileSetNotify<K>() {
+        reconcileMapKeys(refModels, builders, new Function<DeltaAppender<KeyModelDeltaPairDelta<K, K2, D, DB>>, ReconcileSetNotify<K>>() {
             @Override
-            public void add(final K key) {
-                final B builder = builders.get(key);
-                final D delta = builder.toDelta(DeltaType.ADD);
-                if (delta != null) {
-                    deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.ADD, key, delta));
-                }
-                else {
-                    // Create a blank delta
-                    final D d = builder.toDelta(DeltaType.DELETE).toDeltaBuilder().setDeltaType(DeltaType.ADD).buildDelta();
-                    deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.ADD, key, d));
-                }
+            public ReconcileSetNotify<K> valueOf(final DeltaAppender<KeyModelDeltaPairDelta<K, K2, D, DB>> appender) {
+                return new ReconcileSetNotify<K>() {
+                    @Override
+                    public void add(final K key) {
+                        appendKeyModelBuilderAdd(key, builders.get(key), appender);
+                    }
+
+                    @Override
+                    public void intersect(final K key) {
+                        reconcileKeyModelBuilderPair(key, refModels.get(key), builders.get(key), appender);
+                    }
+
+                    @Override
+                    public void delete(final K key) {
+                        appendKeyModelDelete(key, refModels.get(key), appender);
+                    }
+                };
             }
+        }, deltaAppender);
+    }
 
+    /**
+     * Reconciles an edit log against the map it was recorded over, removedKeys were deleted from refModels and
+     * builders hold the entries put or requested since
+     */
+    public static <K, K2, M extends Model<K2, B>, B extends ModelBuilder<K2, M, D>, D extends ModelDelta<K2, B, DB>, DB extends ModelDeltaBuilder<K2, D>> void reconcileKeyModelBuilderEdits(
+            final MapIterable<K, M> refModels, final MapIterable<K, B> builders, final SetIterable<K> removedKeys,
+            final DeltaAppender<KeyModelDeltaPairDelta<K, K2, D, DB>> deltaAppender) {
+        removedKeys.forEach(new Procedure<K>() {
             @Override
-            public void intersect(final K key) {
+            public void value(final K key) {
+                appendKeyModelDelete(key, refModels.get(key), deltaAppender);
+            }
+        });
+
+        builders.forEachKeyValue(new Procedure2<K, B>() {
+            @Override
+            public void value(final K key, final B builder) {
                 final M refModel = refModels.get(key);
-                final B builder = builders.get(key);
-                if (refModel.getKey().equals(builder.getKey())) {
-                    final D delta = builder.reconcile(DeltaType.UPDATE, refModel);
-                    if (delta != null) {
-                        deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.UPDATE, key, delta));
-                    }
+                if (refModel == null) {
+                    appendKeyModelBuilderAdd(key, builder, deltaAppender);
                 }
                 else {
-                    final M emptyModel = builder.buildEmpty();
-                    final D delta = builder.reconcile(DeltaType.ADD, emptyModel);
-                    if (delta != null) {
-                        deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.UPDATE, key, delta));
-                    }
+                    reconcileKeyModelBuilderPair(key, refModel, builder, deltaAppender);
                 }
             }
+        });
+    }
 
+    private static <K, K2, M extends Model<K2, B>, B extends ModelBuilder<K2, M, D>, D extends ModelDelta<K2, B, DB>, DB extends ModelDeltaBuilder<K2, D>> void appendKeyModelBuilderAdd(
+            final K key, final B builder, final DeltaAppender<KeyModelDeltaPairDelta<K, K2, D, DB>> deltaAppender) {
+        final D delta = builder.toDelta(DeltaType.ADD);
+        if (delta != null) {
+            deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.ADD, key, delta));
+        }
+        else {
+            // Create a blank delta
+            final D d = builder.toDelta(DeltaType.DELETE).toDeltaBuilder().setDeltaType(DeltaType.ADD).buildDelta();
+            deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.ADD, key, d));
+        }
+    }
+
+    private static <K, K2, M extends Model<K2, B>, B extends ModelBuilder<K2, M, D>, D extends ModelDelta<K2, B, DB>, DB extends ModelDeltaBuilder<K2, D>> void appendKeyModelDelete(
+            final K key, final M refModel, final DeltaAppender<KeyModelDeltaPairDelta<K, K2, D, DB>> deltaAppender) {
+        final B emptyBuilder = refModel.toBuilderEmpty();
+        final D delta = emptyBuilder.reconcile(DeltaType.DELETE, refModel);
+        if (delta != null) {
+            deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.DELETE, key, delta));
+        }
+    }
+
+    /**
+     * Reconciles only the given keys, used when the map structure is unchanged and only the listed builders are dirty
+     */
+    public static <K, K2, M extends Model<K2, B>, B extends ModelBuilder<K2, M, D>, D extends ModelDelta<K2, B, DB>, DB extends ModelDeltaBuilder<K2, D>> void reconcileKeyModelBuilderPairs(
+            final MapIterable<K, M> refModels, final MapIterable<K, B> builders, final SetIterable<K> keys, final DeltaAppender<KeyModelDeltaPairDelta<K, K2, D, DB>> deltaAppender) {
+        if (SatuParallel.isParallel(keys.size())) {
+            final Object[] keyArray = keys.toArray();
+            final Object[] deltas = new Object[keyArray.length];
+            SatuParallel.forEachIndex(keyArray.length, new IntProcedure() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public void value(final int i) {
+                    final K key = (K) keyArray[i];
+                    final M refModel = refModels.get(key);
+                    final B builder = builders.get(key);
+                    if (refModel != null && builder != null) {
+                        reconcileKeyModelBuilderPair(key, refModel, builder, new SlotAppender<KeyModelDeltaPairDelta<K, K2, D, DB>>(deltas, i));
+                    }
+                }
+            });
+            appendAll(deltas, deltaAppender);
+            return;
+        }
+        keys.forEach(new Procedure<K>() {
             @Override
-            public void delete(final K key) {
+            public void value(final K key) {
                 final M refModel = refModels.get(key);
-                final B emptyBuilder = refModel.toBuilderEmpty();
-                final D delta = emptyBuilder.reconcile(DeltaType.DELETE, refModel);
-                if (delta != null) {
-                    deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.DELETE, key, delta));
+                final B builder = builders.get(key);
+                if (refModel != null && builder != null) {
+                    reconcileKeyModelBuilderPair(key, refModel, builder, deltaAppender);
                 }
             }
         });
     }
 
+    private static <K, K2, M extends Model<K2, B>, B extends ModelBuilder<K2, M, D>, D extends ModelDelta<K2, B, DB>, DB extends ModelDeltaBuilder<K2, D>> void reconcileKeyModelBuilderPair(
+            final K key, final M refModel, final B builder, final DeltaAppender<KeyModelDeltaPairDelta<K, K2, D, DB>> deltaAppender) {
+        if (refModel.getKey().equals(builder.getKey())) {
+            if (builder.getRef() == refModel && !builder.isDirty()) {
+                return;
+            }
+            final D delta = builder.reconcile(DeltaType.UPDATE, refModel);
+            if (delta != null) {
+                deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.UPDATE, key, delta));
+            }
+        }
+        else {
+            final M emptyModel = builder.buildEmpty();
+            final D delta = builder.reconcile(DeltaType.ADD, emptyModel);
+            if (delta != null) {
+                deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.UPDATE, key, delta));
+            }
+        }
+    }
+
     public static <K, K2, M extends Model<K2, B>, B extends ModelBuilder<K2, M, D>, D extends ModelDelta<K2, B, DB>, DB extends ModelDeltaBuilder<K2, D>> void reconcileKeyModelPairs(
             final ImmutableMap<K, M> refModels, final ImmutableMap<K, M> models, final DeltaAppender<KeyModelDeltaPairDelta<K, K2, D, DB>> deltaAppender) {
-        reconcileSet(refModels.keysView().toSet(), models.keysView().toSet(), new ReconcileSetNotify<K>() {
+        if (refModels == models) {
+            return;
+        }
+        reconcileMapKeys(refModels, models, new Function<DeltaAppender<KeyModelDeltaPairDelta<K, K2, D, DB>>, ReconcileSetNotify<K>>() {
+            @Override
+            public ReconcileSetNotify<K> valueOf(final DeltaAppender<KeyModelDeltaPairDelta<K, K2, D, DB>> appender) {
+                return new ReconcileSetNotify<K>() {
+                    @Override
+                    public void add(final K key) {
+                        final M model = models.get(key);
+                        final B builder = model.toBuilder();
+                        final M emptyModel = builder.buildEmpty();
+                        final D delta = builder.reconcile(DeltaType.ADD, emptyModel);
+                        if (delta != null) {
+                            appender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.ADD, key, delta));
+                        }
+                    }
+
+                    @Override
+                    public void intersect(final K key) {
+                        final M refModel = refModels.get(key);
+                        final M model = models.get(key);
+                        if (isUnchanged(refModel, model)) {
+                            return;
+                        }
+                        if (refModel.getKey().equals(model.getKey())) {
+                            final D delta = model.toBuilder().reconcile(DeltaType.UPDATE, refModel);
+                            if (delta != null) {
+                                appender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.UPDATE, key, delta));
+                            }
+                        }
+                        else {
+                            final B builder = model.toBuilder();
+                            final M emptyModel = builder.buildEmpty();
+                            final D delta = builder.reconcile(DeltaType.ADD, emptyModel);
+                            if (delta != null) {
+                                appender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.UPDATE, key, delta));
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void delete(final K key) {
+                        final M refModel = refModels.get(key);
+                        final B emptyBuilder = refModel.toBuilderEmpty();
+                        final D delta = emptyBuilder.reconcile(DeltaType.DELETE, refModel);
+                        if (delta != null) {
+                            appender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.DELETE, key, delta));
+                        }
+                    }
+                };
+            }
+        }, deltaAppender);
+    }
+
+    /**
+     * As reconcileMapKeys with the notifications made on the appender the factory is given. Above the parallel threshold
+     * the keys are collected first and notified in parallel, each notification may append one delta and the deltas are
+     * appended in the order the notifications would have been made.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, T extends AbstractDelta> void reconcileMapKeys(final MapIterable<K, ?> ref, final MapIterable<K, ?> other,
+            final Function<DeltaAppender<T>, ReconcileSetNotify<K>> notifyFactory, final DeltaAppender<T> appender) {
+        if (!SatuParallel.isParallel(Math.max(ref.size(), other.size()))) {
+            reconcileMapKeys(ref, other, notifyFactory.valueOf(appender));
+            return;
+        }
+
+        final MutableList<K> keys = FastList.newList(Math.max(ref.size(), other.size()));
+        final MutableList<KeyEvent> events = FastList.newList(Math.max(ref.size(), other.size()));
+        reconcileMapKeys(ref, other, new ReconcileSetNotify<K>() {
             @Override
             public void add(final K key) {
-                final M model = models.get(key);
-                final B builder = model.toBuilder();
-                final M emptyModel = builder.buildEmpty();
-                final D delta = builder.reconcile(DeltaType.ADD, emptyModel);
-                if (delta != null) {
-                    deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.ADD, key, delta));
-                }
+                keys.add(key);
+                events.add(KeyEvent.ADD);
             }
 
             @Override
             public void intersect(final K key) {
-                final M refModel = refModels.get(key);
-                final M model = models.get(key);
-                if (refModel.getKey().equals(model.getKey())) {
-                    final D delta = model.toBuilder().reconcile(DeltaType.UPDATE, refModel);
-                    if (delta != null) {
-                        deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.UPDATE, key, delta));
-                    }
-                }
-                else {
-                    final B builder = model.toBuilder();
-                    final M emptyModel = builder.buildEmpty();
-                    final D delta = builder.reconcile(DeltaType.ADD, emptyModel);
-                    if (delta != null) {
-                        deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.UPDATE, key, delta));
-                    }
-                }
+                keys.add(key);
+                events.add(KeyEvent.INTERSECT);
             }
 
             @Override
             public void delete(final K key) {
-                final M refModel = refModels.get(key);
-                final B emptyBuilder = refModel.toBuilderEmpty();
-                final D delta = emptyBuilder.reconcile(DeltaType.DELETE, refModel);
-                if (delta != null) {
-                    deltaAppender.append(new KeyModelDeltaPairDelta<K, K2, D, DB>(DeltaType.DELETE, key, delta));
+                keys.add(key);
+                events.add(KeyEvent.DELETE);
+            }
+        });
+
+        final Object[] deltas = new Object[keys.size()];
+        SatuParallel.forEachIndex(keys.size(), new IntProcedure() {
+            @Override
+            public void value(final int i) {
+                final ReconcileSetNotify<K> notify = notifyFactory.valueOf(new SlotAppender<T>(deltas, i));
+                switch (events.get(i)) {
+                case ADD:
+                    notify.add(keys.get(i));
+                    break;
+                case INTERSECT:
+                    notify.intersect(keys.get(i));
+                    break;
+                case DELETE:
+                    notify.delete(keys.get(i));
+                    break;
                 }
             }
         });
+        appendAll(deltas, appender);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends AbstractDelta> void appendAll(final Object[] deltas, final DeltaAppender<T> appender) {
+        for (final Object delta : deltas) {
+            if (delta != null) {
+                appender.append((T) delta);
+            }
+        }
+    }
+
+    private static enum KeyEvent {
+        ADD, INTERSECT, DELETE
+    }
+
+    /**
+     * Stores the one delta appended for an entry reconciled in parallel
+     */
+    private static final class SlotAppender<T extends AbstractDelta> implements DeltaAppender<T> {
+
+        private final Object[] deltas_;
+
+        private final int index_;
+
+        SlotAppender(final Object[] deltas, final int index) {
+            deltas_ = deltas;
+            index_ = index;
+        }
+
+        @Override
+        public void append(final T delta) {
+            deltas_[index_] = delta;
+        }
     }
 
     public static <K, K2, M extends Model<K2, B>, B extends ModelBuilder<K2, M, D>, D extends ModelDelta<K2, B, DB>, DB extends ModelDeltaBuilder<K2, D>> B applyModelDelta(final D delta,
@@ -460,7 +891,10 @@ public final class SatuUtil {
             delta = builder.reconcile(DeltaType.ADD, emptyModel);
         }
         else if (refModel != null && builder != null) {
-            if (refModel.getKey().equals(builder.getKey())) {
+            if (builder.getRef() == refModel && !builder.isDirty()) {
+                delta = null;
+            }
+            else if (refModel.getKey().equals(builder.getKey())) {
                 delta = builder.reconcile(DeltaType.UPDATE, refModel);
             }
             else {
@@ -500,7 +934,10 @@ public final class SatuUtil {
             delta = builder.reconcile(DeltaType.ADD, emptyModel);
         }
         else if (refModel != null && model != null) {
-            if (refModel.getKey().equals(model.getKey())) {
+            if (isUnchanged(refModel, model)) {
+                delta = null;
+            }
+            else if (refModel.getKey().equals(model.getKey())) {
                 delta = model.toBuilder().reconcile(DeltaType.UPDATE, refModel);
             }
             else {
@@ -526,6 +963,295 @@ public final class SatuUtil {
         }
     }
 
+    /**
+     * Null safe comparison ordering null first, consistent with CompareToBuilder
+     */
+    public static <T extends Comparable<? super T>> int compare(final T lhs, final T rhs) {
+        if (lhs == rhs) {
+            return 0;
+        }
+        if (lhs == null) {
+            return -1;
+        }
+        if (rhs == null) {
+            return 1;
+        }
+        return lhs.compareTo(rhs);
+    }
+
+    public static int compare(final int lhs, final int rhs) {
+        return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+    }
+
+    public static int compare(final long lhs, final long rhs) {
+        return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+    }
+
+    public static int compare(final float lhs, final float rhs) {
+        return Float.compare(lhs, rhs);
+    }
+
+    public static int compare(final double lhs, final double rhs) {
+        return Double.compare(lhs, rhs);
+    }
+
+    public static int compare(final boolean lhs, final boolean rhs) {
+        return lhs == rhs ? 0 : (lhs ? 1 : -1);
+    }
+
+    /**
+     * Compares two sorted views element by element, shorter arrays order first
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static int compare(final Object[] lhs, final Object[] rhs) {
+        final int cmp = compareShape(lhs, rhs, lhs != null ? lhs.length : 0, rhs != null ? rhs.length : 0);
+        if (cmp != UNORDERED) {
+            return cmp;
+        }
+        for (int i = 0; i < lhs.length; i++) {
+            final int elementCmp = compare((Comparable) lhs[i], (Comparable) rhs[i]);
+            if (elementCmp != 0) {
+                return elementCmp;
+            }
+        }
+        return 0;
+    }
+
+    public static int compare(final int[] lhs, final int[] rhs) {
+        final int cmp = compareShape(lhs, rhs, lhs != null ? lhs.length : 0, rhs != null ? rhs.length : 0);
+        if (cmp != UNORDERED) {
+            return cmp;
+        }
+        for (int i = 0; i < lhs.length; i++) {
+            final int elementCmp = compare(lhs[i], rhs[i]);
+            if (elementCmp != 0) {
+                return elementCmp;
+            }
+        }
+        return 0;
+    }
+
+    public static int compare(final long[] lhs, final long[] rhs) {
+        final int cmp = compareShape(lhs, rhs, lhs != null ? lhs.length : 0, rhs != null ? rhs.length : 0);
+        if (cmp != UNORDERED) {
+            return cmp;
+        }
+        for (int i = 0; i < lhs.length; i++) {
+            final int elementCmp = compare(lhs[i], rhs[i]);
+            if (elementCmp != 0) {
+                return elementCmp;
+            }
+        }
+        return 0;
+    }
+
+    public static int compare(final float[] lhs, final float[] rhs) {
+        final int cmp = compareShape(lhs, rhs, lhs != null ? lhs.length : 0, rhs != null ? rhs.length : 0);
+        if (cmp != UNORDERED) {
+            return cmp;
+        }
+        for (int i = 0; i < lhs.length; i++) {
+            final int elementCmp = compare(lhs[i], rhs[i]);
+            if (elementCmp != 0) {
+                return elementCmp;
+            }
+        }
+        return 0;
+    }
+
+    public static int compare(final double[] lhs, final double[] rhs) {
+        final int cmp = compareShape(lhs, rhs, lhs != null ? lhs.length : 0, rhs != null ? rhs.length : 0);
+        if (cmp != UNORDERED) {
+            return cmp;
+        }
+        for (int i = 0; i < lhs.length; i++) {
+            final int elementCmp = compare(lhs[i], rhs[i]);
+            if (elementCmp != 0) {
+                return elementCmp;
+            }
+        }
+        return 0;
+    }
+
+    public static int compare(final char[] lhs, final char[] rhs) {
+        final int cmp = compareShape(lhs, rhs, lhs != null ? lhs.length : 0, rhs != null ? rhs.length : 0);
+        if (cmp != UNORDERED) {
+            return cmp;
+        }
+        for (int i = 0; i < lhs.length; i++) {
+            final int elementCmp = compare(lhs[i], rhs[i]);
+            if (elementCmp != 0) {
+                return elementCmp;
+            }
+        }
+        return 0;
+    }
+
+    public static int compare(final byte[] lhs, final byte[] rhs) {
+        final int cmp = compareShape(lhs, rhs, lhs != null ? lhs.length : 0, rhs != null ? rhs.length : 0);
+        if (cmp != UNORDERED) {
+            return cmp;
+        }
+        for (int i = 0; i < lhs.length; i++) {
+            final int elementCmp = compare(lhs[i], rhs[i]);
+            if (elementCmp != 0) {
+                return elementCmp;
+            }
+        }
+        return 0;
+    }
+
+    public static int compare(final short[] lhs, final short[] rhs) {
+        final int cmp = compareShape(lhs, rhs, lhs != null ? lhs.length : 0, rhs != null ? rhs.length : 0);
+        if (cmp != UNORDERED) {
+            return cmp;
+        }
+        for (int i = 0; i < lhs.length; i++) {
+            final int elementCmp = compare(lhs[i], rhs[i]);
+            if (elementCmp != 0) {
+                return elementCmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Orders null arrays first and then shorter arrays first, returns UNORDERED when both arrays have the same length
+     * and their elements need comparing. Lengths are read by the typed overloads.
+     */
+    private static int compareShape(final Object lhs, final Object rhs, final int lhsLength, final int rhsLength) {
+        if (lhs == rhs) {
+            return 0;
+        }
+        if (lhs == null) {
+            return -1;
+        }
+        if (rhs == null) {
+            return 1;
+        }
+        if (lhsLength != rhsLength) {
+            return lhsLength < rhsLength ? -1 : 1;
+        }
+        return UNORDERED;
+    }
+
+    /**
+     * Per field hash contributions matching HashCodeBuilder so generated hashCode methods keep their values
+     */
+    public static int hashCode(final Object value) {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    public static int hashCode(final int value) {
+        return value;
+    }
+
+    public static int hashCode(final long value) {
+        return (int) (value ^ (value >> 32));
+    }
+
+    public static int hashCode(final float value) {
+        return Float.floatToIntBits(value);
+    }
+
+    public static int hashCode(final double value) {
+        return hashCode(Double.doubleToLongBits(value));
+    }
+
+    public static int hashCode(final boolean value) {
+        return value ? 0 : 1;
+    }
+
+    /**
+     * True when other is known to be equal to ref, identical references are always unchanged and fingerprinted
+     * objects are compared with equals only when their fingerprints match. Objects without fingerprints report
+     * false so the caller falls back to a full reconcile.
+     */
+    public static boolean isUnchanged(final Object ref, final Object other) {
+        if (ref == other) {
+            return true;
+        }
+        if (!(ref instanceof Fingerprinted) || !(other instanceof Fingerprinted)) {
+            return false;
+        }
+        if (((Fingerprinted) ref).fingerprint() != ((Fingerprinted) other).fingerprint()) {
+            return false;
+        }
+        return ref.equals(other);
+    }
+
+    /**
+     * Folds a field value into a running 64-bit fingerprint
+     */
+    public static long fingerprint(final long fingerprint, final Object value) {
+        return (fingerprint ^ fingerprint(value)) * FINGERPRINT_PRIME;
+    }
+
+    public static long fingerprint(final long fingerprint, final long value) {
+        return (fingerprint ^ mix(value)) * FINGERPRINT_PRIME;
+    }
+
+    public static long fingerprint(final long fingerprint, final double value) {
+        return fingerprint(fingerprint, Double.doubleToLongBits(value));
+    }
+
+    public static long fingerprint(final long fingerprint, final float value) {
+        return fingerprint(fingerprint, (long) Float.floatToIntBits(value));
+    }
+
+    public static long fingerprint(final long fingerprint, final boolean value) {
+        return fingerprint(fingerprint, value ? 1L : 2L);
+    }
+
+    /**
+     * The 64-bit fingerprint of a single value, collections are fingerprinted independent of iteration order
+     */
+    public static long fingerprint(final Object value) {
+        if (value == null) {
+            return 0L;
+        }
+        if (value instanceof Fingerprinted) {
+            return ((Fingerprinted) value).fingerprint();
+        }
+        if (value instanceof CharSequence) {
+            final CharSequence chars = (CharSequence) value;
+            long fingerprint = FINGERPRINT_SEED;
+            for (int i = 0; i < chars.length(); i++) {
+                fingerprint = (fingerprint ^ chars.charAt(i)) * FINGERPRINT_PRIME;
+            }
+            return mix(fingerprint);
+        }
+        if (value instanceof MapIterable) {
+            final MapIterable<?, ?> map = (MapIterable<?, ?>) value;
+            final long[] sum = { mix(map.size()) };
+            map.forEachKeyValue(new Procedure2<Object, Object>() {
+                @Override
+                public void value(final Object key, final Object entry) {
+                    sum[0] += mix(fingerprint(key) * FINGERPRINT_PRIME + fingerprint(entry));
+                }
+            });
+            return sum[0];
+        }
+        if (value instanceof RichIterable) {
+            long sum = mix(((RichIterable<?>) value).size());
+            for (Object element : (RichIterable<?>) value) {
+                sum += mix(fingerprint(element));
+            }
+            return sum;
+        }
+        return mix(value.hashCode());
+    }
+
+    private static long mix(final long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
     public interface ReconcileMapNofity<K, V> {
 
         void add(K key, V value);
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.set.ImmutableSet;
+import com.gs.collections.api.set.MutableSet;
+import com.gs.collections.impl.factory.Sets;
+
+/**
+ * Copy on write overlay of an immutable set used by the generated builders, only elements added to or removed from
+ * the base set are recorded
+ */
+@SuppressWarnings("serial")
+public final class SetOverlay<E> {
+
+    private final ImmutableSet<E> base_;
+
+    private final MutableSet<E> adds_ = Sets.mutable.of();
+
+    private final MutableSet<E> removes_ = Sets.mutable.of();
+
+    public SetOverlay(final ImmutableSet<E> base) {
+        base_ = base;
+    }
+
+    public ImmutableSet<E> getBase() {
+        return base_;
+    }
+
+    public boolean contains(final E element) {
+        return adds_.contains(element) || (!removes_.contains(element) && base_.contains(element));
+    }
+
+    public void add(final E element) {
+        if (!removes_.remove(element) && !base_.contains(element)) {
+            adds_.add(element);
+        }
+    }
+
+    public void remove(final E element) {
+        if (!adds_.remove(element) && base_.contains(element)) {
+            removes_.add(element);
+        }
+    }
+
+    public boolean isEdited() {
+        return adds_.notEmpty() || removes_.notEmpty();
+    }
+
+    public MutableSet<E> toSet() {
+        final MutableSet<E> set = base_.toSet();
+        set.removeAll(removes_);
+        set.addAll(adds_);
+        return set;
+    }
+
+    /**
+     * A persistent base set is updated in place of a copy so the result shares structure with the base
+     */
+    @SuppressWarnings("unchecked")
+    public ImmutableSet<E> toImmutable() {
+        if (!isEdited()) {
+            return base_;
+        }
+        if (base_ instanceof PersistentHashSet) {
+            return ((PersistentHashSet<E>) base_).newWithoutAll(removes_).newWithAll(adds_);
+        }
+        return toSet().toImmutable();
+    }
+
+    /**
+     * Against the base set the deltas come straight from the edits, any other ref is reconciled in full
+     */
+    public void reconcile(final ImmutableSet<E> ref, final DeltaAppender<KeyDelta<E>> appender) {
+        if (ref != base_) {
+            SatuUtil.reconcileKeys(ref, toImmutable(), appender);
+            return;
+        }
+
+        adds_.forEach(new Procedure<E>() {
+            @Override
+            public void value(final E element) {
+                appender.append(new KeyDelta<E>(DeltaType.ADD, element));
+            }
+        });
+
+        removes_.forEach(new Procedure<E>() {
+            @Override
+            public void value(final E element) {
+                appender.append(new KeyDelta<E>(DeltaType.DELETE, element));
+            }
+        });
+    }
+}
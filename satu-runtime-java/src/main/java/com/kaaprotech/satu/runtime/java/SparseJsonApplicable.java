@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Implemented by the builders of models generated with jsonCompatible, which stream a sparse JSON delta straight into
+ * the builder with the semantics of applyDelta
+ */
+public interface SparseJsonApplicable<B> {
+
+    /**
+     * Applies the delta object at, or following, the parser's current token, leaving the parser on its END_OBJECT
+     */
+    B applySparseJson(JsonParser parser) throws IOException;
+}
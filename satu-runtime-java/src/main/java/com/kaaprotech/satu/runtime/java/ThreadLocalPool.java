@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import com.gs.collections.api.list.MutableList;
+import com.gs.collections.impl.list.mutable.FastList;
+
+/**
+ * A bounded per thread free list of reusable objects, builders released back to a pool are handed out again by
+ * acquire on the same thread so hot loops can rebind them instead of allocating. Nothing is shared between threads
+ * so acquire and release need no synchronization, an object released on another thread joins that thread's pool.
+ */
+public final class ThreadLocalPool<T> {
+
+    public static final int DEFAULT_MAX_SIZE = 16;
+
+    private final int maxSize_;
+
+    private final ThreadLocal<MutableList<T>> free_ = new ThreadLocal<MutableList<T>>() {
+        @Override
+        protected MutableList<T> initialValue() {
+            return FastList.newList(maxSize_);
+        }
+    };
+
+    public ThreadLocalPool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize the most objects kept per thread, objects released once the pool is full are left to the GC
+     */
+    public ThreadLocalPool(final int maxSize) {
+        if (maxSize < 0) {
+            throw new RuntimeException("Pool size must not be negative " + maxSize);
+        }
+        maxSize_ = maxSize;
+    }
+
+    /**
+     * @return a previously released object or null if this thread's pool is empty
+     */
+    public T acquire() {
+        final MutableList<T> free = free_.get();
+        return free.isEmpty() ? null : free.remove(free.size() - 1);
+    }
+
+    /**
+     * Returns the object to this thread's pool, the caller must not use it afterwards
+     */
+    public void release(final T object) {
+        if (object == null) {
+            return;
+        }
+        final MutableList<T> free = free_.get();
+        if (free.size() < maxSize_) {
+            free.add(object);
+        }
+    }
+
+    public int size() {
+        return free_.get().size();
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.runtime.java;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.gs.collections.api.block.function.Function;
+import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.block.procedure.Procedure2;
+import com.gs.collections.api.list.ImmutableList;
+import com.gs.collections.api.list.MutableList;
+import com.gs.collections.api.map.ImmutableMap;
+import com.gs.collections.api.map.MutableMap;
+import com.gs.collections.api.set.MutableSet;
+import com.gs.collections.impl.factory.Lists;
+import com.gs.collections.impl.map.mutable.UnifiedMap;
+import com.gs.collections.impl.set.mutable.UnifiedSet;
+
+/**
+ * Multi version store of immutable models by key. The root is a {@link Snapshot} holding a persistent map of the
+ * models, readers take the current root and see one consistent version of every key however long they hold it.
+ * <p>
+ * Writers run a transaction against the root they started from and commit by swapping in a new root, which shares
+ * every untouched node of the map with the old one. If another commit got in first the transaction is rebased when
+ * none of the keys it read or wrote have changed, otherwise it is run again against the new root, so transactions
+ * must not have side effects outside the store.
+ */
+public final class VersionedModelStore<K, M extends Model<K, B>, B extends ModelBuilder<K, M, D>, D extends AbstractDelta & ModelDelta<K, B, DB>, DB extends ModelDeltaBuilder<K, D>> {
+
+    private final AtomicReference<Snapshot> root_;
+
+    private final Function<? super K, ? extends B> newBuilder_;
+
+    /**
+     * @param newBuilder creates the builder of a key with no model, e.g. calling the model's static newBuilder
+     */
+    public VersionedModelStore(final Function<? super K, ? extends B> newBuilder) {
+        newBuilder_ = newBuilder;
+        root_ = new AtomicReference<Snapshot>(new Snapshot(0L, PersistentHashMap.<K, M> empty(), Lists.immutable.<KeyModelDeltaPairDelta<K, K, D, DB>> of()));
+    }
+
+    /**
+     * The latest committed version, never blocks
+     */
+    public Snapshot snapshot() {
+        return root_.get();
+    }
+
+    public M get(final K key) {
+        return root_.get().get(key);
+    }
+
+    /**
+     * Runs the work in a transaction and commits it, returning the snapshot it created or the unchanged root if the
+     * transaction changed nothing
+     */
+    public Snapshot commit(final Procedure<? super Transaction> work) {
+        while (true) {
+            final Transaction transaction = new Transaction(root_.get());
+            work.value(transaction);
+            final Snapshot committed = transaction.commit();
+            if (committed != null) {
+                return committed;
+            }
+        }
+    }
+
+    /**
+     * Applies the deltas in one transaction
+     */
+    public Snapshot apply(final Iterable<? extends D> deltas) {
+        return commit(new Procedure<Transaction>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void value(final Transaction transaction) {
+                for (final D delta : deltas) {
+                    transaction.apply(delta);
+                }
+            }
+        });
+    }
+
+    /**
+     * The deltas taking the models of one snapshot to those of another, in no particular order. Models shared by both
+     * snapshots are skipped by reference.
+     */
+    public ImmutableList<KeyModelDeltaPairDelta<K, K, D, DB>> diff(final Snapshot from, final Snapshot to) {
+        final MutableList<KeyModelDeltaPairDelta<K, K, D, DB>> deltas = Lists.mutable.of();
+        to.models_.forEachKeyValue(new Procedure2<K, M>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void value(final K key, final M model) {
+                addDelta(deltas, key, from.models_.get(key), model);
+            }
+        });
+        from.models_.forEachKeyValue(new Procedure2<K, M>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void value(final K key, final M model) {
+                if (!to.models_.containsKey(key)) {
+                    addDelta(deltas, key, model, null);
+                }
+            }
+        });
+        return deltas.toImmutable();
+    }
+
+    private void addDelta(final MutableList<KeyModelDeltaPairDelta<K, K, D, DB>> deltas, final K key, final M before, final M after) {
+        if (before == after || (before != null && before.equals(after))) {
+            return;
+        }
+        final D delta;
+        if (after == null) {
+            delta = before.toBuilderEmpty().reconcile(DeltaType.DELETE, before);
+        }
+        else if (before == null) {
+            delta = after.toBuilder().toDelta(DeltaType.ADD);
+        }
+        else {
+            delta = after.toBuilder().reconcile(DeltaType.UPDATE, before);
+        }
+        deltas.add(new KeyModelDeltaPairDelta<K, K, D, DB>(delta.getDeltaType(), key, delta));
+    }
+
+    /**
+     * One immutable version of the store
+     */
+    public final class Snapshot {
+
+        private final long version_;
+
+        private final PersistentHashMap<K, M> models_;
+
+        private final ImmutableList<KeyModelDeltaPairDelta<K, K, D, DB>> deltas_;
+
+        private Snapshot(final long version, final PersistentHashMap<K, M> models, final ImmutableList<KeyModelDeltaPairDelta<K, K, D, DB>> deltas) {
+            version_ = version;
+            models_ = models;
+            deltas_ = deltas;
+        }
+
+        public long getVersion() {
+            return version_;
+        }
+
+        public M get(final K key) {
+            return models_.get(key);
+        }
+
+        public boolean containsKey(final K key) {
+            return models_.containsKey(key);
+        }
+
+        public int size() {
+            return models_.size();
+        }
+
+        public ImmutableMap<K, M> getModels() {
+            return models_;
+        }
+
+        /**
+         * The deltas committed by the transaction that created this version
+         */
+        public ImmutableList<KeyModelDeltaPairDelta<K, K, D, DB>> getDeltas() {
+            return deltas_;
+        }
+    }
+
+    /**
+     * Reads and writes of one commit attempt. Reads see the transaction's own writes over the snapshot it started
+     * from. Only valid inside the work passed to commit.
+     */
+    public final class Transaction {
+
+        private final Snapshot base_;
+
+        private final MutableSet<K> reads_ = UnifiedSet.newSet();
+
+        // A null builder marks a removed key
+        private final MutableMap<K, B> writes_ = UnifiedMap.newMap();
+
+        private Transaction(final Snapshot base) {
+            base_ = base;
+        }
+
+        public Snapshot getSnapshot() {
+            return base_;
+        }
+
+        public M get(final K key) {
+            if (writes_.containsKey(key)) {
+                final B builder = writes_.get(key);
+                return builder == null ? null : builder.build();
+            }
+            reads_.add(key);
+            return base_.get(key);
+        }
+
+        /**
+         * The builder of the key's model within this transaction, created if the key has no model
+         */
+        public B update(final K key) {
+            B builder = writes_.get(key);
+            if (builder == null) {
+                final M ref = writes_.containsKey(key) ? null : base_.get(key);
+                builder = ref == null ? newBuilder_.valueOf(key) : ref.toBuilder();
+                writes_.put(key, builder);
+            }
+            return builder;
+        }
+
+        public B apply(final D delta) {
+            if (delta.getDeltaType() == DeltaType.DELETE) {
+                remove(delta.getKey());
+                return null;
+            }
+            final B builder = update(delta.getKey());
+            builder.applyDelta(delta);
+            return builder;
+        }
+
+        public void remove(final K key) {
+            writes_.put(key, null);
+        }
+
+        private boolean conflicts(final Snapshot root) {
+            for (final K key : reads_) {
+                if (root.get(key) != base_.get(key)) {
+                    return true;
+                }
+            }
+            for (final K key : writes_.keysView()) {
+                if (root.get(key) != base_.get(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the committed snapshot, or null if the transaction conflicted and must be run again
+         */
+        private Snapshot commit() {
+            final MutableList<KeyModelDeltaPairDelta<K, K, D, DB>> deltas = Lists.mutable.of();
+            final MutableMap<K, M> models = UnifiedMap.newMap(writes_.size());
+            for (final K key : writes_.keysView()) {
+                final B builder = writes_.get(key);
+                final M after = builder == null ? null : builder.build();
+                final int size = deltas.size();
+                addDelta(deltas, key, base_.get(key), after);
+                if (deltas.size() > size) {
+                    models.put(key, after);
+                }
+            }
+            final ImmutableList<KeyModelDeltaPairDelta<K, K, D, DB>> committed = deltas.toImmutable();
+
+            while (true) {
+                final Snapshot root = root_.get();
+                if (root != base_ && conflicts(root)) {
+                    return null;
+                }
+                if (committed.isEmpty()) {
+                    return root;
+                }
+                PersistentHashMap<K, M> next = root.models_;
+                for (final K key : models.keysView()) {
+                    final M model = models.get(key);
+                    next = model == null ? next.newWithoutKey(key) : next.newWithKeyValue(key, model);
+                }
+                final Snapshot snapshot = new Snapshot(root.version_ + 1, next, committed);
+                if (root_.compareAndSet(root, snapshot)) {
+                    return snapshot;
+                }
+            }
+        }
+    }
+}
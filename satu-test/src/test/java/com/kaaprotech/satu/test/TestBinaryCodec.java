@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import com.gs.collections.impl.factory.Maps;
+import com.gs.collections.impl.factory.Sets;
+import com.gs.collections.impl.factory.primitive.IntIntMaps;
+import com.gs.collections.impl.factory.primitive.IntSets;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.runtime.java.SatuCodec;
+import com.kaaprotech.satu.test.model.SatuTestEnum;
+import com.kaaprotech.satu.test.model.SatuTestKey;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+import com.kaaprotech.satu.test.primitive.PrimitiveTestKey;
+import com.kaaprotech.satu.test.primitive.PrimitiveTestModel;
+
+@SuppressWarnings("boxing")
+public class TestBinaryCodec {
+
+    private static final SatuTestKey KEY = new SatuTestKey(
+            -1,
+            Long.MIN_VALUE,
+            true,
+            'é',
+            (byte) -3,
+            1.1f,
+            Sets.immutable.of(SatuTestEnum.FirstEnumMember, SatuTestEnum.ForthEnumMember),
+            Maps.immutable.of("Kéy1", 1.1d, "Key2", 2.2d),
+            Sets.immutable.of(1, 2),
+            Maps.immutable.of(1, 1, 2, -2));
+
+    private static final DateTime DATE_TIME = new DateTime(2014, 6, 1, 12, 30, DateTimeZone.forID("Europe/London"));
+
+    private static SatuTestModel newModel() {
+        final SatuTestModel.Builder builder = SatuTestModel.newBuilder(1)
+                .setIntField(Integer.MAX_VALUE)
+                .setDoubleField(-0.5d)
+                .setStringField("string")
+                .setStringFieldWithDefault(null)
+                .setEnumField(SatuTestEnum.SecondEnumMember)
+                .setDataTimeField(DATE_TIME)
+                .setModelField(SatuTestModel.newBuilder(2).setStringField("child").build())
+                .setKeyField(KEY);
+        builder.getSetOfKeysField().add(KEY);
+        builder.getMapOfKeysField().put(SatuTestEnum.ThirdEnumMember, KEY);
+        builder.getMapOfModelsField().put(SatuTestEnum.FirstEnumMember, SatuTestModel.newBuilder(3).setIntField(3));
+        builder.addOrReplaceMapOfModelsFieldWithSameKeyType(SatuTestModel.newBuilder(4).setIntField(4).build());
+        builder.getSetOfImportedTypes().add(DATE_TIME);
+        builder.getMapOfImportedTypes().put(DATE_TIME, DATE_TIME.plusDays(1));
+        builder.getSetOfPrimitiveTypes().add(-7);
+        builder.getMapOfPrimitiveTypes().put(7, 49);
+        return builder.build();
+    }
+
+    private static ByteBuffer write(final SatuTestModel.Delta delta) {
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        delta.writeTo(buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testVarInts() {
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        SatuCodec.writeInt(buffer, -1);
+        SatuCodec.writeInt(buffer, Integer.MIN_VALUE);
+        SatuCodec.writeLong(buffer, Long.MAX_VALUE);
+        SatuCodec.writeUnsignedVarLong(buffer, -1L);
+        SatuCodec.writeString(buffer, "été");
+        buffer.flip();
+        assertEquals(1, buffer.get(0));
+        assertEquals(-1, SatuCodec.readInt(buffer));
+        assertEquals(Integer.MIN_VALUE, SatuCodec.readInt(buffer));
+        assertEquals(Long.MAX_VALUE, SatuCodec.readLong(buffer));
+        assertEquals(-1L, SatuCodec.readUnsignedVarLong(buffer));
+        assertEquals("été", SatuCodec.readString(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testModelAndKey() {
+        final SatuTestModel model = newModel();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+        model.writeTo(buffer);
+        KEY.writeTo(buffer);
+        SatuTestEnum.ForthEnumMember.writeTo(buffer);
+        buffer.flip();
+
+        final SatuTestModel read = SatuTestModel.readFrom(buffer);
+        assertEquals(model, read);
+        assertEquals(model.getModelField(), read.getModelField());
+        assertEquals(DATE_TIME, read.getDataTimeField());
+        assertEquals(KEY, SatuTestKey.readFrom(buffer));
+        assertEquals(SatuTestEnum.ForthEnumMember, SatuTestEnum.readFrom(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testDeltas() {
+        final SatuTestModel model = newModel();
+
+        final SatuTestModel.Delta added = model.toDelta(DeltaType.ADD);
+        assertEquals(added, SatuTestModel.Delta.readFrom(write(added)));
+
+        final SatuTestModel.Builder builder = model.toBuilder();
+        builder.setIntField(null).setDoubleField(0.25d);
+        builder.getMapOfModelsFieldWithSameKeyType(4).setStringField("updated").getSetOfPrimitiveTypes().add(1);
+        builder.getMapOfModelsField().remove(SatuTestEnum.FirstEnumMember);
+        builder.getSetOfKeysField().remove(KEY);
+        builder.getMapOfImportedTypes().put(DATE_TIME, DATE_TIME);
+        final SatuTestModel.Delta updated = builder.reconcile(DeltaType.UPDATE, model);
+        assertTrue(updated.hasIntField());
+        assertEquals(1, updated.getMapOfModelsFieldWithSameKeyType().size());
+
+        final SatuTestModel.Delta read = SatuTestModel.Delta.readFrom(write(updated));
+        assertEquals(updated, read);
+        assertEquals(builder.build(), model.toBuilder().applyDelta(read).build());
+
+        final SatuTestModel.Delta deleted = model.toDelta(DeltaType.DELETE);
+        assertEquals(deleted, SatuTestModel.Delta.readFrom(write(deleted)));
+    }
+
+    @Test
+    public void testPrimitiveFields() {
+        final PrimitiveTestModel model = PrimitiveTestModel.newBuilder(1)
+                .setIntField(-5)
+                .setCharField('z')
+                .setKeyField(new PrimitiveTestKey(1, 2d, true, IntSets.immutable.of(1, 2), IntIntMaps.immutable.of(3, 4)))
+                .addSetOfIntsField(1)
+                .putMapOfIntDoublesField(1, 1.1d)
+                .putMapOfLongCharsField(-1L, 'a')
+                .build();
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        model.writeTo(buffer);
+
+        final PrimitiveTestModel.Builder builder = model.toBuilder().setNullableIntField(3).addSetOfIntsField(2);
+        builder.getMapOfIntDoublesField().removeKey(1);
+        final PrimitiveTestModel.Delta delta = builder.reconcile(DeltaType.UPDATE, model);
+        delta.writeTo(buffer);
+        buffer.flip();
+
+        assertEquals(model, PrimitiveTestModel.readFrom(buffer));
+        final PrimitiveTestModel.Delta read = PrimitiveTestModel.Delta.readFrom(buffer);
+        assertEquals(delta, read);
+        assertEquals(IntSets.immutable.of(1), read.getMapOfIntDoublesFieldRemoved());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() throws Exception {
+        final SatuTestModel.Delta delta = newModel().toBuilder().setIntField(2).reconcile(DeltaType.UPDATE, newModel());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(delta);
+        out.close();
+        assertTrue(write(delta).remaining() * 10 < bytes.size());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+
+@SuppressWarnings("boxing")
+public class TestBuilderOverlay {
+
+    private static final DateTime DT_1 = new DateTime(2014, 1, 1, 0, 0);
+
+    private static final DateTime DT_2 = new DateTime(2014, 2, 1, 0, 0);
+
+    private static final DateTime DT_3 = new DateTime(2014, 3, 1, 0, 0);
+
+    private static SatuTestModel newModel() {
+        final SatuTestModel.Builder builder = SatuTestModel.newBuilder(0)
+                .addSetOfImportedTypes(DT_1)
+                .addSetOfImportedTypes(DT_2)
+                .putMapOfImportedTypes(DT_1, DT_1)
+                .putMapOfImportedTypes(DT_2, DT_2);
+        for (int i = 0; i < 20; i++) {
+            builder.addOrReplaceMapOfModelsFieldWithSameKeyType(SatuTestModel.newBuilder(i).setIntField(i).build());
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testModelMapEntryUpdate() {
+        final SatuTestModel model = newModel();
+        final SatuTestModel.Builder builder = model.toBuilder();
+
+        builder.getMapOfModelsFieldWithSameKeyType(5).setIntField(50);
+
+        final SatuTestModel.Delta delta = builder.reconcile(DeltaType.UPDATE, model);
+        assertEquals(1, delta.getMapOfModelsFieldWithSameKeyType().size());
+        assertEquals(DeltaType.UPDATE, delta.getMapOfModelsFieldWithSameKeyType().getFirst().getDeltaType());
+
+        final SatuTestModel updated = builder.build();
+        assertEquals(Integer.valueOf(50), updated.getMapOfModelsFieldWithSameKeyType().get(5).getIntField());
+        assertSame(model.getMapOfModelsFieldWithSameKeyType().get(6), updated.getMapOfModelsFieldWithSameKeyType().get(6));
+        assertSame(model.getSetOfImportedTypes(), updated.getSetOfImportedTypes());
+        assertEquals(updated, model.toBuilder().applyDelta(delta).build());
+    }
+
+    @Test
+    public void testModelMapStructuralEdits() {
+        final SatuTestModel model = newModel();
+        final SatuTestModel.Builder builder = model.toBuilder()
+                .removeMapOfModelsFieldWithSameKeyType(3)
+                .addOrReplaceMapOfModelsFieldWithSameKeyType(SatuTestModel.newBuilder(100).setIntField(100).build());
+        assertTrue(builder.isDirty());
+
+        final SatuTestModel.Delta delta = builder.reconcile(DeltaType.UPDATE, model);
+        assertEquals(2, delta.getMapOfModelsFieldWithSameKeyType().size());
+
+        final SatuTestModel updated = builder.build();
+        assertFalse(updated.getMapOfModelsFieldWithSameKeyType().containsKey(3));
+        assertEquals(Integer.valueOf(100), updated.getMapOfModelsFieldWithSameKeyType().get(100).getIntField());
+        assertEquals(20, updated.getMapOfModelsFieldWithSameKeyType().size());
+        assertEquals(updated, model.toBuilder().applyDelta(delta).build());
+    }
+
+    @Test
+    public void testReplaceWithSameModelIsNotAChange() {
+        final SatuTestModel model = newModel();
+        final SatuTestModel.Builder builder = model.toBuilder()
+                .addOrReplaceMapOfModelsFieldWithSameKeyType(model.getMapOfModelsFieldWithSameKeyType().get(4));
+        assertNull(builder.reconcile(DeltaType.UPDATE, model));
+        assertEquals(model, builder.build());
+    }
+
+    @Test
+    public void testSetAndMapEdits() {
+        final SatuTestModel model = newModel();
+        final SatuTestModel.Builder builder = model.toBuilder()
+                .removeSetOfImportedTypes(DT_1)
+                .addSetOfImportedTypes(DT_3)
+                .addSetOfImportedTypes(DT_2)
+                .removeMapOfImportedTypes(DT_2)
+                .putMapOfImportedTypes(DT_1, DT_3)
+                .putMapOfImportedTypes(DT_3, DT_3);
+
+        final SatuTestModel.Delta delta = builder.reconcile(DeltaType.UPDATE, model);
+        assertEquals(2, delta.getSetOfImportedTypes().size());
+        assertEquals(3, delta.getMapOfImportedTypes().size());
+
+        final SatuTestModel updated = builder.build();
+        assertEquals(2, updated.getSetOfImportedTypes().size());
+        assertTrue(updated.getSetOfImportedTypes().contains(DT_3));
+        assertFalse(updated.getSetOfImportedTypes().contains(DT_1));
+        assertEquals(DT_3, updated.getMapOfImportedTypes().get(DT_1));
+        assertFalse(updated.getMapOfImportedTypes().containsKey(DT_2));
+        assertEquals(updated, model.toBuilder().applyDelta(delta).build());
+    }
+
+    @Test
+    public void testEditsSurviveMaterialization() {
+        final SatuTestModel model = newModel();
+        final SatuTestModel.Builder builder = model.toBuilder()
+                .removeSetOfImportedTypes(DT_1)
+                .putMapOfImportedTypes(DT_3, DT_3)
+                .removeMapOfModelsFieldWithSameKeyType(3);
+        builder.getMapOfModelsFieldWithSameKeyType(5).setIntField(50);
+
+        assertFalse(builder.getSetOfImportedTypes().contains(DT_1));
+        assertEquals(DT_3, builder.getMapOfImportedTypes().get(DT_3));
+        assertFalse(builder.getMapOfModelsFieldWithSameKeyType().containsKey(3));
+        assertEquals(Integer.valueOf(50), builder.getMapOfModelsFieldWithSameKeyType().get(5).getIntField());
+
+        final SatuTestModel.Delta delta = builder.reconcile(DeltaType.UPDATE, model);
+        assertEquals(1, delta.getSetOfImportedTypes().size());
+        assertEquals(1, delta.getMapOfImportedTypes().size());
+        assertEquals(2, delta.getMapOfModelsFieldWithSameKeyType().size());
+        assertEquals(builder.build(), model.toBuilder().applyDelta(delta).build());
+    }
+
+    @Test
+    public void testReconcileAgainstOtherRef() {
+        final SatuTestModel model = newModel();
+        final SatuTestModel other = model.toBuilder().putMapOfImportedTypes(DT_3, DT_3).build();
+        final SatuTestModel.Builder builder = model.toBuilder().removeMapOfImportedTypes(DT_1);
+        builder.getMapOfModelsFieldWithSameKeyType(5).setIntField(50);
+
+        final SatuTestModel.Delta delta = builder.reconcile(DeltaType.UPDATE, other);
+        assertEquals(builder.build(), other.toBuilder().applyDelta(delta).build());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.runtime.java.KeyValuePairDelta;
+import com.kaaprotech.satu.runtime.java.ThreadLocalPool;
+import com.kaaprotech.satu.test.model.SatuTestEnum;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+
+@SuppressWarnings("boxing")
+public class TestBuilderPooling {
+
+    private static SatuTestModel newModel(final int key) {
+        return SatuTestModel.newBuilder(key)
+                .setIntField(key * 10)
+                .setStringField("model" + key)
+                .addSetOfPrimitiveTypes(key)
+                .putMapOfModelsField(SatuTestEnum.FirstEnumMember, SatuTestModel.newBuilder(key + 100).setIntField(key))
+                .build();
+    }
+
+    @Test
+    public void testRebindMatchesNewBuilder() {
+        final SatuTestModel first = newModel(1);
+        final SatuTestModel second = newModel(2);
+
+        final SatuTestModel.Builder builder = first.toBuilder();
+        builder.setStringField("edited").putMapOfModelsField(SatuTestEnum.SecondEnumMember, SatuTestModel.newBuilder(7));
+        assertTrue(builder.isDirty());
+
+        builder.rebind(second);
+        assertFalse(builder.isDirty());
+        assertEquals(second.toBuilder(), builder);
+        assertSame(second, builder.build());
+
+        builder.setIntField(-1);
+        final SatuTestModel.Delta delta = builder.reconcile();
+        assertEquals(DeltaType.UPDATE, delta.getDeltaType());
+        assertEquals(Integer.valueOf(-1), delta.getIntField());
+        assertEquals(second.toBuilder().setIntField(-1).build(), builder.build());
+
+        builder.rebind(3);
+        assertEquals(SatuTestModel.newBuilder(3), builder);
+        assertEquals(SatuTestModel.newBuilder(3).build(), builder.build());
+        assertEquals(first, builder.rebind(first).build());
+    }
+
+    @Test
+    public void testPooledBuildersAreReused() {
+        final SatuTestModel model = newModel(1);
+
+        final SatuTestModel.Builder builder = model.toPooledBuilder();
+        builder.setIntField(5);
+        SatuTestModel.releaseBuilder(builder);
+
+        final SatuTestModel.Builder reused = SatuTestModel.newPooledBuilder(2);
+        assertSame(builder, reused);
+        assertEquals(SatuTestModel.newBuilder(2), reused);
+        SatuTestModel.releaseBuilder(reused);
+
+        final SatuTestModel.Builder again = model.toPooledBuilder();
+        assertSame(builder, again);
+        assertSame(model, again.build());
+        assertNotSame(again, model.toPooledBuilder());
+    }
+
+    @Test
+    public void testClearDeltaBuilders() {
+        final SatuTestModel.Delta delta = newModel(1).toDelta(DeltaType.ADD);
+
+        final SatuTestModel.Delta.Builder builder = SatuTestModel.newPooledDeltaBuilder(DeltaType.UPDATE, 1);
+        builder.addDelta(delta);
+        SatuTestModel.releaseDeltaBuilder(builder);
+
+        final SatuTestModel.Delta.Builder cleared = SatuTestModel.newPooledDeltaBuilder(DeltaType.DELETE, 2);
+        assertSame(builder, cleared);
+        assertEquals(SatuTestModel.newDeltaBuilder(DeltaType.DELETE, 2), cleared);
+        assertEquals(SatuTestModel.newDeltaBuilder(DeltaType.DELETE, 2).buildDelta(), cleared.buildDelta());
+
+        assertEquals(delta, cleared.rebind(delta).buildDelta());
+        assertEquals(delta.toDeltaBuilder(), cleared);
+
+        final KeyValuePairDelta.Builder<Integer, String> pair = new KeyValuePairDelta.Builder<Integer, String>(DeltaType.ADD, 1).setValue("one");
+        pair.clear(DeltaType.DELETE, 2);
+        assertEquals(new KeyValuePairDelta.Builder<Integer, String>(DeltaType.DELETE, 2), pair);
+        assertNull(pair.getValue());
+    }
+
+    @Test
+    public void testPoolIsBounded() {
+        final ThreadLocalPool<Object> pool = new ThreadLocalPool<Object>(1);
+        assertNull(pool.acquire());
+
+        final Object first = new Object();
+        pool.release(first);
+        pool.release(new Object());
+        assertEquals(1, pool.size());
+        assertSame(first, pool.acquire());
+        assertNull(pool.acquire());
+    }
+}
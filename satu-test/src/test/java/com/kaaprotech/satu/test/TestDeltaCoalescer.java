@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.gs.collections.api.block.predicate.Predicate;
+import com.gs.collections.api.list.ImmutableList;
+import com.gs.collections.api.list.MutableList;
+import com.gs.collections.impl.factory.Lists;
+import com.kaaprotech.satu.runtime.java.DeltaAppender;
+import com.kaaprotech.satu.runtime.java.DeltaCoalescer;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+
+@SuppressWarnings("boxing")
+public class TestDeltaCoalescer {
+
+    private static DeltaCoalescer<Integer, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> newCoalescer(final int maxPendingKeys,
+            final MutableList<SatuTestModel.Delta> sink) {
+        return new DeltaCoalescer<Integer, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>(new DeltaAppender<SatuTestModel.Delta>() {
+            @Override
+            public void append(final SatuTestModel.Delta delta) {
+                synchronized (sink) {
+                    sink.add(delta);
+                }
+            }
+        }, maxPendingKeys);
+    }
+
+    private static SatuTestModel.Delta add(final int key, final int intField) {
+        return SatuTestModel.newBuilder(key).setIntField(intField).setStringField("s" + key).build().toDelta(DeltaType.ADD);
+    }
+
+    private static SatuTestModel.Delta update(final int key, final int intField) {
+        return SatuTestModel.newDeltaBuilder(DeltaType.UPDATE, key).setIntField(intField).buildDelta();
+    }
+
+    private static SatuTestModel.Delta delete(final int key) {
+        return SatuTestModel.newDeltaBuilder(DeltaType.DELETE, key).buildDelta();
+    }
+
+    @Test
+    public void testUpdatesMergeIntoAdd() {
+        final DeltaCoalescer<Integer, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> coalescer = newCoalescer(100,
+                Lists.mutable.<SatuTestModel.Delta> of());
+        coalescer.add(add(1, 1));
+        coalescer.add(update(1, 2));
+        coalescer.add(update(1, 3));
+        coalescer.add(update(2, 4));
+        coalescer.add(update(2, 5));
+
+        final ImmutableList<SatuTestModel.Delta> deltas = coalescer.drain().toSortedList().toImmutable();
+        assertEquals(2, deltas.size());
+        assertEquals(DeltaType.ADD, deltas.get(0).getDeltaType());
+        assertEquals(Integer.valueOf(3), deltas.get(0).getIntField());
+        assertEquals("s1", deltas.get(0).getStringField());
+        assertEquals(DeltaType.UPDATE, deltas.get(1).getDeltaType());
+        assertEquals(Integer.valueOf(5), deltas.get(1).getIntField());
+        assertEquals(0, coalescer.getPendingKeys());
+        assertTrue(coalescer.drain().isEmpty());
+    }
+
+    @Test
+    public void testAddThenDeleteCancels() {
+        final DeltaCoalescer<Integer, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> coalescer = newCoalescer(100,
+                Lists.mutable.<SatuTestModel.Delta> of());
+        coalescer.add(add(1, 1));
+        coalescer.add(update(1, 2));
+        coalescer.add(delete(1));
+        coalescer.add(update(2, 1));
+        coalescer.add(delete(2));
+
+        final ImmutableList<SatuTestModel.Delta> deltas = coalescer.drain();
+        assertEquals(1, deltas.size());
+        assertEquals(DeltaType.DELETE, deltas.get(0).getDeltaType());
+        assertEquals(Integer.valueOf(2), deltas.get(0).getKey());
+    }
+
+    @Test
+    public void testDeleteThenAddKeepsBoth() {
+        final DeltaCoalescer<Integer, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> coalescer = newCoalescer(100,
+                Lists.mutable.<SatuTestModel.Delta> of());
+        coalescer.add(delete(1));
+        coalescer.add(add(1, 1));
+        coalescer.add(update(1, 2));
+
+        ImmutableList<SatuTestModel.Delta> deltas = coalescer.drain();
+        assertEquals(2, deltas.size());
+        assertEquals(DeltaType.DELETE, deltas.get(0).getDeltaType());
+        assertEquals(DeltaType.ADD, deltas.get(1).getDeltaType());
+        assertEquals(Integer.valueOf(2), deltas.get(1).getIntField());
+
+        coalescer.add(delete(1));
+        coalescer.add(add(1, 1));
+        coalescer.add(delete(1));
+        deltas = coalescer.drain();
+        assertEquals(1, deltas.size());
+        assertEquals(DeltaType.DELETE, deltas.get(0).getDeltaType());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidTransition() {
+        final DeltaCoalescer<Integer, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> coalescer = newCoalescer(100,
+                Lists.mutable.<SatuTestModel.Delta> of());
+        coalescer.add(delete(1));
+        coalescer.add(update(1, 1));
+    }
+
+    @Test
+    public void testSizeTriggeredFlush() {
+        final MutableList<SatuTestModel.Delta> sink = Lists.mutable.of();
+        final DeltaCoalescer<Integer, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> coalescer = newCoalescer(10, sink);
+        for (int i = 0; i < 9; i++) {
+            coalescer.add(update(i, i));
+        }
+        assertTrue(sink.isEmpty());
+        coalescer.add(update(9, 9));
+        assertEquals(10, sink.size());
+        assertEquals(0, coalescer.getPendingKeys());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final MutableList<SatuTestModel.Delta> sink = Lists.mutable.of();
+        final DeltaCoalescer<Integer, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> coalescer = newCoalescer(7, sink);
+        final int threads = 4;
+        final int updates = 5000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < updates; i++) {
+                        coalescer.add(update(i % 50, i));
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        coalescer.close();
+
+        assertEquals(0, coalescer.getPendingKeys());
+        assertTrue(sink.size() >= 50);
+        assertTrue(sink.size() <= threads * updates);
+        for (int k = 0; k < 50; k++) {
+            final int key = k;
+            assertTrue(sink.anySatisfy(new Predicate<SatuTestModel.Delta>() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public boolean accept(final SatuTestModel.Delta delta) {
+                    return delta.getKey() == key;
+                }
+            }));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.gs.collections.impl.factory.primitive.IntSets;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.test.model.SatuTestEnum;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+import com.kaaprotech.satu.test.primitive.PrimitiveTestModel;
+
+@SuppressWarnings("boxing")
+public class TestDeltaFlyweight {
+
+    @Test
+    public void testStreamOfDeltas() {
+        final SatuTestModel model = SatuTestModel.newBuilder(1)
+                .setStringField("one")
+                .setModelField(SatuTestModel.newBuilder(2).build())
+                .addOrReplaceMapOfModelsFieldWithSameKeyType(SatuTestModel.newBuilder(3).setIntField(3).build())
+                .build();
+        final SatuTestModel.Builder builder = model.toBuilder().setStringField(null).setEnumField(SatuTestEnum.SecondEnumMember);
+        builder.getMapOfModelsFieldWithSameKeyType(3).setIntField(4);
+
+        final SatuTestModel.Delta added = model.toDelta(DeltaType.ADD);
+        final SatuTestModel.Delta updated = builder.reconcile(DeltaType.UPDATE, model);
+        final SatuTestModel.Delta deleted = model.toDelta(DeltaType.DELETE);
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+        added.writeTo(buffer);
+        updated.writeTo(buffer);
+        deleted.writeTo(buffer);
+        buffer.flip();
+
+        final SatuTestModel.Delta.Flyweight flyweight = new SatuTestModel.Delta.Flyweight();
+        int offset = 0;
+
+        flyweight.wrap(buffer, offset);
+        assertEquals(DeltaType.ADD, flyweight.getDeltaType());
+        assertEquals(Integer.valueOf(1), flyweight.getKey());
+        assertEquals("one", flyweight.getStringField());
+        assertEquals(added.getModelField(), flyweight.getModelField());
+        assertEquals(added, flyweight.toDelta());
+        offset += flyweight.getEncodedLength();
+
+        flyweight.wrap(buffer, offset);
+        assertEquals(DeltaType.UPDATE, flyweight.getDeltaType());
+        assertTrue(flyweight.hasStringField());
+        assertFalse(flyweight.hasIntField());
+        assertNull(flyweight.getIntField());
+        assertEquals(updated.getMapOfModelsFieldWithSameKeyType(), flyweight.getMapOfModelsFieldWithSameKeyType());
+        assertEquals(SatuTestEnum.SecondEnumMember, flyweight.getEnumField());
+        assertNull(flyweight.getStringField());
+        assertTrue(flyweight.getSetOfKeysField().isEmpty());
+        assertEquals(updated, flyweight.toDelta());
+        offset += flyweight.getEncodedLength();
+
+        flyweight.wrap(buffer, offset);
+        assertEquals(DeltaType.DELETE, flyweight.getDeltaType());
+        assertEquals(Integer.valueOf(1), flyweight.getIntKey());
+        assertEquals(deleted, flyweight.toDelta());
+        assertEquals(buffer.limit(), offset + flyweight.getEncodedLength());
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void testPrimitiveFields() {
+        final PrimitiveTestModel model = PrimitiveTestModel.newBuilder(1).addSetOfIntsField(1).putMapOfIntDoublesField(1, 1.5d).build();
+        final PrimitiveTestModel.Builder builder = model.toBuilder().setLongField(-9L).setNullableIntField(2).addSetOfIntsField(2);
+        builder.getMapOfIntDoublesField().removeKey(1);
+        final PrimitiveTestModel.Delta delta = builder.reconcile(DeltaType.UPDATE, model);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        delta.writeTo(buffer);
+
+        final PrimitiveTestModel.Delta.Flyweight flyweight = new PrimitiveTestModel.Delta.Flyweight().wrap(buffer, 0);
+        assertEquals(IntSets.immutable.of(1), flyweight.getMapOfIntDoublesFieldRemoved());
+        assertEquals(-9L, flyweight.getLongField());
+        assertEquals(0, flyweight.getIntField());
+        assertEquals(Integer.valueOf(2), flyweight.getNullableIntField());
+        assertEquals(IntSets.immutable.of(2), flyweight.getSetOfIntsField());
+        assertTrue(flyweight.getMapOfIntDoublesField().isEmpty());
+        assertEquals(buffer.position(), flyweight.getEncodedLength());
+        assertEquals(delta, flyweight.toDelta());
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.runtime.java.KeyModelDeltaPairDelta;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+
+@SuppressWarnings("boxing")
+public class TestDirtyPropagation {
+
+    private static SatuTestModel newModel() {
+        final SatuTestModel.Builder builder = SatuTestModel.newBuilder(0)
+                .setIntField(1)
+                .setModelField(SatuTestModel.newBuilder(1).setStringField("child").build());
+        for (int i = 0; i < 50; i++) {
+            builder.addOrReplaceMapOfModelsFieldWithSameKeyType(SatuTestModel.newBuilder(i)
+                    .setIntField(i)
+                    .setModelField(SatuTestModel.newBuilder(i).setIntField(i).build())
+                    .build());
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testInitIsNotDirty() {
+        final SatuTestModel model = newModel();
+        final SatuTestModel.Builder builder = model.toBuilder().init();
+        assertFalse(builder.isDirty());
+        assertFalse(builder.getModelField().isDirty());
+        assertFalse(builder.getMapOfModelsFieldWithSameKeyType(7).isDirty());
+        assertSame(model, builder.build());
+        assertNull(builder.reconcile(DeltaType.UPDATE, model));
+    }
+
+    @Test
+    public void testDirtyPropagatesFromMapEntry() {
+        final SatuTestModel model = newModel();
+        final SatuTestModel.Builder builder = model.toBuilder().init();
+
+        builder.getMapOfModelsFieldWithSameKeyType(7).getModelField().setIntField(70);
+        assertTrue(builder.getMapOfModelsFieldWithSameKeyType(7).getModelField().isDirty());
+        assertTrue(builder.getMapOfModelsFieldWithSameKeyType(7).isDirty());
+        assertTrue(builder.isDirty());
+        assertFalse(builder.getMapOfModelsFieldWithSameKeyType(8).isDirty());
+        assertFalse(builder.getModelField().isDirty());
+
+        final SatuTestModel.Delta delta = builder.reconcile(DeltaType.UPDATE, model);
+        assertEquals(1, delta.getMapOfModelsFieldWithSameKeyType().size());
+        final KeyModelDeltaPairDelta<Integer, Integer, SatuTestModel.Delta, SatuTestModel.Delta.Builder> entry = delta.getMapOfModelsFieldWithSameKeyType().getFirst();
+        assertEquals(Integer.valueOf(7), entry.getKey());
+        assertEquals(Integer.valueOf(70), entry.getValue().getModelField().getIntField());
+        assertFalse(delta.hasModelField());
+
+        final SatuTestModel updated = builder.build();
+        assertEquals(Integer.valueOf(70), updated.getMapOfModelsFieldWithSameKeyType().get(7).getModelField().getIntField());
+        assertSame(model.getMapOfModelsFieldWithSameKeyType().get(8), updated.getMapOfModelsFieldWithSameKeyType().get(8));
+        assertSame(model.getModelField(), updated.getModelField());
+        assertEquals(updated, model.toBuilder().applyDelta(delta).build());
+    }
+
+    @Test
+    public void testDirtyPropagatesFromModelField() {
+        final SatuTestModel model = newModel();
+        final SatuTestModel.Builder builder = model.toBuilder();
+
+        builder.getModelField().setStringField("changed");
+        assertTrue(builder.isDirty());
+
+        final SatuTestModel.Delta delta = builder.reconcile(DeltaType.UPDATE, model);
+        assertTrue(delta.hasModelField());
+        assertEquals("changed", delta.getModelField().getStringField());
+        assertTrue(delta.getMapOfModelsFieldWithSameKeyType().isEmpty());
+        assertSame(model.getMapOfModelsFieldWithSameKeyType(), builder.build().getMapOfModelsFieldWithSameKeyType());
+    }
+
+    @Test
+    public void testStructuralChangeThroughMap() {
+        final SatuTestModel model = newModel();
+        final SatuTestModel.Builder builder = model.toBuilder().init();
+
+        builder.getMapOfModelsFieldWithSameKeyType().removeKey(3);
+        assertTrue(builder.isDirty());
+
+        final SatuTestModel.Delta delta = builder.reconcile(DeltaType.UPDATE, model);
+        assertEquals(1, delta.getMapOfModelsFieldWithSameKeyType().size());
+        assertEquals(DeltaType.DELETE, delta.getMapOfModelsFieldWithSameKeyType().getFirst().getDeltaType());
+        assertFalse(builder.build().getMapOfModelsFieldWithSameKeyType().containsKey(3));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+import com.gs.collections.impl.factory.Sets;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.runtime.java.KeyDelta;
+import com.kaaprotech.satu.runtime.java.KeyValuePairDelta;
+import com.kaaprotech.satu.test.model.SatuTestEnum;
+import com.kaaprotech.satu.test.model.SatuTestKey;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+
+@SuppressWarnings("boxing")
+public class TestExternalForms {
+
+    private static final SatuTestKey KEY = new SatuTestKey(1, 2L, true, 'c', (byte) 3, 4f, Sets.immutable.of(SatuTestEnum.FirstEnumMember), null, null, null);
+
+    private static byte[] serialize(final Object value) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(value);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(final T value) throws Exception {
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialize(value)));
+        try {
+            return (T) in.readObject();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static SatuTestModel newModel() {
+        final SatuTestModel.Builder builder = SatuTestModel.newBuilder(1)
+                .setIntField(7)
+                .setStringField("string")
+                .setKeyField(KEY);
+        builder.getSetOfKeysField().add(KEY);
+        builder.getMapOfKeysField().put(SatuTestEnum.SecondEnumMember, KEY);
+        builder.addOrReplaceMapOfModelsFieldWithSameKeyType(SatuTestModel.newBuilder(2).setIntField(2).build());
+        return builder.build();
+    }
+
+    @Test
+    public void testModelAndKey() throws Exception {
+        final SatuTestModel model = newModel();
+        final SatuTestModel read = roundTrip(model);
+        assertEquals(model, read);
+        assertEquals(model.getMapOfModelsFieldWithSameKeyType(), read.getMapOfModelsFieldWithSameKeyType());
+        assertEquals(KEY, roundTrip(KEY));
+        assertEquals(SatuTestEnum.ThirdEnumMember, roundTrip(SatuTestEnum.ThirdEnumMember));
+    }
+
+    @Test
+    public void testDeltas() throws Exception {
+        final SatuTestModel model = newModel();
+        final SatuTestModel.Builder builder = model.toBuilder().setIntField(null);
+        builder.getMapOfModelsFieldWithSameKeyType(2).setStringField("updated");
+        builder.getSetOfKeysField().remove(KEY);
+        final SatuTestModel.Delta delta = builder.reconcile(DeltaType.UPDATE, model);
+
+        final SatuTestModel.Delta read = roundTrip(delta);
+        assertEquals(delta, read);
+        assertEquals(builder.build(), model.toBuilder().applyDelta(read).build());
+        assertEquals(model.toDelta(DeltaType.ADD), roundTrip(model.toDelta(DeltaType.ADD)));
+    }
+
+    @Test
+    public void testPairDeltas() throws Exception {
+        final KeyDelta<SatuTestKey> keyDelta = new KeyDelta<SatuTestKey>(DeltaType.DELETE, KEY);
+        assertEquals(keyDelta, roundTrip(keyDelta));
+
+        final KeyValuePairDelta<SatuTestEnum, SatuTestKey> pairDelta = new KeyValuePairDelta<SatuTestEnum, SatuTestKey>(DeltaType.ADD, SatuTestEnum.FirstEnumMember, KEY);
+        final KeyValuePairDelta<SatuTestEnum, SatuTestKey> readPair = roundTrip(pairDelta);
+        assertEquals(pairDelta, readPair);
+        assertEquals(KEY, readPair.getValue());
+    }
+
+    @Test
+    public void testSmallerThanFieldSerialization() throws Exception {
+        final SatuTestModel.Delta delta = newModel().toBuilder().setIntField(2).reconcile(DeltaType.UPDATE, newModel());
+        assertTrue(serialize(delta).length < 256);
+    }
+}
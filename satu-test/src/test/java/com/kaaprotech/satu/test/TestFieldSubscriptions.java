@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.gs.collections.api.list.MutableList;
+import com.gs.collections.impl.factory.Lists;
+import com.kaaprotech.satu.runtime.java.DeltaAppender;
+import com.kaaprotech.satu.runtime.java.DeltaSubscriptions;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+
+@SuppressWarnings("boxing")
+public class TestFieldSubscriptions {
+
+    private static DeltaAppender<SatuTestModel.Delta> appender(final MutableList<SatuTestModel.Delta> sink) {
+        return new DeltaAppender<SatuTestModel.Delta>() {
+            @Override
+            public void append(final SatuTestModel.Delta delta) {
+                sink.add(delta);
+            }
+        };
+    }
+
+    @Test
+    public void testChangedFieldsMask() {
+        assertEquals(1L << SatuTestModel.Delta.FieldIndex.stringField.ordinal(), SatuTestModel.Delta.STRING_FIELD_MASK);
+        assertEquals(SatuTestModel.Delta.STRING_FIELD_MASK, SatuTestModel.Delta.FieldIndex.stringField.mask());
+
+        final SatuTestModel.Delta update = SatuTestModel.newDeltaBuilder(DeltaType.UPDATE, 1).setIntField(1).setStringField("s").buildDelta();
+        assertEquals(SatuTestModel.Delta.INT_FIELD_MASK | SatuTestModel.Delta.STRING_FIELD_MASK, update.changedFieldsMask());
+
+        final SatuTestModel.Delta delete = SatuTestModel.newDeltaBuilder(DeltaType.DELETE, 1).buildDelta();
+        assertEquals(0L, delete.changedFieldsMask());
+
+        final SatuTestModel.Delta add = SatuTestModel.newBuilder(1).setIntField(1).build().toDelta(DeltaType.ADD);
+        assertEquals(0L, add.changedFieldsMask() & ~SatuTestModel.Delta.ALL_FIELDS_MASK);
+        assertTrue((add.changedFieldsMask() & SatuTestModel.Delta.INT_FIELD_MASK) != 0L);
+    }
+
+    @Test
+    public void testProject() {
+        final SatuTestModel.Delta update = SatuTestModel.newBuilder(1).build().toBuilder().setIntField(1).setStringField("s").addSetOfPrimitiveTypes(3)
+                .reconcile();
+        assertEquals(DeltaType.UPDATE, update.getDeltaType());
+        assertSame(update, update.project(SatuTestModel.Delta.ALL_FIELDS_MASK));
+
+        final SatuTestModel.Delta projected = update.project(SatuTestModel.Delta.STRING_FIELD_MASK | SatuTestModel.Delta.DOUBLE_FIELD_MASK);
+        assertEquals(SatuTestModel.Delta.STRING_FIELD_MASK, projected.changedFieldsMask());
+        assertEquals("s", projected.getStringField());
+        assertFalse(projected.hasIntField());
+        assertNull(projected.getIntField());
+        assertFalse(projected.hasSetOfPrimitiveTypes());
+        assertTrue(projected.getSetOfPrimitiveTypes().isEmpty());
+        assertEquals(Integer.valueOf(1), projected.getKey());
+
+        assertEquals(SatuTestModel.newDeltaBuilder(DeltaType.UPDATE, 1).setStringField("s").buildDelta(), projected);
+    }
+
+    @Test
+    public void testDispatchByInterest() {
+        final DeltaSubscriptions<SatuTestModel.Delta> subscriptions = new DeltaSubscriptions<SatuTestModel.Delta>();
+        final MutableList<SatuTestModel.Delta> strings = Lists.mutable.of();
+        final MutableList<SatuTestModel.Delta> projected = Lists.mutable.of();
+        final MutableList<SatuTestModel.Delta> doubles = Lists.mutable.of();
+        subscriptions.subscribe(SatuTestModel.Delta.STRING_FIELD_MASK, appender(strings));
+        subscriptions.subscribeProjected(SatuTestModel.Delta.STRING_FIELD_MASK, appender(projected));
+        final DeltaSubscriptions<SatuTestModel.Delta>.Subscription subscription = subscriptions.subscribe(SatuTestModel.Delta.DOUBLE_FIELD_MASK,
+                appender(doubles));
+
+        subscriptions.append(SatuTestModel.newDeltaBuilder(DeltaType.UPDATE, 1).setIntField(1).buildDelta());
+        subscriptions.append(SatuTestModel.newDeltaBuilder(DeltaType.UPDATE, 1).setIntField(2).setStringField("s").buildDelta());
+        subscriptions.append(SatuTestModel.newDeltaBuilder(DeltaType.DELETE, 1).buildDelta());
+
+        assertEquals(2, strings.size());
+        assertTrue(strings.get(0).hasIntField());
+        assertEquals(2, projected.size());
+        assertFalse(projected.get(0).hasIntField());
+        assertEquals("s", projected.get(0).getStringField());
+        assertEquals(DeltaType.DELETE, projected.get(1).getDeltaType());
+        assertEquals(1, doubles.size());
+
+        subscription.cancel();
+        assertEquals(2, subscriptions.size());
+        subscriptions.append(SatuTestModel.newDeltaBuilder(DeltaType.DELETE, 2).buildDelta());
+        assertEquals(1, doubles.size());
+    }
+
+    @Test
+    public void testAddReachesEverySubscriber() {
+        final DeltaSubscriptions<SatuTestModel.Delta> subscriptions = new DeltaSubscriptions<SatuTestModel.Delta>();
+        final MutableList<SatuTestModel.Delta> strings = Lists.mutable.of();
+        final MutableList<SatuTestModel.Delta> projected = Lists.mutable.of();
+        subscriptions.subscribe(SatuTestModel.Delta.STRING_FIELD_MASK, appender(strings));
+        subscriptions.subscribeProjected(SatuTestModel.Delta.STRING_FIELD_MASK, appender(projected));
+
+        // Neither add carries the string field, the second has no changed fields at all
+        final SatuTestModel.Delta add = SatuTestModel.newBuilder(1).setIntField(1).build().toDelta(DeltaType.ADD);
+        subscriptions.append(add);
+        subscriptions.append(SatuTestModel.newDeltaBuilder(DeltaType.ADD, 2).buildDelta());
+        subscriptions.append(SatuTestModel.newDeltaBuilder(DeltaType.UPDATE, 1).setIntField(2).buildDelta());
+
+        assertEquals(2, strings.size());
+        assertSame(add, strings.get(0));
+        assertEquals(2, projected.size());
+        assertEquals(DeltaType.ADD, projected.get(0).getDeltaType());
+        assertFalse(projected.get(0).hasIntField());
+        assertEquals(Integer.valueOf(2), projected.get(1).getKey());
+    }
+}
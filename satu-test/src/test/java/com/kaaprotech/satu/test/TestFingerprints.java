@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.gs.collections.impl.factory.primitive.IntIntMaps;
+import com.gs.collections.impl.factory.primitive.IntSets;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.runtime.java.Fingerprinted;
+import com.kaaprotech.satu.runtime.java.SatuUtil;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+import com.kaaprotech.satu.test.primitive.PrimitiveTestKey;
+import com.kaaprotech.satu.test.primitive.PrimitiveTestModel;
+
+@SuppressWarnings("boxing")
+public class TestFingerprints {
+
+    @Test
+    public void testFingerprintedTypes() {
+        assertTrue(Fingerprinted.class.isAssignableFrom(PrimitiveTestModel.class));
+        assertTrue(Fingerprinted.class.isAssignableFrom(PrimitiveTestKey.class));
+        assertFalse(Fingerprinted.class.isAssignableFrom(SatuTestModel.class));
+    }
+
+    @Test
+    public void testFingerprint() {
+        final PrimitiveTestModel model1 = newModel(1, "a");
+        final PrimitiveTestModel model2 = newModel(1, "a");
+        final PrimitiveTestModel model3 = newModel(1, "b");
+
+        assertEquals(model1.fingerprint(), model2.fingerprint());
+        assertEquals(model1.fingerprint(), model1.fingerprint());
+        assertNotEquals(model1.fingerprint(), model3.fingerprint());
+
+        assertEquals(model1.hashCode(), model2.hashCode());
+        assertEquals(model1.hashCode(), model1.hashCode());
+        assertEquals(model1, model2);
+        assertNotEquals(model1, model3);
+
+        final PrimitiveTestKey key1 = new PrimitiveTestKey(1, 2d, true, IntSets.immutable.of(1, 2), IntIntMaps.immutable.of(1, 1));
+        final PrimitiveTestKey key2 = new PrimitiveTestKey(1, 2d, true, IntSets.immutable.of(2, 1), IntIntMaps.immutable.of(1, 1));
+        final PrimitiveTestKey key3 = new PrimitiveTestKey(1, 2d, true, IntSets.immutable.of(1, 3), IntIntMaps.immutable.of(1, 1));
+        assertEquals(key1.fingerprint(), key2.fingerprint());
+        assertNotEquals(key1.fingerprint(), key3.fingerprint());
+        assertNotEquals(key1, key3);
+    }
+
+    @Test
+    public void testIsUnchanged() {
+        final PrimitiveTestModel model1 = newModel(1, "a");
+        final PrimitiveTestModel model2 = newModel(1, "a");
+        final PrimitiveTestModel model3 = newModel(1, "b");
+
+        assertTrue(SatuUtil.isUnchanged(model1, model1));
+        assertTrue(SatuUtil.isUnchanged(model1, model2));
+        assertFalse(SatuUtil.isUnchanged(model1, model3));
+        assertFalse(SatuUtil.isUnchanged(model1, null));
+    }
+
+    @Test
+    public void testReconcileSkipsUnchangedModels() {
+        final PrimitiveTestModel.Builder builder = PrimitiveTestModel.newBuilder(0);
+        for (int i = 0; i < 100; i++) {
+            builder.putMapOfModelsField(i, newModel(i, "a"));
+        }
+        final PrimitiveTestModel ref = builder.build();
+
+        final PrimitiveTestModel.Builder rebuilt = PrimitiveTestModel.newBuilder(0);
+        for (int i = 0; i < 100; i++) {
+            rebuilt.putMapOfModelsField(i, newModel(i, i == 42 ? "b" : "a"));
+        }
+        final PrimitiveTestModel model = rebuilt.build();
+
+        final PrimitiveTestModel.Delta delta = model.toBuilder().reconcile(DeltaType.UPDATE, ref);
+        assertEquals(1, delta.getMapOfModelsField().size());
+        assertEquals(Integer.valueOf(42), delta.getMapOfModelsField().getFirst().getKey());
+        assertEquals(model, ref.toBuilder().applyDelta(delta).build());
+    }
+
+    private static PrimitiveTestModel newModel(final int id, final String value) {
+        return PrimitiveTestModel.newBuilder(id)
+                .setIntField(id)
+                .setStringField(value)
+                .setKeyField(new PrimitiveTestKey(id, 2d, true, IntSets.immutable.of(id), null))
+                .build();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.gs.collections.api.block.function.Function;
+import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.list.MutableList;
+import com.gs.collections.impl.factory.Lists;
+import com.kaaprotech.satu.runtime.java.DeltaAppender;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.runtime.java.ModelStore;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+
+@SuppressWarnings("boxing")
+public class TestModelStore {
+
+    private static ModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> newStore(
+            final MutableList<SatuTestModel.Delta> sink) {
+        return new ModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>(
+                new Function<Integer, SatuTestModel.Builder>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public SatuTestModel.Builder valueOf(final Integer key) {
+                        return SatuTestModel.newBuilder(key);
+                    }
+                }, new DeltaAppender<SatuTestModel.Delta>() {
+                    @Override
+                    public void append(final SatuTestModel.Delta delta) {
+                        sink.add(delta);
+                    }
+                }, 4);
+    }
+
+    private static Procedure<SatuTestModel.Builder> setIntField(final int intField) {
+        return new Procedure<SatuTestModel.Builder>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void value(final SatuTestModel.Builder builder) {
+                builder.setIntField(intField);
+            }
+        };
+    }
+
+    @Test
+    public void testUpdateProducesDeltas() {
+        final MutableList<SatuTestModel.Delta> sink = Lists.mutable.of();
+        final ModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> store = newStore(sink);
+
+        SatuTestModel.Delta delta = store.update(1, setIntField(1));
+        assertEquals(DeltaType.ADD, delta.getDeltaType());
+        assertEquals(Integer.valueOf(1), store.get(1).getIntField());
+
+        final SatuTestModel model = store.get(1);
+        assertNull(store.update(1, setIntField(1)));
+        assertSame(model, store.get(1));
+
+        delta = store.update(1, setIntField(2));
+        assertEquals(DeltaType.UPDATE, delta.getDeltaType());
+        assertEquals(Integer.valueOf(2), delta.getIntField());
+        assertEquals(Integer.valueOf(2), store.get(1).getIntField());
+
+        delta = store.remove(1);
+        assertEquals(DeltaType.DELETE, delta.getDeltaType());
+        assertFalse(store.containsKey(1));
+        assertNull(store.remove(1));
+        assertEquals(3, sink.size());
+    }
+
+    @Test
+    public void testApplyDeltas() {
+        final MutableList<SatuTestModel.Delta> sink = Lists.mutable.of();
+        final ModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> store = newStore(sink);
+
+        store.apply(SatuTestModel.newBuilder(1).setIntField(1).setStringField("s1").build().toDelta(DeltaType.ADD));
+        assertEquals("s1", store.get(1).getStringField());
+
+        final SatuTestModel.Delta delta = store.apply(SatuTestModel.newDeltaBuilder(DeltaType.UPDATE, 1).setIntField(1).setStringField("s2").buildDelta());
+        assertEquals(DeltaType.UPDATE, delta.getDeltaType());
+        assertNull(delta.getIntField());
+        assertEquals("s2", delta.getStringField());
+
+        assertEquals(DeltaType.DELETE, store.apply(SatuTestModel.newDeltaBuilder(DeltaType.DELETE, 1).buildDelta()).getDeltaType());
+        assertNull(store.apply(SatuTestModel.newDeltaBuilder(DeltaType.DELETE, 1).buildDelta()));
+        assertEquals(0, store.size());
+        assertEquals(3, sink.size());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws InterruptedException {
+        final MutableList<SatuTestModel.Delta> sink = Lists.mutable.of();
+        final ModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> store = newStore(sink.asSynchronized());
+        final int threads = 4;
+        final int updates = 5000;
+        final Procedure<SatuTestModel.Builder> increment = new Procedure<SatuTestModel.Builder>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void value(final SatuTestModel.Builder builder) {
+                builder.setIntField(builder.getIntField() == null ? 1 : builder.getIntField() + 1);
+            }
+        };
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < updates; i++) {
+                        store.update(i % 50, increment);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+
+        assertEquals(50, store.size());
+        assertEquals(threads * updates, sink.size());
+        for (int k = 0; k < 50; k++) {
+            assertEquals(Integer.valueOf(threads * updates / 50), store.get(k).getIntField());
+        }
+        assertEquals(50, store.toImmutable().size());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.gs.collections.api.list.ImmutableList;
+import com.gs.collections.api.list.MutableList;
+import com.gs.collections.api.map.ImmutableMap;
+import com.gs.collections.api.map.MutableMap;
+import com.gs.collections.impl.factory.Lists;
+import com.kaaprotech.satu.runtime.java.DeltaAppender;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.runtime.java.KeyModelDeltaPairDelta;
+import com.kaaprotech.satu.runtime.java.SatuParallel;
+import com.kaaprotech.satu.runtime.java.SatuUtil;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+
+@SuppressWarnings("boxing")
+public class TestParallelReconcile {
+
+    private static final int ENTRIES = 5000;
+
+    @After
+    public void resetThreshold() {
+        SatuParallel.setThreshold(SatuParallel.DEFAULT_THRESHOLD);
+    }
+
+    private static SatuTestModel newModel() {
+        final SatuTestModel.Builder builder = SatuTestModel.newBuilder(0);
+        for (int i = 0; i < ENTRIES; i++) {
+            builder.putMapOfModelsFieldWithSameKeyType(i, SatuTestModel.newBuilder(i).setIntField(i).setStringField("s" + i));
+        }
+        return builder.build();
+    }
+
+    private static SatuTestModel.Builder edit(final SatuTestModel model) {
+        final SatuTestModel.Builder builder = model.toBuilder();
+        for (int i = 0; i < ENTRIES; i += 3) {
+            builder.getMapOfModelsFieldWithSameKeyType(i).setIntField(-i - 1);
+        }
+        for (int i = 1; i < ENTRIES; i += 50) {
+            builder.removeMapOfModelsFieldWithSameKeyType(i);
+        }
+        for (int i = ENTRIES; i < ENTRIES + 100; i++) {
+            builder.putMapOfModelsFieldWithSameKeyType(i, SatuTestModel.newBuilder(i).setIntField(i));
+        }
+        return builder;
+    }
+
+    private static ImmutableList<KeyModelDeltaPairDelta<Integer, Integer, SatuTestModel.Delta, SatuTestModel.Delta.Builder>> reconcile(
+            final ImmutableMap<Integer, SatuTestModel> ref, final ImmutableMap<Integer, SatuTestModel> models) {
+        final MutableList<KeyModelDeltaPairDelta<Integer, Integer, SatuTestModel.Delta, SatuTestModel.Delta.Builder>> deltas = Lists.mutable.of();
+        SatuUtil.<Integer, Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> reconcileKeyModelPairs(ref, models,
+                new DeltaAppender<KeyModelDeltaPairDelta<Integer, Integer, SatuTestModel.Delta, SatuTestModel.Delta.Builder>>() {
+                    @Override
+                    public void append(final KeyModelDeltaPairDelta<Integer, Integer, SatuTestModel.Delta, SatuTestModel.Delta.Builder> delta) {
+                        deltas.add(delta);
+                    }
+                });
+        return deltas.toImmutable();
+    }
+
+    @Test
+    public void testParallelBuildMatchesSequential() {
+        SatuParallel.setThreshold(Integer.MAX_VALUE);
+        final SatuTestModel sequentialRef = newModel();
+        final SatuTestModel.Builder sequentialBuilder = edit(sequentialRef);
+        final SatuTestModel sequential = sequentialBuilder.build();
+        final SatuTestModel.Delta sequentialDelta = sequentialBuilder.reconcile();
+
+        SatuParallel.setThreshold(64);
+        final SatuTestModel parallelRef = newModel();
+        assertEquals(sequentialRef, parallelRef);
+        final SatuTestModel.Builder parallelBuilder = edit(parallelRef);
+        assertEquals(sequential, parallelBuilder.build());
+        assertEquals(sequentialDelta, parallelBuilder.reconcile());
+        assertEquals(DeltaType.UPDATE, parallelBuilder.reconcile().getDeltaType());
+    }
+
+    @Test
+    public void testParallelReconcileMatchesSequential() {
+        final SatuTestModel ref = newModel();
+        final SatuTestModel model = edit(ref).build();
+
+        SatuParallel.setThreshold(Integer.MAX_VALUE);
+        final ImmutableList<KeyModelDeltaPairDelta<Integer, Integer, SatuTestModel.Delta, SatuTestModel.Delta.Builder>> sequential = reconcile(
+                ref.getMapOfModelsFieldWithSameKeyType(), model.getMapOfModelsFieldWithSameKeyType());
+
+        SatuParallel.setThreshold(64);
+        final ImmutableList<KeyModelDeltaPairDelta<Integer, Integer, SatuTestModel.Delta, SatuTestModel.Delta.Builder>> parallel = reconcile(
+                ref.getMapOfModelsFieldWithSameKeyType(), model.getMapOfModelsFieldWithSameKeyType());
+        assertEquals(sequential, parallel);
+        int changed = 100;
+        for (int i = 0; i < ENTRIES; i++) {
+            if (i % 3 == 0 || i % 50 == 1) {
+                changed++;
+            }
+        }
+        assertEquals(changed, parallel.size());
+
+        final MutableMap<Integer, SatuTestModel.Builder> builders = SatuUtil.toKeyModelBuilderMap(model.getMapOfModelsFieldWithSameKeyType());
+        assertNotNull(builders.get(ENTRIES));
+        assertEquals(model.getMapOfModelsFieldWithSameKeyType(), SatuUtil.toKeyModelMap(builders));
+    }
+}
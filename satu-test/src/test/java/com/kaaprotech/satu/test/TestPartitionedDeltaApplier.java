@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.gs.collections.api.list.MutableList;
+import com.gs.collections.api.map.ImmutableMap;
+import com.gs.collections.api.map.MutableMap;
+import com.gs.collections.impl.factory.Lists;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.runtime.java.KeyModelDeltaPairDelta;
+import com.kaaprotech.satu.runtime.java.PartitionedDeltaApplier;
+import com.kaaprotech.satu.test.model.SatuTestEnum;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+import com.kaaprotech.satu.test.primitive.PrimitiveTestModel;
+
+@SuppressWarnings("boxing")
+public class TestPartitionedDeltaApplier {
+
+    private static PartitionedDeltaApplier<Integer, Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> newApplier() {
+        return new PartitionedDeltaApplier<Integer, Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>(4);
+    }
+
+    private static SatuTestModel.Delta update(final int key, final int intField) {
+        return SatuTestModel.newDeltaBuilder(DeltaType.UPDATE, key).setIntField(intField).buildDelta();
+    }
+
+    @Test
+    public void testPerKeyOrderAndSnapshots() {
+        final PartitionedDeltaApplier<Integer, Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> applier = newApplier();
+        for (int k = 0; k < 100; k++) {
+            applier.apply(k, SatuTestModel.newBuilder(k).setStringField("s" + k).build().toDelta(DeltaType.ADD));
+        }
+        for (int i = 0; i < 1000; i++) {
+            applier.apply(i % 100, update(i % 100, i));
+        }
+        final ImmutableMap<Integer, SatuTestModel> first = applier.snapshot();
+        assertEquals(100, first.size());
+        for (int k = 0; k < 100; k++) {
+            assertEquals(Integer.valueOf(900 + k), first.get(k).getIntField());
+            assertEquals("s" + k, first.get(k).getStringField());
+        }
+
+        applier.apply(5, update(5, -1));
+        applier.apply(6, SatuTestModel.newDeltaBuilder(DeltaType.DELETE, 6).buildDelta());
+        final ImmutableMap<Integer, SatuTestModel> second = applier.snapshot();
+        assertEquals(99, second.size());
+        assertFalse(second.containsKey(6));
+        assertEquals(Integer.valueOf(-1), second.get(5).getIntField());
+        assertSame(first.get(7), second.get(7));
+        applier.close();
+    }
+
+    @Test
+    public void testBatchesOfPairDeltas() {
+        final PartitionedDeltaApplier<Integer, Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> applier = newApplier();
+        final MutableList<KeyModelDeltaPairDelta<Integer, Integer, SatuTestModel.Delta, SatuTestModel.Delta.Builder>> deltas = Lists.mutable.of();
+        for (int i = 0; i < 5000; i++) {
+            final int key = i % 37;
+            deltas.add(new KeyModelDeltaPairDelta<Integer, Integer, SatuTestModel.Delta, SatuTestModel.Delta.Builder>(DeltaType.UPDATE, key, update(key, i)));
+        }
+        applier.applyAll(deltas);
+        final ImmutableMap<Integer, SatuTestModel> models = applier.snapshot();
+        assertEquals(37, models.size());
+        for (int k = 0; k < 37; k++) {
+            int last = k;
+            while (last + 37 < 5000) {
+                last += 37;
+            }
+            assertEquals(Integer.valueOf(last), models.get(k).getIntField());
+        }
+        applier.close();
+    }
+
+    @Test
+    public void testConcurrentProducersOfDistinctKeys() throws InterruptedException {
+        final PartitionedDeltaApplier<Integer, Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> applier = newApplier();
+        final int threads = 4;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int producer = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        final int key = producer * 100 + i % 100;
+                        applier.apply(key, update(key, i));
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+
+        final ImmutableMap<Integer, SatuTestModel> models = applier.snapshot();
+        assertEquals(threads * 100, models.size());
+        for (int t = 0; t < threads; t++) {
+            for (int k = 0; k < 100; k++) {
+                assertEquals(Integer.valueOf(1900 + k), models.get(t * 100 + k).getIntField());
+            }
+        }
+        applier.close();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testWorkerFailureRethrown() {
+        final PartitionedDeltaApplier<Integer, Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> applier = newApplier();
+        applier.apply(new KeyModelDeltaPairDelta<Integer, Integer, SatuTestModel.Delta, SatuTestModel.Delta.Builder>(DeltaType.UPDATE, 1, null));
+        try {
+            applier.flush();
+        }
+        finally {
+            applier.close();
+        }
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Test
+    public void testFailureMidApplyIsSticky() {
+        final PartitionedDeltaApplier<Integer, Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> applier = newApplier();
+        applier.apply(1, SatuTestModel.newBuilder(1).putMapOfModelsField(SatuTestEnum.SecondEnumMember, SatuTestModel.newBuilder(7)).build().toDelta(DeltaType.ADD));
+        applier.apply(2, SatuTestModel.newBuilder(2).build().toDelta(DeltaType.ADD));
+        applier.flush();
+
+        // The int field and the first entry are applied before the entry holding another model's delta fails
+        final SatuTestModel.Delta.Builder failing = SatuTestModel.newDeltaBuilder(DeltaType.UPDATE, 1).setIntField(5);
+        failing.addMapOfModelsField(new KeyModelDeltaPairDelta<SatuTestEnum, Integer, SatuTestModel.Delta, SatuTestModel.Delta.Builder>(DeltaType.ADD, SatuTestEnum.FirstEnumMember,
+                SatuTestModel.newBuilder(8).build().toDelta(DeltaType.ADD)));
+        final KeyModelDeltaPairDelta foreign = new KeyModelDeltaPairDelta(DeltaType.UPDATE, SatuTestEnum.SecondEnumMember, PrimitiveTestModel.newDeltaBuilder(DeltaType.UPDATE, 7).setIntField(1)
+                .buildDelta());
+        ((MutableMap) failing.getMapOfModelsField()).put(SatuTestEnum.SecondEnumMember, new KeyModelDeltaPairDelta.Builder(foreign));
+        applier.apply(1, failing.buildDelta());
+        applier.apply(1, update(1, 6));
+        applier.apply(2, update(2, 6));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                applier.snapshot();
+                fail("Failure should be rethrown by every snapshot");
+            }
+            catch (final ClassCastException e) {
+                // Expected
+            }
+        }
+        try {
+            applier.close();
+            fail("Failure should be rethrown by close");
+        }
+        catch (final ClassCastException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.gs.collections.api.map.MutableMap;
+import com.gs.collections.api.set.MutableSet;
+import com.gs.collections.impl.factory.Maps;
+import com.gs.collections.impl.factory.Sets;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.runtime.java.PersistentHashMap;
+import com.kaaprotech.satu.runtime.java.PersistentHashSet;
+import com.kaaprotech.satu.test.persistent.PersistentTestModel;
+
+@SuppressWarnings("boxing")
+public class TestPersistentCollections {
+
+    // Keys with few distinct hash codes to exercise collision nodes
+    private static final class CollidingKey {
+
+        private final int value_;
+
+        CollidingKey(final int value) {
+            value_ = value;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof CollidingKey && ((CollidingKey) obj).value_ == value_;
+        }
+
+        @Override
+        public int hashCode() {
+            return value_ % 7;
+        }
+    }
+
+    @Test
+    public void testMapMatchesUnifiedMap() {
+        final Random random = new Random(17);
+        final MutableMap<Integer, Integer> expected = Maps.mutable.of();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 20000; i++) {
+            final int key = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                expected.removeKey(key);
+                map = map.newWithoutKey(key);
+            }
+            else {
+                expected.put(key, i);
+                map = map.newWithKeyValue(key, i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+        assertEquals(expected.size(), map.keysView().size());
+        for (Integer key : expected.keysView()) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        assertNull(map.get(-1));
+        assertFalse(map.containsKey(-1));
+    }
+
+    @Test
+    public void testVersionsShareAndStayUnchanged() {
+        final PersistentHashMap<Integer, String> v1 = PersistentHashMap.<Integer, String> empty().newWithKeyValue(1, "a").newWithKeyValue(2, "b");
+        final PersistentHashMap<Integer, String> v2 = v1.newWithKeyValue(3, "c").newWithoutKey(1);
+        assertEquals(Maps.immutable.of(1, "a", 2, "b"), v1);
+        assertEquals(Maps.immutable.of(2, "b", 3, "c"), v2);
+        assertSame(v1, v1.newWithKeyValue(1, "a"));
+        assertSame(v1, v1.newWithoutKey(7));
+        assertSame(PersistentHashMap.empty(), v1.newWithoutKey(1).newWithoutKey(2));
+    }
+
+    @Test
+    public void testCollisions() {
+        PersistentHashMap<CollidingKey, Integer> map = PersistentHashMap.empty();
+        PersistentHashSet<CollidingKey> set = PersistentHashSet.empty();
+        for (int i = 0; i < 100; i++) {
+            map = map.newWithKeyValue(new CollidingKey(i), i);
+            set = set.newWith(new CollidingKey(i));
+        }
+        assertEquals(100, map.size());
+        assertEquals(100, set.size());
+        for (int i = 0; i < 100; i += 2) {
+            map = map.newWithoutKey(new CollidingKey(i));
+            set = set.newWithout(new CollidingKey(i));
+        }
+        assertEquals(50, map.size());
+        assertEquals(50, set.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 1, map.containsKey(new CollidingKey(i)));
+            assertEquals(i % 2 == 1, set.contains(new CollidingKey(i)));
+        }
+        assertEquals(50, map.valuesView().size());
+        assertEquals(50, set.toList().size());
+    }
+
+    @Test
+    public void testCollisionSharingFragmentsWithOtherHash() {
+        // "Aa" and "BB" have the same hash, 32 differs from it but shares its lowest fragment
+        PersistentHashMap<Object, Integer> map = PersistentHashMap.empty();
+        map = map.newWithKeyValue("Aa", 1).newWithKeyValue("BB", 2).newWithKeyValue(32, 3);
+        assertEquals(3, map.size());
+        assertEquals(Integer.valueOf(1), map.get("Aa"));
+        assertEquals(Integer.valueOf(2), map.get("BB"));
+        assertEquals(Integer.valueOf(3), map.get(32));
+        assertTrue(map.containsKey(32));
+        assertEquals(3, map.valuesView().size());
+
+        map = map.newWithoutKey("Aa");
+        assertEquals(2, map.size());
+        assertFalse(map.containsKey("Aa"));
+        assertEquals(Integer.valueOf(2), map.get("BB"));
+        assertEquals(Integer.valueOf(3), map.get(32));
+
+        PersistentHashSet<Object> set = PersistentHashSet.empty();
+        set = set.newWith("Aa").newWith("BB").newWith(32);
+        assertEquals(3, set.size());
+        assertTrue(set.contains(32));
+        set = set.newWithout(32);
+        assertEquals(2, set.size());
+        assertFalse(set.contains(32));
+        assertTrue(set.contains("Aa"));
+        assertTrue(set.contains("BB"));
+    }
+
+    @Test
+    public void testSetMatchesUnifiedSet() {
+        final Random random = new Random(31);
+        final MutableSet<Integer> expected = Sets.mutable.of();
+        PersistentHashSet<Integer> set = PersistentHashSet.empty();
+        for (int i = 0; i < 10000; i++) {
+            final int element = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                expected.remove(element);
+                set = set.newWithout(element);
+            }
+            else {
+                expected.add(element);
+                set = set.newWith(element);
+            }
+        }
+        assertEquals(expected, set);
+        assertEquals(set, expected);
+        assertEquals(expected.hashCode(), set.hashCode());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        final PersistentHashMap<Integer, String> map = PersistentHashMap.<Integer, String> empty().newWithKeyValue(1, "a").newWithKeyValue(2, "b");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(map);
+        out.close();
+        final Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(map, copy);
+    }
+
+    @Test
+    public void testModelFields() {
+        final PersistentTestModel v1 = PersistentTestModel.newBuilder(1)
+                .putHistoryField(1, "one")
+                .putHistoryField(2, "two")
+                .addSetOfStringsField("a")
+                .putMapOfIntIntsField(1, 1)
+                .putMapOfModelsField(5, PersistentTestModel.newBuilder(5).build())
+                .build();
+        assertTrue(v1.getHistoryField() instanceof PersistentHashMap);
+        assertTrue(v1.getSetOfStringsField() instanceof PersistentHashSet);
+        assertTrue(v1.getMapOfIntIntsField() instanceof PersistentHashMap);
+        assertTrue(v1.getMapOfModelsField() instanceof PersistentHashMap);
+        assertFalse(v1.getMapOfStringsField() instanceof PersistentHashMap);
+
+        final PersistentTestModel.Builder builder = v1.toBuilder()
+                .putHistoryField(3, "three")
+                .removeSetOfStringsField("a")
+                .addSetOfStringsField("b");
+        builder.getMapOfModelsField(5).setIntField(50);
+        final PersistentTestModel v2 = builder.build();
+
+        assertTrue(v2.getHistoryField() instanceof PersistentHashMap);
+        assertEquals(Maps.immutable.of(1, "one", 2, "two", 3, "three"), v2.getHistoryField());
+        assertEquals(Sets.immutable.of("b"), v2.getSetOfStringsField());
+        assertEquals(50, v2.getMapOfModelsField().get(5).getIntField());
+        assertSame(v1.getMapOfIntIntsField(), v2.getMapOfIntIntsField());
+
+        // The previous version is untouched
+        assertEquals(Maps.immutable.of(1, "one", 2, "two"), v1.getHistoryField());
+        assertEquals(Sets.immutable.of("a"), v1.getSetOfStringsField());
+        assertEquals(0, v1.getMapOfModelsField().get(5).getIntField());
+
+        final PersistentTestModel.Delta delta = v2.toBuilder().reconcile(DeltaType.UPDATE, v1);
+        assertEquals(v2, v1.toBuilder().applyDelta(delta).build());
+    }
+}
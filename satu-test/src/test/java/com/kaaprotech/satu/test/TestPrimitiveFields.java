@@ -0,0 +1,223 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.gs.collections.api.map.ImmutableMap;
+import com.gs.collections.api.map.primitive.ImmutableIntDoubleMap;
+import com.gs.collections.api.map.primitive.ImmutableIntIntMap;
+import com.gs.collections.api.map.primitive.MutableLongCharMap;
+import com.gs.collections.api.set.ImmutableSet;
+import com.gs.collections.api.set.primitive.ImmutableIntSet;
+import com.gs.collections.impl.factory.primitive.IntIntMaps;
+import com.gs.collections.impl.factory.primitive.IntSets;
+import com.gs.collections.impl.map.mutable.primitive.IntDoubleHashMap;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.test.primitive.PrimitiveTestKey;
+import com.kaaprotech.satu.test.primitive.PrimitiveTestModel;
+
+@SuppressWarnings("boxing")
+public class TestPrimitiveFields {
+
+    @Test
+    public void testFieldTypes() throws Exception {
+        assertSame(Integer.class, PrimitiveTestModel.class.getMethod("getId").getReturnType());
+        assertSame(int.class, PrimitiveTestModel.class.getMethod("getIntField").getReturnType());
+        assertSame(double.class, PrimitiveTestModel.class.getMethod("getDoubleField").getReturnType());
+        assertSame(boolean.class, PrimitiveTestModel.class.getMethod("getBooleanField").getReturnType());
+        assertSame(Integer.class, PrimitiveTestModel.class.getMethod("getNullableIntField").getReturnType());
+        assertSame(long.class, PrimitiveTestModel.Builder.class.getMethod("getLongField").getReturnType());
+        assertSame(float.class, PrimitiveTestModel.Delta.class.getMethod("getFloatField").getReturnType());
+        assertSame(int.class, PrimitiveTestKey.class.getMethod("getIntField").getReturnType());
+        assertSame(ImmutableIntSet.class, PrimitiveTestModel.class.getMethod("getSetOfIntsField").getReturnType());
+        assertSame(ImmutableIntDoubleMap.class, PrimitiveTestModel.class.getMethod("getMapOfIntDoublesField").getReturnType());
+        assertSame(MutableLongCharMap.class, PrimitiveTestModel.Builder.class.getMethod("getMapOfLongCharsField").getReturnType());
+        assertSame(ImmutableIntSet.class, PrimitiveTestModel.Delta.class.getMethod("getMapOfIntDoublesFieldRemoved").getReturnType());
+        assertSame(ImmutableSet.class, PrimitiveTestModel.class.getMethod("getSetOfBooleansField").getReturnType());
+        assertSame(ImmutableMap.class, PrimitiveTestModel.class.getMethod("getMapOfStringIntsField").getReturnType());
+        assertSame(ImmutableIntIntMap.class, PrimitiveTestKey.class.getMethod("getMapOfIntIntsField").getReturnType());
+    }
+
+    @Test
+    public void testDefaults() {
+        final PrimitiveTestModel model = PrimitiveTestModel.newBuilder(1).build();
+        assertFalse(model.getBooleanField());
+        assertEquals('x', model.getCharField());
+        assertEquals(3, model.getByteField());
+        assertEquals(4, model.getShortField());
+        assertEquals(0, model.getIntField());
+        assertEquals(7, model.getIntFieldWithDefault());
+        assertEquals(8L, model.getLongField());
+        assertEquals(1.5f, model.getFloatField(), 0f);
+        assertEquals(23.7d, model.getDoubleField(), 0d);
+        assertNull(model.getNullableIntField());
+        assertNull(model.getStringField());
+    }
+
+    @Test
+    public void testReconcileAndApplyDelta() {
+        final PrimitiveTestModel model = PrimitiveTestModel.newBuilder(1)
+                .setIntField(5)
+                .setDoubleField(1.25d)
+                .setKeyField(new PrimitiveTestKey(1, 2d, true, null, null))
+                .build();
+
+        final PrimitiveTestModel.Builder builder = model.toBuilder()
+                .setIntField(6)
+                .setDoubleField(1.25d) // Unchanged
+                .setNullableIntField(9)
+                .setLongField(-1L);
+
+        final PrimitiveTestModel.Delta delta = builder.reconcile(DeltaType.UPDATE, model);
+        assertTrue(delta.hasIntField());
+        assertEquals(6, delta.getIntField());
+        assertFalse(delta.hasDoubleField());
+        assertTrue(delta.hasNullableIntField());
+        assertTrue(delta.hasLongField());
+        assertFalse(delta.hasBooleanField());
+
+        final PrimitiveTestModel updated = model.toBuilder().applyDelta(delta).build();
+        assertEquals(builder.build(), updated);
+        assertEquals(6, updated.getIntField());
+        assertEquals(Integer.valueOf(9), updated.getNullableIntField());
+        assertEquals(-1L, updated.getLongField());
+
+        final PrimitiveTestModel.Delta added = updated.toDelta(DeltaType.ADD);
+        assertEquals(updated, added.toBuilder().build());
+    }
+
+    @Test
+    public void testPrimitiveCollections() {
+        final PrimitiveTestModel model = PrimitiveTestModel.newBuilder(1)
+                .addSetOfIntsField(1)
+                .addSetOfIntsField(2)
+                .putMapOfIntDoublesField(1, 1.1d)
+                .putMapOfIntDoublesField(2, 2.2d)
+                .putMapOfLongCharsField(1L, 'a')
+                .build();
+        assertTrue(model.getSetOfIntsField().containsAll(1, 2));
+        assertEquals(2.2d, model.getMapOfIntDoublesField().get(2), 0d);
+        assertTrue(PrimitiveTestModel.newBuilder(2).build().getSetOfIntsField().isEmpty());
+
+        final PrimitiveTestModel.Builder builder = model.toBuilder()
+                .addSetOfIntsField(3)
+                .putMapOfIntDoublesField(2, 2.3d)
+                .putMapOfIntDoublesField(3, 3.3d)
+                .putMapOfLongCharsField(1L, 'a'); // Unchanged
+        builder.getSetOfIntsField().remove(1);
+        builder.getMapOfIntDoublesField().removeKey(1);
+
+        final PrimitiveTestModel.Delta delta = builder.reconcile(DeltaType.UPDATE, model);
+        assertTrue(delta.hasSetOfIntsField());
+        assertEquals(IntSets.immutable.of(3), delta.getSetOfIntsField());
+        assertEquals(IntSets.immutable.of(1), delta.getSetOfIntsFieldRemoved());
+        assertTrue(delta.hasMapOfIntDoublesField());
+        assertEquals(IntDoubleHashMap.newWithKeysValues(2, 2.3d, 3, 3.3d), delta.getMapOfIntDoublesField());
+        assertEquals(IntSets.immutable.of(1), delta.getMapOfIntDoublesFieldRemoved());
+        assertFalse(delta.hasMapOfLongCharsField());
+
+        final PrimitiveTestModel updated = model.toBuilder().applyDelta(delta).build();
+        assertEquals(builder.build(), updated);
+        assertEquals(updated, updated.toDelta(DeltaType.ADD).toBuilder().build());
+
+        // Merging deltas, a later change to the same element replaces the earlier one
+        final PrimitiveTestModel.Builder nextBuilder = updated.toBuilder().addSetOfIntsField(1);
+        nextBuilder.getSetOfIntsField().remove(3);
+        nextBuilder.getMapOfIntDoublesField().removeKey(3);
+        final PrimitiveTestModel.Delta nextDelta = nextBuilder.reconcile(DeltaType.UPDATE, updated);
+        final PrimitiveTestModel.Delta merged = delta.toDeltaBuilder().addDelta(nextDelta).buildDelta();
+        assertEquals(IntSets.immutable.of(1), merged.getSetOfIntsField());
+        assertEquals(IntSets.immutable.of(3), merged.getSetOfIntsFieldRemoved());
+        assertEquals(IntSets.immutable.of(1, 3), merged.getMapOfIntDoublesFieldRemoved());
+        assertEquals(nextBuilder.build(), model.toBuilder().applyDelta(merged).build());
+    }
+
+    @Test
+    public void testKey() {
+        final PrimitiveTestKey key1 = new PrimitiveTestKey(1, 2d, true, null, null);
+        final PrimitiveTestKey key2 = new PrimitiveTestKey(1, 2d, true, null, null);
+        final PrimitiveTestKey key3 = new PrimitiveTestKey(1, 3d, true, null, null);
+        assertEquals(key1, key2);
+        assertEquals(key1.hashCode(), key2.hashCode());
+        assertEquals(0, key1.compareTo(key2));
+        assertNotEquals(key1, key3);
+        assertEquals(-1, key1.compareTo(key3));
+
+        final PrimitiveTestKey key4 = new PrimitiveTestKey(1, 2d, true, IntSets.immutable.of(1, 2), IntIntMaps.immutable.of(1, 1));
+        final PrimitiveTestKey key5 = new PrimitiveTestKey(1, 2d, true, IntSets.immutable.of(2, 1), IntIntMaps.immutable.of(1, 1));
+        final PrimitiveTestKey key6 = new PrimitiveTestKey(1, 2d, true, IntSets.immutable.of(1, 3), IntIntMaps.immutable.of(1, 1));
+        assertEquals(key4, key5);
+        assertEquals(key4.hashCode(), key5.hashCode());
+        assertEquals(0, key4.compareTo(key5));
+        assertEquals(-1, key4.compareTo(key6));
+        assertEquals(1, key6.compareTo(key4));
+        assertEquals(1, key4.compareTo(key1));
+        assertEquals(0, key6.compareTo(key6));
+    }
+
+    @Test
+    public void testHashCodeMatchesHashCodeBuilder() {
+        final PrimitiveTestKey key = new PrimitiveTestKey(1, 2.5d, true, IntSets.immutable.of(1, 2), IntIntMaps.immutable.of(1, 1));
+        assertEquals(TestSatuToJava.hashCodeBuilder(PrimitiveTestKey.class)
+                .append(1)
+                .append(2.5d)
+                .append(true)
+                .append(key.getSetOfIntsField())
+                .append(key.getMapOfIntIntsField())
+                .toHashCode(), key.hashCode());
+
+        final PrimitiveTestModel model = PrimitiveTestModel.newBuilder(1)
+                .setBooleanField(true)
+                .setIntField(-5)
+                .setLongField(Long.MIN_VALUE)
+                .setFloatField(-0f)
+                .setDoubleField(Double.NaN)
+                .setKeyField(key)
+                .addSetOfIntsField(3)
+                .build();
+        assertEquals(TestSatuToJava.hashCodeBuilder(PrimitiveTestModel.class)
+                .append(model.getId())
+                .append(true)
+                .append('x')
+                .append((byte) 3)
+                .append((short) 4)
+                .append(-5)
+                .append(7)
+                .append(Long.MIN_VALUE)
+                .append(-0f)
+                .append(Double.NaN)
+                .append((Object) null)
+                .append((Object) null)
+                .append(key)
+                .append((Object) null)
+                .append(model.getMapOfModelsField())
+                .append(model.getSetOfIntsField())
+                .append(model.getMapOfIntDoublesField())
+                .append(model.getMapOfLongCharsField())
+                .append(model.getSetOfBooleansField())
+                .append(model.getMapOfStringIntsField())
+                .toHashCode(), model.hashCode());
+    }
+}
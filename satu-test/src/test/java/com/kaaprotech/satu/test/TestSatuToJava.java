@@ -24,6 +24,8 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import org.apache.commons.lang.builder.CompareToBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.joda.time.DateTime;
 import org.junit.Test;
 
@@ -92,6 +94,134 @@ public class TestSatuToJava {
         assertEquals(-1, KEY_1.compareTo(KEY_3));
     }
 
+    // All boxed fields null and all collections empty
+    private final SatuTestKey NULL_KEY = new SatuTestKey(null, null, null, null, null, null, null, null, null, null);
+
+    @Test
+    public void testKeyEqualsAndCompareTo() {
+        // Boxed values compare by value not identity
+        final SatuTestKey key = new SatuTestKey(1000, 1000L, true, 'a', (byte) 0, 1.1f, null, null, null, null);
+        assertEquals(key, new SatuTestKey(new Integer(1000), new Long(1000L), true, 'a', (byte) 0, 1.1f, null, null, null, null));
+        assertNotEquals(key, new SatuTestKey(1000, 1000L, false, 'a', (byte) 0, 1.1f, null, null, null, null));
+        assertNotEquals(key, new SatuTestKey(1000, 1000L, true, 'a', (byte) 0, 1.2f, null, null, null, null));
+
+        // Nulls are equal to each other and order first
+        assertEquals(NULL_KEY, new SatuTestKey(null, null, null, null, null, null, null, null, null, null));
+        assertEquals(0, NULL_KEY.compareTo(new SatuTestKey(null, null, null, null, null, null, null, null, null, null)));
+        assertNotEquals(NULL_KEY, key);
+        assertNotEquals(key, NULL_KEY);
+        assertEquals(-1, NULL_KEY.compareTo(key));
+        assertEquals(1, key.compareTo(NULL_KEY));
+        assertFalse(KEY_1.equals(null));
+
+        // Collections compare by their sorted elements, fewer elements order first
+        final SatuTestKey fewer = new SatuTestKey(1, 1L, true, 'a', (byte) 0, 1.1f,
+                Sets.immutable.of(SatuTestEnum.FirstEnumMember), KEY_1.getMapOfStringDoubleField(), KEY_1.getSetOfPrimitiveTypes(), KEY_1.getMapOfPrimitiveTypes());
+        final SatuTestKey greater = new SatuTestKey(1, 1L, true, 'a', (byte) 0, 1.1f,
+                KEY_1.getSetOfEnumsField(), KEY_1.getMapOfStringDoubleField(), Sets.immutable.of(1, 3), KEY_1.getMapOfPrimitiveTypes());
+        assertNotEquals(KEY_1, fewer);
+        assertNotEquals(KEY_1, greater);
+        assertEquals(1, KEY_1.compareTo(fewer));
+        assertEquals(-1, fewer.compareTo(KEY_1));
+        assertEquals(-1, KEY_1.compareTo(greater));
+        assertEquals(1, greater.compareTo(KEY_1));
+
+        // The ordering matches the CompareToBuilder the generated code used to allocate
+        final SatuTestKey[] keys = { KEY_1, KEY_2, KEY_3, NULL_KEY, key, fewer, greater };
+        for (SatuTestKey lhs : keys) {
+            for (SatuTestKey rhs : keys) {
+                assertEquals(Integer.signum(compareToBuilder(lhs, rhs)), Integer.signum(lhs.compareTo(rhs)));
+                assertEquals(lhs.compareTo(rhs) == 0, lhs.equals(rhs));
+            }
+        }
+    }
+
+    @Test
+    public void testKeyHashCodeMatchesHashCodeBuilder() {
+        for (SatuTestKey key : new SatuTestKey[] { KEY_1, KEY_2, KEY_3, NULL_KEY }) {
+            assertEquals(hashCodeBuilder(SatuTestKey.class)
+                    .append(key.getIntField())
+                    .append(key.getLongField())
+                    .append(key.getBooleanField())
+                    .append(key.getCharField())
+                    .append(key.getByteField())
+                    .append(key.getFloatField())
+                    .append(key.getSetOfEnumsField())
+                    .append(key.getMapOfStringDoubleField())
+                    .append(key.getSetOfPrimitiveTypes())
+                    .append(key.getMapOfPrimitiveTypes())
+                    .toHashCode(), key.hashCode());
+        }
+    }
+
+    @Test
+    public void testModelEqualsAndHashCode() {
+        final DateTime dateTime = new DateTime(2014, 1, 1, 0, 0);
+        final SatuTestModel model = SatuTestModel.newBuilder(1)
+                .setIntField(1000)
+                .setStringField("a")
+                .setDataTimeField(dateTime)
+                .setModelField(SatuTestModel.newBuilder(2).setIntField(2).build())
+                .setKeyField(KEY_1)
+                .addSetOfKeysField(KEY_1)
+                .addSetOfKeysField(KEY_3)
+                .putMapOfModelsField(SatuTestEnum.FirstEnumMember, SatuTestModel.newBuilder(3).build())
+                .addSetOfPrimitiveTypes(1)
+                .putMapOfPrimitiveTypes(1, 2)
+                .build();
+        final SatuTestModel same = SatuTestModel.newBuilder(1)
+                .setIntField(new Integer(1000))
+                .setStringField(new String("a"))
+                .setDataTimeField(new DateTime(2014, 1, 1, 0, 0))
+                .setModelField(SatuTestModel.newBuilder(2).setIntField(2).build())
+                .setKeyField(KEY_2)
+                .addSetOfKeysField(KEY_3)
+                .addSetOfKeysField(KEY_2)
+                .putMapOfModelsField(SatuTestEnum.FirstEnumMember, SatuTestModel.newBuilder(3).build())
+                .addSetOfPrimitiveTypes(1)
+                .putMapOfPrimitiveTypes(1, 2)
+                .build();
+        assertEquals(model, same);
+        assertEquals(model.hashCode(), same.hashCode());
+        assertEquals(0, model.compareTo(same));
+
+        assertNotEquals(model, model.toBuilder().setIntField(1001).build());
+        assertNotEquals(model, model.toBuilder().setStringField(null).build());
+        assertNotEquals(model.toBuilder().setStringField(null).build(), model);
+        assertNotEquals(model, model.toBuilder().setModelField((SatuTestModel.Builder) null).build());
+        assertNotEquals(model, model.toBuilder().setModelField(SatuTestModel.newBuilder(2).setIntField(3).build()).build());
+        assertNotEquals(model, model.toBuilder().setKeyField(KEY_3).build());
+        assertNotEquals(model, model.toBuilder().addSetOfKeysField(NULL_KEY).build());
+        assertNotEquals(model, model.toBuilder().putMapOfPrimitiveTypes(1, 3).build());
+        assertEquals(model.toBuilder().setStringField(null).build(), same.toBuilder().setStringField(null).build());
+
+        // The hash matches the HashCodeBuilder the generated code used to allocate
+        for (SatuTestModel m : new SatuTestModel[] { model, SatuTestModel.newBuilder(1).build(), model.toBuilder().setModelField((SatuTestModel.Builder) null).build() }) {
+            assertEquals(hashCodeBuilder(SatuTestModel.class)
+                    .append(m.getIntKey())
+                    .append(m.getIntField())
+                    .append(m.getIntFieldWithDefault())
+                    .append(m.getDoubleField())
+                    .append(m.getDoubleFieldWithDefault())
+                    .append(m.getStringField())
+                    .append(m.getStringFieldWithDefault())
+                    .append(m.getEnumField())
+                    .append(m.getEnumFieldWithDefault())
+                    .append(m.getDataTimeField())
+                    .append(m.getModelField())
+                    .append(m.getKeyField())
+                    .append(m.getSetOfKeysField())
+                    .append(m.getMapOfKeysField())
+                    .append(m.getMapOfModelsField())
+                    .append(m.getMapOfModelsFieldWithSameKeyType())
+                    .append(m.getSetOfImportedTypes())
+                    .append(m.getMapOfImportedTypes())
+                    .append(m.getSetOfPrimitiveTypes())
+                    .append(m.getMapOfPrimitiveTypes())
+                    .toHashCode(), m.hashCode());
+        }
+    }
+
     @Test
     public void testModelDefaults() {
         final SatuTestModel model = SatuTestModel.newBuilder(1).build();
@@ -195,4 +325,38 @@ public class TestSatuToJava {
         final SatuTestModel base3 = base1.toBuilder().applyDelta(delta).build();
         assertEquals(base2, base3);
     }
+
+    private static int compareToBuilder(final SatuTestKey lhs, final SatuTestKey rhs) {
+        return new CompareToBuilder()
+                .append(lhs.getIntField(), rhs.getIntField())
+                .append(lhs.getLongField(), rhs.getLongField())
+                .append(lhs.getBooleanField(), rhs.getBooleanField())
+                .append(lhs.getCharField(), rhs.getCharField())
+                .append(lhs.getByteField(), rhs.getByteField())
+                .append(lhs.getFloatField(), rhs.getFloatField())
+                .append(lhs.getSetOfEnumsField().toSortedList().toArray(), rhs.getSetOfEnumsField().toSortedList().toArray())
+                .append(lhs.getMapOfStringDoubleField().toSortedList().toArray(), rhs.getMapOfStringDoubleField().toSortedList().toArray())
+                .append(lhs.getSetOfPrimitiveTypes().toSortedList().toArray(), rhs.getSetOfPrimitiveTypes().toSortedList().toArray())
+                .append(lhs.getMapOfPrimitiveTypes().toSortedList().toArray(), rhs.getMapOfPrimitiveTypes().toSortedList().toArray())
+                .toComparison();
+    }
+
+    /**
+     * A HashCodeBuilder seeded the way the compiler seeds generated hashCode methods
+     */
+    static HashCodeBuilder hashCodeBuilder(final Class<?> type) {
+        final String name = type.getSimpleName();
+        return new HashCodeBuilder(hashCodeBuilderArg(name), hashCodeBuilderArg(new StringBuilder(name).reverse().toString()));
+    }
+
+    private static int hashCodeBuilderArg(final String name) {
+        int arg = Math.abs(name.hashCode());
+        if (arg == 0) {
+            arg = 3251;
+        }
+        if (arg % 2 == 0) {
+            arg++;
+        }
+        return arg;
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.gs.collections.api.map.MutableMap;
+import com.gs.collections.api.set.MutableSet;
+import com.gs.collections.impl.factory.Maps;
+import com.gs.collections.impl.factory.Sets;
+import com.kaaprotech.satu.runtime.java.SatuUtil;
+import com.kaaprotech.satu.runtime.java.SatuUtil.ReconcileMapNofity;
+import com.kaaprotech.satu.runtime.java.SatuUtil.ReconcileSetNotify;
+
+@SuppressWarnings("boxing")
+public class TestSatuUtil {
+
+    @Test
+    public void testReconcileMap() {
+        final MutableMap<Integer, String> ref = Maps.mutable.of(1, "a", 2, "b", 3, null);
+        final MutableMap<Integer, String> other = Maps.mutable.of(2, "b", 3, "c", 4, null);
+        final MutableMap<Integer, String> added = Maps.mutable.of();
+        final MutableMap<Integer, String> updated = Maps.mutable.of();
+        final MutableSet<Integer> deleted = Sets.mutable.of();
+
+        SatuUtil.reconcileMap(ref, other, new ReconcileMapNofity<Integer, String>() {
+            @Override
+            public void add(final Integer key, final String value) {
+                added.put(key, value);
+            }
+
+            @Override
+            public void update(final Integer key, final String value) {
+                updated.put(key, value);
+            }
+
+            @Override
+            public void delete(final Integer key) {
+                deleted.add(key);
+            }
+        });
+
+        assertEquals(Maps.mutable.of(4, null), added);
+        assertEquals(Maps.mutable.of(3, "c"), updated);
+        assertEquals(Sets.mutable.of(1), deleted);
+    }
+
+    @Test
+    public void testReconcileSet() {
+        final MutableSet<Integer> added = Sets.mutable.of();
+        final MutableSet<Integer> intersected = Sets.mutable.of();
+        final MutableSet<Integer> deleted = Sets.mutable.of();
+        final ReconcileSetNotify<Integer> notify = new ReconcileSetNotify<Integer>() {
+            @Override
+            public void add(final Integer element) {
+                added.add(element);
+            }
+
+            @Override
+            public void intersect(final Integer element) {
+                intersected.add(element);
+            }
+
+            @Override
+            public void delete(final Integer element) {
+                deleted.add(element);
+            }
+        };
+
+        SatuUtil.reconcileSet(Sets.mutable.of(1, 2, 3), Sets.mutable.of(2, 3, 4), notify);
+        assertEquals(Sets.mutable.of(4), added);
+        assertEquals(Sets.mutable.of(2, 3), intersected);
+        assertEquals(Sets.mutable.of(1), deleted);
+
+        added.clear();
+        intersected.clear();
+        deleted.clear();
+        SatuUtil.reconcileMapKeys(Maps.mutable.of(1, "a", 2, "b"), Maps.mutable.of(2, "c", 3, "d"), notify);
+        assertEquals(Sets.mutable.of(3), added);
+        assertEquals(Sets.mutable.of(2), intersected);
+        assertEquals(Sets.mutable.of(1), deleted);
+    }
+
+    @Test
+    public void testCompareArrays() {
+        assertEquals(0, SatuUtil.compare((int[]) null, (int[]) null));
+        assertEquals(-1, SatuUtil.compare(null, new int[0]));
+        assertEquals(1, SatuUtil.compare(new int[0], null));
+        assertEquals(-1, SatuUtil.compare(new int[] { 9 }, new int[] { 1, 2 }));
+        assertEquals(1, SatuUtil.compare(new long[] { 1L, 2L }, new long[] { 9L }));
+        assertEquals(0, SatuUtil.compare(new char[] { 'a', 'b' }, new char[] { 'a', 'b' }));
+        assertEquals(-1, SatuUtil.compare(new byte[] { 1, -1 }, new byte[] { 1, 0 }));
+        assertEquals(1, SatuUtil.compare(new short[] { 2 }, new short[] { 1 }));
+        assertEquals(1, SatuUtil.compare(new double[] { Double.NaN }, new double[] { 1d }));
+        assertEquals(-1, SatuUtil.compare(new float[] { -0f }, new float[] { 0f }));
+        assertEquals(-1, SatuUtil.compare(new Object[] { null, "b" }, new Object[] { "a", "b" }));
+        assertEquals(1, SatuUtil.compare(new Object[] { "a", "c" }, new Object[] { "a", "b" }));
+    }
+}
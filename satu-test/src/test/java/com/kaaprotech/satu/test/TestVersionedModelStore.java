@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.gs.collections.api.block.function.Function;
+import com.gs.collections.api.block.procedure.Procedure;
+import com.gs.collections.api.list.ImmutableList;
+import com.gs.collections.impl.factory.Lists;
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.runtime.java.KeyModelDeltaPairDelta;
+import com.kaaprotech.satu.runtime.java.VersionedModelStore;
+import com.kaaprotech.satu.test.model.SatuTestModel;
+
+@SuppressWarnings("boxing")
+public class TestVersionedModelStore {
+
+    private static final int ACCOUNTS = 20;
+
+    private static VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> newStore() {
+        return new VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>(
+                new Function<Integer, SatuTestModel.Builder>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public SatuTestModel.Builder valueOf(final Integer key) {
+                        return SatuTestModel.newBuilder(key);
+                    }
+                });
+    }
+
+    private static int sum(final VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>.Snapshot snapshot) {
+        int sum = 0;
+        for (int k = 0; k < ACCOUNTS; k++) {
+            sum += snapshot.get(k).getIntField();
+        }
+        return sum;
+    }
+
+    @Test
+    public void testCommitCreatesVersions() {
+        final VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> store = newStore();
+        final VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>.Snapshot empty = store.snapshot();
+
+        final VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>.Snapshot v1 = store.apply(Lists.mutable.of(
+                SatuTestModel.newBuilder(1).setIntField(1).build().toDelta(DeltaType.ADD),
+                SatuTestModel.newBuilder(2).setIntField(2).build().toDelta(DeltaType.ADD)));
+        assertEquals(1L, v1.getVersion());
+        assertEquals(2, v1.getDeltas().size());
+        assertEquals(0, empty.size());
+
+        final VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>.Snapshot v2 = store
+                .commit(new Procedure<VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>.Transaction>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public void value(final VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>.Transaction transaction) {
+                        transaction.update(1).setIntField(10);
+                        transaction.remove(2);
+                        assertNull(transaction.get(2));
+                        transaction.update(3).setStringField("s3");
+                    }
+                });
+        assertEquals(2L, v2.getVersion());
+        assertEquals(Integer.valueOf(1), v1.get(1).getIntField());
+        assertTrue(v1.containsKey(2));
+        assertEquals(Integer.valueOf(10), v2.get(1).getIntField());
+        assertFalse(v2.containsKey(2));
+        assertEquals("s3", v2.get(3).getStringField());
+
+        final ImmutableList<KeyModelDeltaPairDelta<Integer, Integer, SatuTestModel.Delta, SatuTestModel.Delta.Builder>> deltas = v2.getDeltas().toSortedList().toImmutable();
+        assertEquals(3, deltas.size());
+        assertEquals(DeltaType.UPDATE, deltas.get(0).getDeltaType());
+        assertEquals(Integer.valueOf(10), deltas.get(0).getValue().getIntField());
+        assertEquals(DeltaType.DELETE, deltas.get(1).getDeltaType());
+        assertEquals(DeltaType.ADD, deltas.get(2).getDeltaType());
+
+        assertEquals(3, store.diff(v1, v2).size());
+        assertEquals(2, store.diff(empty, v2).size());
+        assertTrue(store.diff(v2, v2).isEmpty());
+
+        assertSame(v2, store.apply(Lists.mutable.of(SatuTestModel.newDeltaBuilder(DeltaType.UPDATE, 1).setIntField(10).buildDelta())));
+    }
+
+    @Test
+    public void testConsistentSnapshotsUnderConcurrentTransfers() throws InterruptedException {
+        final VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder> store = newStore();
+        store.commit(new Procedure<VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>.Transaction>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void value(final VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>.Transaction transaction) {
+                for (int k = 0; k < ACCOUNTS; k++) {
+                    transaction.update(k).setIntField(100);
+                }
+            }
+        });
+
+        final int threads = 4;
+        final int transfers = 2000;
+        final AtomicBoolean inconsistent = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < transfers; i++) {
+                        final int from = random.nextInt(ACCOUNTS);
+                        final int to = random.nextInt(ACCOUNTS);
+                        store.commit(new Procedure<VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>.Transaction>() {
+                            private static final long serialVersionUID = 1L;
+
+                            @Override
+                            public void value(final VersionedModelStore<Integer, SatuTestModel, SatuTestModel.Builder, SatuTestModel.Delta, SatuTestModel.Delta.Builder>.Transaction transaction) {
+                                final SatuTestModel.Builder debit = transaction.update(from);
+                                debit.setIntField(debit.getIntField() - 1);
+                                final SatuTestModel.Builder credit = transaction.update(to);
+                                credit.setIntField(credit.getIntField() + 1);
+                            }
+                        });
+                        if (sum(store.snapshot()) != 100 * ACCOUNTS) {
+                            inconsistent.set(true);
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+
+        assertFalse(inconsistent.get());
+        assertEquals(100 * ACCOUNTS, sum(store.snapshot()));
+        assertTrue(store.snapshot().getVersion() > 1L);
+    }
+}
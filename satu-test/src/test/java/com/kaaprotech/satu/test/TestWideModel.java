@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 Kaaprotech Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kaaprotech.satu.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.kaaprotech.satu.runtime.java.DeltaType;
+import com.kaaprotech.satu.test.wide.WideTestModel;
+
+@SuppressWarnings("boxing")
+public class TestWideModel {
+
+    @Test
+    public void testFieldsPastFirstWord() {
+        final WideTestModel model = WideTestModel.newBuilder(1)
+                .setField0(1)
+                .setField67(67)
+                .setChildField(WideTestModel.newBuilder(2).setField66(66))
+                .putMapOfModelsField(3, WideTestModel.newBuilder(3).setField65(65))
+                .build();
+        assertEquals(67, model.getField67());
+        assertEquals(66, model.getChildField().getField66());
+        assertEquals(65, model.getMapOfModelsField().get(3).getField65());
+
+        final WideTestModel.Builder builder = model.toBuilder();
+        assertSame(model, builder.build());
+        assertEquals(model, builder.init().build());
+
+        builder.getMapOfModelsField().get(3).setField64(64);
+        assertTrue(builder.isDirty());
+        final WideTestModel.Delta delta = builder.reconcile();
+        assertEquals(DeltaType.UPDATE, delta.getDeltaType());
+        assertFalse(delta.hasField67());
+        assertTrue(delta.hasMapOfModelsField());
+        assertEquals(64, delta.getMapOfModelsField().getFirst().getValue().getField64());
+        assertEquals(64, builder.build().getMapOfModelsField().get(3).getField64());
+    }
+
+    @Test
+    public void testDeltaBuilderPastFirstWord() {
+        final WideTestModel model = WideTestModel.newBuilder(1).setField67(67).build();
+        final WideTestModel.Delta delta = model.toBuilder().setChildField(WideTestModel.newBuilder(2).setField67(1)).reconcile();
+        assertTrue(delta.hasChildField());
+        assertFalse(delta.hasMapOfModelsField());
+
+        final WideTestModel.Delta.Builder deltaBuilder = WideTestModel.newDeltaBuilder(DeltaType.UPDATE, 1);
+        assertSame(delta, delta.toDeltaBuilder().buildDelta());
+        deltaBuilder.addDelta(delta);
+        assertEquals(delta, deltaBuilder.buildDelta());
+
+        final WideTestModel.Builder applied = model.toBuilder();
+        applied.applyDelta(delta);
+        assertEquals(1, applied.build().getChildField().getField67());
+    }
+}